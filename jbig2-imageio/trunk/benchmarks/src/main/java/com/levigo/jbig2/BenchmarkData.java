@@ -0,0 +1,66 @@
+/**
+ * Copyright (C) 1995-2014 levigo holding gmbh.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.levigo.jbig2;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.MemoryCacheImageInputStream;
+
+/**
+ * Provides the test images the benchmarks work on. The images are held in memory, so that file
+ * system access is not part of the measurements.
+ */
+public class BenchmarkData {
+
+  /**
+   * Reads the given image of the test image corpus completely.
+   * 
+   * @param name - The file name of the image, e.g. {@code 042_1.jb2}.
+   * @return The content of the image file.
+   * @throws IOException if the image cannot be found or read.
+   */
+  public static byte[] load(final String name) throws IOException {
+    final InputStream is = BenchmarkData.class.getResourceAsStream("/images/" + name);
+    if (null == is)
+      throw new IOException("Test image not found: " + name);
+
+    try {
+      final ByteArrayOutputStream bos = new ByteArrayOutputStream();
+      final byte[] buffer = new byte[8192];
+      int read;
+      while ((read = is.read(buffer)) != -1) {
+        bos.write(buffer, 0, read);
+      }
+      return bos.toByteArray();
+    } finally {
+      is.close();
+    }
+  }
+
+  /**
+   * @param data - The content of an image file or any other data.
+   * @return A fresh {@link ImageInputStream} reading the given data from its beginning.
+   */
+  public static ImageInputStream open(final byte[] data) {
+    return new MemoryCacheImageInputStream(new ByteArrayInputStream(data));
+  }
+}
@@ -0,0 +1,57 @@
+/**
+ * Copyright (C) 1995-2014 levigo holding gmbh.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.levigo.jbig2;
+
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks. Accepts the usual JMH command line options, but writes the results as JSON
+ * to {@code jmh-result.json} unless a result format or file is given explicitly, so that results of
+ * different runs can be compared.
+ */
+public class BenchmarkRunner {
+
+  public static final String DEFAULT_RESULT_FILE = "jmh-result.json";
+
+  public static void main(final String[] args) throws Exception {
+    final CommandLineOptions commandLineOptions = new CommandLineOptions(args);
+    if (commandLineOptions.shouldHelp() || commandLineOptions.shouldList()) {
+      // let the default runner print the help or the list of benchmarks
+      org.openjdk.jmh.Main.main(args);
+      return;
+    }
+
+    final OptionsBuilder builder = new OptionsBuilder();
+    builder.parent(commandLineOptions);
+
+    if (!commandLineOptions.getResultFormat().hasValue()) {
+      builder.resultFormat(ResultFormatType.JSON);
+    }
+
+    if (!commandLineOptions.getResult().hasValue()) {
+      builder.result(DEFAULT_RESULT_FILE);
+    }
+
+    final Options options = builder.build();
+    new Runner(options).run();
+  }
+}
@@ -0,0 +1,358 @@
+/**
+ * Copyright (C) 1995-2014 levigo holding gmbh.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.levigo.jbig2;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+
+import com.levigo.jbig2.util.cache.CacheFactory;
+
+/**
+ * Decodes every file of the test image corpus repeatedly and reports throughput and latency per
+ * file. Each file is decoded single-threaded and with several concurrent readers, each time with a
+ * cold and a warm cache:
+ * <ul>
+ * <li>{@code cold} - Every decode gets a new reader on a new stream and the page cache is cleared,
+ * so mapping the stream, decoding the pages and converting them to rasters are measured.</li>
+ * <li>{@code warm} - Every thread keeps its reader, so the pages are taken from the cache after the
+ * first decode and mostly the raster conversion is measured.</li>
+ * </ul>
+ * The readers are obtained from and driven like {@link ImageIO} does it.
+ * <p>
+ * If a baseline file is given, the pages per second of each file and configuration are compared to
+ * the baseline. The runner exits with status {@code 1} if any of them dropped by more than the
+ * threshold. A missing baseline file is written with the results of the current run.
+ * <p>
+ * Usage: {@code CorpusBenchmark [-threads n] [-iterations n] [-warmup n] [-baseline file]
+ * [-threshold percent] [-updateBaseline] [file ...]}
+ */
+public class CorpusBenchmark {
+
+  /* The files of the test image corpus that can be decoded completely, see ChecksumTest */
+  static final String[] CORPUS = {
+      "042_1.jb2", "042_2.jb2", "042_3.jb2", "042_4.jb2", "042_5.jb2", "042_6.jb2", "042_7.jb2", "042_8.jb2",
+      "042_9.jb2", "042_10.jb2", "042_11.jb2", "042_12.jb2", "042_15.jb2", "042_16.jb2", "042_17.jb2",
+      "042_18.jb2", "042_19.jb2", "042_20.jb2", "042_21.jb2", "042_22.jb2", "042_23.jb2", "042_24.jb2",
+      "042_25.jb2", "amb_1.jb2", "amb_2.jb2", "002.jb2", "003.jb2", "004.jb2", "005.jb2", "006.jb2", "007.jb2",
+      "sampledata_page1.jb2", "sampledata_page2.jb2", "sampledata_page3.jb2", "20123110001.jb2",
+      "20123110002.jb2", "20123110003.jb2", "20123110004.jb2", "20123110005.jb2", "20123110006.jb2",
+      "20123110007.jb2", "20123110008.jb2", "20123110009.jb2", "20123110010.jb2"
+  };
+
+  private int threads = Math.max(2, Runtime.getRuntime().availableProcessors());
+  private int iterations = 20;
+  private int warmup = 5;
+  private double threshold = 10;
+  private File baselineFile;
+  private boolean updateBaseline;
+  private final List<String> files = new ArrayList<String>();
+
+  /**
+   * The results of decoding one file repeatedly in one configuration.
+   */
+  static class Result {
+    final String file;
+    final String configuration;
+    final long pages;
+    final long pixels;
+    final long elapsed;
+    final long[] latencies;
+
+    Result(final String file, final String configuration, final long pages, final long pixels, final long elapsed,
+        final long[] latencies) {
+      this.file = file;
+      this.configuration = configuration;
+      this.pages = pages;
+      this.pixels = pixels;
+      this.elapsed = elapsed;
+      this.latencies = latencies;
+      Arrays.sort(this.latencies);
+    }
+
+    String getKey() {
+      return file + "." + configuration;
+    }
+
+    double getPagesPerSecond() {
+      return pages * 1e9 / elapsed;
+    }
+
+    double getMegaPixelsPerSecond() {
+      return pixels * 1e3 / elapsed;
+    }
+
+    /**
+     * @param percentile - The percentile, between {@code 0} and {@code 100}.
+     * @return The decode latency of the complete file in milliseconds, using the nearest-rank method.
+     */
+    double getLatency(final double percentile) {
+      final int rank = (int) Math.ceil(percentile / 100 * latencies.length);
+      return latencies[Math.max(0, rank - 1)] / 1e6;
+    }
+  }
+
+  /**
+   * The work of a single thread: decodes all pages of a file a given number of times.
+   */
+  private static class Decoder implements Callable<long[]> {
+    private final byte[] data;
+    private final boolean warmCache;
+    private final int iterations;
+
+    private ImageReader reader;
+
+    /* Amount of pages and pixels decoded by the last call */
+    long pages;
+    long pixels;
+
+    Decoder(final byte[] data, final boolean warmCache, final int iterations) {
+      this.data = data;
+      this.warmCache = warmCache;
+      this.iterations = iterations;
+    }
+
+    public long[] call() throws IOException {
+      final long[] latencies = new long[iterations];
+      pages = 0;
+      pixels = 0;
+
+      for (int i = 0; i < iterations; i++) {
+        final long start = System.nanoTime();
+
+        if (!warmCache || null == reader) {
+          if (null != reader) {
+            reader.dispose();
+          }
+          if (!warmCache) {
+            CacheFactory.getCache().clear();
+          }
+          reader = createReader(BenchmarkData.open(data));
+        }
+
+        final int numImages = reader.getNumImages(true);
+        for (int imageIndex = 0; imageIndex < numImages; imageIndex++) {
+          final BufferedImage image = reader.read(imageIndex, reader.getDefaultReadParam());
+          pages++;
+          pixels += (long) image.getWidth() * image.getHeight();
+        }
+
+        latencies[i] = System.nanoTime() - start;
+      }
+
+      return latencies;
+    }
+
+    void dispose() {
+      if (null != reader) {
+        reader.dispose();
+        reader = null;
+      }
+    }
+  }
+
+  /**
+   * Looks up the reader the same way as {@link ImageIO#read(ImageInputStream)} does.
+   */
+  private static ImageReader createReader(final ImageInputStream iis) throws IOException {
+    final Iterator<ImageReader> readers = ImageIO.getImageReaders(iis);
+    if (!readers.hasNext())
+      throw new IOException("No ImageReader registered for JBIG2");
+
+    final ImageReader reader = readers.next();
+    reader.setInput(iis, true, true);
+    return reader;
+  }
+
+  public static void main(final String[] args) throws Exception {
+    final CorpusBenchmark benchmark = new CorpusBenchmark();
+    benchmark.parseArguments(args);
+    System.exit(benchmark.run() ? 0 : 1);
+  }
+
+  private void parseArguments(final String[] args) {
+    for (int i = 0; i < args.length; i++) {
+      final String arg = args[i];
+      if ("-threads".equals(arg)) {
+        threads = Integer.parseInt(args[++i]);
+      } else if ("-iterations".equals(arg)) {
+        iterations = Integer.parseInt(args[++i]);
+      } else if ("-warmup".equals(arg)) {
+        warmup = Integer.parseInt(args[++i]);
+      } else if ("-threshold".equals(arg)) {
+        threshold = Double.parseDouble(args[++i]);
+      } else if ("-baseline".equals(arg)) {
+        baselineFile = new File(args[++i]);
+      } else if ("-updateBaseline".equals(arg)) {
+        updateBaseline = true;
+      } else if (arg.startsWith("-")) {
+        throw new IllegalArgumentException("Unknown option: " + arg);
+      } else {
+        files.add(arg);
+      }
+    }
+
+    if (files.isEmpty()) {
+      files.addAll(Arrays.asList(CORPUS));
+    }
+  }
+
+  /**
+   * @return {@code true} if no regression against the baseline was found.
+   */
+  private boolean run() throws Exception {
+    final ExecutorService executor = Executors.newFixedThreadPool(threads);
+    final List<Result> results = new ArrayList<Result>();
+
+    System.out.println(String.format("%-22s %-10s %9s %9s %9s %9s %9s", "file", "config", "pages/s", "MPixel/s",
+        "p50 ms", "p95 ms", "p99 ms"));
+
+    try {
+      for (final String file : files) {
+        final byte[] data = BenchmarkData.load(file);
+        for (final int threadCount : new int[]{
+            1, threads
+        }) {
+          for (final boolean warmCache : new boolean[]{
+              false, true
+          }) {
+            final Result result = measure(executor, file, data, threadCount, warmCache);
+            results.add(result);
+
+            System.out.println(String.format("%-22s %-10s %9.2f %9.2f %9.2f %9.2f %9.2f", file,
+                result.configuration, result.getPagesPerSecond(), result.getMegaPixelsPerSecond(),
+                result.getLatency(50), result.getLatency(95), result.getLatency(99)));
+          }
+        }
+      }
+    } finally {
+      executor.shutdown();
+    }
+
+    return checkBaseline(results);
+  }
+
+  private Result measure(final ExecutorService executor, final String file, final byte[] data,
+      final int threadCount, final boolean warmCache) throws Exception {
+    final List<Decoder> decoders = new ArrayList<Decoder>();
+    for (int i = 0; i < threadCount; i++) {
+      decoders.add(new Decoder(data, warmCache, iterations));
+    }
+
+    try {
+      // warm up the JIT and, in warm mode, the cache
+      for (final Decoder decoder : decoders) {
+        new Decoder(data, warmCache, warmup).call();
+        if (warmCache) {
+          decoder.call();
+        }
+      }
+
+      final long start = System.nanoTime();
+      final List<Future<long[]>> futures = executor.invokeAll(decoders);
+
+      final long[] latencies = new long[threadCount * iterations];
+      for (int i = 0; i < threadCount; i++) {
+        System.arraycopy(futures.get(i).get(), 0, latencies, i * iterations, iterations);
+      }
+      final long elapsed = System.nanoTime() - start;
+
+      long pages = 0;
+      long pixels = 0;
+      for (final Decoder decoder : decoders) {
+        pages += decoder.pages;
+        pixels += decoder.pixels;
+      }
+
+      final String configuration = (warmCache ? "warm" : "cold") + "-" + threadCount;
+      return new Result(file, configuration, pages, pixels, elapsed, latencies);
+    } finally {
+      for (final Decoder decoder : decoders) {
+        decoder.dispose();
+      }
+    }
+  }
+
+  private boolean checkBaseline(final List<Result> results) throws IOException {
+    if (null == baselineFile) {
+      return true;
+    }
+
+    if (updateBaseline || !baselineFile.exists()) {
+      final Properties baseline = new Properties();
+      for (final Result result : results) {
+        baseline.setProperty(result.getKey(), Double.toString(result.getPagesPerSecond()));
+      }
+
+      final OutputStream os = new FileOutputStream(baselineFile);
+      try {
+        baseline.store(os, "Pages per second of CorpusBenchmark");
+      } finally {
+        os.close();
+      }
+
+      System.out.println("Baseline written to " + baselineFile);
+      return true;
+    }
+
+    final Properties baseline = new Properties();
+    final InputStream is = new FileInputStream(baselineFile);
+    try {
+      baseline.load(is);
+    } finally {
+      is.close();
+    }
+
+    boolean passed = true;
+    for (final Result result : results) {
+      final String value = baseline.getProperty(result.getKey());
+      if (null == value) {
+        continue;
+      }
+
+      final double expected = Double.parseDouble(value);
+      final double actual = result.getPagesPerSecond();
+      if (actual < expected * (1 - threshold / 100)) {
+        System.out.println(String.format("REGRESSION %s: %.2f pages/s, baseline %.2f pages/s (-%.1f%%)",
+            result.getKey(), actual, expected, (1 - actual / expected) * 100));
+        passed = false;
+      }
+    }
+
+    System.out.println(passed ? "No regression beyond " + threshold + "% against " + baselineFile : "Regression beyond "
+        + threshold + "% against " + baselineFile);
+    return passed;
+  }
+}
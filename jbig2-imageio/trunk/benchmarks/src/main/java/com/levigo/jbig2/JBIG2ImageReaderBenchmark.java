@@ -0,0 +1,88 @@
+/**
+ * Copyright (C) 1995-2014 levigo holding gmbh.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.levigo.jbig2;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.levigo.jbig2.util.cache.CacheFactory;
+
+/**
+ * Measures the decoding of all pages of each file of the test image corpus with
+ * {@link JBIG2ImageReader}, the way ImageIO clients use it. The page cache is cleared before each
+ * invocation, so every page is decoded completely.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class JBIG2ImageReaderBenchmark {
+
+  /* The files of the test image corpus that can be decoded completely, see ChecksumTest */
+  @Param({
+      "042_1.jb2", "042_2.jb2", "042_3.jb2", "042_4.jb2", "042_5.jb2", "042_6.jb2", "042_7.jb2", "042_8.jb2",
+      "042_9.jb2", "042_10.jb2", "042_11.jb2", "042_12.jb2", "042_15.jb2", "042_16.jb2", "042_17.jb2",
+      "042_18.jb2", "042_19.jb2", "042_20.jb2", "042_21.jb2", "042_22.jb2", "042_23.jb2", "042_24.jb2",
+      "042_25.jb2", "amb_1.jb2", "amb_2.jb2", "002.jb2", "003.jb2", "004.jb2", "005.jb2", "006.jb2", "007.jb2",
+      "sampledata_page1.jb2", "sampledata_page2.jb2", "sampledata_page3.jb2", "20123110001.jb2",
+      "20123110002.jb2", "20123110003.jb2", "20123110004.jb2", "20123110005.jb2", "20123110006.jb2",
+      "20123110007.jb2", "20123110008.jb2", "20123110009.jb2", "20123110010.jb2"
+  })
+  public String file;
+
+  private byte[] data;
+
+  @Setup
+  public void setUp() throws IOException {
+    data = BenchmarkData.load(file);
+  }
+
+  @Benchmark
+  public void decode(final Blackhole blackhole) throws IOException {
+    CacheFactory.getCache().clear();
+
+    final JBIG2ImageReader reader = new JBIG2ImageReader(new JBIG2ImageReaderSpi());
+    try {
+      reader.setInput(BenchmarkData.open(data));
+
+      final int pages = reader.getNumImages(true);
+      for (int i = 0; i < pages; i++) {
+        final BufferedImage image = reader.read(i);
+        blackhole.consume(image);
+      }
+    } finally {
+      reader.dispose();
+    }
+  }
+}
@@ -0,0 +1,84 @@
+/**
+ * Copyright (C) 1995-2014 levigo holding gmbh.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.levigo.jbig2.decoder.arithmetic;
+
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.levigo.jbig2.BenchmarkData;
+
+/**
+ * Measures {@link ArithmeticDecoder#decode(CX)} on random data. Random data is the worst case for
+ * the decoder, because the probability estimation never settles and renormalization happens often.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ArithmeticDecoderBenchmark {
+
+  private static final int DECISIONS = 1 << 20;
+
+  /**
+   * The amount of contexts the decisions are spread over. {@code 1} keeps the context in the cache,
+   * {@code 65536} is the size of the context of generic region template 0.
+   */
+  @Param({
+      "1", "65536"
+  })
+  public int contexts;
+
+  private byte[] data;
+
+  @Setup
+  public void setUp() {
+    data = new byte[DECISIONS / 4];
+    new Random(42).nextBytes(data);
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(DECISIONS)
+  public int decode() throws IOException {
+    final ArithmeticDecoder arithmeticDecoder = new ArithmeticDecoder(BenchmarkData.open(data));
+    final CX cx = new CX(contexts, 0);
+    final int mask = contexts - 1;
+
+    int ones = 0;
+    for (int i = 0; i < DECISIONS; i++) {
+      cx.setIndex(i * 0x9E37 & mask);
+      ones += arithmeticDecoder.decode(cx);
+    }
+    return ones;
+  }
+}
@@ -0,0 +1,84 @@
+/**
+ * Copyright (C) 1995-2014 levigo holding gmbh.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.levigo.jbig2.decoder.huffman;
+
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import javax.imageio.stream.ImageInputStream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.levigo.jbig2.BenchmarkData;
+
+/**
+ * Measures {@link HuffmanTable#decode(ImageInputStream)} for each of the standard tables B.1 to
+ * B.15 on random data.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HuffmanTableBenchmark {
+
+  private static final int VALUES = 1 << 16;
+
+  @Param({
+      "1", "2", "3", "4", "5", "6", "7", "8", "9", "10", "11", "12", "13", "14", "15"
+  })
+  public int table;
+
+  private HuffmanTable huffmanTable;
+
+  private byte[] data;
+
+  @Setup
+  public void setUp() {
+    huffmanTable = StandardTables.getTable(table);
+
+    /* No code of the standard tables is longer than 64 bits */
+    data = new byte[VALUES * 8];
+    new Random(42).nextBytes(data);
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(VALUES)
+  public long decode() throws IOException {
+    final ImageInputStream iis = BenchmarkData.open(data);
+
+    long sum = 0;
+    for (int i = 0; i < VALUES; i++) {
+      sum += huffmanTable.decode(iis);
+    }
+    return sum;
+  }
+}
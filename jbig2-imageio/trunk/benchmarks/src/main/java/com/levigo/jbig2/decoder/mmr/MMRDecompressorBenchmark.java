@@ -0,0 +1,71 @@
+/**
+ * Copyright (C) 1995-2014 levigo holding gmbh.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.levigo.jbig2.decoder.mmr;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import javax.imageio.stream.ImageInputStream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.levigo.jbig2.Bitmap;
+import com.levigo.jbig2.BenchmarkData;
+import com.levigo.jbig2.io.SubInputStream;
+
+/**
+ * Measures {@link MMRDecompressor#uncompress()} on the MMR coded generic region of 042_3.jb2, a
+ * complete page of 1728x2339 pixels.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MMRDecompressorBenchmark {
+
+  private static final int WIDTH = 1728;
+  private static final int HEIGHT = 2339;
+
+  /* Segment data of segment 2 starts at 191, MMR data after region info (17) and flags (1) */
+  private static final int DATA_OFFSET = 191 + 18;
+  private static final int DATA_LENGTH = 64074 - 18;
+
+  private byte[] data;
+
+  @Setup
+  public void setUp() throws IOException {
+    data = BenchmarkData.load("042_3.jb2");
+  }
+
+  @Benchmark
+  public Bitmap uncompress() throws IOException {
+    final ImageInputStream iis = BenchmarkData.open(data);
+    return new MMRDecompressor(WIDTH, HEIGHT, new SubInputStream(iis, DATA_OFFSET, DATA_LENGTH)).uncompress();
+  }
+}
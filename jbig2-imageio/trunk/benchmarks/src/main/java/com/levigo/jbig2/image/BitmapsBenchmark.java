@@ -0,0 +1,93 @@
+/**
+ * Copyright (C) 1995-2014 levigo holding gmbh.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.levigo.jbig2.image;
+
+import java.awt.image.WritableRaster;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.levigo.jbig2.Bitmap;
+import com.levigo.jbig2.util.CombinationOperator;
+
+/**
+ * Measures {@link Bitmaps#blit(Bitmap, Bitmap, int, int, CombinationOperator)} for every
+ * combination operator and every bit shift between source and destination, and the conversion of a
+ * page bitmap to a raster with {@link Bitmaps#asRaster(Bitmap)}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BitmapsBenchmark {
+
+  /* Size of an A4 page at 200 dpi, like the pages of the test image corpus */
+  private static final int PAGE_WIDTH = 1728;
+  private static final int PAGE_HEIGHT = 2339;
+
+  private static final int REGION_SIZE = 512;
+
+  @Param({
+      "OR", "AND", "XOR", "XNOR", "REPLACE"
+  })
+  public CombinationOperator operator;
+
+  @Param({
+      "0", "1", "2", "3", "4", "5", "6", "7"
+  })
+  public int shift;
+
+  private Bitmap page;
+
+  private Bitmap region;
+
+  @Setup
+  public void setUp() {
+    final Random random = new Random(42);
+
+    page = new Bitmap(PAGE_WIDTH, PAGE_HEIGHT);
+    random.nextBytes(page.getByteArray());
+
+    region = new Bitmap(REGION_SIZE, REGION_SIZE);
+    random.nextBytes(region.getByteArray());
+  }
+
+  @Benchmark
+  public Bitmap blit() {
+    Bitmaps.blit(region, page, 64 + shift, 64, operator);
+    return page;
+  }
+
+  @Benchmark
+  public WritableRaster asRaster() {
+    return Bitmaps.asRaster(page);
+  }
+}
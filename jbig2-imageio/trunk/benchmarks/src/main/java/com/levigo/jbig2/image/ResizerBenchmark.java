@@ -0,0 +1,92 @@
+/**
+ * Copyright (C) 1995-2014 levigo holding gmbh.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.levigo.jbig2.image;
+
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.awt.image.DataBuffer;
+import java.awt.image.WritableRaster;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.levigo.jbig2.Bitmap;
+
+/**
+ * Measures the scaling of a page bitmap into a gray-scale raster with {@link Resizer} for every
+ * {@link FilterType}, once minifying (as for thumbnails) and once magnifying.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ResizerBenchmark {
+
+  private static final int PAGE_WIDTH = 1728;
+  private static final int PAGE_HEIGHT = 2339;
+
+  @Param({
+      "Bessel", "Blackman", "Box", "Catrom", "Cubic", "Gaussian", "Hamming", "Hanning", "Hermite", "Lanczos",
+      "Mitchell", "Point", "Quadratic", "Sinc", "Triangle"
+  })
+  public FilterType filterType;
+
+  @Param({
+      "0.25", "1.5"
+  })
+  public double scale;
+
+  private Bitmap page;
+
+  private Filter filter;
+
+  private Rectangle dstBounds;
+
+  private WritableRaster dst;
+
+  @Setup
+  public void setUp() {
+    page = new Bitmap(PAGE_WIDTH, PAGE_HEIGHT);
+    new Random(42).nextBytes(page.getByteArray());
+
+    filter = Filter.byType(filterType);
+
+    dstBounds = new Rectangle(0, 0, (int) Math.round(PAGE_WIDTH * scale), (int) Math.round(PAGE_HEIGHT * scale));
+    dst = WritableRaster.createInterleavedRaster(DataBuffer.TYPE_BYTE, dstBounds.width, dstBounds.height, 1,
+        new Point());
+  }
+
+  @Benchmark
+  public WritableRaster resize() {
+    new Resizer(scale).resize(page, page.getBounds(), dst, dstBounds, filter, filter);
+    return dst;
+  }
+}
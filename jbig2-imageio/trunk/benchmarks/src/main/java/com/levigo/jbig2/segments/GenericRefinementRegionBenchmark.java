@@ -0,0 +1,111 @@
+/**
+ * Copyright (C) 1995-2014 levigo holding gmbh.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.levigo.jbig2.segments;
+
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.levigo.jbig2.BenchmarkData;
+import com.levigo.jbig2.Bitmap;
+import com.levigo.jbig2.decoder.arithmetic.ArithmeticDecoder;
+import com.levigo.jbig2.decoder.arithmetic.CX;
+import com.levigo.jbig2.err.IntegerMaxValueException;
+import com.levigo.jbig2.err.InvalidHeaderValueException;
+import com.levigo.jbig2.io.SubInputStream;
+
+/**
+ * Measures the refinement of symbols with the nominal AT pixels, decoded from word windows and pixel
+ * by pixel. Like the refinements of a text region, the symbols share one arithmetic decoder and one
+ * set of contexts and are placed within a pixel of their reference.
+ * <p>
+ * The pages of the test image corpus with the most refinements are measured by
+ * {@code JBIG2ImageReaderBenchmark}, e.g. with
+ * {@code -p file=20123110002.jb2,20123110003.jb2,042_15.jb2,042_21.jb2,042_23.jb2}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GenericRefinementRegionBenchmark {
+
+  private static final int SYMBOLS = 1000;
+  private static final int SYMBOL_WIDTH = 40;
+  private static final int SYMBOL_HEIGHT = 50;
+
+  private static final short[] NOMINAL_AT = {
+      -1, -1
+  };
+
+  @Param({
+      "0", "1"
+  })
+  public short template;
+
+  @Param({
+      "true", "false"
+  })
+  public boolean wordWindows;
+
+  private byte[] data;
+  private Bitmap reference;
+
+  @Setup
+  public void setUp() {
+    final Random random = new Random(4711);
+
+    data = new byte[SYMBOLS * SYMBOL_WIDTH * SYMBOL_HEIGHT / 8];
+    random.nextBytes(data);
+
+    reference = new Bitmap(SYMBOL_WIDTH, SYMBOL_HEIGHT);
+    random.nextBytes(reference.getByteArray());
+  }
+
+  @Benchmark
+  public Bitmap decode() throws IOException, IntegerMaxValueException, InvalidHeaderValueException {
+    final SubInputStream sis = new SubInputStream(BenchmarkData.open(data), 0, data.length);
+    final ArithmeticDecoder arithmeticDecoder = new ArithmeticDecoder(sis);
+    final CX cx = new CX(8192, 1);
+
+    final GenericRefinementRegion genericRefinementRegion = new GenericRefinementRegion(sis);
+    genericRefinementRegion.setUseWordWindows(wordWindows);
+
+    Bitmap regionBitmap = null;
+    for (int i = 0; i < SYMBOLS; i++) {
+      genericRefinementRegion.setParameters(cx, arithmeticDecoder, template, SYMBOL_WIDTH, SYMBOL_HEIGHT,
+          reference, i % 3 - 1, i / 3 % 3 - 1, false, NOMINAL_AT, NOMINAL_AT);
+      regionBitmap = genericRefinementRegion.getRegionBitmap();
+    }
+    return regionBitmap;
+  }
+}
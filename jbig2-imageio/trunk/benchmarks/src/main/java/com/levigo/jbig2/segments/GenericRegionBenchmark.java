@@ -0,0 +1,83 @@
+/**
+ * Copyright (C) 1995-2014 levigo holding gmbh.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.levigo.jbig2.segments;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.levigo.jbig2.BenchmarkData;
+import com.levigo.jbig2.Bitmap;
+import com.levigo.jbig2.err.InvalidHeaderValueException;
+import com.levigo.jbig2.io.SubInputStream;
+
+/**
+ * Measures the arithmetic decoding of a generic region for each of the four templates. The test
+ * images 042_1, 042_4, 042_5 and 042_6 contain the same page of 1728x2339 pixels encoded with
+ * template 0, 1, 2 and 3 respectively.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GenericRegionBenchmark {
+
+  /* File name, segment data offset and segment data length of the generic region per template */
+  private static final String[] FILES = {
+      "042_1.jb2", "042_4.jb2", "042_5.jb2", "042_6.jb2"
+  };
+  private static final int[] OFFSETS = {
+      191, 191, 191, 191
+  };
+  private static final int[] LENGTHS = {
+      46130, 46365, 47956, 50168
+  };
+
+  @Param({
+      "0", "1", "2", "3"
+  })
+  public int template;
+
+  private byte[] data;
+
+  @Setup
+  public void setUp() throws IOException {
+    data = BenchmarkData.load(FILES[template]);
+  }
+
+  @Benchmark
+  public Bitmap decode() throws IOException, InvalidHeaderValueException {
+    final GenericRegion genericRegion = new GenericRegion();
+    genericRegion.init(null,
+        new SubInputStream(BenchmarkData.open(data), OFFSETS[template], LENGTHS[template]));
+    return genericRegion.getRegionBitmap();
+  }
+}
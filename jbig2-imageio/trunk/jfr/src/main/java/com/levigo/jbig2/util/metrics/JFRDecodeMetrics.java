@@ -0,0 +1,244 @@
+/**
+ * Copyright (C) 1995-2014 levigo holding gmbh.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.levigo.jbig2.util.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.FlightRecorder;
+import jdk.jfr.FlightRecorderListener;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Recording;
+import jdk.jfr.RecordingState;
+import jdk.jfr.Timespan;
+
+/**
+ * Emits the measurements as JDK Flight Recorder events. The events are committed when the measured
+ * work has finished, the time it took is given by their {@code elapsed} field. While no recording
+ * is running, {@link #isEnabled()} returns {@code false}, so nothing is measured.
+ * <p>
+ * This class needs the {@code jdk.jfr} API (JDK 11 or JDK 8u262 and later), so it is shipped
+ * separately from the decoder. The module registers {@link JFRDecodeMetricsBridge}, putting it on
+ * the class path is enough to emit the events.
+ */
+public class JFRDecodeMetrics implements DecodeMetrics {
+
+  private static final String CATEGORY = "JBIG2";
+
+  @Name("com.levigo.jbig2.DocumentMapping")
+  @Label("Document Mapping")
+  @Description("The segment headers of a document have been read")
+  @Category(CATEGORY)
+  static class DocumentMappingEvent extends Event {
+    @Label("Segments")
+    int segments;
+
+    @Label("Elapsed")
+    @Timespan(Timespan.NANOSECONDS)
+    long elapsed;
+  }
+
+  @Name("com.levigo.jbig2.SegmentParsing")
+  @Label("Segment Parsing")
+  @Description("The data header of a segment has been parsed")
+  @Category(CATEGORY)
+  static class SegmentParsingEvent extends Event {
+    @Label("Segment Type")
+    int segmentType;
+
+    @Label("Segment Number")
+    int segmentNumber;
+
+    @Label("Page Number")
+    int pageNumber;
+
+    @Label("Data Length")
+    @DataAmount
+    long dataLength;
+
+    @Label("Elapsed")
+    @Timespan(Timespan.NANOSECONDS)
+    long elapsed;
+  }
+
+  @Name("com.levigo.jbig2.SegmentDecoding")
+  @Label("Segment Decoding")
+  @Description("A region or dictionary segment has been decoded")
+  @Category(CATEGORY)
+  static class SegmentDecodingEvent extends Event {
+    @Label("Segment Type")
+    int segmentType;
+
+    @Label("Segment Number")
+    int segmentNumber;
+
+    @Label("Page Number")
+    int pageNumber;
+
+    @Label("Data Length")
+    @DataAmount
+    long dataLength;
+
+    @Label("Pixels")
+    long pixels;
+
+    @Label("Elapsed")
+    @Timespan(Timespan.NANOSECONDS)
+    long elapsed;
+  }
+
+  @Name("com.levigo.jbig2.PageComposition")
+  @Label("Page Composition")
+  @Description("The regions of a page have been composed to the page bitmap")
+  @Category(CATEGORY)
+  static class PageCompositionEvent extends Event {
+    @Label("Page Number")
+    int pageNumber;
+
+    @Label("Pixels")
+    long pixels;
+
+    @Label("Elapsed")
+    @Timespan(Timespan.NANOSECONDS)
+    long elapsed;
+  }
+
+  @Name("com.levigo.jbig2.CacheLookup")
+  @Label("Cache Lookup")
+  @Description("The cache has been asked for a decoded page")
+  @Category(CATEGORY)
+  static class CacheLookupEvent extends Event {
+    @Label("Hit")
+    boolean hit;
+  }
+
+  @Name("com.levigo.jbig2.RasterConversion")
+  @Label("Raster Conversion")
+  @Description("A raster has been created from a decoded bitmap")
+  @Category(CATEGORY)
+  static class RasterConversionEvent extends Event {
+    @Label("Pixels")
+    long pixels;
+
+    @Label("Elapsed")
+    @Timespan(Timespan.NANOSECONDS)
+    long elapsed;
+  }
+
+  /** {@code true} while at least one recording is running */
+  private volatile boolean recording;
+
+  JFRDecodeMetrics() {
+    FlightRecorder.addListener(new FlightRecorderListener() {
+      public void recordingStateChanged(Recording r) {
+        updateRecording();
+      }
+    });
+    updateRecording();
+  }
+
+  private void updateRecording() {
+    boolean running = false;
+    if (FlightRecorder.isInitialized()) {
+      for (Recording r : FlightRecorder.getFlightRecorder().getRecordings()) {
+        running |= r.getState() == RecordingState.RUNNING;
+      }
+    }
+    recording = running;
+  }
+
+  public boolean isEnabled() {
+    return recording;
+  }
+
+  public void documentMapped(int segments, long duration) {
+    final DocumentMappingEvent event = new DocumentMappingEvent();
+    if (event.shouldCommit()) {
+      event.segments = segments;
+      event.elapsed = duration;
+      event.commit();
+    }
+  }
+
+  public void segmentParsed(int segmentType, int segmentNumber, int pageNumber, long dataLength, long duration) {
+    final SegmentParsingEvent event = new SegmentParsingEvent();
+    if (event.shouldCommit()) {
+      event.segmentType = segmentType;
+      event.segmentNumber = segmentNumber;
+      event.pageNumber = pageNumber;
+      event.dataLength = dataLength;
+      event.elapsed = duration;
+      event.commit();
+    }
+  }
+
+  public void segmentDecoded(int segmentType, int segmentNumber, int pageNumber, long dataLength, long pixels,
+      long duration) {
+    final SegmentDecodingEvent event = new SegmentDecodingEvent();
+    if (event.shouldCommit()) {
+      event.segmentType = segmentType;
+      event.segmentNumber = segmentNumber;
+      event.pageNumber = pageNumber;
+      event.dataLength = dataLength;
+      event.pixels = pixels;
+      event.elapsed = duration;
+      event.commit();
+    }
+  }
+
+  public void symbolInstancesDecoded(long amount) {
+    // part of the segment decoding events
+  }
+
+  public void cacheLookup(boolean hit) {
+    final CacheLookupEvent event = new CacheLookupEvent();
+    if (event.shouldCommit()) {
+      event.hit = hit;
+      event.commit();
+    }
+  }
+
+  public void bitmapAllocated(long bytes) {
+    // allocations are recorded by the JVM's own events
+  }
+
+  public void pageComposed(int pageNumber, long pixels, long duration) {
+    final PageCompositionEvent event = new PageCompositionEvent();
+    if (event.shouldCommit()) {
+      event.pageNumber = pageNumber;
+      event.pixels = pixels;
+      event.elapsed = duration;
+      event.commit();
+    }
+  }
+
+  public void rasterCreated(long pixels, long duration) {
+    final RasterConversionEvent event = new RasterConversionEvent();
+    if (event.shouldCommit()) {
+      event.pixels = pixels;
+      event.elapsed = duration;
+      event.commit();
+    }
+  }
+
+  public void imageScaled(long pixels, long duration) {
+    // part of the raster conversion events
+  }
+}
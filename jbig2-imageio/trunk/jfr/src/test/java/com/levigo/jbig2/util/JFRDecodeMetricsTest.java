@@ -0,0 +1,121 @@
+/**
+ * Copyright (C) 1995-2014 levigo holding gmbh.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.levigo.jbig2.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.Dimension;
+import java.io.File;
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.imageio.ImageReadParam;
+import javax.imageio.stream.ImageInputStream;
+
+import jdk.jfr.FlightRecorder;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Test;
+
+import com.levigo.jbig2.JBIG2ImageReader;
+import com.levigo.jbig2.JBIG2ImageReaderSpi;
+import com.levigo.jbig2.io.DefaultInputStreamFactory;
+import com.levigo.jbig2.util.cache.CacheFactory;
+import com.levigo.jbig2.util.metrics.DecodeMetrics;
+import com.levigo.jbig2.util.metrics.DecodeMetricsFactory;
+import com.levigo.jbig2.util.metrics.JFRDecodeMetricsBridge;
+
+public class JFRDecodeMetricsTest {
+
+  private static final String[] EVENTS = {
+      "com.levigo.jbig2.DocumentMapping", "com.levigo.jbig2.SegmentParsing", "com.levigo.jbig2.SegmentDecoding",
+      "com.levigo.jbig2.PageComposition", "com.levigo.jbig2.CacheLookup", "com.levigo.jbig2.RasterConversion"
+  };
+
+  @After
+  public void tearDown() {
+    DecodeMetricsFactory.setDecodeMetrics(null);
+  }
+
+  @Test
+  public void testRecordEvents() throws Exception {
+    Assume.assumeTrue(FlightRecorder.isAvailable());
+
+    final DecodeMetrics decodeMetrics = new JFRDecodeMetricsBridge().getDecodeMetrics();
+    DecodeMetricsFactory.setDecodeMetrics(decodeMetrics);
+    CacheFactory.getCache().clear();
+
+    final File file = File.createTempFile("jbig2", ".jfr");
+    try {
+      final Recording recording = new Recording();
+      for (String event : EVENTS) {
+        recording.enable(event);
+      }
+      recording.start();
+      assertTrue(decodeMetrics.isEnabled());
+
+      final InputStream is = getClass().getResourceAsStream("/images/042_10.jb2");
+      final ImageInputStream iis = new DefaultInputStreamFactory().getInputStream(is);
+      final JBIG2ImageReader reader = new JBIG2ImageReader(new JBIG2ImageReaderSpi());
+      reader.setInput(iis);
+      final ImageReadParam param = reader.getDefaultReadParam();
+      param.setSourceRenderSize(new Dimension(100, 100));
+      reader.read(0, param);
+
+      recording.stop();
+      assertFalse(decodeMetrics.isEnabled());
+      recording.dump(file.toPath());
+      recording.close();
+
+      final List<RecordedEvent> events = RecordingFile.readAllEvents(file.toPath());
+      final Map<String, RecordedEvent> lastEvents = new HashMap<String, RecordedEvent>();
+      final Map<Integer, RecordedEvent> decodedSegments = new HashMap<Integer, RecordedEvent>();
+      for (RecordedEvent event : events) {
+        final String name = event.getEventType().getName();
+        lastEvents.put(name, event);
+        if (name.equals("com.levigo.jbig2.SegmentDecoding")) {
+          decodedSegments.put(event.getInt("segmentType"), event);
+        }
+      }
+
+      for (String event : EVENTS) {
+        assertTrue(event, lastEvents.containsKey(event));
+      }
+
+      // a symbol dictionary and an immediate lossless text region of page 1
+      assertEquals(2, decodedSegments.size());
+      assertEquals(1, decodedSegments.get(7).getInt("pageNumber"));
+      assertTrue(decodedSegments.get(7).getLong("dataLength") > 0);
+      assertTrue(decodedSegments.get(0).getLong("elapsed") > 0);
+
+      assertEquals(1, lastEvents.get("com.levigo.jbig2.PageComposition").getInt("pageNumber"));
+      assertFalse(lastEvents.get("com.levigo.jbig2.CacheLookup").getBoolean("hit"));
+      assertEquals(10000L, lastEvents.get("com.levigo.jbig2.RasterConversion").getLong("pixels"));
+    } finally {
+      file.delete();
+    }
+  }
+}
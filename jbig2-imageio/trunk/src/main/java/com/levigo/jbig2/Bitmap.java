@@ -19,6 +19,10 @@ package com.levigo.jbig2;
 
 import java.awt.Rectangle;
 
+import com.levigo.jbig2.err.ResourceLimitExceededException;
+import com.levigo.jbig2.util.ResourceBudget;
+import com.levigo.jbig2.util.metrics.DecodeMetricsFactory;
+
 /**
  * This class represents a bi-level image that is organized like a bitmap.
  * 
@@ -48,13 +52,28 @@ public class Bitmap {
    * 
    * @param height - The real height of the bitmap in pixels.
    * @param width - The real width of the bitmap in pixels.
+   * @throws ResourceLimitExceededException if a dimension is negative, the bitmap doesn't fit into an
+   *           array or exceeds the {@link ResourceBudget} of the current decoding process.
    */
   public Bitmap(int width, int height) {
+    // computed as long, a width close to Integer.MAX_VALUE would wrap around otherwise
+    final long rowStride = (width + 7L) >> 3;
+    final long size = rowStride * height;
+    if (width < 0 || height < 0) {
+      throw new ResourceLimitExceededException("Bitmap of " + width + "x" + height + " pixels is invalid");
+    }
+    if (size > Integer.MAX_VALUE) {
+      throw new ResourceLimitExceededException("Bitmap of " + width + "x" + height + " pixels is too large");
+    }
+
     this.height = height;
     this.width = width;
-    this.rowStride = (width + 7) >> 3;
+    this.rowStride = (int) rowStride;
+
+    ResourceBudget.allocate(size);
 
-    bitmap = new byte[this.height * this.rowStride];
+    bitmap = new byte[(int) size];
+    DecodeMetricsFactory.getDecodeMetrics().bitmapAllocated(bitmap.length);
   }
 
   /**
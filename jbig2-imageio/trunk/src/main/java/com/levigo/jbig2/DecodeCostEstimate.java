@@ -0,0 +1,78 @@
+/**
+ * Copyright (C) 1995-2014 levigo holding gmbh.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.levigo.jbig2;
+
+/**
+ * The estimated cost of decoding a page, computed from the headers of its segments only. See
+ * {@link JBIG2ImageReader#estimateDecodeCost(int)}.
+ * <p>
+ * The estimated time is calibrated against the test image corpus on a single core of a current
+ * desktop machine. It is meant to compare pages and to distribute them among workers, not as an
+ * exact prediction.
+ */
+public class DecodeCostEstimate {
+
+  private final int pageNumber;
+  private final long pixels;
+  private final long estimatedNanos;
+  private final long estimatedPeakBytes;
+
+  DecodeCostEstimate(final int pageNumber, final long pixels, final long estimatedNanos,
+      final long estimatedPeakBytes) {
+    this.pageNumber = pageNumber;
+    this.pixels = pixels;
+    this.estimatedNanos = estimatedNanos;
+    this.estimatedPeakBytes = estimatedPeakBytes;
+  }
+
+  /**
+   * @return The number of the page, starting with {@code 1}.
+   */
+  public int getPageNumber() {
+    return pageNumber;
+  }
+
+  /**
+   * @return The amount of pixels of the page.
+   */
+  public long getPixels() {
+    return pixels;
+  }
+
+  /**
+   * @return The estimated CPU time in nanoseconds to decode the page at full resolution and to
+   *         convert it to a {@link java.awt.image.BufferedImage}.
+   */
+  public long getEstimatedNanos() {
+    return estimatedNanos;
+  }
+
+  /**
+   * @return The estimated peak amount of heap in bytes needed to decode the page at full resolution
+   *         and to convert it to a {@link java.awt.image.BufferedImage}.
+   */
+  public long getEstimatedPeakBytes() {
+    return estimatedPeakBytes;
+  }
+
+  @Override
+  public String toString() {
+    return "Page " + pageNumber + ": " + pixels + " pixels, " + (estimatedNanos / 1000000) + " ms, "
+        + (estimatedPeakBytes >> 10) + " KiB";
+  }
+}
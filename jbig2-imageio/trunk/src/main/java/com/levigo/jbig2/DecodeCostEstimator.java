@@ -0,0 +1,280 @@
+/**
+ * Copyright (C) 1995-2014 levigo holding gmbh.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.levigo.jbig2;
+
+import java.io.IOException;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+import com.levigo.jbig2.err.JBIG2Exception;
+import com.levigo.jbig2.io.SubInputStream;
+
+/**
+ * Estimates the cost of decoding a page from the segment headers and the headers of the segments'
+ * data parts, without decoding anything. Referred-to segments like symbol and pattern dictionaries
+ * are counted for every page that refers to them.
+ */
+class DecodeCostEstimator {
+
+  /*
+   * Nanoseconds per unit, fitted to the decoding times of the pages of the test image corpus. The
+   * amounts of symbols and symbol instances didn't improve the fit beyond the data lengths.
+   */
+  private static final double NANOS_PER_PAGE = 120000;
+  private static final double NANOS_PER_PAGE_PIXEL = 4.3;
+  private static final double NANOS_PER_ARITHMETIC_PIXEL = 3.6;
+  private static final double NANOS_PER_MMR_PIXEL = 0.34;
+  private static final double NANOS_PER_ARITHMETIC_BYTE = 860;
+  private static final double NANOS_PER_HUFFMAN_BYTE = 440;
+  private static final double NANOS_PER_MMR_BYTE = 210;
+
+  /** Estimated heap per decoded symbol: the bitmap object and a small average symbol bitmap */
+  private static final int BYTES_PER_SYMBOL = 128;
+
+  /* Size of the region segment information field, 7.4.1 */
+  private static final int REGION_INFO_LENGTH = 17;
+
+  /** Pixels of generic regions, refinement regions and gray-scale bitplanes decoded arithmetically */
+  long arithmeticPixels;
+
+  /** Pixels of generic regions and gray-scale bitplanes decoded with the MMR decoder */
+  long mmrPixels;
+
+  /** Length of the arithmetically coded data parts */
+  long arithmeticBytes;
+
+  /** Length of the Huffman coded data parts */
+  long huffmanBytes;
+
+  /** Length of the MMR coded data parts */
+  long mmrBytes;
+
+  /** Bytes of the largest region bitmap */
+  long largestRegionBytes;
+
+  /** Bytes of the dictionaries */
+  long dictionaryBytes;
+
+  private final JBIG2Page page;
+
+  private final int pageNumber;
+
+  private final Map<SegmentHeader, Boolean> visited = new IdentityHashMap<SegmentHeader, Boolean>();
+
+  DecodeCostEstimator(final JBIG2Page page, final int pageNumber) {
+    this.page = page;
+    this.pageNumber = pageNumber;
+  }
+
+  DecodeCostEstimate estimate() throws IOException {
+    final long width;
+    final long height;
+    try {
+      width = page.getWidth();
+      height = page.getHeight();
+    } catch (JBIG2Exception e) {
+      throw new IOException(e.getMessage());
+    }
+
+    for (SegmentHeader s : page.getSegments()) {
+      add(s);
+    }
+
+    final long pixels = width * height;
+    final long pageBitmapBytes = ((width + 7) >> 3) * height;
+
+    final double nanos = NANOS_PER_PAGE + NANOS_PER_PAGE_PIXEL * pixels + NANOS_PER_ARITHMETIC_PIXEL
+        * arithmeticPixels + NANOS_PER_MMR_PIXEL * mmrPixels + NANOS_PER_ARITHMETIC_BYTE * arithmeticBytes
+        + NANOS_PER_HUFFMAN_BYTE * huffmanBytes + NANOS_PER_MMR_BYTE * mmrBytes;
+
+    /* The region bitmaps and dictionaries exist while composing, the raster is created afterwards */
+    final long peakBytes = pageBitmapBytes + Math.max(largestRegionBytes + dictionaryBytes, pixels);
+
+    return new DecodeCostEstimate(pageNumber, pixels, Math.round(nanos), peakBytes);
+  }
+
+  private void add(final SegmentHeader s) throws IOException {
+    if (null == s || visited.containsKey(s)) {
+      return;
+    }
+    visited.put(s, Boolean.TRUE);
+
+    final SegmentHeader[] rtSegments = s.getRtSegments();
+    if (null != rtSegments) {
+      for (SegmentHeader rtSegment : rtSegments) {
+        add(rtSegment);
+      }
+    }
+
+    final SubInputStream sis = s.getDataInputStream();
+    final long length = s.getSegmentDataLength();
+
+    switch (s.getSegmentType()){
+      case 0 : // symbol dictionary
+        addSymbolDictionary(sis, length);
+        break;
+      case 4 : // intermediate text region
+      case 6 : // immediate text region
+      case 7 : // immediate lossless text region
+        addTextRegion(sis, length);
+        break;
+      case 16 : // pattern dictionary
+        addPatternDictionary(sis, length);
+        break;
+      case 20 : // intermediate halftone region
+      case 22 : // immediate halftone region
+      case 23 : // immediate lossless halftone region
+        addHalftoneRegion(sis, length, rtSegments);
+        break;
+      case 36 : // intermediate generic region
+      case 38 : // immediate generic region
+      case 39 : // immediate lossless generic region
+        addGenericRegion(sis, length);
+        break;
+      case 40 : // intermediate generic refinement region
+      case 42 : // immediate generic refinement region
+      case 43 : // immediate lossless generic refinement region
+        arithmeticPixels += addRegion(sis);
+        arithmeticBytes += length;
+        break;
+      default :
+        break;
+    }
+  }
+
+  /**
+   * Reads the region segment information field and accounts for the region bitmap.
+   * 
+   * @return The amount of pixels of the region.
+   */
+  private long addRegion(final SubInputStream sis) throws IOException {
+    final long width = sis.readBits(32) & 0xffffffffL;
+    final long height = sis.readBits(32) & 0xffffffffL;
+    sis.seek(REGION_INFO_LENGTH);
+
+    largestRegionBytes = Math.max(largestRegionBytes, ((width + 7) >> 3) * height);
+    return width * height;
+  }
+
+  /* 7.4.6.2 */
+  private void addGenericRegion(final SubInputStream sis, final long length) throws IOException {
+    final long pixels = addRegion(sis);
+    final boolean isMMREncoded = (sis.read() & 0x01) != 0;
+
+    if (isMMREncoded) {
+      mmrPixels += pixels;
+      mmrBytes += length;
+    } else {
+      arithmeticPixels += pixels;
+      arithmeticBytes += length;
+    }
+  }
+
+  /* 7.4.3.1 */
+  private void addTextRegion(final SubInputStream sis, final long length) throws IOException {
+    addRegion(sis);
+
+    final boolean isHuffmanEncoded = (sis.readUnsignedShort() & 0x0001) != 0;
+    if (isHuffmanEncoded) {
+      huffmanBytes += length;
+    } else {
+      arithmeticBytes += length;
+    }
+  }
+
+  /* 7.4.2.1 */
+  private void addSymbolDictionary(final SubInputStream sis, final long length) throws IOException {
+    final int flags = sis.readUnsignedShort();
+    final boolean isHuffmanEncoded = (flags & 0x0001) != 0;
+    final boolean useRefinementAggregation = (flags & 0x0002) != 0;
+    final int sdTemplate = (flags >> 10) & 0x03;
+    final boolean sdrTemplate = (flags & 0x1000) != 0;
+
+    if (isHuffmanEncoded) {
+      huffmanBytes += length;
+    } else {
+      sis.skipBytes(sdTemplate == 0 ? 8 : 2);
+      arithmeticBytes += length;
+    }
+
+    if (useRefinementAggregation && !sdrTemplate) {
+      sis.skipBytes(4);
+    }
+
+    /* SDNUMEXSYMS */
+    sis.readUnsignedInt();
+
+    /* SDNUMNEWSYMS */
+    dictionaryBytes += sis.readUnsignedInt() * BYTES_PER_SYMBOL;
+  }
+
+  /* 7.4.4.1 */
+  private void addPatternDictionary(final SubInputStream sis, final long length) throws IOException {
+    final boolean isMMREncoded = (sis.read() & 0x01) != 0;
+    final int patternWidth = sis.read();
+    final int patternHeight = sis.read();
+    final long patterns = sis.readUnsignedInt() + 1;
+
+    final long pixels = patterns * patternWidth * patternHeight;
+    if (isMMREncoded) {
+      mmrPixels += pixels;
+      mmrBytes += length;
+    } else {
+      arithmeticPixels += pixels;
+      arithmeticBytes += length;
+    }
+
+    /* The collective bitmap and the patterns cut out of it */
+    dictionaryBytes += 2 * ((patterns * patternWidth + 7) >> 3) * patternHeight;
+  }
+
+  /* 7.4.5.1 */
+  private void addHalftoneRegion(final SubInputStream sis, final long length, final SegmentHeader[] rtSegments)
+      throws IOException {
+    addRegion(sis);
+
+    final boolean isMMREncoded = (sis.read() & 0x01) != 0;
+    final long gridWidth = sis.readUnsignedInt();
+    final long gridHeight = sis.readUnsignedInt();
+
+    /* 6.6.5 - the gray-scale image has as many bitplanes as needed to index the patterns */
+    int bitsPerValue = 8;
+    if (null != rtSegments) {
+      for (SegmentHeader rtSegment : rtSegments) {
+        if (null != rtSegment && rtSegment.getSegmentType() == 16) {
+          final SubInputStream dictionary = rtSegment.getDataInputStream();
+          dictionary.skipBytes(3);
+          final long patterns = dictionary.readUnsignedInt() + 1;
+          bitsPerValue = Math.max(1, 64 - Long.numberOfLeadingZeros(patterns - 1));
+        }
+      }
+    }
+
+    final long cells = gridWidth * gridHeight;
+    if (isMMREncoded) {
+      mmrPixels += bitsPerValue * cells;
+      mmrBytes += length;
+    } else {
+      arithmeticPixels += bitsPerValue * cells;
+      arithmeticBytes += length;
+    }
+
+    /* The gray-scale values */
+    largestRegionBytes = Math.max(largestRegionBytes, 4 * cells);
+  }
+}
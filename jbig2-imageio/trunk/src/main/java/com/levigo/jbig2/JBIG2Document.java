@@ -19,9 +19,11 @@ package com.levigo.jbig2;
 
 import java.io.EOFException;
 import java.io.IOException;
+import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.TreeMap;
 
 import javax.imageio.stream.ImageInputStream;
@@ -29,6 +31,8 @@ import javax.imageio.stream.ImageInputStream;
 import com.levigo.jbig2.io.SubInputStream;
 import com.levigo.jbig2.util.log.Logger;
 import com.levigo.jbig2.util.log.LoggerFactory;
+import com.levigo.jbig2.util.metrics.DecodeMetrics;
+import com.levigo.jbig2.util.metrics.DecodeMetricsFactory;
 
 /**
  * This class represents the document structure with its pages and global segments.
@@ -173,6 +177,9 @@ class JBIG2Document {
    * This method maps the stream and stores all segments.
    */
   private void mapStream() throws IOException {
+    final DecodeMetrics metrics = DecodeMetricsFactory.getDecodeMetrics();
+    final long start = metrics.isEnabled() ? System.nanoTime() : 0;
+
     final List<SegmentHeader> segments = new LinkedList<SegmentHeader>();
 
     long offset = 0;
@@ -233,6 +240,35 @@ class JBIG2Document {
      * set.
      */
     determineRandomDataOffsets(segments, offset);
+
+    registerPendingReferences(segments);
+
+    if (metrics.isEnabled()) {
+      metrics.documentMapped(segments.size(), System.nanoTime() - start);
+    }
+  }
+
+  /**
+   * Counts for each segment how many segments of this document refer to it. The data of referred-to
+   * segments is kept until all referring segments have been decoded and is released afterwards.
+   * Segments of externally provided globals are not counted, because they may be shared by
+   * documents that are never decoded.
+   * 
+   * @param segments - The segments of this document.
+   */
+  private void registerPendingReferences(List<SegmentHeader> segments) {
+    final Set<SegmentHeader> documentSegments = new HashSet<SegmentHeader>(segments);
+
+    for (SegmentHeader s : segments) {
+      final SegmentHeader[] rtSegments = s.getRtSegments();
+      if (null != rtSegments) {
+        for (SegmentHeader rtSegment : rtSegments) {
+          if (null != rtSegment && documentSegments.contains(rtSegment)) {
+            rtSegment.addPendingReference();
+          }
+        }
+      }
+    }
   }
 
   private boolean isFileHeaderPresent() throws IOException {
@@ -21,10 +21,15 @@ import java.awt.Dimension;
 import java.awt.Rectangle;
 import java.awt.image.BufferedImage;
 import java.awt.image.Raster;
+import java.awt.image.RenderedImage;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import javax.imageio.ImageReadParam;
 import javax.imageio.ImageReader;
@@ -33,12 +38,23 @@ import javax.imageio.metadata.IIOMetadata;
 import javax.imageio.spi.ImageReaderSpi;
 import javax.imageio.stream.ImageInputStream;
 
+import com.levigo.jbig2.decoder.DecoderCheckpoints;
+import com.levigo.jbig2.err.DecodingAbortedException;
 import com.levigo.jbig2.err.JBIG2Exception;
+import com.levigo.jbig2.err.ResourceLimitExceededException;
 import com.levigo.jbig2.image.Bitmaps;
 import com.levigo.jbig2.image.FilterType;
+import com.levigo.jbig2.image.GrayScaleGrid;
+import com.levigo.jbig2.image.ReducedBitmap;
+import com.levigo.jbig2.image.TiledBitmap;
+import com.levigo.jbig2.image.TiledBitmapImage;
+import com.levigo.jbig2.util.AbortSignal;
+import com.levigo.jbig2.util.ResourceBudget;
+import com.levigo.jbig2.util.ResourceLimits;
 import com.levigo.jbig2.util.cache.CacheFactory;
 import com.levigo.jbig2.util.log.Logger;
 import com.levigo.jbig2.util.log.LoggerFactory;
+import com.levigo.jbig2.util.metrics.DecodeMetricsFactory;
 
 /**
  * @see ImageReader
@@ -49,7 +65,6 @@ public class JBIG2ImageReader extends ImageReader {
   private static final Logger log = LoggerFactory.getLogger(JBIG2ImageReader.class);
 
   public static final boolean DEBUG = false;
-  public static final boolean PERFORMANCE_TEST = false;
 
   /** JBIG2 document to which we delegate current work. */
   private JBIG2Document document;
@@ -57,6 +72,18 @@ public class JBIG2ImageReader extends ImageReader {
   /** Globals are JBIG2 segments for PDF wide use. */
   private JBIG2Globals globals;
 
+  /** Signal of the currently running read operation, used to forward {@link #abort()} requests. */
+  private volatile AbortSignal abortSignal;
+
+  /** Limits that apply if the read param doesn't specify any, {@code null} for no limits. */
+  private ResourceLimits resourceLimits;
+
+  /** Resources consumed by the current document, created when limits are applied for the first time. */
+  private ResourceBudget resourceBudget;
+
+  /** Symbol dictionaries that have been reported by {@link #readSymbolInstances(int, SymbolInstanceListener)} */
+  private Set<SegmentHeader> reportedSymbolDictionaries = new HashSet<SegmentHeader>();
+
   /**
    * @see ImageReader#ImageReader(ImageReaderSpi)
    * 
@@ -202,9 +229,35 @@ public class JBIG2ImageReader extends ImageReader {
     return getDocument().getGlobalSegments();
   }
 
+  /**
+   * Estimates the cost of decoding the specified page without decoding it. Only the segment headers
+   * and the headers of the segments' data parts are read, e.g. region sizes, coding methods, amounts
+   * of symbols and halftone grid sizes. This allows to distribute pages among workers or to choose a
+   * reduction factor (see {@link JBIG2ReadParam#setReductionFactor(int)}) for huge pages before
+   * decoding them.
+   * 
+   * @param imageIndex - The page number.
+   * @return The {@link DecodeCostEstimate} of the page.
+   * @throws IOException if an error occurs reading the headers from the input source.
+   */
+  public DecodeCostEstimate estimateDecodeCost(final int imageIndex) throws IOException {
+    return new DecodeCostEstimator(getPage(imageIndex), imageIndex + 1).estimate();
+  }
+
   /**
    * Returns the decoded image of specified page considering the given {@link JBIG2ReadParam}s.
+   * <p>
+   * Decoding can be stopped by calling {@link #abort()} from another thread. In this case
+   * {@code null} is returned and everything decoded so far is discarded. The reader and its input
+   * remain usable.
+   * <p>
+   * Pages of more than {@code 2^31} pixels, e.g. large posters or long scans, may not fit into a
+   * single array. They can be read part by part by setting a source region, only the tiles of the
+   * part are composed then. Alternatively, {@link #readAsRenderedImage(int, ImageReadParam)} returns
+   * the whole page in tiles.
    * 
+   * @throws ResourceLimitExceededException if the page exceeds the {@link ResourceLimits} of the
+   *           read param or of this reader.
    * @see ImageReader#read(int, ImageReadParam)
    */
   @Override
@@ -216,25 +269,461 @@ public class JBIG2ImageReader extends ImageReader {
 
     JBIG2Page page = getPage(imageIndex);
 
-    Bitmap pageBitmap = (Bitmap) CacheFactory.getCache().get(page);
+    final AbortSignal signal = startAbortableOperation(param);
+    try {
+      processImageStarted(imageIndex);
 
-    if (pageBitmap == null) {
-      try {
-        pageBitmap = page.getBitmap();
-        CacheFactory.getCache().put(page, pageBitmap, pageBitmap.getMemorySize());
+      final int reductionFactor = getReductionFactor(param);
+      final GrayScaleGrid halftoneGrayScale = decodeHalftoneGrayScale(page, param);
+
+      final BufferedImage image;
+      if (halftoneGrayScale != null) {
+        image = Bitmaps.asBufferedImage(halftoneGrayScale, param);
+      } else if (reductionFactor > 1) {
+        image = Bitmaps.asBufferedImage(decodeReducedPage(page, reductionFactor), param);
+      } else {
+        Bitmap pageBitmap = getCachedPage(page);
+        final Rectangle largePageRegion = pageBitmap == null ? getLargePageRegion(page, param) : null;
+
+        if (largePageRegion != null) {
+          image = Bitmaps.asBufferedImage(decodeLargePageRegion(page, param, largePageRegion),
+              translateToRegion(page, param, largePageRegion), FilterType.Gaussian);
+        } else if (pageBitmap == null) {
+          final RowUpdater rowUpdater = createRowUpdater(page, param);
+          pageBitmap = decodePage(page, param, rowUpdater);
+
+          if (rowUpdater != null) {
+            rowUpdater.finish(pageBitmap);
+            image = rowUpdater.image;
+          } else {
+            image = Bitmaps.asBufferedImage(pageBitmap, param, FilterType.Gaussian);
+          }
+        } else {
+          image = Bitmaps.asBufferedImage(pageBitmap, param, FilterType.Gaussian);
+        }
+      }
+
+      processImageProgress(100f);
+      processImageComplete();
+
+      return image;
+    } catch (ResourceLimitExceededException e) {
+      throw e;
+    } catch (DecodingAbortedException e) {
+      processReadAborted();
+      return null;
+    } finally {
+      finishAbortableOperation(signal);
+    }
+  }
+
+  /**
+   * Returns the specified page as {@link RenderedImage}. If the page is read completely without
+   * subsampling, scaling or reduction, it is composed into tiles of
+   * {@link TiledBitmap#DEFAULT_TILE_SIZE} pixels, see {@link TiledBitmapImage}. Tiles that no region
+   * changes aren't allocated, which saves most of the memory of sparse pages like drawings. The tiled
+   * page is not cached. In all other cases the result is the same as of
+   * {@link #read(int, ImageReadParam)}.
+   * 
+   * @see ImageReader#readAsRenderedImage(int, ImageReadParam)
+   */
+  @Override
+  public RenderedImage readAsRenderedImage(int imageIndex, ImageReadParam param) throws IOException {
+    final JBIG2Page page = getPage(imageIndex);
+    if (!isTiledReadApplicable(page, param) || null != getCachedPage(page)) {
+      return super.readAsRenderedImage(imageIndex, param);
+    }
+
+    final AbortSignal signal = startAbortableOperation(param);
+    try {
+      processImageStarted(imageIndex);
+
+      final TiledBitmap tiledPage = page.getTiledBitmap(TiledBitmap.DEFAULT_TILE_SIZE, null);
+      page.clearPageData();
+
+      processImageProgress(100f);
+      processImageComplete();
+
+      return new TiledBitmapImage(tiledPage);
+    } catch (ResourceLimitExceededException e) {
+      throw e;
+    } catch (DecodingAbortedException e) {
+      processReadAborted();
+      return null;
+    } catch (JBIG2Exception e) {
+      throw new IOException(e.getMessage());
+    } finally {
+      finishAbortableOperation(signal);
+    }
+  }
+
+  /**
+   * Checks whether the given param requests the complete page at full resolution.
+   */
+  private boolean isTiledReadApplicable(final JBIG2Page page, final ImageReadParam param) throws IOException {
+    if (null == param) {
+      return true;
+    }
+
+    if (param.getSourceXSubsampling() != 1 || param.getSourceYSubsampling() != 1 || getReductionFactor(param) != 1) {
+      return false;
+    }
+
+    if (param instanceof JBIG2ReadParam && ((JBIG2ReadParam) param).isHalftoneGrayScale()) {
+      return false;
+    }
+
+    final Rectangle bounds;
+    try {
+      bounds = new Rectangle(0, 0, page.getWidth(), page.getHeight());
+    } catch (JBIG2Exception e) {
+      throw new IOException(e.getMessage());
+    }
+
+    final Rectangle sourceRegion = param.getSourceRegion();
+    if (null != sourceRegion && !sourceRegion.contains(bounds)) {
+      return false;
+    }
+
+    final Dimension sourceRenderSize = param.getSourceRenderSize();
+    return null == sourceRenderSize
+        || (sourceRenderSize.width == bounds.width && sourceRenderSize.height == bounds.height);
+  }
+
+  /**
+   * @see #abort()
+   */
+  @Override
+  public void abort() {
+    super.abort();
+
+    final AbortSignal signal = abortSignal;
+    if (signal != null) {
+      signal.abort();
+    }
+  }
+
+  /**
+   * Sets the resource limits that apply to read operations whose read param doesn't specify
+   * limits, e.g. to protect a service against decompression bombs in all of its readers.
+   * 
+   * @param resourceLimits - The limits or {@code null} for no limits.
+   * @see JBIG2ReadParam#setResourceLimits(ResourceLimits)
+   */
+  public void setResourceLimits(ResourceLimits resourceLimits) {
+    this.resourceLimits = resourceLimits;
+  }
+
+  /**
+   * @return The resource limits of this reader or {@code null} if there are none.
+   */
+  public ResourceLimits getResourceLimits() {
+    return resourceLimits;
+  }
+
+  private AbortSignal startAbortableOperation(final ImageReadParam param) {
+    final AbortSignal signal = new AbortSignal();
+
+    ResourceLimits limits = resourceLimits;
+    if (param instanceof JBIG2ReadParam && null != ((JBIG2ReadParam) param).getResourceLimits()) {
+      limits = ((JBIG2ReadParam) param).getResourceLimits();
+    }
+    if (null != limits) {
+      if (null == resourceBudget) {
+        resourceBudget = new ResourceBudget();
+      }
+      resourceBudget.start(limits);
+      signal.setResourceBudget(resourceBudget);
+    }
+
+    if (param instanceof JBIG2ReadParam) {
+      signal.setParallelism(((JBIG2ReadParam) param).getParallelism());
+      signal.setExecutor(((JBIG2ReadParam) param).getExecutor());
+    }
+
+    abortSignal = signal;
+    clearAbortRequest();
+    signal.attach();
+    return signal;
+  }
+
+  private void finishAbortableOperation(AbortSignal signal) {
+    signal.detach();
+    abortSignal = null;
+  }
+
+  /**
+   * @return The cached bitmap of the given page or {@code null} if the page isn't cached.
+   */
+  private Bitmap getCachedPage(final JBIG2Page page) {
+    final Bitmap pageBitmap = (Bitmap) CacheFactory.getCache().get(page);
+    DecodeMetricsFactory.getDecodeMetrics().cacheLookup(null != pageBitmap);
+    return pageBitmap;
+  }
+
+  /**
+   * Decodes the page and puts the result into the cache. If the source region of the given
+   * {@link ImageReadParam} covers only a part of the page, decoding is restricted to this part. The
+   * result is only valid inside of the source region then and is not cached.
+   */
+  private Bitmap decodePage(final JBIG2Page page, final ImageReadParam param, final RowListener rowListener)
+      throws IOException {
+    try {
+      if (param instanceof JBIG2ReadParam) {
+        page.setCheckpointInterval(((JBIG2ReadParam) param).getCheckpointInterval());
+        page.setPipelinedTextRegions(((JBIG2ReadParam) param).isPipelinedTextRegions());
+      }
+
+      final Rectangle sourceRegion = param.getSourceRegion();
+      if (null != sourceRegion && !sourceRegion.contains(0, 0, page.getWidth(), page.getHeight())) {
+        final Bitmap pageBitmap = page.getBitmap(sourceRegion, rowListener);
         page.clearPageData();
+        return pageBitmap;
+      }
+
+      final Bitmap pageBitmap = page.getBitmap(rowListener);
+      CacheFactory.getCache().put(page, pageBitmap, pageBitmap.getMemorySize());
+      page.clearPageData();
+      return pageBitmap;
+    } catch (JBIG2Exception e) {
+      throw new IOException(e.getMessage());
+    }
+  }
+
+  /**
+   * Returns the requested part of a page that has more than {@code 2^31} pixels. Such a part is
+   * composed into a {@link TiledBitmap} by {@link #decodeLargePageRegion}, so neither the page nor
+   * the tiles outside of the part have to be held in memory.
+   * 
+   * @return The intersection of the source region with the page or {@code null} if the page is not
+   *         that large or if the whole page is requested.
+   */
+  private Rectangle getLargePageRegion(final JBIG2Page page, final ImageReadParam param) throws IOException {
+    final Rectangle sourceRegion = param.getSourceRegion();
+    if (null == sourceRegion) {
+      return null;
+    }
+
+    final Rectangle bounds;
+    try {
+      bounds = new Rectangle(0, 0, page.getWidth(), page.getHeight());
+    } catch (JBIG2Exception e) {
+      throw new IOException(e.getMessage());
+    }
+
+    if ((long) bounds.width * bounds.height <= Integer.MAX_VALUE || sourceRegion.contains(bounds)) {
+      return null;
+    }
+
+    return bounds.intersection(sourceRegion);
+  }
+
+  /**
+   * Decodes the given part of a large page, see {@link #getLargePageRegion}. Only regions that
+   * intersect the part are decoded. The result is not cached.
+   * 
+   * @return A bitmap of the size of the given part.
+   */
+  private Bitmap decodeLargePageRegion(final JBIG2Page page, final ImageReadParam param, final Rectangle region)
+      throws IOException {
+    try {
+      if (param instanceof JBIG2ReadParam) {
+        page.setCheckpointInterval(((JBIG2ReadParam) param).getCheckpointInterval());
+        page.setPipelinedTextRegions(((JBIG2ReadParam) param).isPipelinedTextRegions());
+      }
+
+      final TiledBitmap tiledPage = page.getTiledBitmap(TiledBitmap.DEFAULT_TILE_SIZE, region);
+      page.clearPageData();
+      return tiledPage.extract(region);
+    } catch (JBIG2Exception e) {
+      throw new IOException(e.getMessage());
+    }
+  }
+
+  /**
+   * Translates the given param to a bitmap of the given part of the page, so that it yields the
+   * same image as the param applied to the whole page. The source render size is scaled down to the
+   * part, the subsampling offsets are already relative to the source region.
+   */
+  private ImageReadParam translateToRegion(final JBIG2Page page, final ImageReadParam param, final Rectangle region)
+      throws IOException {
+    Dimension sourceRenderSize = param.getSourceRenderSize();
+    if (null != sourceRenderSize) {
+      final double height;
+      try {
+        height = page.getHeight();
       } catch (JBIG2Exception e) {
         throw new IOException(e.getMessage());
       }
+
+      sourceRenderSize = new Dimension(
+          (int) Math.round(sourceRenderSize.getWidth() * region.width / page.getWidth()),
+          (int) Math.round(sourceRenderSize.getHeight() * region.height / height));
+    }
+
+    return new JBIG2ReadParam(param.getSourceXSubsampling(), param.getSourceYSubsampling(),
+        param.getSubsamplingXOffset(), param.getSubsamplingYOffset(), new Rectangle(0, 0, region.width,
+            region.height), sourceRenderSize);
+  }
+
+  /**
+   * Decodes the page at reduced resolution, see {@link JBIG2ReadParam#setReductionFactor(int)}. If
+   * the page is cached at full resolution, the cached page is reduced instead. The result is not
+   * cached.
+   */
+  private ReducedBitmap decodeReducedPage(final JBIG2Page page, final int reductionFactor) throws IOException {
+    final Bitmap pageBitmap = getCachedPage(page);
+    if (pageBitmap != null) {
+      return ReducedBitmap.reduce(pageBitmap, reductionFactor, 0, 0);
+    }
+
+    try {
+      final ReducedBitmap reducedPage = page.getReducedBitmap(reductionFactor);
+      page.clearPageData();
+      return reducedPage;
+    } catch (JBIG2Exception e) {
+      throw new IOException(e.getMessage());
+    }
+  }
+
+  /**
+   * Decodes the gray-scale grid of a page that consists of a single halftone region, see
+   * {@link JBIG2ReadParam#setHalftoneGrayScale(boolean)}.
+   * 
+   * @return The gray-scale grid or {@code null} if the mode is not requested or not applicable.
+   */
+  private GrayScaleGrid decodeHalftoneGrayScale(final JBIG2Page page, final ImageReadParam param)
+      throws IOException {
+    if (!(param instanceof JBIG2ReadParam) || !((JBIG2ReadParam) param).isHalftoneGrayScale()) {
+      return null;
+    }
+
+    try {
+      return page.getHalftoneGrayScale();
+    } catch (JBIG2Exception e) {
+      throw new IOException(e.getMessage());
+    }
+  }
+
+  private int getReductionFactor(final ImageReadParam param) {
+    return param instanceof JBIG2ReadParam ? ((JBIG2ReadParam) param).getReductionFactor() : 1;
+  }
+
+  /**
+   * Creates a {@link RowUpdater} if there are listeners that want to observe the decoding process
+   * and the requested image can be filled row by row, i.e. neither scaling nor subsampling is
+   * required.
+   * 
+   * @param page - The page to decode.
+   * @param param - The {@link ImageReadParam} of the current read operation.
+   * @return The {@link RowUpdater} or {@code null} if progressive updates are not possible.
+   * @throws IOException
+   */
+  private RowUpdater createRowUpdater(final JBIG2Page page, final ImageReadParam param) throws IOException {
+    if (updateListeners == null && progressListeners == null) {
+      return null;
+    }
+
+    if (param.getSourceXSubsampling() != 1 || param.getSourceYSubsampling() != 1) {
+      return null;
+    }
+
+    final int width = page.getWidth();
+    final int height;
+    try {
+      height = page.getHeight();
+    } catch (JBIG2Exception e) {
+      throw new IOException(e.getMessage());
+    }
+
+    final Dimension sourceRenderSize = param.getSourceRenderSize();
+    if (sourceRenderSize != null && (sourceRenderSize.width != width || sourceRenderSize.height != height)) {
+      return null;
+    }
+
+    Rectangle roi = new Rectangle(0, 0, width, height);
+    if (param.getSourceRegion() != null) {
+      roi = roi.intersection(param.getSourceRegion());
+    }
+
+    if (roi.isEmpty()) {
+      return null;
+    }
+
+    return new RowUpdater(Bitmaps.createBinaryImage(roi.width, roi.height), roi, height);
+  }
+
+  /**
+   * Transfers finished page rows into the destination image and notifies the registered
+   * {@link javax.imageio.event.IIOReadUpdateListener}s and
+   * {@link javax.imageio.event.IIOReadProgressListener}s. Rows are reported in bands to keep the
+   * amount of notifications low.
+   */
+  private final class RowUpdater implements RowListener {
+    private static final int BAND_HEIGHT = 64;
+
+    private final BufferedImage image;
+    private final Rectangle roi;
+    private final int pageHeight;
+
+    /** All rows above this one have been copied to the image */
+    private int copiedRows;
+
+    RowUpdater(BufferedImage image, Rectangle roi, int pageHeight) {
+      this.image = image;
+      this.roi = roi;
+      this.pageHeight = pageHeight;
+    }
+
+    public void rowsDecoded(Bitmap bitmap, int firstRow, int rowCount) {
+      final int endRow = firstRow + rowCount;
+      if (endRow - copiedRows >= BAND_HEIGHT || endRow == pageHeight) {
+        update(bitmap, endRow);
+      }
+    }
+
+    /**
+     * Copies all rows that haven't been reported yet.
+     * 
+     * @param pageBitmap - The completely decoded page.
+     */
+    void finish(Bitmap pageBitmap) {
+      if (copiedRows < pageHeight) {
+        update(pageBitmap, pageHeight);
+      }
     }
 
-    return Bitmaps.asBufferedImage(pageBitmap, param, FilterType.Gaussian);
+    private void update(Bitmap bitmap, int endRow) {
+      if (endRow <= copiedRows) {
+        return;
+      }
+
+      Bitmaps.copyRows(bitmap, roi, copiedRows, endRow - copiedRows, image.getRaster());
+
+      final int minY = Math.max(copiedRows, roi.y) - roi.y;
+      final int maxY = Math.min(endRow, roi.y + roi.height) - roi.y;
+      if (maxY > minY) {
+        processImageUpdate(image, 0, minY, roi.width, maxY - minY, 1, 1, new int[]{
+          0
+        });
+      }
+
+      copiedRows = endRow;
+      processImageProgress(100f * endRow / pageHeight);
+    }
   }
 
   public boolean canReadRaster() {
     return true;
   }
 
+  /**
+   * Returns the decoded raster of specified page considering the given {@link JBIG2ReadParam}s.
+   * Like {@link #read(int, ImageReadParam)} this operation can be aborted, {@code null} is returned
+   * then.
+   * 
+   * @see ImageReader#readRaster(int, ImageReadParam)
+   */
   @Override
   public Raster readRaster(int imageIndex, ImageReadParam param) throws IOException {
     if (param == null) {
@@ -244,18 +733,115 @@ public class JBIG2ImageReader extends ImageReader {
 
     JBIG2Page page = getPage(imageIndex);
 
-    Bitmap pageBitmap = (Bitmap) CacheFactory.getCache().get(page);
-    if (pageBitmap == null) {
-      try {
-        pageBitmap = page.getBitmap();
-        CacheFactory.getCache().put(page, pageBitmap, pageBitmap.getMemorySize());
+    final AbortSignal signal = startAbortableOperation(param);
+    try {
+      final GrayScaleGrid halftoneGrayScale = decodeHalftoneGrayScale(page, param);
+      if (halftoneGrayScale != null) {
+        return Bitmaps.asRaster(halftoneGrayScale, param);
+      }
+
+      final int reductionFactor = getReductionFactor(param);
+      if (reductionFactor > 1) {
+        return Bitmaps.asRaster(decodeReducedPage(page, reductionFactor), param);
+      }
+
+      Bitmap pageBitmap = getCachedPage(page);
+      if (pageBitmap == null) {
+        final Rectangle largePageRegion = getLargePageRegion(page, param);
+        if (largePageRegion != null) {
+          return Bitmaps.asRaster(decodeLargePageRegion(page, param, largePageRegion),
+              translateToRegion(page, param, largePageRegion), FilterType.Gaussian);
+        }
+
+        pageBitmap = decodePage(page, param, null);
+      }
+
+      return Bitmaps.asRaster(pageBitmap, param, FilterType.Gaussian);
+    } catch (ResourceLimitExceededException e) {
+      throw e;
+    } catch (DecodingAbortedException e) {
+      processReadAborted();
+      return null;
+    } finally {
+      finishAbortableOperation(signal);
+    }
+  }
+
+  /**
+   * Decodes the specified page stripe by stripe and reports each completed stripe to the given
+   * listener, in increasing line order, e.g. to write the page as strips of a TIFF or PNG image.
+   * Striped pages of unknown height are never held in memory as a whole, the memory needed is
+   * bounded by the maximum stripe size declared by the page. All other pages are reported as a single
+   * stripe. The page is not cached. Like {@link #read(int, ImageReadParam)} this operation can be
+   * aborted.
+   * 
+   * @param imageIndex - The index of the page.
+   * @param listener - The listener to notify.
+   * @return {@code false} if the operation has been aborted, {@code true} otherwise.
+   * @throws IOException if an error occurs reading the input source.
+   */
+  public boolean readStripes(int imageIndex, StripeListener listener) throws IOException {
+    if (listener == null) {
+      throw new IllegalArgumentException("listener must not be null");
+    }
+
+    final JBIG2Page page = getPage(imageIndex);
+
+    final AbortSignal signal = startAbortableOperation(null);
+    try {
+      final Bitmap pageBitmap = getCachedPage(page);
+      if (pageBitmap != null) {
+        listener.stripeDecoded(pageBitmap, 0);
+      } else {
+        page.decodeStripes(listener);
         page.clearPageData();
-      } catch (JBIG2Exception e) {
-        throw new IOException(e.getMessage());
       }
+      return true;
+    } catch (ResourceLimitExceededException e) {
+      throw e;
+    } catch (DecodingAbortedException e) {
+      processReadAborted();
+      return false;
+    } catch (JBIG2Exception e) {
+      throw new IOException(e.getMessage());
+    } finally {
+      finishAbortableOperation(signal);
     }
+  }
+
+  /**
+   * Decodes the symbol instances of the text regions of the specified page and reports them to the
+   * given listener without rendering the page. The exported symbols of each symbol dictionary are
+   * reported once per input, before the first instance that refers to them. Other regions are not
+   * decoded at all, so this is much cheaper than reading the image, e.g. to build a glyph index.
+   * Like {@link #read(int, ImageReadParam)} this operation can be aborted.
+   * 
+   * @param imageIndex - The index of the page.
+   * @param listener - The listener to notify.
+   * @return {@code false} if the operation has been aborted, {@code true} otherwise.
+   * @throws IOException if an error occurs reading the input source.
+   */
+  public boolean readSymbolInstances(int imageIndex, SymbolInstanceListener listener) throws IOException {
+    if (listener == null) {
+      throw new IllegalArgumentException("listener must not be null");
+    }
+
+    final JBIG2Page page = getPage(imageIndex);
 
-    return Bitmaps.asRaster(pageBitmap, param, FilterType.Gaussian);
+    final AbortSignal signal = startAbortableOperation(null);
+    try {
+      page.decodeSymbolInstances(listener, reportedSymbolDictionaries);
+      return true;
+    } catch (ResourceLimitExceededException e) {
+      throw e;
+    } catch (DecodingAbortedException e) {
+      processReadAborted();
+      return false;
+    } catch (JBIG2Exception e) {
+      throw new IOException(e.getMessage());
+    } finally {
+      finishAbortableOperation(signal);
+    }
   }
 
   /**
@@ -272,6 +858,30 @@ public class JBIG2ImageReader extends ImageReader {
     return doc.getGlobalSegments();
   }
 
+  /**
+   * Returns the decoder checkpoints that have been recorded for the generic regions of the given
+   * page, see {@link JBIG2ReadParam#setCheckpointInterval(int)}. The checkpoints can be persisted
+   * and handed to another reader of the same input via {@link #setCheckpoints(int, Map)}.
+   * 
+   * @param imageIndex - The index of the page.
+   * @return The checkpoints, the key is the segment number of the generic region.
+   * @throws IOException if an error occurs reading the input source.
+   */
+  public Map<Integer, DecoderCheckpoints> getCheckpoints(int imageIndex) throws IOException {
+    return new HashMap<Integer, DecoderCheckpoints>(getPage(imageIndex).getCheckpoints());
+  }
+
+  /**
+   * Sets previously recorded decoder checkpoints of the given page.
+   * 
+   * @param imageIndex - The index of the page.
+   * @param checkpoints - The checkpoints as returned by {@link #getCheckpoints(int)}.
+   * @throws IOException if an error occurs reading the input source.
+   */
+  public void setCheckpoints(int imageIndex, Map<Integer, DecoderCheckpoints> checkpoints) throws IOException {
+    getPage(imageIndex).setCheckpoints(checkpoints);
+  }
+
   /**
    * Simply sets the globals.
    * 
@@ -281,6 +891,8 @@ public class JBIG2ImageReader extends ImageReader {
   public void setGlobals(JBIG2Globals globals) throws IOException {
     this.globals = globals;
     this.document = null;
+    this.resourceBudget = null;
+    this.reportedSymbolDictionaries = new HashSet<SegmentHeader>();
   }
 
   /**
@@ -290,6 +902,8 @@ public class JBIG2ImageReader extends ImageReader {
   public void setInput(Object input, boolean seekForwardOnly, boolean ignoreMetadata) {
     super.setInput(input, seekForwardOnly, ignoreMetadata);
     document = null;
+    resourceBudget = null;
+    reportedSymbolDictionaries = new HashSet<SegmentHeader>();
   }
 
   private JBIG2Document getDocument() throws IOException {
@@ -17,23 +17,39 @@
 
 package com.levigo.jbig2;
 
+import java.awt.Rectangle;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeMap;
 
+import com.levigo.jbig2.decoder.DecoderCheckpoints;
+import com.levigo.jbig2.err.DecodingAbortedException;
 import com.levigo.jbig2.err.IntegerMaxValueException;
 import com.levigo.jbig2.err.InvalidHeaderValueException;
 import com.levigo.jbig2.err.JBIG2Exception;
 import com.levigo.jbig2.image.Bitmaps;
+import com.levigo.jbig2.image.GrayScaleGrid;
+import com.levigo.jbig2.image.ReducedBitmap;
+import com.levigo.jbig2.image.TiledBitmap;
 import com.levigo.jbig2.segments.EndOfStripe;
+import com.levigo.jbig2.segments.GenericRegion;
+import com.levigo.jbig2.segments.HalftoneRegion;
 import com.levigo.jbig2.segments.PageInformation;
 import com.levigo.jbig2.segments.RegionSegmentInformation;
+import com.levigo.jbig2.segments.SymbolDictionary;
+import com.levigo.jbig2.segments.TextRegion;
 import com.levigo.jbig2.util.CombinationOperator;
+import com.levigo.jbig2.util.ResourceBudget;
 import com.levigo.jbig2.util.log.Logger;
 import com.levigo.jbig2.util.log.LoggerFactory;
+import com.levigo.jbig2.util.metrics.DecodeMetrics;
+import com.levigo.jbig2.util.metrics.DecodeMetricsFactory;
 
 /**
  * This class represents a JBIG2 page.
@@ -56,6 +72,9 @@ class JBIG2Page {
   /** The page bitmap that represents the page buffer */
   private Bitmap pageBitmap;
 
+  /** The target of the composition if the page is composed into tiles, {@code null} otherwise */
+  private TiledBitmap tiledPage;
+
   private int finalHeight;
   private int finalWidth;
   private int resolutionX;
@@ -63,6 +82,15 @@ class JBIG2Page {
 
   private final JBIG2Document document;
 
+  /** Distance of decoder checkpoints in lines, {@code 0} if no checkpoints are recorded */
+  private int checkpointInterval;
+
+  /** Whether symbol instances of text regions are drawn on a separate thread */
+  private boolean pipelinedTextRegions;
+
+  /** Decoder checkpoints of the page's generic regions. The key is the number of the segment. */
+  private final Map<Integer, DecoderCheckpoints> checkpoints = new HashMap<Integer, DecoderCheckpoints>();
+
   protected JBIG2Page(JBIG2Document document, int pageNumber) {
     this.document = document;
     this.pageNumber = pageNumber;
@@ -90,6 +118,13 @@ class JBIG2Page {
     return null;
   }
 
+  /**
+   * @return The segments of this page, sorted by segment number in ascending order.
+   */
+  Collection<SegmentHeader> getSegments() {
+    return segments.values();
+  }
+
   /**
    * Returns the associated page information segment.
    * 
@@ -115,57 +150,418 @@ class JBIG2Page {
    * @throws IOException
    */
   protected Bitmap getBitmap() throws JBIG2Exception, IOException {
-    long timestamp;
+    return getBitmap(null);
+  }
+
+  /**
+   * This method returns the decoded bitmap if present. Otherwise the page bitmap will be composed
+   * before returning the result. While composing, the given {@link RowListener} is notified about
+   * page rows that are finished, as far as the page structure allows to determine them early. This
+   * is the case for pages that consist of a single generic region only and for striped pages.
+   * 
+   * @param rowListener - The listener to notify or {@code null}.
+   * @return pageBitmap - The result of decoding a page
+   * @throws JBIG2Exception
+   * @throws IOException
+   * @throws DecodingAbortedException if decoding has been aborted. The page remains usable.
+   */
+  protected Bitmap getBitmap(final RowListener rowListener) throws JBIG2Exception, IOException {
+    return getBitmap(null, rowListener);
+  }
+
+  /**
+   * Like {@link #getBitmap(RowListener)}, but only the parts of the page that are needed to render
+   * the given region of interest are decoded if the page hasn't been decoded completely before:
+   * <ul>
+   * <li>Regions that don't intersect the region of interest are skipped, unless other segments refer
+   * to them.</li>
+   * <li>Generic regions stop decoding after the last line that is needed.</li>
+   * <li>Text regions don't draw symbol instances outside of the region of interest.</li>
+   * <li>Striped pages stop decoding after the stripe that contains the last needed line.</li>
+   * </ul>
+   * The returned bitmap has the page's dimension, but its content is only valid inside of the region
+   * of interest. Such a bitmap is not kept by the page.
+   * 
+   * @param regionOfInterest - The area of the page that is needed or {@code null} for the whole
+   *          page.
+   * @param rowListener - The listener to notify or {@code null}.
+   * @return The result of decoding a page
+   * @throws JBIG2Exception
+   * @throws IOException
+   * @throws DecodingAbortedException if decoding has been aborted. The page remains usable.
+   */
+  protected Bitmap getBitmap(final Rectangle regionOfInterest, final RowListener rowListener) throws JBIG2Exception,
+      IOException {
+    if (null != pageBitmap) {
+      return pageBitmap;
+    }
+
+    final Rectangle roi = isRegionOfInterestApplicable(regionOfInterest) ? regionOfInterest : null;
+
+    composePageBitmap(roi, rowListener);
+
+    final Bitmap result = pageBitmap;
+    if (null != roi) {
+      // only valid inside of the region of interest, must not be reused
+      pageBitmap = null;
+    }
+
+    return result;
+  }
+
+  /**
+   * Composes the page into a {@link TiledBitmap}. Only tiles that are changed by a region are
+   * allocated, so the page needs less memory than a single {@link Bitmap} if it is mostly blank.
+   * Pages with generic refinement regions that refine the page itself need the whole page as
+   * reference, they are composed as usual and copied to tiles afterwards. Like a bitmap of a region
+   * of interest, the tiled page is not kept by the page.
+   * <p>
+   * The tiled page isn't limited to the size of an array. If a region of interest is given, only
+   * regions that intersect it are decoded, so a part of a page of more than {@code 2^31} pixels can
+   * be read without decoding the whole page.
+   * 
+   * @param tileSize - The width and height of a tile in pixels, see
+   *          {@link TiledBitmap#TiledBitmap(int, int, int, int)}.
+   * @param regionOfInterest - The part of the page that is needed or {@code null} for the whole
+   *          page. The tiled page is only valid inside of this part.
+   * @return The tiled page.
+   * @throws JBIG2Exception
+   * @throws IOException
+   * @throws DecodingAbortedException if decoding has been aborted. The page remains usable.
+   */
+  protected TiledBitmap getTiledBitmap(final int tileSize, final Rectangle regionOfInterest) throws JBIG2Exception,
+      IOException {
+    if (null != pageBitmap || containsPageRefinement()) {
+      return TiledBitmap.of(getBitmap(), tileSize);
+    }
+
+    final Rectangle roi = isRegionOfInterestApplicable(regionOfInterest) ? regionOfInterest : null;
+
+    final PageInformation pageInformation = (PageInformation) getPageInformationSegment().getSegmentData();
+    tiledPage = new TiledBitmap(getWidth(), getHeight(), tileSize, pageInformation.getDefaultPixelValue());
+    try {
+      composePageBitmap(roi, null);
+      return tiledPage;
+    } finally {
+      tiledPage = null;
+    }
+  }
+
+  /**
+   * Decodes the page stripe by stripe and reports each completed stripe to the given listener, in
+   * increasing line order. Stripes are composed separately and released after they have been
+   * reported, as are the regions they consist of. So the memory needed for a striped page of
+   * unknown height, e.g. the output of a roll-fed scanner, is bounded by the maximum stripe size of
+   * the page instead of its height. The rows of a region that reach below its stripe are kept and
+   * combined with the following stripes, so the stripes are the same as the rows of the page.
+   * <p>
+   * Pages of known height, pages that are not striped and pages with generic refinement regions that
+   * refine the page itself are composed as usual and reported as a single stripe.
+   * 
+   * @param listener - The listener to notify.
+   * @throws JBIG2Exception
+   * @throws IOException
+   * @throws DecodingAbortedException if decoding has been aborted. The page remains usable.
+   */
+  protected void decodeStripes(final StripeListener listener) throws JBIG2Exception, IOException {
+    final PageInformation pageInformation = (PageInformation) getPageInformationSegment().getSegmentData();
+    if (null != pageBitmap || !pageInformation.isStriped() || pageInformation.getHeight() != -1
+        || containsPageRefinement()) {
+      listener.stripeDecoded(getBitmap(), 0);
+      return;
+    }
+
+    final DecodeMetrics metrics = DecodeMetricsFactory.getDecodeMetrics();
+    final long start = metrics.isEnabled() ? System.nanoTime() : 0;
+    try {
+      streamStripes(pageInformation, listener);
+    } catch (DecodingAbortedException e) {
+      discardPartialState();
+      throw e;
+    }
+    clearSegmentData();
+
+    if (metrics.isEnabled()) {
+      metrics.pageComposed(pageNumber, (long) getWidth() * getHeight(), System.nanoTime() - start);
+    }
+  }
+
+  /**
+   * Checks if decoding can be restricted to the given region of interest. This is not the case if
+   * the region of interest covers the whole page or if the page contains generic refinement regions
+   * that refine the page itself, because they would need the surrounding page content as reference.
+   */
+  private boolean isRegionOfInterestApplicable(final Rectangle regionOfInterest) throws IOException,
+      JBIG2Exception {
+    if (null == regionOfInterest || regionOfInterest.contains(new Rectangle(0, 0, getWidth(), getHeight()))) {
+      return false;
+    }
+
+    return !containsPageRefinement();
+  }
+
+  /**
+   * Checks if the page contains generic refinement regions that refine the page itself.
+   */
+  private boolean containsPageRefinement() {
+    for (SegmentHeader s : segments.values()) {
+      if ((s.getSegmentType() == 42 || s.getSegmentType() == 43)
+          && (null == s.getRtSegments() || s.getRtSegments().length == 0)) {
+        return true;
+      }
+    }
+
+    return false;
+  }
 
-    if (JBIG2ImageReader.PERFORMANCE_TEST) {
-      timestamp = System.currentTimeMillis();
+  /**
+   * Returns the page at reduced resolution. The regions of the page are composed into a
+   * {@link ReducedBitmap} directly, so the page bitmap is never created at full resolution. Text and
+   * halftone regions are drawn with the reduced symbols and patterns kept by their dictionaries.
+   * Pages that contain refinements of the page itself are decoded at full resolution and reduced
+   * afterwards.
+   * 
+   * @param factor - The reduction factor, see {@link ReducedBitmap#isValidFactor(int)}.
+   * @return The page at reduced resolution.
+   * @throws JBIG2Exception
+   * @throws IOException
+   * @throws DecodingAbortedException if decoding has been aborted. The page remains usable.
+   */
+  protected ReducedBitmap getReducedBitmap(final int factor) throws JBIG2Exception, IOException {
+    if (null != pageBitmap || containsPageRefinement()) {
+      return ReducedBitmap.reduce(getBitmap(), factor, 0, 0);
     }
 
-    if (null == pageBitmap) {
-      composePageBitmap();
+    final PageInformation pageInformation = (PageInformation) getPageInformationSegment().getSegmentData();
+
+    final ReducedBitmap reducedPage;
+    try {
+      reducedPage = composeReducedPage(pageInformation, factor);
+    } catch (DecodingAbortedException e) {
+      discardPartialState();
+      throw e;
     }
+    clearSegmentData();
 
-    if (JBIG2ImageReader.PERFORMANCE_TEST) {
-      log.info("PAGE DECODING: " + (System.currentTimeMillis() - timestamp) + " ms");
+    return reducedPage;
+  }
+
+  private ReducedBitmap composeReducedPage(final PageInformation pageInformation, final int factor)
+      throws IOException, JBIG2Exception {
+    // Regions of striped pages with unknown height are placed at the start of their stripe
+    final boolean striped = pageInformation.isStriped() && pageInformation.getHeight() == -1;
+
+    ResourceBudget.checkPageSize(pageInformation.getWidth(), getHeight());
+    final ReducedBitmap reducedPage = new ReducedBitmap(pageInformation.getWidth(), getHeight(), factor);
+
+    // Page 79, 3)
+    if (pageInformation.getDefaultPixelValue() != 0) {
+      reducedPage.fill();
     }
 
-    return pageBitmap;
+    int startLine = 0;
+    for (SegmentHeader s : segments.values()) {
+      // Page 79, 5)
+      switch (s.getSegmentType()){
+        case 6 : // Immediate text region
+        case 7 : // Immediate lossless text region
+        case 22 : // Immediate halftone region
+        case 23 : // Immediate lossless halftone region
+        case 38 : // Immediate generic region
+        case 39 : // Immediate lossless generic region
+        case 42 : // Immediate generic refinement region
+        case 43 : // Immediate lossless generic refinement region
+          final Region r = (Region) s.getSegmentData();
+          final RegionSegmentInformation regionInfo = r.getRegionInfo();
+          final int x = regionInfo.getXLocation();
+          final int y = striped ? startLine : regionInfo.getYLocation();
+          final CombinationOperator op = getCombinationOperator(pageInformation,
+              regionInfo.getCombinationOperator());
+
+          final int mask = factor - 1;
+          if (r instanceof TextRegion) {
+            final ReducedBitmap reducedRegion = ((TextRegion) r).getReducedRegionBitmap(factor, x & mask, y & mask);
+            reducedPage.combine(reducedRegion, x / factor, y / factor, op);
+          } else if (r instanceof HalftoneRegion) {
+            final ReducedBitmap reducedRegion = ((HalftoneRegion) r).getReducedRegionBitmap(factor, x & mask, y
+                & mask);
+            reducedPage.combine(reducedRegion, x / factor, y / factor, op);
+          } else {
+            reducedPage.combine(r.getRegionBitmap(), x, y, op);
+          }
+          break;
+
+        case 50 : // End of stripe
+          startLine = ((EndOfStripe) s.getSegmentData()).getLineNumber() + 1;
+          break;
+      }
+    }
+
+    return reducedPage;
+  }
+
+  /**
+   * Decodes the gray-scale values of the page's halftone region without rendering its patterns, see
+   * {@link HalftoneRegion#getGrayScaleGrid()}. This is only possible if the page consists of a
+   * single immediate halftone region whose grid is not rotated.
+   * 
+   * @return The gray-scale grid or {@code null} if the page has other content.
+   * @throws JBIG2Exception
+   * @throws IOException
+   * @throws DecodingAbortedException if decoding has been aborted. The page remains usable.
+   */
+  protected GrayScaleGrid getHalftoneGrayScale() throws JBIG2Exception, IOException {
+    if (countRegions() != 1) {
+      return null;
+    }
+
+    for (SegmentHeader s : segments.values()) {
+      switch (s.getSegmentType()){
+        case 22 : // Immediate halftone region
+        case 23 : // Immediate lossless halftone region
+          final GrayScaleGrid grid;
+          try {
+            grid = ((HalftoneRegion) s.getSegmentData()).getGrayScaleGrid();
+          } catch (DecodingAbortedException e) {
+            discardPartialState();
+            throw e;
+          }
+          clearSegmentData();
+          return grid;
+      }
+    }
+
+    return null;
+  }
+
+  /**
+   * Decodes the symbol instances of the page's immediate text regions and reports them to the given
+   * listener instead of drawing them. Other regions are not decoded and the page bitmap is not
+   * created. The symbols of a dictionary are reported before its first instance, unless the
+   * dictionary is contained in the given set of already reported dictionaries.
+   * 
+   * @param listener - The listener to notify.
+   * @param reportedDictionaries - The symbol dictionaries that have been reported before. Dictionaries
+   *          reported by this call are added.
+   * @throws JBIG2Exception
+   * @throws IOException
+   * @throws DecodingAbortedException if decoding has been aborted. The page remains usable.
+   */
+  protected void decodeSymbolInstances(final SymbolInstanceListener listener,
+      final Set<SegmentHeader> reportedDictionaries) throws JBIG2Exception, IOException {
+    final PageInformation pageInformation = (PageInformation) getPageInformationSegment().getSegmentData();
+
+    // Regions of striped pages with unknown height are placed at the start of their stripe
+    final boolean striped = pageInformation.isStriped() && pageInformation.getHeight() == -1;
+
+    try {
+      int startLine = 0;
+      for (SegmentHeader s : segments.values()) {
+        switch (s.getSegmentType()){
+          case 6 : // Immediate text region
+          case 7 : // Immediate lossless text region
+            final TextRegion r = (TextRegion) s.getSegmentData();
+            for (SegmentHeader rtSegment : s.getRtSegments()) {
+              if (rtSegment.getSegmentType() == 0 && reportedDictionaries.add(rtSegment)) {
+                final SymbolDictionary sd = (SymbolDictionary) rtSegment.getSegmentData();
+                listener.symbolDictionaryDecoded(rtSegment.getSegmentNr(), sd.getDictionary());
+              }
+            }
+
+            final RegionSegmentInformation regionInfo = r.getRegionInfo();
+            r.decodeSymbolInstances(listener, regionInfo.getXLocation(),
+                striped ? startLine : regionInfo.getYLocation());
+            break;
+
+          case 50 : // End of stripe
+            startLine = ((EndOfStripe) s.getSegmentData()).getLineNumber() + 1;
+            break;
+        }
+      }
+    } catch (DecodingAbortedException e) {
+      discardPartialState();
+      throw e;
+    }
+    clearSegmentData();
   }
 
   /**
    * This method composes the segments' bitmaps to a page and stores the page as a {@link Bitmap}
    * 
+   * @param roi - The region of interest or {@code null}.
+   * @param rowListener - The listener to notify or {@code null}.
    * @throws IOException
    * @throws JBIG2Exception
    */
-  private void composePageBitmap() throws IOException, JBIG2Exception {
+  private void composePageBitmap(final Rectangle roi, final RowListener rowListener) throws IOException,
+      JBIG2Exception {
     if (pageNumber > 0) {
       // Page 79, 1) Decoding the page information segment
       PageInformation pageInformation = (PageInformation) getPageInformationSegment().getSegmentData();
-      createPage(pageInformation);
+      final DecodeMetrics metrics = DecodeMetricsFactory.getDecodeMetrics();
+      final long start = metrics.isEnabled() ? System.nanoTime() : 0;
+      try {
+        createPage(pageInformation, roi, rowListener);
+      } catch (DecodingAbortedException e) {
+        discardPartialState();
+        throw e;
+      }
       clearSegmentData();
+
+      if (metrics.isEnabled()) {
+        metrics.pageComposed(pageNumber, (long) getWidth() * getHeight(), System.nanoTime() - start);
+      }
     }
   }
 
-  private void createPage(PageInformation pageInformation) throws IOException, IntegerMaxValueException,
-      InvalidHeaderValueException {
+  /**
+   * Drops everything that has been decoded before an abort occurred. Segments that were decoded
+   * partially would otherwise continue with an inconsistent state, so the data of the page's
+   * segments and of all segments they refer to (e.g. global symbol dictionaries) is reset. The page
+   * can be decoded again afterwards.
+   */
+  private void discardPartialState() {
+    pageBitmap = null;
+    for (SegmentHeader s : segments.values()) {
+      discardSegmentData(s);
+    }
+  }
+
+  private void discardSegmentData(SegmentHeader s) {
+    s.cleanSegmentData();
+
+    final SegmentHeader[] rtSegments = s.getRtSegments();
+    if (null != rtSegments) {
+      for (SegmentHeader rtSegment : rtSegments) {
+        if (null != rtSegment) {
+          discardSegmentData(rtSegment);
+        }
+      }
+    }
+  }
+
+  private void createPage(PageInformation pageInformation, Rectangle roi, RowListener rowListener)
+      throws IOException, IntegerMaxValueException, InvalidHeaderValueException {
     if (!pageInformation.isStriped() || pageInformation.getHeight() != -1) {
       // Page 79, 4)
-      createNormalPage(pageInformation);
+      createNormalPage(pageInformation, roi, rowListener);
     } else {
-      createStripedPage(pageInformation);
+      createStripedPage(pageInformation, roi, rowListener);
     }
   }
 
-  private void createNormalPage(PageInformation pageInformation) throws IOException, IntegerMaxValueException,
-      InvalidHeaderValueException {
+  private void createNormalPage(PageInformation pageInformation, Rectangle roi, RowListener rowListener)
+      throws IOException, IntegerMaxValueException, InvalidHeaderValueException {
 
-    pageBitmap = new Bitmap(pageInformation.getWidth(), pageInformation.getHeight());
+    ResourceBudget.checkPageSize(pageInformation.getWidth(), pageInformation.getHeight());
+    if (null == tiledPage) {
+      pageBitmap = new Bitmap(pageInformation.getWidth(), pageInformation.getHeight());
 
-    // Page 79, 3)
-    // If default pixel value is not 0, byte will be filled with 0xff
-    if (pageInformation.getDefaultPixelValue() != 0) {
-      Arrays.fill(pageBitmap.getByteArray(), (byte) 0xff);
+      // Page 79, 3)
+      // If default pixel value is not 0, byte will be filled with 0xff
+      if (pageInformation.getDefaultPixelValue() != 0) {
+        Arrays.fill(pageBitmap.getByteArray(), (byte) 0xff);
+      }
     }
 
     for (SegmentHeader s : segments.values()) {
@@ -180,16 +576,53 @@ class JBIG2Page {
         case 42 : // Immediate generic refinement region
         case 43 : // Immediate lossless generic refinement region
           final Region r = (Region) s.getSegmentData();
+          final RegionSegmentInformation regionInfo = r.getRegionInfo();
+          final Rectangle regionBounds = new Rectangle(regionInfo.getXLocation(), regionInfo.getYLocation(),
+              regionInfo.getBitmapWidth(), regionInfo.getBitmapHeight());
 
-          final Bitmap regionBitmap = r.getRegionBitmap();
+          final boolean restrictToRoi = null != roi && !isReferenced(s);
+          if (restrictToRoi && !roi.intersects(regionBounds)) {
+            break;
+          }
+
+          // A single generic region that forms the page can report its lines directly
+          final boolean reportsRows = null != rowListener && r instanceof GenericRegion
+              && fitsPage(pageInformation, regionBounds.width, regionBounds.height);
+
+          final Bitmap regionBitmap;
+          if (reportsRows) {
+            ((GenericRegion) r).setRowListener(rowListener);
+          }
+          if (restrictToRoi) {
+            restrictToRegionOfInterest(r, regionBounds, roi);
+          }
+          if (r instanceof TextRegion) {
+            ((TextRegion) r).setPipelined(pipelinedTextRegions);
+          }
+          final DecoderCheckpoints regionCheckpoints = getCheckpoints(s, r, regionBounds);
+          if (null != regionCheckpoints) {
+            ((GenericRegion) r).setCheckpoints(regionCheckpoints);
+          }
+          try {
+            regionBitmap = decodeRegion(s, r);
+          } finally {
+            if (reportsRows) {
+              ((GenericRegion) r).setRowListener(null);
+            }
+            if (null != regionCheckpoints) {
+              ((GenericRegion) r).setCheckpoints(null);
+            }
+            if (restrictToRoi) {
+              restrictToRegionOfInterest(r, regionBounds, null);
+            }
+          }
 
-          if (fitsPage(pageInformation, regionBitmap)) {
+          if (null == tiledPage && fitsPage(pageInformation, regionBitmap.getWidth(), regionBitmap.getHeight())) {
             pageBitmap = regionBitmap;
           } else {
-            final RegionSegmentInformation regionInfo = r.getRegionInfo();
             final CombinationOperator op = getCombinationOperator(pageInformation,
                 regionInfo.getCombinationOperator());
-            Bitmaps.blit(regionBitmap, pageBitmap, regionInfo.getXLocation(), regionInfo.getYLocation(), op);
+            blitToPage(regionBitmap, regionInfo.getXLocation(), regionInfo.getYLocation(), op);
           }
 
           break;
@@ -197,42 +630,288 @@ class JBIG2Page {
     }
   }
 
+  /**
+   * Combines the bitmap of a region with the page bitmap or the tiled page.
+   */
+  private void blitToPage(final Bitmap regionBitmap, final int x, final int y, final CombinationOperator op) {
+    if (null != tiledPage) {
+      tiledPage.blit(regionBitmap, x, y, op);
+    } else {
+      Bitmaps.blit(regionBitmap, pageBitmap, x, y, op);
+    }
+  }
+
+  /**
+   * Decodes the bitmap of the given region and reports it to the {@link DecodeMetrics}.
+   */
+  private Bitmap decodeRegion(final SegmentHeader s, final Region r) throws IOException, IntegerMaxValueException,
+      InvalidHeaderValueException {
+    final DecodeMetrics metrics = DecodeMetricsFactory.getDecodeMetrics();
+    if (!metrics.isEnabled()) {
+      return r.getRegionBitmap();
+    }
+
+    final long start = System.nanoTime();
+    final Bitmap regionBitmap = r.getRegionBitmap();
+    metrics.segmentDecoded(s.getSegmentType(), s.getSegmentNr(), s.getPageAssociation(), s.getSegmentDataLength(),
+        (long) regionBitmap.getWidth() * regionBitmap.getHeight(), System.nanoTime() - start);
+    return regionBitmap;
+  }
+
+  /**
+   * Tells a region that only the part inside of the region of interest will be used.
+   * 
+   * @param r - The region to restrict.
+   * @param regionBounds - The bounds of the region on the page.
+   * @param roi - The region of interest in page coordinates or {@code null} to remove a previously
+   *          set restriction.
+   */
+  private void restrictToRegionOfInterest(final Region r, final Rectangle regionBounds, final Rectangle roi) {
+    if (r instanceof GenericRegion) {
+      ((GenericRegion) r).setLineLimit(null == roi ? -1 : roi.y + roi.height - regionBounds.y);
+      ((GenericRegion) r).setFirstLine(null == roi ? 0 : Math.max(0, roi.y - regionBounds.y));
+    } else if (r instanceof TextRegion) {
+      ((TextRegion) r).setClipRegion(null == roi ? null : new Rectangle(roi.x - regionBounds.x, roi.y
+          - regionBounds.y, roi.width, roi.height));
+    }
+  }
+
+  /**
+   * Returns the checkpoint index of the given region. An index is created if checkpoints are
+   * recorded and the region is high enough to benefit from it.
+   * 
+   * @return The index or {@code null} if the region doesn't use checkpoints.
+   */
+  private DecoderCheckpoints getCheckpoints(final SegmentHeader s, final Region r, final Rectangle regionBounds) {
+    if (!(r instanceof GenericRegion)) {
+      return null;
+    }
+
+    DecoderCheckpoints regionCheckpoints = checkpoints.get(s.getSegmentNr());
+    if (null == regionCheckpoints && checkpointInterval > 0 && regionBounds.height > checkpointInterval) {
+      regionCheckpoints = new DecoderCheckpoints(checkpointInterval);
+      checkpoints.put(s.getSegmentNr(), regionCheckpoints);
+    }
+    return regionCheckpoints;
+  }
+
+  /**
+   * Sets the distance of decoder checkpoints that are recorded while generic regions of this page
+   * are decoded. Later decodes of a region of interest resume at the nearest checkpoint instead of
+   * decoding the region from its beginning.
+   * 
+   * @param checkpointInterval - The distance in lines or {@code 0} to disable recording.
+   */
+  protected void setCheckpointInterval(final int checkpointInterval) {
+    this.checkpointInterval = checkpointInterval;
+  }
+
+  /**
+   * Sets whether the symbol instances of the page's text regions are drawn on a separate thread, see
+   * {@link TextRegion#setPipelined(boolean)}.
+   * 
+   * @param pipelinedTextRegions - {@code true} to draw symbol instances on a separate thread.
+   */
+  protected void setPipelinedTextRegions(final boolean pipelinedTextRegions) {
+    this.pipelinedTextRegions = pipelinedTextRegions;
+  }
+
+  /**
+   * @return The recorded decoder checkpoints of this page. The key is the segment number of the
+   *         generic region.
+   */
+  protected Map<Integer, DecoderCheckpoints> getCheckpoints() {
+    return checkpoints;
+  }
+
+  /**
+   * Sets decoder checkpoints, e.g. ones that have been recorded by an earlier decode and persisted.
+   * 
+   * @param checkpoints - The checkpoints. The key is the segment number of the generic region.
+   */
+  protected void setCheckpoints(final Map<Integer, DecoderCheckpoints> checkpoints) {
+    this.checkpoints.clear();
+    if (null != checkpoints) {
+      this.checkpoints.putAll(checkpoints);
+    }
+  }
+
+  /**
+   * Checks if one of the segments of this page refers to the given segment.
+   */
+  private boolean isReferenced(final SegmentHeader segment) {
+    for (SegmentHeader s : segments.values()) {
+      final SegmentHeader[] rtSegments = s.getRtSegments();
+      if (null != rtSegments) {
+        for (SegmentHeader rtSegment : rtSegments) {
+          if (rtSegment == segment) {
+            return true;
+          }
+        }
+      }
+    }
+    return false;
+  }
+
   /**
    * Check if we have only one region that forms the complete page. If the dimension equals the
    * page's dimension set the region's bitmap as the page's bitmap. Otherwise we have to blit the
    * smaller region's bitmap into the page's bitmap (see Issue 6).
    * 
    * @param pageInformation
-   * @param regionBitmap
+   * @param regionWidth
+   * @param regionHeight
    * @return
    */
-  private boolean fitsPage(PageInformation pageInformation, final Bitmap regionBitmap) {
+  private boolean fitsPage(PageInformation pageInformation, final int regionWidth, final int regionHeight) {
     return countRegions() == 1 && pageInformation.getDefaultPixelValue() == 0
-        && pageInformation.getWidth() == regionBitmap.getWidth()
-        && pageInformation.getHeight() == regionBitmap.getHeight();
+        && pageInformation.getWidth() == regionWidth && pageInformation.getHeight() == regionHeight;
   }
 
-  private void createStripedPage(PageInformation pageInformation) throws IOException, IntegerMaxValueException,
-      InvalidHeaderValueException {
-    final ArrayList<SegmentData> pageStripes = collectPageStripes();
+  private void createStripedPage(PageInformation pageInformation, Rectangle roi, RowListener rowListener)
+      throws IOException, IntegerMaxValueException, InvalidHeaderValueException {
+    final ArrayList<SegmentHeader> pageStripes = collectPageStripes();
 
-    pageBitmap = new Bitmap(pageInformation.getWidth(), finalHeight);
+    ResourceBudget.checkPageSize(pageInformation.getWidth(), finalHeight);
+    if (null == tiledPage) {
+      pageBitmap = new Bitmap(pageInformation.getWidth(), finalHeight);
+    }
 
     int startLine = 0;
-    for (SegmentData sd : pageStripes) {
+    for (SegmentHeader s : pageStripes) {
+      final SegmentData sd = s.getSegmentData();
       if (sd instanceof EndOfStripe) {
-        startLine = ((EndOfStripe) sd).getLineNumber() + 1;
+        final int endLine = ((EndOfStripe) sd).getLineNumber() + 1;
+        // All rows of the stripe are complete now
+        if (null != rowListener && endLine > startLine && endLine <= finalHeight) {
+          rowListener.rowsDecoded(pageBitmap, startLine, endLine - startLine);
+        }
+        startLine = endLine;
+
+        // The following stripes are below the region of interest
+        if (null != roi && startLine >= roi.y + roi.height) {
+          break;
+        }
       } else {
         final Region r = (Region) sd;
         final RegionSegmentInformation regionInfo = r.getRegionInfo();
+
+        if (null != roi
+            && !roi.intersects(new Rectangle(regionInfo.getXLocation(), startLine, regionInfo.getBitmapWidth(),
+                regionInfo.getBitmapHeight()))) {
+          continue;
+        }
+
+        if (r instanceof TextRegion) {
+          ((TextRegion) r).setPipelined(pipelinedTextRegions);
+        }
         final CombinationOperator op = getCombinationOperator(pageInformation, regionInfo.getCombinationOperator());
-        Bitmaps.blit(r.getRegionBitmap(), pageBitmap, regionInfo.getXLocation(), startLine, op);
+        blitToPage(decodeRegion(s, r), regionInfo.getXLocation(), startLine, op);
       }
     }
   }
 
-  private ArrayList<SegmentData> collectPageStripes() {
-    final ArrayList<SegmentData> pageStripes = new ArrayList<SegmentData>();
+  /**
+   * Composes each stripe of a striped page of unknown height as soon as its end of stripe segment is
+   * reached, reports it and releases it afterwards.
+   */
+  private void streamStripes(final PageInformation pageInformation, final StripeListener listener)
+      throws IOException, IntegerMaxValueException, InvalidHeaderValueException {
+    final ArrayList<SegmentHeader> pageStripes = collectPageStripes();
+    ResourceBudget.checkPageSize(pageInformation.getWidth(), finalHeight);
+
+    final List<SegmentHeader> stripeRegions = new ArrayList<SegmentHeader>();
+    int startLine = 0;
+
+    // The rows of the composed regions below the last reported stripe
+    Bitmap overflow = null;
+
+    for (SegmentHeader s : pageStripes) {
+      final SegmentData sd = s.getSegmentData();
+      if (!(sd instanceof EndOfStripe)) {
+        stripeRegions.add(s);
+        continue;
+      }
+
+      final int endLine = ((EndOfStripe) sd).getLineNumber() + 1;
+      if (endLine > startLine) {
+        final int height = endLine - startLine;
+        final Bitmap composed = composeStripe(pageInformation, stripeRegions, overflow, height,
+            finalHeight - startLine);
+        stripeRegions.clear();
+
+        if (composed.getHeight() > height) {
+          final int width = composed.getWidth();
+          overflow = Bitmaps.extract(new Rectangle(0, height, width, composed.getHeight() - height), composed);
+          listener.stripeDecoded(Bitmaps.extract(new Rectangle(0, 0, width, height), composed), startLine);
+        } else {
+          overflow = null;
+          listener.stripeDecoded(composed, startLine);
+        }
+        startLine = endLine;
+      }
+    }
+
+    // Regions after the last end of stripe segment would be placed below the page, as would be the
+    // remaining overflow, see createStripedPage()
+  }
+
+  /**
+   * Composes the given regions into a new bitmap of at least the given height. The regions are
+   * placed at the top of the stripe like in
+   * {@link #createStripedPage(PageInformation, Rectangle, RowListener)} and their data is released as
+   * soon as they are combined with the stripe. If the rows of the regions of previous stripes or of
+   * a region of this stripe reach below the stripe, the bitmap is extended to hold them, up to the
+   * end of the page.
+   * 
+   * @param overflow - The rows of the regions of previous stripes that reach into this stripe, or
+   *          {@code null}.
+   * @param maxHeight - The amount of rows up to the end of the page.
+   */
+  private Bitmap composeStripe(final PageInformation pageInformation, final List<SegmentHeader> regions,
+      final Bitmap overflow, final int height, final int maxHeight) throws IOException, IntegerMaxValueException,
+      InvalidHeaderValueException {
+    Bitmap stripe = createStripe(pageInformation, null == overflow ? height : Math.max(height, overflow.getHeight()),
+        overflow);
+
+    for (SegmentHeader s : regions) {
+      final Region r = (Region) s.getSegmentData();
+      final RegionSegmentInformation regionInfo = r.getRegionInfo();
+
+      if (r instanceof TextRegion) {
+        ((TextRegion) r).setPipelined(pipelinedTextRegions);
+      }
+      final CombinationOperator op = getCombinationOperator(pageInformation, regionInfo.getCombinationOperator());
+      final Bitmap regionBitmap = decodeRegion(s, r);
+      if (regionBitmap.getHeight() > stripe.getHeight() && stripe.getHeight() < maxHeight) {
+        stripe = createStripe(pageInformation, Math.min(regionBitmap.getHeight(), maxHeight), stripe);
+      }
+      Bitmaps.blit(regionBitmap, stripe, regionInfo.getXLocation(), 0, op);
+
+      s.releaseReferences();
+      s.cleanSegmentData();
+    }
+
+    return stripe;
+  }
+
+  /**
+   * Creates a bitmap of the given height that is filled with the default pixel value of the page and
+   * starts with the rows of the given bitmap.
+   */
+  private Bitmap createStripe(final PageInformation pageInformation, final int height, final Bitmap top) {
+    final Bitmap stripe = new Bitmap(pageInformation.getWidth(), height);
+    if (pageInformation.getDefaultPixelValue() != 0) {
+      Arrays.fill(stripe.getByteArray(), (byte) 0xff);
+    }
+    if (null != top) {
+      System.arraycopy(top.getByteArray(), 0, stripe.getByteArray(), 0, top.getByteArray().length);
+    }
+    return stripe;
+  }
+
+  private ArrayList<SegmentHeader> collectPageStripes() {
+    final ArrayList<SegmentHeader> pageStripes = new ArrayList<SegmentHeader>();
     for (SegmentHeader s : segments.values()) {
       // Page 79, 5)
       switch (s.getSegmentType()){
@@ -244,13 +923,12 @@ class JBIG2Page {
         case 39 : // Immediate lossless generic region
         case 42 : // Immediate generic refinement region
         case 43 : // Immediate lossless generic refinement region
-          Region r = (Region) s.getSegmentData();
-          pageStripes.add(r);
+          pageStripes.add(s);
           break;
 
         case 50 : // End of stripe
           EndOfStripe eos = (EndOfStripe) s.getSegmentData();
-          pageStripes.add(eos);
+          pageStripes.add(s);
           finalHeight = eos.getLineNumber() + 1;
           break;
       }
@@ -312,13 +990,17 @@ class JBIG2Page {
 
   /**
    * Resets the memory-critical segments to force on-demand-decoding and to avoid holding the
-   * segments' bitmap too long.
+   * segments' bitmap too long. The segments of the page don't need their referred-to segments
+   * anymore, so shared segments like global symbol dictionaries are released as soon as the last
+   * page that refers to them has been decoded.
    */
   private void clearSegmentData() {
     Set<Integer> keySet = segments.keySet();
 
     for (Integer key : keySet) {
-      segments.get(key).cleanSegmentData();
+      final SegmentHeader s = segments.get(key);
+      s.releaseReferences();
+      s.cleanSegmentData();
     }
   }
 
@@ -340,7 +1022,15 @@ class JBIG2Page {
     if (finalHeight == 0) {
       PageInformation pi = (PageInformation) getPageInformationSegment().getSegmentData();
       if (pi.getHeight() == 0xffffffff) {
-        getBitmap();
+        // The final height is given by the last end of stripe segment, no need to decode the page
+        for (SegmentHeader s : segments.values()) {
+          if (s.getSegmentType() == 50) {
+            finalHeight = ((EndOfStripe) s.getSegmentData()).getLineNumber() + 1;
+          }
+        }
+        if (finalHeight == 0) {
+          getBitmap();
+        }
       } else {
         finalHeight = pi.getHeight();
       }
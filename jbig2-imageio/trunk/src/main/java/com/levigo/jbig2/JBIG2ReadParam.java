@@ -19,9 +19,14 @@ package com.levigo.jbig2;
 
 import java.awt.Dimension;
 import java.awt.Rectangle;
+import java.util.concurrent.ExecutorService;
 
 import javax.imageio.ImageReadParam;
 
+import com.levigo.jbig2.image.ReducedBitmap;
+import com.levigo.jbig2.util.DecoderExecutors;
+import com.levigo.jbig2.util.ResourceLimits;
+
 /**
  * This class extends {@code ImageReadParam} and contains region of interest and scale / subsampling
  * functionality
@@ -47,4 +52,176 @@ public class JBIG2ReadParam extends ImageReadParam {
 
     setSourceSubsampling(sourceXSubsampling, sourceYSubsampling, subsamplingXOffset, subsamplingYOffset);
   }
+
+  /** Factor of the reduced resolution, {@code 1} for full resolution */
+  private int reductionFactor = 1;
+
+  /** Distance of decoder checkpoints in lines, {@code 0} if no checkpoints are recorded */
+  private int checkpointInterval;
+
+  /** Whether symbol instances of text regions are drawn on a separate thread */
+  private boolean pipelinedTextRegions;
+
+  /** Whether pages with a single halftone region are read as gray-scale grid */
+  private boolean halftoneGrayScale;
+
+  /** Limits of the resources a read operation may consume, {@code null} to use the reader's ones */
+  private ResourceLimits resourceLimits;
+
+  /** The maximum amount of threads that decode a symbol dictionary */
+  private int parallelism = 1;
+
+  /** The executor of helper tasks, {@code null} to use the shared pool */
+  private ExecutorService executor;
+
+  /**
+   * Sets the factor by which the resolution of the page is reduced while decoding, e.g. to create
+   * previews or thumbnails. With a factor of 2, 4 or 8 the page is composed directly at the reduced
+   * resolution and the resulting image is gray. Each of its pixels reflects the amount of black
+   * pixels in the corresponding {@code factor x factor} area of the page. The source region is
+   * given in pixels of the full resolution page and the source render size, if set, refers to the
+   * whole page, like in the usual mode. Subsampling is not applied in this mode.
+   * 
+   * @param reductionFactor - The factor: 1 (full resolution), 2, 4 or 8.
+   */
+  public void setReductionFactor(final int reductionFactor) {
+    if (!ReducedBitmap.isValidFactor(reductionFactor)) {
+      throw new IllegalArgumentException("Illegal reduction factor: shall be 1, 2, 4 or 8; but was "
+          + reductionFactor);
+    }
+    this.reductionFactor = reductionFactor;
+  }
+
+  /**
+   * @return The factor by which the resolution is reduced, {@code 1} for full resolution.
+   */
+  public int getReductionFactor() {
+    return reductionFactor;
+  }
+
+  /**
+   * Sets the distance of decoder checkpoints in lines. If set, the decoder states of generic regions
+   * are recorded every {@code checkpointInterval} lines while a page is decoded. Subsequent reads
+   * of a source region of the same page resume decoding at the nearest checkpoint above the source
+   * region instead of decoding the region from its first line.
+   * 
+   * @param checkpointInterval - The distance in lines or {@code 0} to disable checkpoints.
+   * @see JBIG2ImageReader#getCheckpoints(int)
+   */
+  public void setCheckpointInterval(final int checkpointInterval) {
+    if (checkpointInterval < 0) {
+      throw new IllegalArgumentException("Illegal checkpoint interval: shall be 0 or greater; but was "
+          + checkpointInterval);
+    }
+    this.checkpointInterval = checkpointInterval;
+  }
+
+  /**
+   * @return The distance of decoder checkpoints in lines, {@code 0} if no checkpoints are recorded.
+   */
+  public int getCheckpointInterval() {
+    return checkpointInterval;
+  }
+
+  /**
+   * Sets whether the symbol instances of text regions are drawn on a separate thread while the
+   * following instances are decoded. This lowers the decoding time of pages with dense text on
+   * machines with more than one processor. The decoded image is the same. The drawing tasks run on
+   * the executor, see {@link #setExecutor(ExecutorService)}.
+   * 
+   * @param pipelinedTextRegions - {@code true} to draw symbol instances on a separate thread.
+   */
+  public void setPipelinedTextRegions(final boolean pipelinedTextRegions) {
+    this.pipelinedTextRegions = pipelinedTextRegions;
+  }
+
+  /**
+   * @return {@code true} if symbol instances of text regions are drawn on a separate thread.
+   */
+  public boolean isPipelinedTextRegions() {
+    return pipelinedTextRegions;
+  }
+
+  /**
+   * Sets whether a page that consists of a single halftone region is read as gray image instead of
+   * a bi-level one. The patterns are not rendered then. Each pixel of the image is a cell of the
+   * halftone grid and shows the gray level of the cell's pattern. The source region is given in
+   * pixels of the page and the source render size, if set, refers to the whole page and is applied
+   * by bilinear interpolation.
+   * Subsampling and the reduction factor are not applied in this mode. Pages with other content or
+   * with a rotated grid are read as usual.
+   * 
+   * @param halftoneGrayScale - {@code true} to read halftone pages as gray-scale grid.
+   */
+  public void setHalftoneGrayScale(final boolean halftoneGrayScale) {
+    this.halftoneGrayScale = halftoneGrayScale;
+  }
+
+  /**
+   * @return {@code true} if pages with a single halftone region are read as gray-scale grid.
+   */
+  public boolean isHalftoneGrayScale() {
+    return halftoneGrayScale;
+  }
+
+  /**
+   * Sets the limits of the resources a read operation may consume, see {@link ResourceLimits}. If
+   * not set, the limits of the reader apply.
+   * 
+   * @param resourceLimits - The limits or {@code null} to use the limits of the reader.
+   * @see JBIG2ImageReader#setResourceLimits(ResourceLimits)
+   */
+  public void setResourceLimits(final ResourceLimits resourceLimits) {
+    this.resourceLimits = resourceLimits;
+  }
+
+  /**
+   * @return The limits of the resources a read operation may consume or {@code null} if the limits
+   *         of the reader apply.
+   */
+  public ResourceLimits getResourceLimits() {
+    return resourceLimits;
+  }
+
+  /**
+   * Sets the maximum amount of threads that decode a symbol dictionary. The collective bitmaps of
+   * MMR-coded height classes don't depend on each other, so up to {@code parallelism} of them are
+   * decoded concurrently: one on the reading thread, the others by the executor, see
+   * {@link #setExecutor(ExecutorService)}. The decoded image is the same. By default, everything is
+   * decoded on the reading thread.
+   * 
+   * @param parallelism - The amount of threads, {@code 1} to decode on the reading thread only.
+   */
+  public void setParallelism(final int parallelism) {
+    if (parallelism < 1) {
+      throw new IllegalArgumentException("Illegal parallelism: shall be 1 or greater; but was " + parallelism);
+    }
+    this.parallelism = parallelism;
+  }
+
+  /**
+   * @return The maximum amount of threads that decode a symbol dictionary.
+   */
+  public int getParallelism() {
+    return parallelism;
+  }
+
+  /**
+   * Sets the executor that runs the helper tasks of a read operation, i.e. the concurrent decoding of
+   * symbol dictionaries (see {@link #setParallelism(int)}) and the drawing of pipelined text regions
+   * (see {@link #setPipelinedTextRegions(boolean)}). The executor is not shut down by the reader.
+   * 
+   * @param executor - The executor or {@code null} to use the shared pool of
+   *          {@link DecoderExecutors#getDefaultExecutor()}.
+   */
+  public void setExecutor(final ExecutorService executor) {
+    this.executor = executor;
+  }
+
+  /**
+   * @return The executor of helper tasks or {@code null} if the shared pool is used.
+   */
+  public ExecutorService getExecutor() {
+    return executor;
+  }
 }
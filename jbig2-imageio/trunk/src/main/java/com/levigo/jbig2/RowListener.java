@@ -0,0 +1,36 @@
+/**
+ * Copyright (C) 1995-2014 levigo holding gmbh.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.levigo.jbig2;
+
+/**
+ * Callback interface for consumers that want to observe the decoding process row by row. Decoders
+ * that produce their output in raster order (e.g. generic region decoding or striped pages) report
+ * each band of finished rows.
+ */
+public interface RowListener {
+
+  /**
+   * Is called whenever the rows {@code firstRow} to {@code firstRow + rowCount - 1} of the given
+   * bitmap are completely decoded and won't be changed anymore.
+   * 
+   * @param bitmap - The {@link Bitmap} that is currently being decoded.
+   * @param firstRow - The first finished row.
+   * @param rowCount - The amount of finished rows.
+   */
+  public void rowsDecoded(Bitmap bitmap, int firstRow, int rowCount);
+}
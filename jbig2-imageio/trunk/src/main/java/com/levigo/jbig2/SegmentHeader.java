@@ -25,6 +25,7 @@ import java.util.Map;
 
 import javax.imageio.stream.ImageInputStream;
 
+import com.levigo.jbig2.err.DecodingAbortedException;
 import com.levigo.jbig2.io.SubInputStream;
 import com.levigo.jbig2.segments.EndOfStripe;
 import com.levigo.jbig2.segments.GenericRefinementRegion;
@@ -38,6 +39,8 @@ import com.levigo.jbig2.segments.Table;
 import com.levigo.jbig2.segments.TextRegion;
 import com.levigo.jbig2.util.log.Logger;
 import com.levigo.jbig2.util.log.LoggerFactory;
+import com.levigo.jbig2.util.metrics.DecodeMetrics;
+import com.levigo.jbig2.util.metrics.DecodeMetricsFactory;
 
 /**
  * The basic class for all JBIG2 segments.
@@ -111,6 +114,15 @@ public class SegmentHeader {
 
   private Reference<SegmentData> segmentData;
 
+  /** Amount of segments of the document that refer to this segment and haven't been decoded yet */
+  private int pendingReferences;
+
+  /** Set if the references of this segment to its referred-to segments have been released */
+  private boolean referencesReleased;
+
+  /** Keeps the segment data from being garbage collected as long as it is pinned */
+  private SegmentData pinnedSegmentData;
+
 
   public SegmentHeader(JBIG2Document document, SubInputStream sis, long offset, int organisationType)
       throws IOException {
@@ -396,11 +408,25 @@ public class SegmentHeader {
           throw new IllegalArgumentException("No segment class for type " + segmentType);
         }
 
+        final DecodeMetrics metrics = DecodeMetricsFactory.getDecodeMetrics();
+        final long start = metrics.isEnabled() ? System.nanoTime() : 0;
+
         segmentDataPart = segmentClass.newInstance();
         segmentDataPart.init(this, getDataInputStream());
 
+        if (metrics.isEnabled()) {
+          metrics.segmentParsed(segmentType, segmentNr, pageAssociation, segmentDataLength, System.nanoTime() - start);
+        }
+
         segmentData = new SoftReference<SegmentData>(segmentDataPart);
 
+        if (isPinned()) {
+          pinnedSegmentData = segmentDataPart;
+        }
+
+      } catch (DecodingAbortedException e) {
+        // Parsing may already decode referred segments, keep the abort visible for the caller
+        throw e;
       } catch (Exception e) {
         throw new RuntimeException("Can't instantiate segment class", e);
       }
@@ -413,6 +439,59 @@ public class SegmentHeader {
     if (segmentData != null) {
       segmentData = null;
     }
+    pinnedSegmentData = null;
+  }
+
+  /**
+   * Registers a segment of the document that refers to this segment and will be decoded later.
+   * While such references are pending, the decoded segment data is pinned, e.g. a symbol dictionary
+   * that is shared by several pages is decoded only once.
+   */
+  void addPendingReference() {
+    pendingReferences++;
+  }
+
+  /**
+   * Signals that this segment has been decoded and doesn't need its referred-to segments anymore.
+   * Referred-to segments whose last pending reference is released and that are not flagged as
+   * retained are cleaned immediately and release their own referred-to segments in turn. Calling
+   * this method more than once has no effect.
+   */
+  void releaseReferences() {
+    if (referencesReleased) {
+      return;
+    }
+    referencesReleased = true;
+
+    if (null != rtSegments) {
+      for (SegmentHeader rtSegment : rtSegments) {
+        if (null != rtSegment) {
+          rtSegment.releaseReference();
+        }
+      }
+    }
+  }
+
+  private void releaseReference() {
+    if (pendingReferences > 0 && --pendingReferences == 0 && retainFlag == 0) {
+      cleanSegmentData();
+      releaseReferences();
+    }
+  }
+
+  /**
+   * @return {@code true} if the segment data is kept because the segment is flagged as retained or
+   *         segments that refer to it haven't been decoded yet.
+   */
+  boolean isPinned() {
+    return retainFlag == 1 || pendingReferences > 0;
+  }
+
+  /**
+   * @return {@code true} if the segment data has been decoded and is still available.
+   */
+  boolean hasSegmentData() {
+    return null != segmentData && null != segmentData.get();
   }
 
   public String toString() {
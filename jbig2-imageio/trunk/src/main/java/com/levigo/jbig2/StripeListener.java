@@ -0,0 +1,34 @@
+/**
+ * Copyright (C) 1995-2014 levigo holding gmbh.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.levigo.jbig2;
+
+/**
+ * Callback interface for consumers that process a page stripe by stripe, e.g. a TIFF or PNG writer
+ * that writes strips. See {@link JBIG2ImageReader#readStripes(int, StripeListener)}.
+ */
+public interface StripeListener {
+
+  /**
+   * Is called for every completed stripe of a page, in increasing line order. The decoder doesn't
+   * refer to the stripe afterwards, so it can be released as soon as it has been processed.
+   * 
+   * @param stripe - The stripe. It is as wide as the page and as high as the stripe.
+   * @param firstLine - The line of the page that corresponds to the first row of the stripe.
+   */
+  public void stripeDecoded(Bitmap stripe, int firstLine);
+}
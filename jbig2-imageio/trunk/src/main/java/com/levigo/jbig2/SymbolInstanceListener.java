@@ -0,0 +1,53 @@
+/**
+ * Copyright (C) 1995-2014 levigo holding gmbh.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.levigo.jbig2;
+
+import java.util.List;
+
+/**
+ * Callback interface for consumers that are interested in the placement of symbols rather than in
+ * the rendered page, e.g. for search indexing or layout analysis. See
+ * {@link JBIG2ImageReader#readSymbolInstances(int, SymbolInstanceListener)}.
+ */
+public interface SymbolInstanceListener {
+
+  /**
+   * Is called once for every symbol dictionary before the first symbol instance that refers to it
+   * is reported.
+   * 
+   * @param segmentNumber - The segment number of the symbol dictionary.
+   * @param symbols - The exported symbols of the dictionary.
+   */
+  public void symbolDictionaryDecoded(int segmentNumber, List<Bitmap> symbols);
+
+  /**
+   * Is called for every symbol instance of an immediate text region.
+   * 
+   * @param regionSegmentNumber - The segment number of the text region.
+   * @param dictionarySegmentNumber - The segment number of the symbol dictionary the symbol belongs
+   *          to.
+   * @param symbolIndex - The index of the symbol in the exported symbols of the dictionary.
+   * @param x - The x coordinate of the upper left corner of the instance on the page.
+   * @param y - The y coordinate of the upper left corner of the instance on the page.
+   * @param symbol - The bitmap of the instance. This is the refined bitmap if the instance is
+   *          refined, otherwise the symbol of the dictionary.
+   * @param refined - {@code true} if the symbol has been refined for this instance (6.4.11).
+   */
+  public void symbolInstanceDecoded(int regionSegmentNumber, int dictionarySegmentNumber, int symbolIndex, int x,
+      int y, Bitmap symbol, boolean refined);
+}
@@ -0,0 +1,257 @@
+/**
+ * Copyright (C) 1995-2014 levigo holding gmbh.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.levigo.jbig2.decoder;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * An index of decoder states, recorded every {@link #getInterval()} lines while a region is decoded.
+ * Both the arithmetic and the MMR decoder are strictly sequential. With a checkpoint, a later
+ * decoding run that needs only lines at the bottom of a huge region can continue at the nearest
+ * saved state instead of starting at the first line again.
+ * <p>
+ * An index is small compared to the decoded region: it keeps only the used coding contexts and the
+ * lines that are needed as reference. It is {@link Serializable}, so it can be stored next to the
+ * source file and reused for later decoding runs of the same data.
+ * <p>
+ * An index records the properties of the data it belongs to, see
+ * {@link #bind(int, long, long, int, boolean, int, int)}. If it is used for other data, e.g. because
+ * the file has changed, its checkpoints are dropped and decoding starts at the first line.
+ */
+public class DecoderCheckpoints implements Serializable {
+
+  private static final long serialVersionUID = 2315708547418364437L;
+
+  /**
+   * A saved decoder state at the beginning of a line.
+   */
+  public static class Checkpoint implements Serializable {
+
+    private static final long serialVersionUID = -6024316592209227301L;
+
+    private final int line;
+
+    /* Arithmetic decoding */
+    private final long[] decoderState;
+    private final int[] contexts;
+    private final int ltp;
+    private final byte[] previousLines;
+
+    /* MMR decoding */
+    private final int bitOffset;
+    private final int[] referenceLine;
+
+    private Checkpoint(int line, long[] decoderState, int[] contexts, int ltp, byte[] previousLines, int bitOffset,
+        int[] referenceLine) {
+      this.line = line;
+      this.decoderState = decoderState;
+      this.contexts = contexts;
+      this.ltp = ltp;
+      this.previousLines = previousLines;
+      this.bitOffset = bitOffset;
+      this.referenceLine = referenceLine;
+    }
+
+    /**
+     * Creates a checkpoint for arithmetic decoding.
+     * 
+     * @param line - The line that is decoded next.
+     * @param decoderState - The state of the arithmetic decoder.
+     * @param contexts - The used coding contexts.
+     * @param ltp - The value of LTP (typical prediction).
+     * @param previousLines - The bytes of the lines above, which are needed as reference.
+     * @return The created {@link Checkpoint}.
+     */
+    public static Checkpoint arithmetic(int line, long[] decoderState, int[] contexts, int ltp, byte[] previousLines) {
+      return new Checkpoint(line, decoderState, contexts, ltp, previousLines, 0, null);
+    }
+
+    /**
+     * Creates a checkpoint for MMR decoding.
+     * 
+     * @param line - The line that is decoded next.
+     * @param bitOffset - The offset of the next code word in bits.
+     * @param referenceLine - The changing elements of the reference line.
+     * @return The created {@link Checkpoint}.
+     */
+    public static Checkpoint mmr(int line, int bitOffset, int[] referenceLine) {
+      return new Checkpoint(line, null, null, 0, null, bitOffset, referenceLine);
+    }
+
+    public int getLine() {
+      return line;
+    }
+
+    public boolean isMMR() {
+      return null != referenceLine;
+    }
+
+    public long[] getDecoderState() {
+      return decoderState;
+    }
+
+    public int[] getContexts() {
+      return contexts;
+    }
+
+    public int getLtp() {
+      return ltp;
+    }
+
+    public byte[] getPreviousLines() {
+      return previousLines;
+    }
+
+    public int getBitOffset() {
+      return bitOffset;
+    }
+
+    public int[] getReferenceLine() {
+      return referenceLine;
+    }
+  }
+
+  /** The distance between two checkpoints in lines */
+  private final int interval;
+
+  private final TreeMap<Integer, Checkpoint> checkpoints = new TreeMap<Integer, Checkpoint>();
+
+  /* The properties of the data the checkpoints have been recorded from, set if bound is true */
+  private boolean bound;
+  private int segmentNumber;
+  private long dataOffset;
+  private long dataLength;
+  private int template;
+  private boolean mmr;
+  private int width;
+  private int height;
+
+  /**
+   * @param interval - The distance between two checkpoints in lines.
+   */
+  public DecoderCheckpoints(int interval) {
+    if (interval <= 0)
+      throw new IllegalArgumentException("interval must be greater than 0");
+
+    this.interval = interval;
+  }
+
+  public int getInterval() {
+    return interval;
+  }
+
+  /**
+   * Binds this index to the data of a region before it is decoded. If the index has been recorded
+   * from data with other properties, or if it doesn't know its data, e.g. because it has been written
+   * by an older version, all checkpoints are dropped and the index is bound to the given data.
+   * 
+   * @param segmentNumber - The number of the region segment.
+   * @param dataOffset - The offset of the encoded data in the file.
+   * @param dataLength - The length of the encoded data.
+   * @param template - The template of the generic region.
+   * @param mmr - {@code true} if the data is MMR-coded.
+   * @param width - The width of the region.
+   * @param height - The height of the region.
+   * @return {@code true} if the recorded checkpoints belong to the given data and can be used.
+   */
+  public boolean bind(int segmentNumber, long dataOffset, long dataLength, int template, boolean mmr, int width,
+      int height) {
+    if (bound && this.segmentNumber == segmentNumber && this.dataOffset == dataOffset
+        && this.dataLength == dataLength && this.template == template && this.mmr == mmr && this.width == width
+        && this.height == height) {
+      return true;
+    }
+
+    final boolean usable = !bound && checkpoints.isEmpty();
+    checkpoints.clear();
+    this.bound = true;
+    this.segmentNumber = segmentNumber;
+    this.dataOffset = dataOffset;
+    this.dataLength = dataLength;
+    this.template = template;
+    this.mmr = mmr;
+    this.width = width;
+    this.height = height;
+    return usable;
+  }
+
+  /**
+   * @param line - The line that is decoded next.
+   * @return {@code true} if a checkpoint should be recorded before decoding the given line.
+   */
+  public boolean isCheckpointDue(int line) {
+    return line > 0 && line % interval == 0 && !checkpoints.containsKey(line);
+  }
+
+  public void add(Checkpoint checkpoint) {
+    checkpoints.put(checkpoint.getLine(), checkpoint);
+  }
+
+  /**
+   * Returns the nearest checkpoint at or above the given line.
+   * 
+   * @param line - The first line that is needed.
+   * @return The {@link Checkpoint} or {@code null} if there is none.
+   */
+  public Checkpoint getCheckpoint(int line) {
+    final SortedMap<Integer, Checkpoint> headMap = checkpoints.headMap(line + 1);
+    return headMap.isEmpty() ? null : headMap.get(headMap.lastKey());
+  }
+
+  /**
+   * @return The amount of recorded checkpoints.
+   */
+  public int size() {
+    return checkpoints.size();
+  }
+
+  /**
+   * Writes this index to the given stream.
+   * 
+   * @param out - The stream to write to.
+   * @throws IOException
+   */
+  public void writeTo(OutputStream out) throws IOException {
+    final ObjectOutputStream oos = new ObjectOutputStream(out);
+    oos.writeObject(this);
+    oos.flush();
+  }
+
+  /**
+   * Reads an index previously written by {@link #writeTo(OutputStream)}.
+   * 
+   * @param in - The stream to read from.
+   * @return The read {@link DecoderCheckpoints}.
+   * @throws IOException
+   */
+  public static DecoderCheckpoints readFrom(InputStream in) throws IOException {
+    final ObjectInputStream ois = new ObjectInputStream(in);
+    try {
+      return (DecoderCheckpoints) ois.readObject();
+    } catch (ClassNotFoundException e) {
+      throw new IOException(e.getMessage());
+    }
+  }
+}
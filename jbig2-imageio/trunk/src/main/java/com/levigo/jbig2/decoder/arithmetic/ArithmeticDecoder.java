@@ -142,6 +142,36 @@ public class ArithmeticDecoder {
     init();
   }
 
+  /**
+   * Creates a decoder that continues at a state previously returned by {@link #saveState()}.
+   * 
+   * @param iis - The stream the saved decoder was reading from.
+   * @param state - The saved state.
+   * @throws IOException
+   */
+  public ArithmeticDecoder(ImageInputStream iis, long[] state) throws IOException {
+    this.iis = iis;
+    this.a = (int) state[0];
+    this.c = state[1];
+    this.ct = (int) state[2];
+    this.b = (int) state[3];
+    this.streamPos0 = state[4];
+    iis.seek(state[5]);
+  }
+
+  /**
+   * Returns the complete state of this decoder, so decoding can be continued later with
+   * {@link #ArithmeticDecoder(ImageInputStream, long[])}.
+   * 
+   * @return The state as {@code long} array.
+   * @throws IOException
+   */
+  public long[] saveState() throws IOException {
+    return new long[]{
+        a, c, ct, b, streamPos0, iis.getStreamPosition()
+    };
+  }
+
   private void init() throws IOException {
     this.streamPos0 = iis.getStreamPosition();
     b = this.iis.read();
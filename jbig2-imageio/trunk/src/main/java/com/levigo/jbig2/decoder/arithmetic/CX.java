@@ -17,6 +17,8 @@
 
 package com.levigo.jbig2.decoder.arithmetic;
 
+import java.util.Arrays;
+
 /**
  * CX represents the context used by arithmetic decoding and arithmetic integer decoding. It selects
  * the probability estimate and statistics used during decoding procedure.
@@ -62,6 +64,45 @@ public final class CX {
     mps[index] ^= 1;
   }
 
+  /**
+   * Returns the contexts that have been used so far in a compact form. Each element holds the index
+   * of a context in the upper bits, its probability estimation state in bit 1-7 and its MPS value in
+   * bit 0.
+   * 
+   * @return The used contexts.
+   */
+  public int[] saveContexts() {
+    int count = 0;
+    for (int i = 0; i < cx.length; i++) {
+      if (cx[i] != 0 || mps[i] != 0) {
+        count++;
+      }
+    }
+
+    final int[] contexts = new int[count];
+    for (int i = 0, j = 0; i < cx.length; i++) {
+      if (cx[i] != 0 || mps[i] != 0) {
+        contexts[j++] = i << 8 | cx[i] << 1 | mps[i];
+      }
+    }
+    return contexts;
+  }
+
+  /**
+   * Restores contexts saved with {@link #saveContexts()}. All other contexts are reset.
+   * 
+   * @param contexts - The saved contexts.
+   */
+  public void restoreContexts(int[] contexts) {
+    Arrays.fill(cx, (byte) 0);
+    Arrays.fill(mps, (byte) 0);
+    for (int context : contexts) {
+      final int i = context >>> 8;
+      cx[i] = (byte) ((context >> 1) & 0x7f);
+      mps[i] = (byte) (context & 1);
+    }
+  }
+
   protected int getIndex() {
     return index;
   }
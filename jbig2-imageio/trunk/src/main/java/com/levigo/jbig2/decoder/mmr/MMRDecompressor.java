@@ -24,6 +24,10 @@ import java.util.Arrays;
 import javax.imageio.stream.ImageInputStream;
 
 import com.levigo.jbig2.Bitmap;
+import com.levigo.jbig2.RowListener;
+import com.levigo.jbig2.decoder.DecoderCheckpoints;
+import com.levigo.jbig2.decoder.DecoderCheckpoints.Checkpoint;
+import com.levigo.jbig2.util.AbortSignal;
 
 /**
  * A decompressor for MMR compression.
@@ -440,6 +444,47 @@ public class MMRDecompressor {
   }
 
   public Bitmap uncompress() {
+    return uncompress(null);
+  }
+
+  /**
+   * Decompresses the data and reports every finished line to the given listener.
+   * 
+   * @param rowListener - The {@link RowListener} to notify, may be {@code null}.
+   * @return The decompressed {@link Bitmap}.
+   */
+  public Bitmap uncompress(final RowListener rowListener) {
+    return uncompress(rowListener, height);
+  }
+
+  /**
+   * Decompresses the first {@code lineLimit} lines of the data and reports every finished line to
+   * the given listener. The remaining lines of the result stay empty.
+   * 
+   * @param rowListener - The {@link RowListener} to notify, may be {@code null}.
+   * @param lineLimit - The amount of lines to decompress.
+   * @return The decompressed {@link Bitmap}.
+   */
+  public Bitmap uncompress(final RowListener rowListener, final int lineLimit) {
+    return uncompress(rowListener, 0, lineLimit, null);
+  }
+
+  /**
+   * Decompresses the lines {@code firstLine} to {@code lineLimit - 1} of the data and reports every
+   * finished line to the given listener. If checkpoints are given, decompression starts at the
+   * nearest checkpoint above {@code firstLine} and new checkpoints are recorded while decompressing.
+   * Lines that are not decompressed stay empty.
+   * <p>
+   * Checkpoints can only be used with a fresh {@code MMRDecompressor}.
+   * 
+   * @param rowListener - The {@link RowListener} to notify, may be {@code null}.
+   * @param firstLine - The first line that is needed.
+   * @param lineLimit - The amount of lines to decompress.
+   * @param checkpoints - The checkpoint index to use and to record to, may be {@code null}.
+   * @return The decompressed {@link Bitmap}.
+   */
+  public Bitmap uncompress(final RowListener rowListener, final int firstLine, final int lineLimit,
+      final DecoderCheckpoints checkpoints) {
     final Bitmap result = new Bitmap(width, height);
 
     int[] currentOffsets = new int[width + 5];
@@ -448,8 +493,30 @@ public class MMRDecompressor {
     int refRunLength = 1;
 
     int count = 0;
+    int startLine = 0;
+
+    if (null != checkpoints && firstLine > 0) {
+      final Checkpoint checkpoint = checkpoints.getCheckpoint(firstLine);
+      if (null != checkpoint && isUsable(checkpoint)) {
+        data.offset = checkpoint.getBitOffset();
+        // force a refill of the code word at the new offset
+        data.lastOffset = data.offset + 1;
+        refRunLength = checkpoint.getReferenceLine().length;
+        System.arraycopy(checkpoint.getReferenceLine(), 0, referenceOffsets, 0, refRunLength);
+        startLine = checkpoint.getLine();
+      }
+    }
+
+    final int lines = Math.min(lineLimit, height);
+    for (int line = startLine; line < lines; line++) {
+      AbortSignal.checkAborted();
+
+      if (null != checkpoints && refRunLength >= 0 && checkpoints.isCheckpointDue(line)) {
+        final int[] referenceLine = new int[refRunLength];
+        System.arraycopy(referenceOffsets, 0, referenceLine, 0, refRunLength);
+        checkpoints.add(Checkpoint.mmr(line, data.offset, referenceLine));
+      }
 
-    for (int line = 0; line < height; line++) {
       count = uncompress2D(data, referenceOffsets, refRunLength, currentOffsets, width);
 
       if (count == MMRConstants.EOF) {
@@ -460,6 +527,10 @@ public class MMRDecompressor {
         fillBitmap(result, line, currentOffsets, count);
       }
 
+      if (null != rowListener) {
+        rowListener.rowsDecoded(result, line, 1);
+      }
+
       // Swap lines
       int tempOffsets[] = referenceOffsets;
       referenceOffsets = currentOffsets;
@@ -467,13 +538,43 @@ public class MMRDecompressor {
       refRunLength = count;
     }
 
-    detectAndSkipEOL();
+    if (lines == height) {
+      detectAndSkipEOL();
 
-    data.align();
+      data.align();
+    }
 
     return result;
   }
 
+  /**
+   * @return {@code true} if the given checkpoint is an MMR checkpoint that fits the data and the
+   *         width of this decompressor. The region has checked that the checkpoints belong to its
+   *         data, this guards against damaged indexes.
+   */
+  private boolean isUsable(final Checkpoint checkpoint) {
+    if (!checkpoint.isMMR() || checkpoint.getLine() >= height || checkpoint.getBitOffset() < 0
+        || checkpoint.getReferenceLine().length > width + 5) {
+      return false;
+    }
+
+    try {
+      final long length = data.stream.length();
+      if (length >= 0 && checkpoint.getBitOffset() >> 3 >= length) {
+        return false;
+      }
+    } catch (IOException e) {
+      return false;
+    }
+
+    for (int offset : checkpoint.getReferenceLine()) {
+      if (offset < 0 || offset > width) {
+        return false;
+      }
+    }
+    return true;
+  }
+
   private void detectAndSkipEOL() {
     while (true) {
       Code code = data.uncompressGetCode(modeTable);
@@ -612,4 +713,4 @@ public class MMRDecompressor {
     }
     return firstLevelTable;
   }
-}
\ No newline at end of file
+}
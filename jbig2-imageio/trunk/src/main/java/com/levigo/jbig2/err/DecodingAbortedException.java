@@ -0,0 +1,38 @@
+/**
+ * Copyright (C) 1995-2014 levigo holding gmbh.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.levigo.jbig2.err;
+
+/**
+ * Is thrown if a decoding process has been stopped because an abort has been requested. The
+ * exception is unchecked, so it is able to leave every decoding loop (including the ones of the
+ * image resizing) without changing their signatures.
+ * 
+ * @see com.levigo.jbig2.util.AbortSignal
+ */
+public class DecodingAbortedException extends RuntimeException {
+
+  private static final long serialVersionUID = -2846113916542337108L;
+
+  public DecodingAbortedException() {
+  }
+
+  public DecodingAbortedException(String message) {
+    super(message);
+  }
+
+}
@@ -0,0 +1,39 @@
+/**
+ * Copyright (C) 1995-2014 levigo holding gmbh.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.levigo.jbig2.err;
+
+/**
+ * Is thrown if decoding has been stopped because the input exceeds one of the configured
+ * {@link com.levigo.jbig2.util.ResourceLimits}, e.g. a page or region declares more pixels than
+ * allowed. Unlike a plain {@link DecodingAbortedException} it is not swallowed by the reader but
+ * reaches the caller, which can reject the input then.
+ * 
+ * @see com.levigo.jbig2.util.ResourceLimits
+ */
+public class ResourceLimitExceededException extends DecodingAbortedException {
+
+  private static final long serialVersionUID = 4361025310847319524L;
+
+  public ResourceLimitExceededException() {
+  }
+
+  public ResourceLimitExceededException(String message) {
+    super(message);
+  }
+
+}
@@ -20,6 +20,8 @@ package com.levigo.jbig2.image;
 import java.awt.Dimension;
 import java.awt.Point;
 import java.awt.Rectangle;
+import java.awt.geom.AffineTransform;
+import java.awt.image.AffineTransformOp;
 import java.awt.image.BufferedImage;
 import java.awt.image.ColorModel;
 import java.awt.image.DataBuffer;
@@ -31,6 +33,8 @@ import javax.imageio.ImageReadParam;
 import com.levigo.jbig2.Bitmap;
 import com.levigo.jbig2.JBIG2ReadParam;
 import com.levigo.jbig2.util.CombinationOperator;
+import com.levigo.jbig2.util.metrics.DecodeMetrics;
+import com.levigo.jbig2.util.metrics.DecodeMetricsFactory;
 
 public class Bitmaps {
 
@@ -55,6 +59,9 @@ public class Bitmaps {
     if (param == null)
       throw new IllegalArgumentException("param must not be null");
 
+    final DecodeMetrics metrics = DecodeMetricsFactory.getDecodeMetrics();
+    final long start = metrics.isEnabled() ? System.nanoTime() : 0;
+
     final Dimension sourceRenderSize = param.getSourceRenderSize();
 
     double scaleX;
@@ -118,7 +125,15 @@ public class Bitmaps {
       }
     }
 
-    return buildRaster(bitmap, filterType, scaleX, scaleY);
+    final WritableRaster raster = buildRaster(bitmap, filterType, scaleX, scaleY);
+    reportRasterCreated(metrics, raster, start);
+    return raster;
+  }
+
+  private static void reportRasterCreated(final DecodeMetrics metrics, final WritableRaster raster, final long start) {
+    if (metrics.isEnabled()) {
+      metrics.rasterCreated((long) raster.getWidth() * raster.getHeight(), System.nanoTime() - start);
+    }
   }
 
   private static WritableRaster buildRaster(final Bitmap bitmap, final FilterType filterType, final double scaleX,
@@ -132,9 +147,16 @@ public class Bitmaps {
 
     if (scaleX != 1 || scaleY != 1) {
       // scaling required
+      final DecodeMetrics metrics = DecodeMetricsFactory.getDecodeMetrics();
+      final long start = metrics.isEnabled() ? System.nanoTime() : 0;
+
       final Resizer resizer = new Resizer(scaleX, scaleY);
       final Filter filter = Filter.byType(filterType);
       resizer.resize(bitmap, bitmap.getBounds() /* sourceRegion */, dst, dstBounds, filter, filter);
+
+      if (metrics.isEnabled()) {
+        metrics.imageScaled((long) dstBounds.width * dstBounds.height, System.nanoTime() - start);
+      }
     } else {
       // scaling not required, paste bitmap into raster pixel per pixel
       int byteIndex = 0;
@@ -190,27 +212,234 @@ public class Bitmaps {
     ColorModel cm = null;
     final boolean isScaled = scaleX != 1 || scaleY != 1;
     if (isScaled) {
-      final int size = 256;
-      final int divisor = size - 1;
+      cm = createGrayColorModel();
+    } else {
+      cm = createBinaryColorModel();
+    }
+
+    return new BufferedImage(cm, raster, false, null);
+  }
+
+  /**
+   * Creates a gray raster of the given {@link ReducedBitmap}. The source region of the given
+   * {@link ImageReadParam} is given in pixels of the page at full resolution. If a source render
+   * size is set, it refers to the whole page like in
+   * {@link #asRaster(Bitmap, ImageReadParam, FilterType)}, i.e. the cells of the source region are
+   * scaled by the ratio of the render size to the reduced page. Subsampling is not applied, the
+   * reduction replaces it.
+   * 
+   * @param bitmap - The reduced bitmap.
+   * @param param - The {@link ImageReadParam}.
+   * @return The gray raster with samples from {@code 0} (black) to {@code 255} (white).
+   */
+  public static WritableRaster asRaster(final ReducedBitmap bitmap, final ImageReadParam param) {
+    if (bitmap == null)
+      throw new IllegalArgumentException("bitmap must not be null");
+
+    if (param == null)
+      throw new IllegalArgumentException("param must not be null");
+
+    final DecodeMetrics metrics = DecodeMetricsFactory.getDecodeMetrics();
+    final long start = metrics.isEnabled() ? System.nanoTime() : 0;
+
+    final int factor = bitmap.getFactor();
+    Rectangle cells = new Rectangle(0, 0, bitmap.getWidth(), bitmap.getHeight());
+    final Rectangle sourceRegion = param.getSourceRegion();
+    if (sourceRegion != null) {
+      final int x0 = sourceRegion.x / factor;
+      final int y0 = sourceRegion.y / factor;
+      final int x1 = (sourceRegion.x + sourceRegion.width + factor - 1) / factor;
+      final int y1 = (sourceRegion.y + sourceRegion.height + factor - 1) / factor;
+      cells = cells.intersection(new Rectangle(x0, y0, x1 - x0, y1 - y0));
+    }
 
-      final byte[] gray = new byte[size];
-      for (int i = size - 1, s = 0; i >= 0; i--, s++) {
-        gray[i] = (byte) (255 - s * 255 / divisor);
+    final WritableRaster raster = WritableRaster.createInterleavedRaster(DataBuffer.TYPE_BYTE, cells.width,
+        cells.height, 1, new Point());
+    for (int y = 0; y < cells.height; y++) {
+      for (int x = 0; x < cells.width; x++) {
+        raster.setSample(x, y, 0, bitmap.getGray(cells.x + x, cells.y + y));
       }
-      cm = new IndexColorModel(8, size, gray, gray, gray);
-    } else {
+    }
+
+    final WritableRaster result = scaleToRenderSize(raster, param, bitmap.getWidth(), bitmap.getHeight());
+    reportRasterCreated(metrics, result, start);
+    return result;
+  }
+
+  /**
+   * Scales a gray raster bilinearly according to the source render size of the given
+   * {@link ImageReadParam}. Like in {@link #asRaster(Bitmap, ImageReadParam, FilterType)} the render
+   * size refers to the whole image, so the raster, which may be a part of it, is scaled by the ratio
+   * of the render size to the size of the whole image. The raster is returned as is if no source
+   * render size is set.
+   * 
+   * @param raster - The raster to scale.
+   * @param param - The {@link ImageReadParam}.
+   * @param width - The width of the whole image in pixels of the raster.
+   * @param height - The height of the whole image in pixels of the raster.
+   */
+  private static WritableRaster scaleToRenderSize(final WritableRaster raster, final ImageReadParam param,
+      final int width, final int height) {
+    final Dimension sourceRenderSize = param.getSourceRenderSize();
+    if (sourceRenderSize == null || raster.getWidth() == 0 || raster.getHeight() == 0 || width == 0 || height == 0
+        || (sourceRenderSize.width == width && sourceRenderSize.height == height)) {
+      return raster;
+    }
+
+    final DecodeMetrics metrics = DecodeMetricsFactory.getDecodeMetrics();
+    final long start = metrics.isEnabled() ? System.nanoTime() : 0;
+
+    final double scaleX = sourceRenderSize.getWidth() / width;
+    final double scaleY = sourceRenderSize.getHeight() / height;
+    final int dstWidth = Math.max(1, (int) Math.round(raster.getWidth() * scaleX));
+    final int dstHeight = Math.max(1, (int) Math.round(raster.getHeight() * scaleY));
 
-      cm = new IndexColorModel(8, 2, //
-          new byte[]{
-              0x00, (byte) 0xff
-          }, new byte[]{
-              0x00, (byte) 0xff
-          }, new byte[]{
-              0x00, (byte) 0xff
-          });
+    final WritableRaster dst = WritableRaster.createInterleavedRaster(DataBuffer.TYPE_BYTE, dstWidth, dstHeight, 1,
+        new Point());
+    final AffineTransform scale = AffineTransform.getScaleInstance((double) dstWidth / raster.getWidth(),
+        (double) dstHeight / raster.getHeight());
+    new AffineTransformOp(scale, AffineTransformOp.TYPE_BILINEAR).filter(raster, dst);
+
+    if (metrics.isEnabled()) {
+      metrics.imageScaled((long) dstWidth * dstHeight, System.nanoTime() - start);
     }
+    return dst;
+  }
 
-    return new BufferedImage(cm, raster, false, null);
+  /**
+   * Creates a gray image of the given {@link ReducedBitmap}, see
+   * {@link #asRaster(ReducedBitmap, ImageReadParam)}.
+   * 
+   * @param bitmap - The reduced bitmap.
+   * @param param - The {@link ImageReadParam}.
+   * @return The gray image.
+   */
+  public static BufferedImage asBufferedImage(final ReducedBitmap bitmap, final ImageReadParam param) {
+    return new BufferedImage(createGrayColorModel(), asRaster(bitmap, param), false, null);
+  }
+
+  /**
+   * Creates a gray raster of the given {@link GrayScaleGrid} with one pixel per cell. The source
+   * region of the given {@link ImageReadParam} is given in pixels of the page and selects the cells
+   * that overlap it. If a source render size is set, it refers to the whole grid like in
+   * {@link #asRaster(Bitmap, ImageReadParam, FilterType)}, i.e. the selected cells are interpolated
+   * by the ratio of the render size to the size of the grid. Subsampling is not applied.
+   * 
+   * @param grid - The gray-scale grid.
+   * @param param - The {@link ImageReadParam}.
+   * @return The gray raster with samples from {@code 0} (black) to {@code 255} (white).
+   */
+  public static WritableRaster asRaster(final GrayScaleGrid grid, final ImageReadParam param) {
+    if (grid == null)
+      throw new IllegalArgumentException("grid must not be null");
+
+    if (param == null)
+      throw new IllegalArgumentException("param must not be null");
+
+    final DecodeMetrics metrics = DecodeMetricsFactory.getDecodeMetrics();
+    final long start = metrics.isEnabled() ? System.nanoTime() : 0;
+
+    Rectangle cells = new Rectangle(0, 0, grid.getWidth(), grid.getHeight());
+    final Rectangle sourceRegion = param.getSourceRegion();
+    if (sourceRegion != null) {
+      final double cellSize = grid.getCellSize();
+      final int x0 = (int) Math.floor((sourceRegion.x - grid.getOriginX()) / cellSize);
+      final int y0 = (int) Math.floor((sourceRegion.y - grid.getOriginY()) / cellSize);
+      final int x1 = (int) Math.ceil((sourceRegion.x + sourceRegion.width - grid.getOriginX()) / cellSize);
+      final int y1 = (int) Math.ceil((sourceRegion.y + sourceRegion.height - grid.getOriginY()) / cellSize);
+      cells = cells.intersection(new Rectangle(x0, y0, x1 - x0, y1 - y0));
+    }
+
+    final WritableRaster raster = WritableRaster.createInterleavedRaster(DataBuffer.TYPE_BYTE, cells.width,
+        cells.height, 1, new Point());
+    for (int y = 0; y < cells.height; y++) {
+      for (int x = 0; x < cells.width; x++) {
+        raster.setSample(x, y, 0, grid.getGray(cells.x + x, cells.y + y));
+      }
+    }
+
+    final WritableRaster result = scaleToRenderSize(raster, param, grid.getWidth(), grid.getHeight());
+    reportRasterCreated(metrics, result, start);
+    return result;
+  }
+
+  /**
+   * Creates a gray image of the given {@link GrayScaleGrid}, see
+   * {@link #asRaster(GrayScaleGrid, ImageReadParam)}.
+   * 
+   * @param grid - The gray-scale grid.
+   * @param param - The {@link ImageReadParam}.
+   * @return The gray image.
+   */
+  public static BufferedImage asBufferedImage(final GrayScaleGrid grid, final ImageReadParam param) {
+    return new BufferedImage(createGrayColorModel(), asRaster(grid, param), false, null);
+  }
+
+  private static ColorModel createGrayColorModel() {
+    final int size = 256;
+    final int divisor = size - 1;
+
+    final byte[] gray = new byte[size];
+    for (int i = size - 1, s = 0; i >= 0; i--, s++) {
+      gray[i] = (byte) (255 - s * 255 / divisor);
+    }
+    return new IndexColorModel(8, size, gray, gray, gray);
+  }
+
+  /**
+   * Creates an empty image with the same raster layout and color model as an unscaled image
+   * returned by {@link #asBufferedImage(Bitmap, ImageReadParam, FilterType)}. All pixels are black
+   * until they are set, e.g. by {@link #copyRows(Bitmap, Rectangle, int, int, WritableRaster)}.
+   * 
+   * @param width - The width of the image.
+   * @param height - The height of the image.
+   * @return The created {@link BufferedImage}.
+   */
+  public static BufferedImage createBinaryImage(final int width, final int height) {
+    final WritableRaster raster = WritableRaster.createInterleavedRaster(DataBuffer.TYPE_BYTE, width, height, 1,
+        new Point());
+    return new BufferedImage(createBinaryColorModel(), raster, false, null);
+  }
+
+  private static IndexColorModel createBinaryColorModel() {
+    return new IndexColorModel(8, 2, //
+        new byte[]{
+            0x00, (byte) 0xff
+        }, new byte[]{
+            0x00, (byte) 0xff
+        }, new byte[]{
+            0x00, (byte) 0xff
+        });
+  }
+
+  /**
+   * Copies the rows {@code firstRow} to {@code firstRow + rowCount - 1} of the given bitmap into an
+   * unscaled raster. The raster's origin corresponds to the upper left corner of the region of
+   * interest, rows and columns outside of it are skipped. The pixel values are the same as in a
+   * raster returned by {@link #asRaster(Bitmap, ImageReadParam, FilterType)} without scaling.
+   * 
+   * @param src - The source bitmap.
+   * @param roi - The region of interest in source bitmap coordinates.
+   * @param firstRow - The first row of the source bitmap to copy.
+   * @param rowCount - The amount of rows to copy.
+   * @param dst - The target raster.
+   */
+  public static void copyRows(final Bitmap src, final Rectangle roi, final int firstRow, final int rowCount,
+      final WritableRaster dst) {
+    final int startY = Math.max(firstRow, roi.y);
+    final int endY = Math.min(firstRow + rowCount, roi.y + roi.height);
+    final int width = roi.width;
+
+    final byte[] line = new byte[width];
+    for (int y = startY; y < endY; y++) {
+      final int lineStartIdx = src.getByteIndex(0, y);
+      for (int x = 0; x < width; x++) {
+        final int srcX = roi.x + x;
+        // set bits are black pixels which have the index 0 in the color model
+        line[x] = (byte) (~(src.getByte(lineStartIdx + (srcX >> 3)) >> (7 - (srcX & 0x07))) & 0x1);
+      }
+      dst.setDataElements(0, y - roi.y, width, 1, line);
+    }
   }
 
   /**
@@ -0,0 +1,184 @@
+/**
+ * Copyright (C) 1995-2014 levigo holding gmbh.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.levigo.jbig2.image;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.levigo.jbig2.Bitmap;
+import com.levigo.jbig2.util.CombinationOperator;
+
+/**
+ * This class holds the symbols of a dictionary together with copies of them that are shifted by one
+ * to seven bits. A symbol instance that is drawn at an arbitrary x position can then be combined
+ * with the target byte by byte like an instance that starts at a byte boundary.
+ * <p>
+ * A shifted copy is created when it is used the first time. The memory of all copies is limited, if
+ * the limit is reached symbols are drawn with {@link Bitmaps#blit(Bitmap, Bitmap, int, int, CombinationOperator)}.
+ */
+public class GlyphCache {
+
+  /** The default limit of the memory used by the shifted copies of one dictionary in bytes */
+  public static final long DEFAULT_MAX_MEMORY = 4L << 20;
+
+  private final List<Glyph> glyphs;
+
+  private final long maxMemory;
+
+  private long memorySize;
+
+  /**
+   * @param symbols - The symbols of the dictionary.
+   * @param maxMemory - The maximum memory in bytes used by the shifted copies.
+   */
+  public GlyphCache(final List<Bitmap> symbols, final long maxMemory) {
+    this.maxMemory = maxMemory;
+    this.glyphs = new ArrayList<Glyph>(symbols.size());
+    for (Bitmap symbol : symbols) {
+      glyphs.add(new Glyph(symbol));
+    }
+  }
+
+  /**
+   * @return The glyphs in the order of the symbols this cache was created with.
+   */
+  public List<Glyph> getGlyphs() {
+    return glyphs;
+  }
+
+  /**
+   * @return The memory in bytes currently used by the shifted copies.
+   */
+  public synchronized long getMemorySize() {
+    return memorySize;
+  }
+
+  private synchronized byte[] getShifted(final Glyph glyph, final int shift) {
+    byte[] shifted = glyph.shifted[shift];
+    if (null == shifted) {
+      final Bitmap bitmap = glyph.bitmap;
+      final int size = glyph.getShiftedRowStride(shift) * bitmap.getHeight();
+      if (memorySize + size > maxMemory) {
+        return null;
+      }
+      shifted = shift(bitmap, shift);
+      glyph.shifted[shift] = shifted;
+      memorySize += size;
+    }
+    return shifted;
+  }
+
+  /**
+   * Creates a copy of the bitmap's data that is shifted to the right by the given amount of bits.
+   * Bits behind the width of the bitmap are cleared.
+   */
+  private static byte[] shift(final Bitmap bitmap, final int shift) {
+    final int rowStride = bitmap.getRowStride();
+    final int shiftedRowStride = (bitmap.getWidth() + shift + 7) >> 3;
+    final int padding = (rowStride << 3) - bitmap.getWidth();
+    final byte[] src = bitmap.getByteArray();
+    final byte[] dst = new byte[shiftedRowStride * bitmap.getHeight()];
+
+    for (int line = 0, srcIdx = 0, dstIdx = 0; line < bitmap.getHeight(); line++, srcIdx += rowStride, dstIdx += shiftedRowStride) {
+      for (int i = 0; i < rowStride; i++) {
+        int value = src[srcIdx + i] & 0xff;
+        if (i == rowStride - 1) {
+          value = value >> padding << padding;
+        }
+
+        dst[dstIdx + i] |= value >> shift;
+        if (i + 1 < shiftedRowStride) {
+          dst[dstIdx + i + 1] |= value << (8 - shift);
+        }
+      }
+    }
+
+    return dst;
+  }
+
+  /**
+   * A symbol of the dictionary together with its shifted copies.
+   */
+  public final class Glyph {
+
+    private final Bitmap bitmap;
+
+    /** The shifted copies, indexed by the shift. Index 0 is never used. */
+    private final byte[][] shifted = new byte[8][];
+
+    private Glyph(final Bitmap bitmap) {
+      this.bitmap = bitmap;
+    }
+
+    public Bitmap getBitmap() {
+      return bitmap;
+    }
+
+    private int getShiftedRowStride(final int shift) {
+      return (bitmap.getWidth() + shift + 7) >> 3;
+    }
+
+    /**
+     * Combines this glyph with the given bitmap. The result is the same as of
+     * {@link Bitmaps#blit(Bitmap, Bitmap, int, int, CombinationOperator)}.
+     * 
+     * @param dst - The target bitmap.
+     * @param x - The x coordinate of the upper left corner of the glyph.
+     * @param y - The y coordinate of the upper left corner of the glyph.
+     * @param op - The combination operator.
+     */
+    public void blit(final Bitmap dst, final int x, final int y, final CombinationOperator op) {
+      final int shift = x & 0x07;
+
+      /*
+       * Only OR and XOR leave the target untouched where the shifted copy is 0. Symbols that are
+       * aligned or not completely inside the target are handled by Bitmaps.
+       */
+      if (shift == 0 || (op != CombinationOperator.OR && op != CombinationOperator.XOR) || x < 0 || y < 0
+          || x + bitmap.getWidth() > dst.getWidth() || y + bitmap.getHeight() > dst.getHeight()) {
+        Bitmaps.blit(bitmap, dst, x, y, op);
+        return;
+      }
+
+      final byte[] src = getShifted(this, shift);
+      if (null == src) {
+        Bitmaps.blit(bitmap, dst, x, y, op);
+        return;
+      }
+
+      final byte[] dstData = dst.getByteArray();
+      final int srcRowStride = getShiftedRowStride(shift);
+      final int dstRowStride = dst.getRowStride();
+      final int height = bitmap.getHeight();
+
+      if (op == CombinationOperator.OR) {
+        for (int line = 0, srcIdx = 0, dstIdx = dst.getByteIndex(x, y); line < height; line++, dstIdx += dstRowStride) {
+          for (int i = 0; i < srcRowStride; i++) {
+            dstData[dstIdx + i] |= src[srcIdx++];
+          }
+        }
+      } else {
+        for (int line = 0, srcIdx = 0, dstIdx = dst.getByteIndex(x, y); line < height; line++, dstIdx += dstRowStride) {
+          for (int i = 0; i < srcRowStride; i++) {
+            dstData[dstIdx + i] ^= src[srcIdx++];
+          }
+        }
+      }
+    }
+  }
+}
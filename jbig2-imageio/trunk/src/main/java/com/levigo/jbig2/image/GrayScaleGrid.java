@@ -0,0 +1,133 @@
+/**
+ * Copyright (C) 1995-2014 levigo holding gmbh.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.levigo.jbig2.image;
+
+import com.levigo.jbig2.err.ResourceLimitExceededException;
+import com.levigo.jbig2.util.ResourceBudget;
+
+/**
+ * This class represents the cells of a halftone grid as gray values. Each cell holds the gray
+ * level of the pattern that would be drawn into it, so the grid is a low resolution image of the
+ * halftone region that can be shown without rendering the patterns.
+ * <p>
+ * The grid is not rotated. Its first cell starts at {@code (originX, originY)} in pixels of the
+ * page and the cells are {@code cellSize} pixels apart in both directions.
+ */
+public class GrayScaleGrid {
+
+  /** The amount of cells per row */
+  private final int width;
+
+  /** The amount of cell rows */
+  private final int height;
+
+  /** The horizontal position of the first cell in pixels of the page */
+  private final int originX;
+
+  /** The vertical position of the first cell in pixels of the page */
+  private final int originY;
+
+  /** The distance of the cells in pixels of the page */
+  private final double cellSize;
+
+  /** The gray values of the cells, row by row */
+  private final byte[] gray;
+
+  /**
+   * Creates a black grid.
+   * 
+   * @param width - The amount of cells per row.
+   * @param height - The amount of cell rows.
+   * @param originX - The horizontal position of the first cell in pixels of the page.
+   * @param originY - The vertical position of the first cell in pixels of the page.
+   * @param cellSize - The distance of the cells in pixels of the page.
+   */
+  public GrayScaleGrid(final int width, final int height, final int originX, final int originY,
+      final double cellSize) {
+    if (cellSize <= 0)
+      throw new IllegalArgumentException("Illegal cell size: shall be greater than 0; but was " + cellSize);
+
+    this.width = width;
+    this.height = height;
+    this.originX = originX;
+    this.originY = originY;
+    this.cellSize = cellSize;
+
+    final long size = (long) width * height;
+    if (size > Integer.MAX_VALUE) {
+      throw new ResourceLimitExceededException("Gray-scale grid of " + width + "x" + height + " cells is too large");
+    }
+    ResourceBudget.allocate(size);
+
+    this.gray = new byte[(int) size];
+  }
+
+  /**
+   * Returns the gray value of the given cell, ranging from {@code 0} for black to {@code 255} for
+   * white.
+   */
+  public int getGray(final int x, final int y) {
+    return gray[y * width + x] & 0xff;
+  }
+
+  /**
+   * Sets the gray value of the given cell.
+   * 
+   * @param x - The column of the cell.
+   * @param y - The row of the cell.
+   * @param value - The gray value from {@code 0} (black) to {@code 255} (white).
+   */
+  public void setGray(final int x, final int y, final int value) {
+    gray[y * width + x] = (byte) value;
+  }
+
+  /**
+   * @return The amount of cells per row.
+   */
+  public int getWidth() {
+    return width;
+  }
+
+  /**
+   * @return The amount of cell rows.
+   */
+  public int getHeight() {
+    return height;
+  }
+
+  /**
+   * @return The horizontal position of the first cell in pixels of the page.
+   */
+  public int getOriginX() {
+    return originX;
+  }
+
+  /**
+   * @return The vertical position of the first cell in pixels of the page.
+   */
+  public int getOriginY() {
+    return originY;
+  }
+
+  /**
+   * @return The distance of the cells in pixels of the page.
+   */
+  public double getCellSize() {
+    return cellSize;
+  }
+}
@@ -0,0 +1,94 @@
+/**
+ * Copyright (C) 1995-2014 levigo holding gmbh.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.levigo.jbig2.image;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.levigo.jbig2.Bitmap;
+
+/**
+ * This class holds the reductions of a bitmap for the phases of the cell grid it is drawn with, see
+ * {@link ReducedBitmap}. A reduction is created when it is used the first time, so a symbol or
+ * pattern that is drawn repeatedly is reduced at most once per phase.
+ */
+public class PhasedReduction {
+
+  private final Bitmap bitmap;
+  private final int factor;
+
+  /** The reductions, indexed by {@code phaseY * factor + phaseX} */
+  private final ReducedBitmap[] reductions;
+
+  /**
+   * @param bitmap - The bitmap to reduce.
+   * @param factor - The reduction factor, see {@link ReducedBitmap#isValidFactor(int)}.
+   */
+  public PhasedReduction(final Bitmap bitmap, final int factor) {
+    if (!ReducedBitmap.isValidFactor(factor)) {
+      throw new IllegalArgumentException("Illegal reduction factor: shall be 1, 2, 4 or 8; but was " + factor);
+    }
+
+    this.bitmap = bitmap;
+    this.factor = factor;
+    this.reductions = new ReducedBitmap[factor * factor];
+  }
+
+  /**
+   * Creates the phased reductions of all given bitmaps, e.g. of the symbols or patterns of a
+   * dictionary.
+   * 
+   * @param bitmaps - The bitmaps to reduce.
+   * @param factor - The reduction factor.
+   * @return The phased reductions in the same order.
+   */
+  public static ArrayList<PhasedReduction> of(final List<Bitmap> bitmaps, final int factor) {
+    final ArrayList<PhasedReduction> reductions = new ArrayList<PhasedReduction>(bitmaps.size());
+    for (Bitmap bitmap : bitmaps) {
+      reductions.add(new PhasedReduction(bitmap, factor));
+    }
+    return reductions;
+  }
+
+  /**
+   * @param phaseX - The horizontal phase of the cell grid.
+   * @param phaseY - The vertical phase of the cell grid.
+   * @return The reduction of the bitmap for the given phase.
+   */
+  public ReducedBitmap get(final int phaseX, final int phaseY) {
+    final int index = phaseY * factor + phaseX;
+    if (null == reductions[index]) {
+      reductions[index] = ReducedBitmap.reduce(bitmap, factor, phaseX, phaseY);
+    }
+    return reductions[index];
+  }
+
+  /**
+   * @return The bitmap at full resolution.
+   */
+  public Bitmap getBitmap() {
+    return bitmap;
+  }
+
+  /**
+   * @return The reduction factor.
+   */
+  public int getFactor() {
+    return factor;
+  }
+}
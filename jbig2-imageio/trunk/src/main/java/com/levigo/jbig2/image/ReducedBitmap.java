@@ -0,0 +1,335 @@
+/**
+ * Copyright (C) 1995-2014 levigo holding gmbh.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.levigo.jbig2.image;
+
+import com.levigo.jbig2.Bitmap;
+import com.levigo.jbig2.err.ResourceLimitExceededException;
+import com.levigo.jbig2.util.CombinationOperator;
+import com.levigo.jbig2.util.ResourceBudget;
+
+/**
+ * This class represents a bi-level image at a reduced resolution. Each pixel (cell) of it covers
+ * {@code factor x factor} pixels of the bi-level image and holds the amount of black pixels among
+ * them. The cells can be rendered as gray values, so the image is suitable for previews and
+ * thumbnails without keeping the image at its full resolution.
+ * <p>
+ * The cell grid may be shifted by a phase. This allows to reduce a region of a page in a way that
+ * its cells coincide with the cells of the reduced page.
+ */
+public class ReducedBitmap {
+
+  /** The amount of pixels in each direction that is covered by a cell */
+  private final int factor;
+
+  /** {@code log2(factor)} */
+  private final int shift;
+
+  /** The width of the bi-level image in pixels */
+  private final int width;
+
+  /** The height of the bi-level image in pixels */
+  private final int height;
+
+  /** The amount of pixels the first cell column starts left of the image */
+  private final int phaseX;
+
+  /** The amount of pixels the first cell row starts above of the image */
+  private final int phaseY;
+
+  /** The amount of cells per row */
+  private final int reducedWidth;
+
+  /** The amount of cell rows */
+  private final int reducedHeight;
+
+  /** The amount of black pixels per cell, row by row */
+  private final byte[] coverage;
+
+  /**
+   * Creates a blank (white) reduced bitmap.
+   * 
+   * @param width - The width of the bi-level image in pixels.
+   * @param height - The height of the bi-level image in pixels.
+   * @param factor - The reduction factor, see {@link #isValidFactor(int)}.
+   */
+  public ReducedBitmap(final int width, final int height, final int factor) {
+    this(width, height, factor, 0, 0);
+  }
+
+  /**
+   * Creates a blank (white) reduced bitmap whose cell grid is shifted by the given phase. The pixel
+   * {@code (x, y)} of the bi-level image belongs to the cell
+   * {@code ((x + phaseX) / factor, (y + phaseY) / factor)}.
+   * 
+   * @param width - The width of the bi-level image in pixels.
+   * @param height - The height of the bi-level image in pixels.
+   * @param factor - The reduction factor, see {@link #isValidFactor(int)}.
+   * @param phaseX - The horizontal phase, {@code 0 <= phaseX < factor}.
+   * @param phaseY - The vertical phase, {@code 0 <= phaseY < factor}.
+   */
+  public ReducedBitmap(final int width, final int height, final int factor, final int phaseX, final int phaseY) {
+    if (!isValidFactor(factor)) {
+      throw new IllegalArgumentException("Illegal reduction factor: shall be 1, 2, 4 or 8; but was " + factor);
+    }
+    if (phaseX < 0 || phaseX >= factor || phaseY < 0 || phaseY >= factor) {
+      throw new IllegalArgumentException("Illegal phase: shall be 0 or greater and less than " + factor
+          + "; but was phaseX=" + phaseX + ", phaseY=" + phaseY);
+    }
+
+    this.factor = factor;
+    this.shift = Integer.numberOfTrailingZeros(factor);
+    this.width = width;
+    this.height = height;
+    this.phaseX = phaseX;
+    this.phaseY = phaseY;
+    this.reducedWidth = (phaseX + width + factor - 1) >> shift;
+    this.reducedHeight = (phaseY + height + factor - 1) >> shift;
+
+    final long size = (long) reducedWidth * reducedHeight;
+    if (size > Integer.MAX_VALUE) {
+      throw new ResourceLimitExceededException("Reduced bitmap of " + reducedWidth + "x" + reducedHeight
+          + " pixels is too large");
+    }
+    ResourceBudget.allocate(size);
+
+    this.coverage = new byte[(int) size];
+  }
+
+  /**
+   * @param factor - The reduction factor to check.
+   * @return {@code true} if the factor is 1, 2, 4 or 8.
+   */
+  public static boolean isValidFactor(final int factor) {
+    return factor == 1 || factor == 2 || factor == 4 || factor == 8;
+  }
+
+  /**
+   * Reduces the given bi-level image.
+   * 
+   * @param src - The image to reduce.
+   * @param factor - The reduction factor.
+   * @param phaseX - The horizontal phase of the cell grid.
+   * @param phaseY - The vertical phase of the cell grid.
+   * @return The reduced image.
+   */
+  public static ReducedBitmap reduce(final Bitmap src, final int factor, final int phaseX, final int phaseY) {
+    final ReducedBitmap reduced = new ReducedBitmap(src.getWidth(), src.getHeight(), factor, phaseX, phaseY);
+    reduced.accumulate(src);
+    return reduced;
+  }
+
+  /**
+   * Adds the black pixels of the given bi-level image to the cells. The image must have the width
+   * and height of this reduced bitmap's bi-level image.
+   * 
+   * @param src - The image to add.
+   */
+  public void accumulate(final Bitmap src) {
+    if (src.getWidth() != width || src.getHeight() != height) {
+      throw new IllegalArgumentException("Bitmap size " + src.getWidth() + "x" + src.getHeight()
+          + " doesn't match " + width + "x" + height);
+    }
+
+    final byte[] data = src.getByteArray();
+    final int rowStride = src.getRowStride();
+    final int cellsPerByte = 8 >> shift;
+    final int cellMask = (1 << factor) - 1;
+
+    for (int y = 0; y < height; y++) {
+      final int rowOffset = ((y + phaseY) >> shift) * reducedWidth;
+
+      for (int x = 0, byteIndex = y * rowStride; x < width; x += 8, byteIndex++) {
+        int value = data[byteIndex] & 0xff;
+        if (x + 8 > width) {
+          // ignore the padding bits
+          value &= 0xff << (8 - (width - x));
+        }
+
+        if (value == 0) {
+          continue;
+        }
+
+        if (phaseX == 0) {
+          // cells are aligned to the byte boundaries
+          final int firstCell = rowOffset + (x >> shift);
+          for (int i = 0; i < cellsPerByte; i++) {
+            final int bits = (value >> (8 - (i + 1) * factor)) & cellMask;
+            if (bits != 0) {
+              coverage[firstCell + i] += Integer.bitCount(bits);
+            }
+          }
+        } else {
+          for (int bit = 0; bit < 8; bit++) {
+            if ((value & (0x80 >> bit)) != 0) {
+              coverage[rowOffset + ((x + bit + phaseX) >> shift)]++;
+            }
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * Sets all pixels of the bi-level image to black.
+   */
+  public void fill() {
+    for (int y = 0; y < reducedHeight; y++) {
+      final int cellHeight = getCellExtent(y, phaseY, height);
+      for (int x = 0; x < reducedWidth; x++) {
+        coverage[y * reducedWidth + x] = (byte) (cellHeight * getCellExtent(x, phaseX, width));
+      }
+    }
+  }
+
+  /**
+   * Combines the given reduced bitmap with this one. As the arrangement of pixels inside of the
+   * cells is unknown, the result is an approximation of reducing the combined bi-level images
+   * unless the operator is {@link CombinationOperator#OR} and the black pixels don't overlap.
+   * 
+   * @param src - The reduced bitmap to combine with this one. It must have the same factor.
+   * @param cellX - The column of the cell where the first cell of {@code src} is placed.
+   * @param cellY - The row of the cell where the first cell of {@code src} is placed.
+   * @param op - The combination operator.
+   */
+  public void combine(final ReducedBitmap src, final int cellX, final int cellY, final CombinationOperator op) {
+    if (src.factor != factor) {
+      throw new IllegalArgumentException("Reduction factors differ: " + src.factor + " != " + factor);
+    }
+
+    final int startX = Math.max(0, -cellX);
+    final int endX = Math.min(src.reducedWidth, reducedWidth - cellX);
+    final int startY = Math.max(0, -cellY);
+    final int endY = Math.min(src.reducedHeight, reducedHeight - cellY);
+
+    for (int y = startY; y < endY; y++) {
+      final int dstY = y + cellY;
+      final int srcHeight = src.getCellExtent(y, src.phaseY, src.height);
+      final int dstHeight = getCellExtent(dstY, phaseY, height);
+
+      for (int x = startX; x < endX; x++) {
+        final int dstX = x + cellX;
+        final int dstIdx = dstY * reducedWidth + dstX;
+
+        final int area = srcHeight * src.getCellExtent(x, src.phaseX, src.width);
+        final int capacity = dstHeight * getCellExtent(dstX, phaseX, width);
+        final int a = coverage[dstIdx];
+        final int b = src.coverage[y * src.reducedWidth + x];
+
+        final int result;
+        switch (op){
+          case OR :
+            result = a + b;
+            break;
+          case AND :
+            result = a - (area - b);
+            break;
+          case XOR :
+            result = Math.abs(a - b);
+            break;
+          case XNOR :
+            result = Math.abs(a - (area - b));
+            break;
+          default :
+            // keep the part of the cell that isn't covered by src
+            result = capacity > 0 ? a - a * Math.min(area, capacity) / capacity + b : 0;
+            break;
+        }
+
+        coverage[dstIdx] = (byte) Math.max(0, Math.min(capacity, result));
+      }
+    }
+  }
+
+  /**
+   * Reduces the given bi-level image and combines it with this one. The cell grid of the image is
+   * aligned to the cell grid of this reduced bitmap, so its position is not rounded.
+   * 
+   * @param src - The bi-level image to combine with this one.
+   * @param x - The x coordinate of the first pixel of {@code src}.
+   * @param y - The y coordinate of the first pixel of {@code src}.
+   * @param op - The combination operator.
+   */
+  public void combine(final Bitmap src, final int x, final int y, final CombinationOperator op) {
+    final int mask = factor - 1;
+    final ReducedBitmap reduced = reduce(src, factor, (x + phaseX) & mask, (y + phaseY) & mask);
+    combine(reduced, (x + phaseX) >> shift, (y + phaseY) >> shift, op);
+  }
+
+  /**
+   * Like {@link #combine(Bitmap, int, int, CombinationOperator)}, but the bi-level image is taken
+   * from the given {@link PhasedReduction}, so that it is reduced at most once per phase.
+   * 
+   * @param src - The phased reduction of the image. It must have the same factor.
+   * @param x - The x coordinate of the first pixel of the image.
+   * @param y - The y coordinate of the first pixel of the image.
+   * @param op - The combination operator.
+   */
+  public void combine(final PhasedReduction src, final int x, final int y, final CombinationOperator op) {
+    final int mask = factor - 1;
+    combine(src.get((x + phaseX) & mask, (y + phaseY) & mask), (x + phaseX) >> shift, (y + phaseY) >> shift, op);
+  }
+
+  /**
+   * @return The amount of pixels of the given cell that belong to the bi-level image.
+   */
+  public int getCellArea(final int x, final int y) {
+    return getCellExtent(x, phaseX, width) * getCellExtent(y, phaseY, height);
+  }
+
+  private int getCellExtent(final int cell, final int phase, final int size) {
+    final int start = (cell << shift) - phase;
+    return Math.max(0, Math.min(start + factor, size) - Math.max(start, 0));
+  }
+
+  /**
+   * @return The amount of black pixels in the given cell.
+   */
+  public int getCoverage(final int x, final int y) {
+    return coverage[y * reducedWidth + x];
+  }
+
+  /**
+   * Returns the gray value of the given cell, ranging from {@code 0} for a cell with black pixels
+   * only to {@code 255} for a cell with white pixels only.
+   */
+  public int getGray(final int x, final int y) {
+    final int area = getCellArea(x, y);
+    return 255 - (getCoverage(x, y) * 255 + (area >> 1)) / area;
+  }
+
+  /**
+   * @return The reduction factor.
+   */
+  public int getFactor() {
+    return factor;
+  }
+
+  /**
+   * @return The amount of cells per row.
+   */
+  public int getWidth() {
+    return reducedWidth;
+  }
+
+  /**
+   * @return The amount of cell rows.
+   */
+  public int getHeight() {
+    return reducedHeight;
+  }
+}
@@ -21,6 +21,7 @@ import java.awt.Rectangle;
 import java.awt.image.WritableRaster;
 
 import com.levigo.jbig2.Bitmap;
+import com.levigo.jbig2.util.AbortSignal;
 import com.levigo.jbig2.util.Utils;
 
 class Resizer {
@@ -215,6 +216,8 @@ class Resizer {
 
     // loop over dest scanlines
     for (int dstY = dstY0; dstY < dstY1; dstY++) {
+      AbortSignal.checkAborted();
+
       // a sampled filter for source pixels for each dest x position
       final Weighttab yWeight = new Weighttab(yFilter, weightOne, mappingY.mapPixelCenter(dstY), srcY0, srcY1 - 1, true);
 
@@ -288,6 +291,8 @@ class Resizer {
 
     // loop over destination scanlines
     for (int dstY = dstY0; dstY < dstY1; dstY++) {
+      AbortSignal.checkAborted();
+
       // prepare a weighttab for destination y position by a single sampled filter for current y
       // position
       final Weighttab yWeight = new Weighttab(yFilter, weightOne, mappingY.mapPixelCenter(dstY), srcY0, srcY1 - 1, true);
@@ -0,0 +1,360 @@
+/**
+ * Copyright (C) 1995-2014 levigo holding gmbh.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.levigo.jbig2.image;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import com.levigo.jbig2.Bitmap;
+import com.levigo.jbig2.err.DecodingAbortedException;
+import com.levigo.jbig2.util.CombinationOperator;
+import com.levigo.jbig2.util.DecoderExecutors;
+
+/**
+ * Draws symbol instances on a separate thread, so that entropy decoding and drawing of a text region
+ * can run on different processors. Instances are collected in batches of primitive arrays and handed
+ * over in the order they were added, so the result is the same as if they were drawn directly. The
+ * amount of batches is fixed, which limits the memory used by the pipeline: if the drawing thread
+ * falls behind, {@link #add(Bitmap, GlyphCache.Glyph, int, int)} waits until a batch has been
+ * drawn.
+ * <p>
+ * The drawing task runs on an executor, see {@link DecoderExecutors}. If it hasn't started when the
+ * decoding thread would have to wait for it, e.g. because all threads of the executor are busy, the
+ * decoding thread draws the instances itself.
+ */
+public class SymbolBlitter {
+
+  private static final int BATCH_SIZE = 512;
+
+  /** The amount of batches that can be filled while others are drawn */
+  private static final int BATCHES = 4;
+
+  /** How often the decoding thread checks in milliseconds whether the drawing task is still alive */
+  private static final long POLL_INTERVAL = 100;
+
+  private final Bitmap dst;
+  private final CombinationOperator op;
+
+  /** Batches that are ready to be drawn, in order. An empty batch terminates the drawing thread. */
+  private final BlockingQueue<Batch> filled = new ArrayBlockingQueue<Batch>(BATCHES + 1);
+
+  /** Batches that can be filled */
+  private final BlockingQueue<Batch> free = new ArrayBlockingQueue<Batch>(BATCHES);
+
+  private final Future<?> drawing;
+
+  /** Set by the thread that draws the instances: the drawing task or the decoding thread */
+  private final AtomicBoolean started = new AtomicBoolean();
+
+  /** Set if the decoding thread draws the instances itself */
+  private boolean inline;
+
+  private Batch current;
+
+  private boolean closed;
+
+  /** Set if the instances are not needed anymore, the drawing thread skips the remaining batches */
+  private volatile boolean cancelled;
+
+  /** The first failure of the drawing thread, rethrown by {@link #finish()} */
+  private volatile RuntimeException failure;
+
+  /**
+   * Starts the drawing task on the executor of the current decoding process, see
+   * {@link DecoderExecutors#current()}.
+   * 
+   * @param dst - The bitmap to draw into.
+   * @param op - The combination operator.
+   */
+  public SymbolBlitter(final Bitmap dst, final CombinationOperator op) {
+    this(dst, op, DecoderExecutors.current());
+  }
+
+  /**
+   * Starts the drawing task on the given executor. The instances are drawn by the decoding thread if
+   * the executor rejects the task.
+   * 
+   * @param dst - The bitmap to draw into.
+   * @param op - The combination operator.
+   * @param executor - The executor that runs the drawing task.
+   */
+  public SymbolBlitter(final Bitmap dst, final CombinationOperator op, final ExecutorService executor) {
+    this.dst = dst;
+    this.op = op;
+
+    for (int i = 0; i < BATCHES; i++) {
+      free.add(new Batch());
+    }
+
+    Future<?> task;
+    try {
+      task = executor.submit(new Runnable() {
+        public void run() {
+          if (started.compareAndSet(false, true)) {
+            draw();
+          }
+        }
+      });
+    } catch (RejectedExecutionException e) {
+      task = null;
+      started.set(true);
+      inline = true;
+    }
+    drawing = task;
+  }
+
+  /**
+   * Adds a symbol instance.
+   * 
+   * @param symbol - The symbol bitmap.
+   * @param glyph - The glyph of the symbol or {@code null} if the symbol has been refined.
+   * @param x - The x coordinate of the upper left corner of the symbol.
+   * @param y - The y coordinate of the upper left corner of the symbol.
+   */
+  public void add(final Bitmap symbol, final GlyphCache.Glyph glyph, final int x, final int y) {
+    if (null == current) {
+      current = nextBatch();
+    }
+
+    final int i = current.size++;
+    current.symbols[i] = symbol;
+    current.glyphs[i] = glyph;
+    current.xs[i] = x;
+    current.ys[i] = y;
+
+    if (current.size == BATCH_SIZE) {
+      if (inline) {
+        drawBatch(current);
+        current.clear();
+      } else {
+        put(current);
+        current = null;
+      }
+    }
+  }
+
+  /**
+   * Waits until all added symbol instances have been drawn.
+   */
+  public void finish() {
+    if (inline) {
+      if (null != current) {
+        drawBatch(current);
+        current.clear();
+      }
+      current = null;
+      closed = true;
+    } else {
+      if (null != current && current.size > 0) {
+        put(current);
+      }
+      current = null;
+      close();
+
+      if (started.compareAndSet(false, true)) {
+        // the drawing task hasn't started yet, so it won't
+        drawing.cancel(false);
+        drawFilled();
+      } else {
+        awaitDrawing();
+      }
+    }
+
+    if (null != failure) {
+      throw failure;
+    }
+  }
+
+  private void awaitDrawing() {
+    try {
+      drawing.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new DecodingAbortedException("Interrupted while drawing symbol instances");
+    } catch (ExecutionException e) {
+      final Throwable cause = e.getCause();
+      if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      } else if (cause instanceof Error) {
+        throw (Error) cause;
+      }
+      throw new IllegalStateException(cause);
+    }
+  }
+
+  /**
+   * Stops drawing without waiting for the remaining symbol instances. Does nothing if
+   * {@link #finish()} has been called before.
+   */
+  public void cancel() {
+    if (!closed) {
+      cancelled = true;
+      close();
+      if (!inline && started.compareAndSet(false, true)) {
+        drawing.cancel(false);
+      }
+    }
+  }
+
+  private void close() {
+    closed = true;
+    if (!inline) {
+      put(new Batch(0));
+    }
+  }
+
+  /**
+   * @return A batch to fill. If there is none and the drawing task hasn't started yet, the decoding
+   *         thread draws the filled batches and all following instances itself. Otherwise it waits
+   *         for the drawing task to hand back a batch.
+   */
+  private Batch nextBatch() {
+    final Batch batch = free.poll();
+    if (null != batch) {
+      return batch;
+    }
+
+    if (!started.compareAndSet(false, true)) {
+      return takeFree();
+    }
+
+    drawing.cancel(false);
+    inline = true;
+    drawFilled();
+    return free.poll();
+  }
+
+  /**
+   * Draws the batches that have been handed over to the drawing task, on the decoding thread.
+   */
+  private void drawFilled() {
+    for (Batch batch = filled.poll(); null != batch; batch = filled.poll()) {
+      if (batch.symbols.length > 0) {
+        drawBatch(batch);
+        batch.clear();
+        free.add(batch);
+      }
+    }
+  }
+
+  /**
+   * Waits for a batch to be drawn. Fails with the failure of the drawing task, if the task ended
+   * without handing back the batches, e.g. because of an {@link Error} or an interrupt.
+   */
+  private Batch takeFree() {
+    try {
+      for (;;) {
+        final Batch batch = free.poll(POLL_INTERVAL, TimeUnit.MILLISECONDS);
+        if (null != batch) {
+          return batch;
+        }
+
+        if (drawing.isDone()) {
+          awaitDrawing();
+          throw new IllegalStateException("Drawing of symbol instances ended unexpectedly");
+        }
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new DecodingAbortedException("Interrupted while drawing symbol instances");
+    }
+  }
+
+  private void draw() {
+    for (;;) {
+      final Batch batch = take(filled);
+      if (batch.symbols.length == 0) {
+        return;
+      }
+
+      drawBatch(batch);
+      batch.clear();
+      free.add(batch);
+    }
+  }
+
+  private void drawBatch(final Batch batch) {
+    if (!cancelled) {
+      try {
+        for (int i = 0; i < batch.size; i++) {
+          if (null != batch.glyphs[i]) {
+            batch.glyphs[i].blit(dst, batch.xs[i], batch.ys[i], op);
+          } else {
+            Bitmaps.blit(batch.symbols[i], dst, batch.xs[i], batch.ys[i], op);
+          }
+        }
+      } catch (RuntimeException e) {
+        // keep on taking batches, otherwise the decoding thread might wait forever
+        failure = e;
+        cancelled = true;
+      }
+    }
+  }
+
+  private void put(final Batch batch) {
+    try {
+      filled.put(batch);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new DecodingAbortedException("Interrupted while drawing symbol instances");
+    }
+  }
+
+  private static Batch take(final BlockingQueue<Batch> queue) {
+    try {
+      return queue.take();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new DecodingAbortedException("Interrupted while drawing symbol instances");
+    }
+  }
+
+  private static final class Batch {
+    final Bitmap[] symbols;
+    final GlyphCache.Glyph[] glyphs;
+    final int[] xs;
+    final int[] ys;
+    int size;
+
+    Batch() {
+      this(BATCH_SIZE);
+    }
+
+    Batch(final int capacity) {
+      symbols = new Bitmap[capacity];
+      glyphs = new GlyphCache.Glyph[capacity];
+      xs = new int[capacity];
+      ys = new int[capacity];
+    }
+
+    void clear() {
+      // don't keep refined symbols alive
+      for (int i = 0; i < size; i++) {
+        symbols[i] = null;
+        glyphs[i] = null;
+      }
+      size = 0;
+    }
+  }
+}
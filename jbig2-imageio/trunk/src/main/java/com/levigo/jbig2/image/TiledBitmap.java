@@ -0,0 +1,446 @@
+/**
+ * Copyright (C) 1995-2014 levigo holding gmbh.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.levigo.jbig2.image;
+
+import java.awt.Rectangle;
+import java.util.Arrays;
+
+import com.levigo.jbig2.Bitmap;
+import com.levigo.jbig2.err.ResourceLimitExceededException;
+import com.levigo.jbig2.util.CombinationOperator;
+
+/**
+ * This class represents a bi-level page that is divided into square tiles. Initially all tiles are
+ * uniform and hold the default pixel value of the page. A tile is allocated only if a blit changes
+ * some, but not all of its pixels. Uniform tiles share one constant bitmap per pixel value, so a
+ * mostly white page needs only a fraction of the memory of a {@link Bitmap}, and blitting skips
+ * tiles that aren't changed by the blitted area, e.g. blank parts of a text region.
+ * <p>
+ * All tiles have the same size. Tiles at the right and bottom edge exceed the page, their pixels
+ * outside of the page are undefined.
+ * <p>
+ * Since every tile is a separate {@link Bitmap}, the page itself isn't limited to the size of an
+ * array. Pages of more than {@code 2^31} pixels, e.g. large posters or long scans, can be composed
+ * as long as each tile and each blitted region fits into an array.
+ */
+public class TiledBitmap {
+
+  /** The tile size used if nothing else is requested */
+  public static final int DEFAULT_TILE_SIZE = 256;
+
+  /** The width of the page in pixels */
+  private final int width;
+
+  /** The height of the page in pixels */
+  private final int height;
+
+  /** The width and height of a tile in pixels */
+  private final int tileSize;
+
+  /** {@code log2(tileSize)} */
+  private final int tileShift;
+
+  /** The amount of tiles per row */
+  private final int tilesAcross;
+
+  /** The amount of tile rows */
+  private final int tilesDown;
+
+  /** The allocated tiles row by row, {@code null} for uniform tiles */
+  private final Bitmap[] tiles;
+
+  /** The pixel value of uniform tiles, {@code 0} or {@code 1} */
+  private final byte[] uniformValues;
+
+  /** The shared bitmaps of uniform tiles, indexed by pixel value, created on first access */
+  private final Bitmap[] uniformTiles = new Bitmap[2];
+
+  /**
+   * Creates a page with uniform tiles.
+   * 
+   * @param width - The width of the page in pixels.
+   * @param height - The height of the page in pixels.
+   * @param tileSize - The width and height of a tile in pixels, a power of two and at least 8.
+   * @param defaultPixelValue - The initial value of all pixels, {@code 0} or {@code 1}.
+   * @throws ResourceLimitExceededException if there are too many tiles to be referenced by an array.
+   */
+  public TiledBitmap(final int width, final int height, final int tileSize, final int defaultPixelValue) {
+    if (width < 0 || height < 0) {
+      throw new IllegalArgumentException("Illegal size: shall be 0 or greater; but was " + width + "x" + height);
+    }
+    if (tileSize < 8 || Integer.bitCount(tileSize) != 1) {
+      throw new IllegalArgumentException("Illegal tile size: shall be a power of two and 8 or greater; but was "
+          + tileSize);
+    }
+
+    this.width = width;
+    this.height = height;
+    this.tileSize = tileSize;
+    this.tileShift = Integer.numberOfTrailingZeros(tileSize);
+    this.tilesAcross = (int) (((long) width + tileSize - 1) >> tileShift);
+    this.tilesDown = (int) (((long) height + tileSize - 1) >> tileShift);
+
+    final long amountOfTiles = (long) tilesAcross * tilesDown;
+    if (amountOfTiles > Integer.MAX_VALUE) {
+      throw new ResourceLimitExceededException("Page of " + width + "x" + height + " pixels needs too many tiles of "
+          + tileSize + "x" + tileSize + " pixels");
+    }
+    this.tiles = new Bitmap[(int) amountOfTiles];
+    this.uniformValues = new byte[tiles.length];
+
+    if (defaultPixelValue != 0) {
+      Arrays.fill(uniformValues, (byte) 1);
+    }
+  }
+
+  /**
+   * Creates a tiled copy of the given bitmap.
+   * 
+   * @param src - The bitmap to copy.
+   * @param tileSize - The width and height of a tile in pixels.
+   * @return The tiled bitmap, uniform parts of the source are not allocated.
+   */
+  public static TiledBitmap of(final Bitmap src, final int tileSize) {
+    final TiledBitmap dst = new TiledBitmap(src.getWidth(), src.getHeight(), tileSize, 0);
+    dst.blit(src, 0, 0, CombinationOperator.REPLACE);
+    return dst;
+  }
+
+  /**
+   * Combines the given bitmap with the tiles it covers. Parts outside of the page are ignored. A
+   * uniform tile stays unallocated if the covered area of the source is uniform and either doesn't
+   * change the tile or covers all of its pixels inside the page.
+   * 
+   * @param src - The bitmap to combine.
+   * @param x - The x coordinate of the upper left corner of the source on the page.
+   * @param y - The y coordinate of the upper left corner of the source on the page.
+   * @param op - The combination operator.
+   */
+  public void blit(final Bitmap src, final int x, final int y, final CombinationOperator op) {
+    final int minX = Math.max(0, x);
+    final int minY = Math.max(0, y);
+    final long maxX = Math.min(width, (long) x + src.getWidth());
+    final long maxY = Math.min(height, (long) y + src.getHeight());
+    if (minX >= maxX || minY >= maxY) {
+      return;
+    }
+
+    final int lastTileX = (int) ((maxX - 1) >> tileShift);
+    final int lastTileY = (int) ((maxY - 1) >> tileShift);
+
+    for (int tileY = minY >> tileShift; tileY <= lastTileY; tileY++) {
+      final int tileTop = tileY << tileShift;
+      final int top = Math.max(minY, tileTop);
+      final int bottom = (int) Math.min(maxY, (long) tileTop + tileSize);
+
+      for (int tileX = minX >> tileShift; tileX <= lastTileX; tileX++) {
+        final int tileLeft = tileX << tileShift;
+        final int left = Math.max(minX, tileLeft);
+        final int right = (int) Math.min(maxX, (long) tileLeft + tileSize);
+
+        blitTile(src, left - x, top - y, tileY * tilesAcross + tileX, left - tileLeft, top - tileTop,
+            right - left, bottom - top, op);
+      }
+    }
+  }
+
+  private void blitTile(final Bitmap src, final int srcX, final int srcY, final int tileIndex, final int dstX,
+      final int dstY, final int w, final int h, final CombinationOperator op) {
+    Bitmap tile = tiles[tileIndex];
+
+    if (null == tile) {
+      final int value = uniformValues[tileIndex];
+
+      // The result doesn't depend on the source
+      if ((op == CombinationOperator.OR && value == 1) || (op == CombinationOperator.AND && value == 0)) {
+        return;
+      }
+
+      final int srcValue = uniformValue(src, srcX, srcY, w, h);
+      if (srcValue >= 0) {
+        final int result = Bitmaps.combineBytes(value == 0 ? 0 : (byte) 0xff, srcValue == 0 ? 0 : (byte) 0xff, op) & 1;
+        if (result == value) {
+          return;
+        }
+        if (coversTile(tileIndex, dstX, dstY, w, h)) {
+          uniformValues[tileIndex] = (byte) result;
+          return;
+        }
+      }
+
+      tile = new Bitmap(tileSize, tileSize);
+      if (value != 0) {
+        Arrays.fill(tile.getByteArray(), (byte) 0xff);
+      }
+      tiles[tileIndex] = tile;
+    }
+
+    combine(src, srcX, srcY, tile, dstX, dstY, w, h, op);
+  }
+
+  /**
+   * Checks whether the given area covers all pixels of the tile that are inside of the page.
+   */
+  private boolean coversTile(final int tileIndex, final int dstX, final int dstY, final int w, final int h) {
+    final int tileLeft = (tileIndex % tilesAcross) << tileShift;
+    final int tileTop = (tileIndex / tilesAcross) << tileShift;
+    return dstX == 0 && dstY == 0 && w == Math.min(tileSize, width - tileLeft)
+        && h == Math.min(tileSize, height - tileTop);
+  }
+
+  /**
+   * @return {@code 0} or {@code 1} if all pixels of the given area have this value, {@code -1}
+   *         otherwise.
+   */
+  private static int uniformValue(final Bitmap src, final int x, final int y, final int w, final int h) {
+    final byte[] data = src.getByteArray();
+    final int rowStride = src.getRowStride();
+    final int firstByte = x >> 3;
+    final int lastByte = (x + w - 1) >> 3;
+    final int firstMask = 0xff >> (x & 7);
+    final int lastMask = (0xff << (7 - ((x + w - 1) & 7))) & 0xff;
+
+    int expected = -1;
+    for (int line = y, rowIdx = y * rowStride; line < y + h; line++, rowIdx += rowStride) {
+      for (int i = firstByte; i <= lastByte; i++) {
+        int mask = 0xff;
+        if (i == firstByte) {
+          mask &= firstMask;
+        }
+        if (i == lastByte) {
+          mask &= lastMask;
+        }
+
+        final int bits = data[rowIdx + i] & mask;
+        if (expected < 0) {
+          if (bits == 0) {
+            expected = 0;
+          } else if (bits == mask) {
+            expected = 1;
+          } else {
+            return -1;
+          }
+        } else if (bits != (expected == 0 ? 0 : mask)) {
+          return -1;
+        }
+      }
+    }
+    return expected;
+  }
+
+  /**
+   * Combines a {@code w x h} area of the source at {@code (srcX, srcY)} with the area of the target
+   * at {@code (dstX, dstY)}. Both areas must be inside of their bitmaps.
+   */
+  static void combine(final Bitmap src, final int srcX, final int srcY, final Bitmap dst, final int dstX,
+      final int dstY, final int w, final int h, final CombinationOperator op) {
+    final byte[] srcData = src.getByteArray();
+    final byte[] dstData = dst.getByteArray();
+    final int srcRowStride = src.getRowStride();
+    final int dstRowStride = dst.getRowStride();
+
+    final int firstByte = dstX >> 3;
+    final int lastByte = (dstX + w - 1) >> 3;
+    final int firstMask = 0xff >> (dstX & 7);
+    final int lastMask = (0xff << (7 - ((dstX + w - 1) & 7))) & 0xff;
+
+    // The source bit that corresponds to the first bit of the first target byte, may be negative
+    final int srcBitOffset = srcX - (dstX & 7);
+
+    for (int line = 0; line < h; line++) {
+      final int srcRowIdx = (srcY + line) * srcRowStride;
+      final int dstRowIdx = (dstY + line) * dstRowStride;
+
+      for (int i = firstByte, srcBit = srcBitOffset; i <= lastByte; i++, srcBit += 8) {
+        int mask = 0xff;
+        if (i == firstByte) {
+          mask &= firstMask;
+        }
+        if (i == lastByte) {
+          mask &= lastMask;
+        }
+
+        // Bits that are fetched from outside of the source row are masked out
+        final int srcIdx = srcBit >> 3;
+        final int shift = srcBit & 7;
+        final int high = srcIdx >= 0 ? srcData[srcRowIdx + srcIdx] & 0xff : 0;
+        final int low = shift != 0 && srcIdx + 1 < srcRowStride ? srcData[srcRowIdx + srcIdx + 1] & 0xff : 0;
+        final byte value = (byte) (((high << 8 | low) >> (8 - shift)) & 0xff);
+
+        final int dstIdx = dstRowIdx + i;
+        final int oldValue = dstData[dstIdx] & 0xff;
+        final int newValue = Bitmaps.combineBytes((byte) oldValue, value, op) & 0xff;
+        dstData[dstIdx] = (byte) ((oldValue & ~mask) | (newValue & mask));
+      }
+    }
+  }
+
+  /**
+   * Returns the pixels of the given area as a single bitmap.
+   * 
+   * @param roi - The area of the page, must be inside of the page.
+   * @return A new bitmap of the area's size.
+   */
+  public Bitmap extract(final Rectangle roi) {
+    if (roi.x < 0 || roi.y < 0 || roi.width < 0 || roi.height < 0 || (long) roi.x + roi.width > width
+        || (long) roi.y + roi.height > height) {
+      throw new IllegalArgumentException("Region of interest " + roi + " is not inside of the page of " + width + "x"
+          + height + " pixels");
+    }
+
+    final Bitmap dst = new Bitmap(roi.width, roi.height);
+    if (roi.isEmpty()) {
+      return dst;
+    }
+
+    final int lastTileX = (roi.x + roi.width - 1) >> tileShift;
+    final int lastTileY = (roi.y + roi.height - 1) >> tileShift;
+
+    for (int tileY = roi.y >> tileShift; tileY <= lastTileY; tileY++) {
+      final int tileTop = tileY << tileShift;
+      final int top = Math.max(roi.y, tileTop);
+      final int bottom = (int) Math.min(roi.y + roi.height, (long) tileTop + tileSize);
+
+      for (int tileX = roi.x >> tileShift; tileX <= lastTileX; tileX++) {
+        final int tileLeft = tileX << tileShift;
+        final int left = Math.max(roi.x, tileLeft);
+        final int right = (int) Math.min(roi.x + roi.width, (long) tileLeft + tileSize);
+
+        final int tileIndex = tileY * tilesAcross + tileX;
+        if (null == tiles[tileIndex]) {
+          if (uniformValues[tileIndex] != 0) {
+            combine(getTile(tileX, tileY), 0, 0, dst, left - roi.x, top - roi.y, right - left, bottom - top,
+                CombinationOperator.REPLACE);
+          }
+        } else {
+          combine(tiles[tileIndex], left - tileLeft, top - tileTop, dst, left - roi.x, top - roi.y, right - left,
+              bottom - top, CombinationOperator.REPLACE);
+        }
+      }
+    }
+
+    return dst;
+  }
+
+  /**
+   * @return The whole page as a single bitmap.
+   */
+  public Bitmap toBitmap() {
+    return extract(new Rectangle(0, 0, width, height));
+  }
+
+  /**
+   * Returns the bitmap of a tile. Uniform tiles are represented by a shared constant bitmap which
+   * must not be modified.
+   * 
+   * @param tileX - The column of the tile.
+   * @param tileY - The row of the tile.
+   * @return The bitmap of the tile, {@code tileSize x tileSize} pixels.
+   */
+  public Bitmap getTile(final int tileX, final int tileY) {
+    if (tileX < 0 || tileX >= tilesAcross || tileY < 0 || tileY >= tilesDown) {
+      throw new IndexOutOfBoundsException("Tile " + tileX + "," + tileY + " is outside of the " + tilesAcross + "x"
+          + tilesDown + " tiles of the page");
+    }
+
+    final int tileIndex = tileY * tilesAcross + tileX;
+    final Bitmap tile = tiles[tileIndex];
+    if (null != tile) {
+      return tile;
+    }
+
+    final int value = uniformValues[tileIndex];
+    Bitmap uniformTile = uniformTiles[value];
+    if (null == uniformTile) {
+      uniformTile = new Bitmap(tileSize, tileSize);
+      if (value != 0) {
+        Arrays.fill(uniformTile.getByteArray(), (byte) 0xff);
+      }
+      uniformTiles[value] = uniformTile;
+    }
+    return uniformTile;
+  }
+
+  /**
+   * @param tileX - The column of the tile.
+   * @param tileY - The row of the tile.
+   * @return {@code true} if all pixels of the tile have the same value and no memory is allocated for
+   *         it.
+   */
+  public boolean isUniform(final int tileX, final int tileY) {
+    return null == tiles[tileY * tilesAcross + tileX];
+  }
+
+  /**
+   * Returns the value of a pixel, {@code 0} for white and {@code 1} for black.
+   */
+  public byte getPixel(final int x, final int y) {
+    final int tileIndex = (y >> tileShift) * tilesAcross + (x >> tileShift);
+    final Bitmap tile = tiles[tileIndex];
+    if (null == tile) {
+      return uniformValues[tileIndex];
+    }
+    return tile.getPixel(x & (tileSize - 1), y & (tileSize - 1));
+  }
+
+  /**
+   * @return The amount of allocated tiles.
+   */
+  public int getAllocatedTiles() {
+    int count = 0;
+    for (Bitmap tile : tiles) {
+      if (null != tile) {
+        count++;
+      }
+    }
+    return count;
+  }
+
+  /**
+   * @return The memory used by the allocated tiles in bytes.
+   */
+  public long getMemorySize() {
+    return (long) getAllocatedTiles() * (tileSize >> 3) * tileSize;
+  }
+
+  public int getWidth() {
+    return width;
+  }
+
+  public int getHeight() {
+    return height;
+  }
+
+  public int getTileSize() {
+    return tileSize;
+  }
+
+  /**
+   * @return The amount of tiles per row.
+   */
+  public int getTilesAcross() {
+    return tilesAcross;
+  }
+
+  /**
+   * @return The amount of tile rows.
+   */
+  public int getTilesDown() {
+    return tilesDown;
+  }
+}
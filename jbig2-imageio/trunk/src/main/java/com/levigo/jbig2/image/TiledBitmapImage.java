@@ -0,0 +1,171 @@
+/**
+ * Copyright (C) 1995-2014 levigo holding gmbh.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.levigo.jbig2.image;
+
+import java.awt.Image;
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.awt.image.ColorModel;
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferByte;
+import java.awt.image.IndexColorModel;
+import java.awt.image.MultiPixelPackedSampleModel;
+import java.awt.image.Raster;
+import java.awt.image.RenderedImage;
+import java.awt.image.SampleModel;
+import java.awt.image.WritableRaster;
+import java.util.Vector;
+
+import com.levigo.jbig2.Bitmap;
+
+/**
+ * This class provides a {@link TiledBitmap} as {@link RenderedImage}. The tiles of the image are
+ * the tiles of the bitmap, so the image is converted tile by tile and only on demand. A tile's
+ * raster shares the memory of the tile; pixels are packed with 1 bit, {@code 1} is black.
+ */
+public class TiledBitmapImage implements RenderedImage {
+
+  private final TiledBitmap bitmap;
+
+  private final SampleModel sampleModel;
+
+  private final ColorModel colorModel;
+
+  public TiledBitmapImage(final TiledBitmap bitmap) {
+    if (bitmap == null)
+      throw new IllegalArgumentException("bitmap must not be null");
+
+    this.bitmap = bitmap;
+    this.sampleModel = new MultiPixelPackedSampleModel(DataBuffer.TYPE_BYTE, bitmap.getTileSize(),
+        bitmap.getTileSize(), 1);
+    this.colorModel = new IndexColorModel(1, 2, //
+        new byte[]{
+            (byte) 0xff, 0x00
+        }, new byte[]{
+            (byte) 0xff, 0x00
+        }, new byte[]{
+            (byte) 0xff, 0x00
+        });
+  }
+
+  /**
+   * @return The tiled bitmap this image is based on.
+   */
+  public TiledBitmap getBitmap() {
+    return bitmap;
+  }
+
+  public Vector<RenderedImage> getSources() {
+    return null;
+  }
+
+  public Object getProperty(final String name) {
+    return Image.UndefinedProperty;
+  }
+
+  public String[] getPropertyNames() {
+    return null;
+  }
+
+  public ColorModel getColorModel() {
+    return colorModel;
+  }
+
+  public SampleModel getSampleModel() {
+    return sampleModel;
+  }
+
+  public int getWidth() {
+    return bitmap.getWidth();
+  }
+
+  public int getHeight() {
+    return bitmap.getHeight();
+  }
+
+  public int getMinX() {
+    return 0;
+  }
+
+  public int getMinY() {
+    return 0;
+  }
+
+  public int getNumXTiles() {
+    return bitmap.getTilesAcross();
+  }
+
+  public int getNumYTiles() {
+    return bitmap.getTilesDown();
+  }
+
+  public int getMinTileX() {
+    return 0;
+  }
+
+  public int getMinTileY() {
+    return 0;
+  }
+
+  public int getTileWidth() {
+    return bitmap.getTileSize();
+  }
+
+  public int getTileHeight() {
+    return bitmap.getTileSize();
+  }
+
+  public int getTileGridXOffset() {
+    return 0;
+  }
+
+  public int getTileGridYOffset() {
+    return 0;
+  }
+
+  public Raster getTile(final int tileX, final int tileY) {
+    final int tileSize = bitmap.getTileSize();
+    return Raster.createRaster(sampleModel, new DataBufferByte(bitmap.getTile(tileX, tileY).getByteArray(),
+        tileSize * tileSize >> 3), new Point(tileX * tileSize, tileY * tileSize));
+  }
+
+  public Raster getData() {
+    return getData(new Rectangle(0, 0, getWidth(), getHeight()));
+  }
+
+  public Raster getData(final Rectangle rect) {
+    return asRaster(bitmap.extract(rect), rect.x, rect.y);
+  }
+
+  public WritableRaster copyData(final WritableRaster raster) {
+    if (null == raster) {
+      return asRaster(bitmap.toBitmap(), 0, 0);
+    }
+
+    final Rectangle bounds = raster.getBounds().intersection(new Rectangle(0, 0, getWidth(), getHeight()));
+    if (!bounds.isEmpty()) {
+      raster.setRect(getData(bounds));
+    }
+    return raster;
+  }
+
+  private WritableRaster asRaster(final Bitmap src, final int x, final int y) {
+    return Raster.createPackedRaster(new DataBufferByte(src.getByteArray(), src.getByteArray().length),
+        src.getWidth(), src.getHeight(), 1, new Point(x, y));
+  }
+}
@@ -18,6 +18,7 @@
 package com.levigo.jbig2.segments;
 
 import java.io.IOException;
+import java.util.Arrays;
 
 import com.levigo.jbig2.Bitmap;
 import com.levigo.jbig2.Region;
@@ -27,6 +28,7 @@ import com.levigo.jbig2.decoder.arithmetic.CX;
 import com.levigo.jbig2.err.IntegerMaxValueException;
 import com.levigo.jbig2.err.InvalidHeaderValueException;
 import com.levigo.jbig2.io.SubInputStream;
+import com.levigo.jbig2.util.AbortSignal;
 import com.levigo.jbig2.util.log.Logger;
 import com.levigo.jbig2.util.log.LoggerFactory;
 
@@ -109,7 +111,19 @@ public class GenericRefinementRegion implements Region {
    * If true, AT pixels are not on their nominal location and have to be overridden.
    */
   private boolean override;
+
+  /**
+   * Region bitmaps of previous decodings, which are cleared and reused for regions of the same size.
+   * Only set if the caller doesn't keep the region bitmap beyond the next decoding.
+   */
+  private Bitmap[] scratchBitmaps;
   private boolean[] grAtOverride;
+
+  /**
+   * If false, lines with the nominal AT pixels are decoded pixel by pixel instead of from word windows.
+   */
+  private boolean useWordWindows = true;
+
   public GenericRefinementRegion() {
   }
 
@@ -198,7 +212,7 @@ public class GenericRefinementRegion implements Region {
       }
 
       /* 6.3.5.6 - 2) */
-      regionBitmap = new Bitmap(regionInfo.getBitmapWidth(), regionInfo.getBitmapHeight());
+      regionBitmap = createRegionBitmap(regionInfo.getBitmapWidth(), regionInfo.getBitmapHeight());
 
       if (templateID == 0) {
         // AT pixel may only occur in template 0
@@ -211,6 +225,8 @@ public class GenericRefinementRegion implements Region {
 
       /* 6.3.5.6 - 3 */
       for (int y = 0; y < regionBitmap.getHeight(); y++) {
+        AbortSignal.checkAborted();
+
         /* 6.3.5.6 - 3 b) */
         if (isTPGROn) {
           isLineTypicalPredicted ^= decodeSLTP();
@@ -218,8 +234,12 @@ public class GenericRefinementRegion implements Region {
 
         if (isLineTypicalPredicted == 0) {
           /* 6.3.5.6 - 3 c) */
-          decodeOptimized(y, regionBitmap.getWidth(), regionBitmap.getRowStride(), referenceBitmap.getRowStride(),
-              paddedWidth, deltaRefStride, yOffset);
+          if (override || !useWordWindows) {
+            decodeOptimized(y, regionBitmap.getWidth(), regionBitmap.getRowStride(), referenceBitmap.getRowStride(),
+                paddedWidth, deltaRefStride, yOffset);
+          } else {
+            decodeLine(y);
+          }
         } else {
           /* 6.3.5.6 - 3 d) */
           decodeTypicalPredictedLine(y, regionBitmap.getWidth(), regionBitmap.getRowStride(),
@@ -231,6 +251,22 @@ public class GenericRefinementRegion implements Region {
     return regionBitmap;
   }
 
+  private Bitmap createRegionBitmap(final int width, final int height) {
+    if (null == scratchBitmaps) {
+      return new Bitmap(width, height);
+    }
+
+    final int slot = (width * 31 + height) & (scratchBitmaps.length - 1);
+    Bitmap bitmap = scratchBitmaps[slot];
+    if (null != bitmap && bitmap.getWidth() == width && bitmap.getHeight() == height) {
+      Arrays.fill(bitmap.getByteArray(), (byte) 0);
+    } else {
+      bitmap = new Bitmap(width, height);
+      scratchBitmaps[slot] = bitmap;
+    }
+    return bitmap;
+  }
+
   private int decodeSLTP() throws IOException {
     template.setIndex(cx);
     return arithDecoder.decode(cx);
@@ -266,6 +302,94 @@ public class GenericRefinementRegion implements Region {
 
   }
 
+  /**
+   * Decodes a line with the nominal AT pixels. The pixels of the context are taken from sliding
+   * windows over the three reference lines and the line above, which are refilled byte by byte. A
+   * window holds the pixels {@code x0 - 8} to {@code x0 + 15} of the current byte {@code x0}, so the
+   * three pixels around {@code x0 + i} are found at bit {@code 14 - i}.
+   * 
+   * @param lineNumber - The line to decode.
+   * @throws IOException
+   */
+  private void decodeLine(final int lineNumber) throws IOException {
+    final byte[] region = regionBitmap.getByteArray();
+    final int width = regionBitmap.getWidth();
+    final int referenceLine = lineNumber - referenceDY;
+    final int referenceX = -referenceDX;
+
+    int w1 = getWindow(referenceBitmap, referenceLine - 1, referenceX);
+    int w2 = getWindow(referenceBitmap, referenceLine, referenceX);
+    int w3 = getWindow(referenceBitmap, referenceLine + 1, referenceX);
+    int w4 = getWindow(regionBitmap, lineNumber - 1, 0);
+
+    int c5 = 0;
+    int byteIndex = regionBitmap.getByteIndex(0, lineNumber);
+
+    for (int x0 = 0; x0 < width; x0 += 8) {
+      final int pixels = Math.min(8, width - x0);
+      int result = 0;
+
+      if (templateID == 0) {
+        for (int i = 0, shift = 14; i < pixels; i++, shift--) {
+          cx.setIndex(((w1 >>> shift) & 0x07) << 10 | ((w2 >>> shift) & 0x07) << 7 | ((w3 >>> shift) & 0x07) << 4
+              | ((w4 >>> shift) & 0x07) << 1 | c5);
+          c5 = arithDecoder.decode(cx);
+          result |= c5 << (7 - i);
+        }
+      } else {
+        for (int i = 0, shift = 14; i < pixels; i++, shift--) {
+          cx.setIndex(((w1 >>> shift) & 0x02) << 8 | ((w2 >>> shift) & 0x07) << 6 | ((w3 >>> shift) & 0x03) << 4
+              | ((w4 >>> shift) & 0x07) << 1 | c5);
+          c5 = arithDecoder.decode(cx);
+          result |= c5 << (7 - i);
+        }
+      }
+
+      region[byteIndex++] = (byte) result;
+
+      w1 = w1 << 8 | getByte(referenceBitmap, referenceLine - 1, referenceX + x0 + 16);
+      w2 = w2 << 8 | getByte(referenceBitmap, referenceLine, referenceX + x0 + 16);
+      w3 = w3 << 8 | getByte(referenceBitmap, referenceLine + 1, referenceX + x0 + 16);
+      w4 = w4 << 8 | getByte(regionBitmap, lineNumber - 1, x0 + 16);
+    }
+  }
+
+  /**
+   * @return The pixels {@code x - 8} to {@code x + 15} of the given line.
+   */
+  private static int getWindow(final Bitmap b, final int line, final int x) {
+    return getByte(b, line, x - 8) << 16 | getByte(b, line, x) << 8 | getByte(b, line, x + 8);
+  }
+
+  /**
+   * @return The pixels {@code x} to {@code x + 7} of the given line, the first one in the most
+   *         significant bit. Pixels outside of the bitmap are 0.
+   */
+  private static int getByte(final Bitmap b, final int line, final int x) {
+    final int width = b.getWidth();
+    if (line < 0 || line >= b.getHeight() || x <= -8 || x >= width) {
+      return 0;
+    }
+
+    final byte[] data = b.getByteArray();
+    final int rowStride = b.getRowStride();
+    final int lineStart = line * rowStride;
+    final int byteOffset = x >> 3;
+    final int bitOffset = x & 0x07;
+
+    int value = byteOffset >= 0 ? (data[lineStart + byteOffset] & 0xff) << 8 : 0;
+    if (bitOffset != 0 && byteOffset + 1 < rowStride) {
+      value |= data[lineStart + byteOffset + 1] & 0xff;
+    }
+    value = (value >>> (8 - bitOffset)) & 0xff;
+
+    // clear the pixels behind the end of the line
+    if (width - x < 8) {
+      value &= 0xff << (8 - (width - x));
+    }
+    return value;
+  }
+
   private void decodeTemplate(final int lineNumber, final int width, final int rowStride, final int refRowStride,
       final int paddedWidth, final int deltaRefStride, final int lineOffset, int byteIndex, final int currentLine,
       int refByteIndex, Template templateFormation) throws IOException {
@@ -739,6 +863,31 @@ public class GenericRefinementRegion implements Region {
     this.regionBitmap = null;
   }
 
+  /**
+   * Enables or disables the reuse of region bitmaps. If enabled, the bitmap returned by
+   * {@link #getRegionBitmap()} is only valid until the next call to {@link #setParameters}, but
+   * decoding many refined symbols of recurring sizes doesn't allocate a bitmap for each of them.
+   * 
+   * @param reuseRegionBitmaps - {@code true} if region bitmaps may be reused.
+   */
+  protected void setReuseRegionBitmaps(final boolean reuseRegionBitmaps) {
+    if (!reuseRegionBitmaps) {
+      scratchBitmaps = null;
+    } else if (null == scratchBitmaps) {
+      scratchBitmaps = new Bitmap[64];
+    }
+  }
+
+  /**
+   * Enables or disables the word-window decoding of lines with the nominal AT pixels. If disabled,
+   * every line is decoded pixel by pixel.
+   * 
+   * @param useWordWindows - {@code true} if the word windows may be used.
+   */
+  protected void setUseWordWindows(final boolean useWordWindows) {
+    this.useWordWindows = useWordWindows;
+  }
+
   public RegionSegmentInformation getRegionInfo() {
     return regionInfo;
   }
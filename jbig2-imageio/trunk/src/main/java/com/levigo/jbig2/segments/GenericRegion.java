@@ -21,12 +21,16 @@ import java.io.IOException;
 
 import com.levigo.jbig2.Bitmap;
 import com.levigo.jbig2.Region;
+import com.levigo.jbig2.RowListener;
 import com.levigo.jbig2.SegmentHeader;
+import com.levigo.jbig2.decoder.DecoderCheckpoints;
+import com.levigo.jbig2.decoder.DecoderCheckpoints.Checkpoint;
 import com.levigo.jbig2.decoder.arithmetic.ArithmeticDecoder;
 import com.levigo.jbig2.decoder.arithmetic.CX;
 import com.levigo.jbig2.decoder.mmr.MMRDecompressor;
 import com.levigo.jbig2.err.InvalidHeaderValueException;
 import com.levigo.jbig2.io.SubInputStream;
+import com.levigo.jbig2.util.AbortSignal;
 import com.levigo.jbig2.util.log.Logger;
 import com.levigo.jbig2.util.log.LoggerFactory;
 
@@ -66,6 +70,12 @@ public class GenericRegion implements Region {
    */
   private boolean override;
 
+  /**
+   * Optional SKIP bitmap, see 6.2.5.7 3 d). Pixels that are set in it are not decoded and stay 0.
+   * {@code null} if USESKIP is 0.
+   */
+  private Bitmap skipBitmap;
+
   /** Decoded data as pixel values (use row stride/width to wrap line) */
   private Bitmap regionBitmap;
 
@@ -74,6 +84,24 @@ public class GenericRegion implements Region {
 
   private MMRDecompressor mmrDecompressor;
 
+  /** Optional listener that is notified about every decoded line */
+  private RowListener rowListener;
+
+  /** Amount of lines that are decoded at most, {@code -1} if all lines are needed */
+  private int lineLimit = -1;
+
+  /** The first line that is needed, lines above may be skipped if a checkpoint is available */
+  private int firstLine;
+
+  /** Optional index of decoder states to resume from and to record to */
+  private DecoderCheckpoints checkpoints;
+
+  /** The number of the segment, {@code -1} if unknown, identifies the data of checkpoints */
+  private int segmentNumber = -1;
+
+  /** The offset of the segment data in the file, identifies the data of checkpoints */
+  private long segmentDataStartOffset;
+
   public GenericRegion() {
   }
 
@@ -170,7 +198,7 @@ public class GenericRegion implements Region {
         }
 
         /* 6.2.6 */
-        regionBitmap = mmrDecompressor.uncompress();
+        regionBitmap = mmrDecompressor.uncompress(rowListener, firstLine, getLinesToDecode(), bindCheckpoints());
 
       } else {
 
@@ -183,6 +211,9 @@ public class GenericRegion implements Region {
         /* 6.2.5.7 - 1) */
         int ltp = 0;
 
+        // Checkpoints can't be used if the decoder is shared with other regions
+        final DecoderCheckpoints checkpoints = arithDecoder == null ? bindCheckpoints() : null;
+
         if (arithDecoder == null) {
           arithDecoder = new ArithmeticDecoder(subInputStream);
         }
@@ -194,9 +225,25 @@ public class GenericRegion implements Region {
         regionBitmap = new Bitmap(regionInfo.getBitmapWidth(), regionInfo.getBitmapHeight());
 
         final int paddedWidth = (regionBitmap.getWidth() + 7) & -8;
+        final int linesToDecode = getLinesToDecode();
+
+        int startLine = 0;
+        if (null != checkpoints && firstLine > 0) {
+          final Checkpoint checkpoint = checkpoints.getCheckpoint(firstLine);
+          if (null != checkpoint && !checkpoint.isMMR()) {
+            resumeAt(checkpoint);
+            ltp = checkpoint.getLtp();
+            startLine = checkpoint.getLine();
+          }
+        }
 
         /* 6.2.5.7 - 3 */
-        for (int line = 0; line < regionBitmap.getHeight(); line++) {
+        for (int line = startLine; line < linesToDecode; line++) {
+          AbortSignal.checkAborted();
+
+          if (null != checkpoints && checkpoints.isCheckpointDue(line)) {
+            saveCheckpoint(checkpoints, line, ltp);
+          }
 
           /* 6.2.5.7 - 3 b) */
           if (isTPGDon) {
@@ -207,19 +254,12 @@ public class GenericRegion implements Region {
           if (ltp == 1) {
             copyLineAbove(line);
           } else {
-            /* 3 d) */
-            // NOT USED ATM - If corresponding pixel of SKIP bitmap is 0, set
-            // current pixel to 0. Something like that:
-            // if (useSkip) {
-            // for (int i = 1; i < rowstride; i++) {
-            // if (skip[pixel] == 1) {
-            // gbReg[pixel] = 0;
-            // }
-            // pixel++;
-            // }
-            // } else {
+            /* 3 d) - pixels set in the SKIP bitmap are handled by the template kernels */
             decodeLine(line, regionBitmap.getWidth(), regionBitmap.getRowStride(), paddedWidth);
-            // }
+          }
+
+          if (null != rowListener) {
+            rowListener.rowsDecoded(regionBitmap, line, 1);
           }
         }
       }
@@ -234,6 +274,64 @@ public class GenericRegion implements Region {
     return regionBitmap;
   }
 
+  /**
+   * Binds the checkpoint index to the data of this region, so checkpoints that have been recorded
+   * from other data are dropped instead of being resumed from.
+   * 
+   * @return The checkpoint index or {@code null} if none is set.
+   */
+  private DecoderCheckpoints bindCheckpoints() {
+    if (null != checkpoints) {
+      checkpoints.bind(segmentNumber, segmentDataStartOffset + dataOffset, dataLength, gbTemplate, isMMREncoded,
+          regionInfo.getBitmapWidth(), regionInfo.getBitmapHeight());
+    }
+    return checkpoints;
+  }
+
+  /**
+   * Records the current decoder state before the given line is decoded.
+   */
+  private void saveCheckpoint(final DecoderCheckpoints checkpoints, final int line, final int ltp)
+      throws IOException {
+    final int rowStride = regionBitmap.getRowStride();
+    final int referenceLines = Math.min(line, getReferenceLineCount());
+    final byte[] previousLines = new byte[referenceLines * rowStride];
+    System.arraycopy(regionBitmap.getByteArray(), (line - referenceLines) * rowStride, previousLines, 0,
+        previousLines.length);
+
+    checkpoints.add(Checkpoint.arithmetic(line, arithDecoder.saveState(), cx.saveContexts(), ltp, previousLines));
+  }
+
+  /**
+   * Restores the decoder state and the lines above of the given checkpoint.
+   */
+  private void resumeAt(final Checkpoint checkpoint) throws IOException {
+    arithDecoder = new ArithmeticDecoder(subInputStream, checkpoint.getDecoderState());
+    cx.restoreContexts(checkpoint.getContexts());
+
+    final byte[] previousLines = checkpoint.getPreviousLines();
+    System.arraycopy(previousLines, 0, regionBitmap.getByteArray(), checkpoint.getLine()
+        * regionBitmap.getRowStride() - previousLines.length, previousLines.length);
+  }
+
+  /**
+   * @return The amount of lines above the current line the decoding context refers to.
+   */
+  private int getReferenceLineCount() {
+    int referenceLines = 2;
+    if (override) {
+      for (short y : gbAtY) {
+        referenceLines = Math.max(referenceLines, -y);
+      }
+    }
+    return referenceLines;
+  }
+
+  private int getLinesToDecode() {
+    final int height = regionInfo.getBitmapHeight();
+    return lineLimit < 0 || lineLimit > height ? height : lineLimit;
+  }
+
   private int decodeSLTP() throws IOException {
     switch (gbTemplate){
       case 0 :
@@ -315,6 +413,7 @@ public class GenericRegion implements Region {
     for (int x = 0; x < paddedWidth; x = nextByte) {
       /* 6.2.5.7 3d */
       byte result = 0;
+      final int skip = null == skipBitmap ? 0 : skipBitmap.getByteAsInteger(byteIndex);
       nextByte = x + 8;
       final int minorWidth = width - x > 8 ? 8 : width - x;
 
@@ -335,7 +434,7 @@ public class GenericRegion implements Region {
           cx.setIndex(context);
         }
 
-        int bit = arithDecoder.decode(cx);
+        final int bit = (skip >> (7 - minorX) & 1) == 0 ? arithDecoder.decode(cx) : 0;
 
         result |= bit << toShift;
 
@@ -369,6 +468,7 @@ public class GenericRegion implements Region {
     for (int x = 0; x < paddedWidth; x = nextByte) {
       /* 6.2.5.7 3d */
       byte result = 0;
+      final int skip = null == skipBitmap ? 0 : skipBitmap.getByteAsInteger(byteIndex);
       nextByte = x + 8;
       final int minorWidth = width - x > 8 ? 8 : width - x;
 
@@ -389,7 +489,7 @@ public class GenericRegion implements Region {
           cx.setIndex(context);
         }
 
-        final int bit = arithDecoder.decode(cx);
+        final int bit = (skip >> (7 - minorX) & 1) == 0 ? arithDecoder.decode(cx) : 0;
 
         result |= bit << toShift;
 
@@ -423,6 +523,7 @@ public class GenericRegion implements Region {
     for (int x = 0; x < paddedWidth; x = nextByte) {
       /* 6.2.5.7 3d */
       byte result = 0;
+      final int skip = null == skipBitmap ? 0 : skipBitmap.getByteAsInteger(byteIndex);
       nextByte = x + 8;
       final int minorWidth = width - x > 8 ? 8 : width - x;
 
@@ -442,7 +543,7 @@ public class GenericRegion implements Region {
           cx.setIndex(context);
         }
 
-        final int bit = arithDecoder.decode(cx);
+        final int bit = (skip >> (7 - minorX) & 1) == 0 ? arithDecoder.decode(cx) : 0;
 
         result |= bit << 7 - minorX;
 
@@ -477,6 +578,7 @@ public class GenericRegion implements Region {
     for (int x = 0; x < paddedWidth; x = nextByte) {
       /* 6.2.5.7 3d */
       byte result = 0;
+      final int skip = null == skipBitmap ? 0 : skipBitmap.getByteAsInteger(byteIndex);
       nextByte = x + 8;
       final int minorWidth = width - x > 8 ? 8 : width - x;
 
@@ -497,7 +599,7 @@ public class GenericRegion implements Region {
           cx.setIndex(context);
         }
 
-        final int bit = arithDecoder.decode(cx);
+        final int bit = (skip >> (7 - minorX) & 1) == 0 ? arithDecoder.decode(cx) : 0;
 
         result |= bit << (7 - minorX);
 
@@ -527,6 +629,7 @@ public class GenericRegion implements Region {
     for (int x = 0; x < paddedWidth; x = nextByte) {
       /* 6.2.5.7 3d */
       byte result = 0;
+      final int skip = null == skipBitmap ? 0 : skipBitmap.getByteAsInteger(byteIndex);
       nextByte = x + 8;
       final int minorWidth = width - x > 8 ? 8 : width - x;
 
@@ -543,7 +646,7 @@ public class GenericRegion implements Region {
           cx.setIndex(context);
         }
 
-        final int bit = arithDecoder.decode(cx);
+        final int bit = (skip >> (7 - minorX) & 1) == 0 ? arithDecoder.decode(cx) : 0;
 
         result |= bit << (7 - minorX);
         context = ((context & 0x1f7) << 1) | bit | ((line1 >> (8 - minorX)) & 0x010);
@@ -846,7 +949,7 @@ public class GenericRegion implements Region {
    * Used by {@link PatternDictionary} and {@link HalftoneRegion}.
    */
   protected void setParameters(final boolean isMMREncoded, final long dataOffset, final long dataLength, final int gbh,
-      final int gbw, final byte gbTemplate, final boolean isTPGDon, final boolean useSkip, final short[] gbAtX,
+      final int gbw, final byte gbTemplate, final boolean isTPGDon, final Bitmap skipBitmap, final short[] gbAtX,
       final short[] gbAtY) {
     this.dataOffset = dataOffset;
     this.dataLength = dataLength;
@@ -860,6 +963,47 @@ public class GenericRegion implements Region {
     this.isTPGDon = isTPGDon;
     this.gbAtX = gbAtX;
     this.gbAtY = gbAtY;
+    this.skipBitmap = skipBitmap;
+  }
+
+  /**
+   * Sets a {@link RowListener} that is notified about every line as soon as it is decoded.
+   * 
+   * @param rowListener - The listener or {@code null} to remove a previously set listener.
+   */
+  public void setRowListener(final RowListener rowListener) {
+    this.rowListener = rowListener;
+  }
+
+  /**
+   * Limits decoding to the first {@code lineLimit} lines of the region, e.g. if only an upper part
+   * of it is of interest. The remaining lines are left empty. Must only be used if the region bitmap
+   * is not needed as a whole afterwards.
+   * 
+   * @param lineLimit - The amount of lines to decode or {@code -1} to decode the complete region.
+   */
+  public void setLineLimit(final int lineLimit) {
+    this.lineLimit = lineLimit;
+  }
+
+  /**
+   * Sets the first line that is needed. If a checkpoint index is set, decoding resumes at the
+   * nearest checkpoint above this line. The lines above the checkpoint are left empty then.
+   * 
+   * @param firstLine - The first needed line, {@code 0} if all lines are needed.
+   */
+  public void setFirstLine(final int firstLine) {
+    this.firstLine = firstLine;
+  }
+
+  /**
+   * Sets an index of decoder states. While decoding, missing checkpoints are recorded to the index.
+   * Decoding starts at the nearest checkpoint above the line set by {@link #setFirstLine(int)}.
+   * 
+   * @param checkpoints - The index or {@code null} if checkpoints are not used.
+   */
+  public void setCheckpoints(final DecoderCheckpoints checkpoints) {
+    this.checkpoints = checkpoints;
   }
 
   /**
@@ -873,6 +1017,10 @@ public class GenericRegion implements Region {
       IOException {
     this.subInputStream = sis;
     this.regionInfo = new RegionSegmentInformation(subInputStream);
+    if (null != header) {
+      this.segmentNumber = header.getSegmentNr();
+      this.segmentDataStartOffset = header.getSegmentDataStartOffset();
+    }
     parseHeader();
   }
 
@@ -26,8 +26,13 @@ import com.levigo.jbig2.Region;
 import com.levigo.jbig2.SegmentHeader;
 import com.levigo.jbig2.err.InvalidHeaderValueException;
 import com.levigo.jbig2.image.Bitmaps;
+import com.levigo.jbig2.image.GrayScaleGrid;
+import com.levigo.jbig2.image.PhasedReduction;
+import com.levigo.jbig2.image.ReducedBitmap;
 import com.levigo.jbig2.io.SubInputStream;
+import com.levigo.jbig2.util.AbortSignal;
 import com.levigo.jbig2.util.CombinationOperator;
+import com.levigo.jbig2.util.ResourceBudget;
 import com.levigo.jbig2.util.log.Logger;
 import com.levigo.jbig2.util.log.LoggerFactory;
 
@@ -83,6 +88,12 @@ public class HalftoneRegion implements Region {
    */
   private ArrayList<Bitmap> patterns;
 
+  /** The target of the patterns if the region is decoded at reduced resolution */
+  private ReducedBitmap reducedRegionBitmap;
+
+  /** The reduced patterns of the referred pattern dictionaries */
+  private ArrayList<PhasedReduction> reducedPatterns;
+
   public HalftoneRegion() {
   }
 
@@ -121,6 +132,7 @@ public class HalftoneRegion implements Region {
 
     hGridWidth = (int) (subInputStream.readBits(32) & 0xffffffff);
     hGridHeight = (int) (subInputStream.readBits(32) & 0xffffffff);
+    ResourceBudget.checkRegionSize(hGridWidth & 0xffffffffL, hGridHeight & 0xffffffffL);
 
     hGridX = (int) subInputStream.readBits(32);
     hGridY = (int) subInputStream.readBits(32);
@@ -161,52 +173,167 @@ public class HalftoneRegion implements Region {
     if (null == halftoneRegionBitmap) {
 
       /* 6.6.5, page 40 */
-      /* 1) */
-      halftoneRegionBitmap = new Bitmap(regionInfo.getBitmapWidth(), regionInfo.getBitmapHeight());
-
       if (patterns == null) {
         patterns = getPatterns();
       }
 
-      if (hDefaultPixel == 1) {
-        Arrays.fill(halftoneRegionBitmap.getByteArray(), (byte) 0xff);
-      }
+      /* 2), computing HSKIP is done by the gray-scale decoding */
+
+      /* 3) */
+      final int bitsPerValue = (int) Math.ceil(Math.log(patterns.size()) / Math.log(2));
 
-      /* 2) */
-      /*
-       * 6.6.5.1 Computing hSkip - At the moment SKIP is not used... we are not able to test it.
-       */
-      // Bitmap hSkip;
-      // if (hSkipEnabled) {
-      // int hPatternHeight = (int) hPats.get(0).getHeight();
-      // int hPatternWidth = (int) hPats.get(0).getWidth();
-      // TODO: Set or get pattern width and height from referred
-      // pattern segments. The method is called like this:
-      // hSkip = computeHSkip(hPatternHeight, hPatternWidth);
-      // }
+      /* 4) */
+      final int[] grayScaleValues = grayScaleDecoding(bitsPerValue);
 
+      renderRegionBitmap(patterns, grayScaleValues);
+    }
+    /* 6) */
+    return halftoneRegionBitmap;
+  }
+
+  /**
+   * Creates the region bitmap and draws the given patterns into it, 6.6.5 1) and 5).
+   * 
+   * @param patterns - The patterns of the referred dictionaries.
+   * @param grayScaleValues - The gray-scale values of the grid, row by row.
+   * @return The region bitmap.
+   */
+  protected Bitmap renderRegionBitmap(final ArrayList<Bitmap> patterns, final int[] grayScaleValues) {
+    this.patterns = patterns;
+
+    /* 1) */
+    halftoneRegionBitmap = new Bitmap(regionInfo.getBitmapWidth(), regionInfo.getBitmapHeight());
+
+    if (hDefaultPixel == 1) {
+      Arrays.fill(halftoneRegionBitmap.getByteArray(), (byte) 0xff);
+    }
+
+    /* 5), rendering the pattern, described in 6.6.5.2 */
+    renderPattern(grayScaleValues);
+    return halftoneRegionBitmap;
+  }
+
+  /**
+   * Decodes the region at reduced resolution. The patterns of the referred dictionaries are drawn
+   * with their reductions that are kept by the dictionaries, so the region's bitmap at full
+   * resolution is never created.
+   * 
+   * @param factor - The reduction factor.
+   * @param phaseX - The horizontal phase of the cell grid, see {@link ReducedBitmap}.
+   * @param phaseY - The vertical phase of the cell grid, see {@link ReducedBitmap}.
+   * @return The region at reduced resolution.
+   */
+  public ReducedBitmap getReducedRegionBitmap(final int factor, final int phaseX, final int phaseY)
+      throws IOException, InvalidHeaderValueException {
+    /* 6.6.5, page 40 */
+    /* 1) */
+    reducedRegionBitmap = new ReducedBitmap(regionInfo.getBitmapWidth(), regionInfo.getBitmapHeight(), factor,
+        phaseX, phaseY);
+
+    if (patterns == null) {
+      patterns = getPatterns();
+    }
+
+    reducedPatterns = new ArrayList<PhasedReduction>(patterns.size());
+    for (SegmentHeader s : segmentHeader.getRtSegments()) {
+      final PatternDictionary patternDictionary = (PatternDictionary) s.getSegmentData();
+      reducedPatterns.addAll(patternDictionary.getReducedDictionary(factor));
+    }
+
+    if (hDefaultPixel == 1) {
+      reducedRegionBitmap.fill();
+    }
+
+    try {
       /* 3) */
       final int bitsPerValue = (int) Math.ceil(Math.log(patterns.size()) / Math.log(2));
 
       /* 4) */
-      final int[][] grayScaleValues = grayScaleDecoding(bitsPerValue);
+      final int[] grayScaleValues = grayScaleDecoding(bitsPerValue);
 
       /* 5), rendering the pattern, described in 6.6.5.2 */
       renderPattern(grayScaleValues);
+
+      /* 6) */
+      return reducedRegionBitmap;
+    } finally {
+      reducedRegionBitmap = null;
+      reducedPatterns = null;
     }
-    /* 6) */
-    return halftoneRegionBitmap;
+  }
+
+  /**
+   * Decodes the gray-scale values of the region without rendering the patterns. Each cell gets the
+   * gray level of its pattern combined with the default pixel, so the result is an image of the
+   * region at the resolution of the grid.
+   * 
+   * @return The gray levels of the cells or {@code null} if the grid is rotated.
+   */
+  public GrayScaleGrid getGrayScaleGrid() throws IOException, InvalidHeaderValueException {
+    if (hRegionY != 0 || hRegionX == 0) {
+      return null;
+    }
+
+    if (patterns == null) {
+      patterns = getPatterns();
+    }
+
+    final int[] grayLevels = new int[patterns.size()];
+    for (int i = 0; i < grayLevels.length; i++) {
+      grayLevels[i] = computeGrayLevel(patterns.get(i));
+    }
+
+    /* 3) */
+    final int bitsPerValue = (int) Math.ceil(Math.log(patterns.size()) / Math.log(2));
+
+    /* 4) */
+    final int[] grayScaleValues = grayScaleDecoding(bitsPerValue);
+
+    final GrayScaleGrid grid = new GrayScaleGrid(hGridWidth, hGridHeight, regionInfo.getXLocation() + computeX(0, 0),
+        regionInfo.getYLocation() + computeY(0, 0), hRegionX / 256.0);
+    for (int m = 0; m < hGridHeight; m++) {
+      for (int n = 0; n < hGridWidth; n++) {
+        grid.setGray(n, m, grayLevels[grayScaleValues[m * hGridWidth + n]]);
+      }
+    }
+    return grid;
+  }
+
+  /**
+   * @return The gray level of the given pattern drawn onto the default pixel, from {@code 0} for
+   *         black to {@code 255} for white.
+   */
+  private int computeGrayLevel(final Bitmap pattern) {
+    final int area = pattern.getWidth() * pattern.getHeight();
+    if (area == 0) {
+      return hDefaultPixel == 1 ? 0 : 255;
+    }
+
+    int black = 0;
+    for (int y = 0; y < pattern.getHeight(); y++) {
+      for (int x = 0; x < pattern.getWidth(); x++) {
+        black += Bitmaps.combineBytes(hDefaultPixel, pattern.getPixel(x, y), hCombinationOperator) & 1;
+      }
+    }
+    return 255 - (black * 255 + (area >> 1)) / area;
   }
 
   /**
    * This method draws the pattern into the region bitmap ({@code htReg}), as described in 6.6.5.2,
    * page 42
    */
-  private void renderPattern(final int[][] grayScaleValues) {
+  private void renderPattern(final int[] grayScaleValues) {
+    if (null == reducedRegionBitmap && isAxisAlignedGrid()) {
+      renderAxisAlignedPattern(grayScaleValues);
+      return;
+    }
+
     int x = 0, y = 0;
 
     // 1)
     for (int m = 0; m < hGridHeight; m++) {
+      AbortSignal.checkAborted();
+
       // a)
       for (int n = 0; n < hGridWidth; n++) {
         // i)
@@ -214,8 +341,164 @@ public class HalftoneRegion implements Region {
         y = computeY(m, n);
 
         // ii)
-        final Bitmap patternBitmap = patterns.get(grayScaleValues[m][n]);
-        Bitmaps.blit(patternBitmap, halftoneRegionBitmap, (x + hGridX), (y + hGridY), hCombinationOperator);
+        if (null != reducedRegionBitmap) {
+          final PhasedReduction reducedPattern = reducedPatterns.get(grayScaleValues[m * hGridWidth + n]);
+          reducedRegionBitmap.combine(reducedPattern, x, y, hCombinationOperator);
+        } else {
+          final Bitmap patternBitmap = patterns.get(grayScaleValues[m * hGridWidth + n]);
+          Bitmaps.blit(patternBitmap, halftoneRegionBitmap, x, y, hCombinationOperator);
+        }
+      }
+    }
+  }
+
+  /**
+   * @return {@code true} if the grid isn't rotated and the cells of a grid row don't overlap. Only
+   *         {@code OR} and {@code XOR} are supported, because pixels that are 0 don't change the
+   *         region bitmap with these operators.
+   */
+  private boolean isAxisAlignedGrid() {
+    if (hRegionY != 0 || patterns.isEmpty()
+        || hCombinationOperator != CombinationOperator.OR && hCombinationOperator != CombinationOperator.XOR) {
+      return false;
+    }
+
+    final int patternWidth = patterns.get(0).getWidth();
+    final int patternHeight = patterns.get(0).getHeight();
+    for (Bitmap pattern : patterns) {
+      if (pattern.getWidth() != patternWidth || pattern.getHeight() != patternHeight) {
+        return false;
+      }
+    }
+
+    return hRegionX >= patternWidth << 8;
+  }
+
+  /**
+   * Draws the patterns of a grid that isn't rotated. The cells of a grid row lie side by side, so
+   * each line of a grid row is assembled from the pattern lines and combined with the region bitmap
+   * as a whole. Cells that are not completely inside of the region are drawn with
+   * {@link Bitmaps#blit}.
+   */
+  private void renderAxisAlignedPattern(final int[] grayScaleValues) {
+    final int patternWidth = patterns.get(0).getWidth();
+    final int patternHeight = patterns.get(0).getHeight();
+
+    // the horizontal position of a cell doesn't depend on the grid row
+    final int[] cellX = new int[hGridWidth];
+    for (int n = 0; n < hGridWidth; n++) {
+      cellX[n] = computeX(0, n);
+    }
+
+    // the cells that are completely inside of the region, horizontally
+    int first = 0;
+    while (first < hGridWidth && cellX[first] < 0) {
+      first++;
+    }
+    int last = hGridWidth;
+    while (last > first && cellX[last - 1] + patternWidth > halftoneRegionBitmap.getWidth()) {
+      last--;
+    }
+
+    final byte[][] patternData = new byte[patterns.size()][];
+    for (int i = 0; i < patternData.length; i++) {
+      patternData[i] = patterns.get(i).getByteArray();
+    }
+
+    final byte[] line = new byte[halftoneRegionBitmap.getRowStride() + 1];
+
+    for (int m = 0; m < hGridHeight; m++) {
+      AbortSignal.checkAborted();
+
+      final int y = computeY(m, 0);
+      final int offset = m * hGridWidth;
+
+      // grid rows that are not completely inside of the region are drawn cell by cell
+      final boolean inside = y >= 0 && y + patternHeight <= halftoneRegionBitmap.getHeight();
+      final int rowFirst = inside ? first : hGridWidth;
+      final int rowLast = inside ? last : hGridWidth;
+
+      for (int n = 0; n < rowFirst; n++) {
+        Bitmaps.blit(patterns.get(grayScaleValues[offset + n]), halftoneRegionBitmap, cellX[n], y,
+            hCombinationOperator);
+      }
+      for (int n = rowLast; n < hGridWidth; n++) {
+        Bitmaps.blit(patterns.get(grayScaleValues[offset + n]), halftoneRegionBitmap, cellX[n], y,
+            hCombinationOperator);
+      }
+
+      if (rowFirst < rowLast) {
+        for (int row = 0; row < patternHeight; row++) {
+          renderLine(patternData, patternWidth, grayScaleValues, offset, cellX, rowFirst, rowLast, row, y + row,
+              line);
+        }
+      }
+    }
+  }
+
+  /**
+   * Assembles a line of the cells {@code first} to {@code last - 1} of the grid row starting at
+   * {@code offset} and combines it with the given
+   * line of the region bitmap. The pixels between and around the cells are 0.
+   */
+  private void renderLine(final byte[][] patternData, final int patternWidth, final int[] grayScaleValues,
+      final int offset, final int[] cellX, final int first, final int last, final int patternRow, final int y,
+      final byte[] line) {
+    final int patternRowStride = (patternWidth + 7) >> 3;
+    final int lastBits = patternWidth - (patternRowStride - 1 << 3);
+    final int startX = cellX[first];
+
+    // the line starts at the byte of the first cell, its leading pixels are 0
+    int bits = startX & 7;
+    int accumulator = 0;
+    int length = 0;
+    int x = startX;
+
+    for (int n = first; n < last; n++) {
+      for (int gap = cellX[n] - x; gap > 0; gap -= 8) {
+        final int count = Math.min(gap, 8);
+        accumulator <<= count;
+        bits += count;
+        if (bits >= 8) {
+          bits -= 8;
+          line[length++] = (byte) (accumulator >>> bits);
+        }
+      }
+
+      final byte[] pattern = patternData[grayScaleValues[offset + n]];
+      int patternIndex = patternRow * patternRowStride;
+
+      // whole bytes of the pattern line
+      for (int i = 1; i < patternRowStride; i++) {
+        accumulator = accumulator << 8 | pattern[patternIndex++] & 0xff;
+        line[length++] = (byte) (accumulator >>> bits);
+      }
+
+      // the last pixels of the pattern line without the padding bits
+      accumulator = accumulator << lastBits | (pattern[patternIndex] & 0xff) >>> (8 - lastBits);
+      bits += lastBits;
+      if (bits >= 8) {
+        bits -= 8;
+        line[length++] = (byte) (accumulator >>> bits);
+      }
+
+      x = cellX[n] + patternWidth;
+    }
+
+    if (bits > 0) {
+      line[length++] = (byte) (accumulator << (8 - bits));
+    }
+
+    final byte[] region = halftoneRegionBitmap.getByteArray();
+    final int regionIndex = halftoneRegionBitmap.getByteIndex(startX, y);
+
+    if (hCombinationOperator == CombinationOperator.OR) {
+      for (int i = 0; i < length; i++) {
+        region[regionIndex + i] |= line[i];
+      }
+    } else {
+      for (int i = 0; i < length; i++) {
+        region[regionIndex + i] ^= line[i];
       }
     }
   }
@@ -239,8 +522,14 @@ public class HalftoneRegion implements Region {
   /**
    * Gray-scale image decoding procedure is special for halftone region decoding and is described in
    * Annex C.5 on page 98.
+   * 
+   * @return The gray-scale values of the grid, row by row.
    */
-  private int[][] grayScaleDecoding(final int bitsPerValue) throws IOException {
+  private int[] grayScaleDecoding(final int bitsPerValue) throws IOException {
+    if (bitsPerValue == 0) {
+      // a single pattern, there are no planes to decode
+      return computeGrayScaleValues(new Bitmap[0], 0);
+    }
 
     short[] gbAtX = null;
     short[] gbAtY = null;
@@ -265,10 +554,13 @@ public class HalftoneRegion implements Region {
 
     Bitmap[] grayScalePlanes = new Bitmap[bitsPerValue];
 
-    // 1)
+    // 1), HSKIP is only used with arithmetic coding
+    final Bitmap hSkip = hSkipEnabled && !isMMREncoded && !patterns.isEmpty() ? computeHSkip(patterns.get(0)
+        .getWidth(), patterns.get(0).getHeight()) : null;
+
     GenericRegion genericRegion = new GenericRegion(subInputStream);
     genericRegion.setParameters(isMMREncoded, dataOffset, dataLength, hGridHeight, hGridWidth, hTemplate, false,
-        hSkipEnabled, gbAtX, gbAtY);
+        hSkip, gbAtX, gbAtY);
 
     // 2)
     int j = bitsPerValue - 1;
@@ -280,44 +572,83 @@ public class HalftoneRegion implements Region {
       genericRegion.resetBitmap();
       // 3) a)
       grayScalePlanes[j] = genericRegion.getRegionBitmap();
-      // 3) b)
-      grayScalePlanes = combineGrayScalePlanes(grayScalePlanes, j);
     }
 
-    // 4)
+    // 3) b) and 4)
     return computeGrayScaleValues(grayScalePlanes, bitsPerValue);
   }
 
-  private Bitmap[] combineGrayScalePlanes(Bitmap[] grayScalePlanes, int j) {
-    int byteIndex = 0;
-    for (int y = 0; y < grayScalePlanes[j].getHeight(); y++) {
+  /**
+   * Computes the HSKIP bitmap as described in 6.6.5.1. A cell is skipped if its pattern lies
+   * completely outside of the region, so its gray-scale value doesn't need to be decoded.
+   * 
+   * @param patternWidth - The width of the patterns, HPW.
+   * @param patternHeight - The height of the patterns, HPH.
+   * @return The HSKIP bitmap, a pixel is 1 if the corresponding cell is skipped.
+   */
+  protected Bitmap computeHSkip(final int patternWidth, final int patternHeight) {
+    final Bitmap hSkip = new Bitmap(hGridWidth, hGridHeight);
+    final int regionWidth = regionInfo.getBitmapWidth();
+    final int regionHeight = regionInfo.getBitmapHeight();
 
-      for (int x = 0; x < grayScalePlanes[j].getWidth(); x += 8) {
-        final byte newValue = grayScalePlanes[j + 1].getByte(byteIndex);
-        final byte oldValue = grayScalePlanes[j].getByte(byteIndex);
+    for (int m = 0; m < hGridHeight; m++) {
+      for (int n = 0; n < hGridWidth; n++) {
+        final int x = computeX(m, n);
+        final int y = computeY(m, n);
 
-        grayScalePlanes[j].setByte(byteIndex++, Bitmaps.combineBytes(oldValue, newValue, CombinationOperator.XOR));
+        if (x + patternWidth <= 0 || x >= regionWidth || y + patternHeight <= 0 || y >= regionHeight) {
+          hSkip.setPixel(n, m, (byte) 1);
+        }
       }
     }
-    return grayScalePlanes;
+
+    return hSkip;
   }
 
-  private int[][] computeGrayScaleValues(final Bitmap[] grayScalePlanes, final int bitsPerValue) {
+  /**
+   * Computes the gray-scale values of 8 cells at once. The bytes of up to 8 planes are Gray-decoded
+   * (3 b) and put into the rows of a 8x8 bit matrix. After transposing it, each row holds these bits
+   * of the value of one cell.
+   * 
+   * @param grayScalePlanes - The decoded planes, before the Gray-decoding.
+   * @param bitsPerValue - The number of planes, {@code 0} if all values are 0.
+   * @return The gray-scale values of the grid, row by row.
+   */
+  protected int[] computeGrayScaleValues(final Bitmap[] grayScalePlanes, final int bitsPerValue) {
     // Gray-scale decoding procedure, page 98
-    final int[][] grayScaleValues = new int[hGridHeight][hGridWidth];
+    final int[] grayScaleValues = new int[hGridHeight * hGridWidth];
+    if (bitsPerValue == 0) {
+      return grayScaleValues;
+    }
+
+    final int rowStride = grayScalePlanes[0].getRowStride();
+    final byte[][] planes = new byte[bitsPerValue][];
+    for (int j = 0; j < bitsPerValue; j++) {
+      planes[j] = grayScalePlanes[j].getByteArray();
+    }
 
     // 4)
     for (int y = 0; y < hGridHeight; y++) {
       for (int x = 0; x < hGridWidth; x += 8) {
         final int minorWidth = hGridWidth - x > 8 ? 8 : hGridWidth - x;
-        int byteIndex = grayScalePlanes[0].getByteIndex(x, y);
+        final int byteIndex = y * rowStride + (x >> 3);
+        final int valueIndex = y * hGridWidth + x;
+
+        // 3) b), the planes are combined from the most significant one
+        int gray = 0;
+        for (int j = bitsPerValue - 1; j >= 0; j -= 8) {
+          final int lowestPlane = j > 7 ? j - 7 : 0;
+
+          long matrix = 0;
+          for (int i = j; i >= lowestPlane; i--) {
+            gray ^= planes[i][byteIndex];
+            matrix |= (long) (gray & 0xff) << ((i - lowestPlane) << 3);
+          }
 
-        for (int minorX = 0; minorX < minorWidth; minorX++) {
-          final int i = minorX + x;
-          grayScaleValues[y][i] = 0;
+          matrix = transpose(matrix);
 
-          for (int j = 0; j < bitsPerValue; j++) {
-            grayScaleValues[y][i] += ((grayScalePlanes[j].getByte(byteIndex) >> (7 - i & 7)) & 1) * (1 << j);
+          for (int minorX = 0; minorX < minorWidth; minorX++) {
+            grayScaleValues[valueIndex + minorX] |= (int) (matrix >>> ((7 - minorX) << 3) & 0xff) << lowestPlane;
           }
         }
       }
@@ -325,6 +656,19 @@ public class HalftoneRegion implements Region {
     return grayScaleValues;
   }
 
+  /**
+   * Transposes a 8x8 bit matrix whose first row is the most significant byte, see Hacker's Delight,
+   * 7-3.
+   */
+  private static long transpose(long x) {
+    long t = (x ^ (x >>> 7)) & 0x00AA00AA00AA00AAL;
+    x = x ^ t ^ (t << 7);
+    t = (x ^ (x >>> 14)) & 0x0000CCCC0000CCCCL;
+    x = x ^ t ^ (t << 14);
+    t = (x ^ (x >>> 28)) & 0x00000000F0F0F0F0L;
+    return x ^ t ^ (t << 28);
+  }
+
   private int computeX(final int m, final int n) {
     return shiftAndFill((hGridX + m * hRegionY + n * hRegionX));
   }
@@ -333,21 +677,9 @@ public class HalftoneRegion implements Region {
     return shiftAndFill((hGridY + m * hRegionX - n * hRegionY));
   }
 
-  private int shiftAndFill(int value) {
-    // shift value by 8 and let the leftmost 8 bits be 0
-    value >>= 8;
-
-    if (value < 0) {
-      // fill the leftmost 8 bits with 1
-      final int bitPosition = (int) (Math.log(Integer.highestOneBit(value)) / Math.log(2));
-
-      for (int i = 1; i < 31 - bitPosition; i++) {
-        // bit flip
-        value |= 1 << (31 - i);
-      }
-    }
-
-    return value;
+  private int shiftAndFill(final int value) {
+    // the arithmetic shift fills the leftmost 8 bits with the sign
+    return value >> 8;
   }
 
   public void init(final SegmentHeader header, final SubInputStream sis) throws InvalidHeaderValueException,
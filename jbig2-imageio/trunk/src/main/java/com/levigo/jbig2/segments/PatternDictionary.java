@@ -26,9 +26,13 @@ import com.levigo.jbig2.Dictionary;
 import com.levigo.jbig2.SegmentHeader;
 import com.levigo.jbig2.err.InvalidHeaderValueException;
 import com.levigo.jbig2.image.Bitmaps;
+import com.levigo.jbig2.image.PhasedReduction;
 import com.levigo.jbig2.io.SubInputStream;
+import com.levigo.jbig2.util.ResourceBudget;
 import com.levigo.jbig2.util.log.Logger;
 import com.levigo.jbig2.util.log.LoggerFactory;
+import com.levigo.jbig2.util.metrics.DecodeMetrics;
+import com.levigo.jbig2.util.metrics.DecodeMetricsFactory;
 
 /**
  * This class represents the segment type "Pattern dictionary", 7.4.4.
@@ -41,6 +45,7 @@ public class PatternDictionary implements Dictionary {
   private final Logger log = LoggerFactory.getLogger(PatternDictionary.class);
 
   private SubInputStream subInputStream;
+  private SegmentHeader segmentHeader;
 
   /** Segment data structure (only necessary if MMR is used) */
   private long dataHeaderOffset;
@@ -64,6 +69,10 @@ public class PatternDictionary implements Dictionary {
   /** Decoded bitmaps, stored to be used by segments, that refer to it */
   private ArrayList<Bitmap> patterns;
 
+  /** Patterns reduced by {@link #reducedPatternsFactor}, created on demand */
+  private ArrayList<PhasedReduction> reducedPatterns;
+  private int reducedPatternsFactor;
+
   /**
    * Largest gray-scale value, 7.4.4.1.4
    * 
@@ -85,6 +94,9 @@ public class PatternDictionary implements Dictionary {
 
     readGrayMax();
 
+    // The collective bitmap holds all patterns side by side, see 6.7.5
+    ResourceBudget.checkRegionSize(((grayMax & 0xffffffffL) + 1) * (hdpWidth & 0xff), hdpHeight & 0xff);
+
     /* Segment data structure */
     computeSegmentDataStructure();
 
@@ -139,6 +151,8 @@ public class PatternDictionary implements Dictionary {
    */
   public ArrayList<Bitmap> getDictionary() throws IOException, InvalidHeaderValueException {
     if (null == patterns) {
+      final DecodeMetrics metrics = DecodeMetricsFactory.getDecodeMetrics();
+      final long start = metrics.isEnabled() ? System.nanoTime() : 0;
 
       if (!isMMREncoded) {
         setGbAtPixels();
@@ -147,17 +161,41 @@ public class PatternDictionary implements Dictionary {
       // 2)
       final GenericRegion genericRegion = new GenericRegion(subInputStream);
       genericRegion.setParameters(isMMREncoded, dataOffset, dataLength, hdpHeight, (grayMax + 1) * hdpWidth,
-          hdTemplate, false, false, gbAtX, gbAtY);
+          hdTemplate, false, null, gbAtX, gbAtY);
 
       final Bitmap collectiveBitmap = genericRegion.getRegionBitmap();
 
       // 4)
       extractPatterns(collectiveBitmap);
+
+      if (metrics.isEnabled()) {
+        // pattern dictionary segments are of type 16
+        metrics.segmentDecoded(16, null == segmentHeader ? -1 : segmentHeader.getSegmentNr(),
+            null == segmentHeader ? 0 : segmentHeader.getPageAssociation(), subInputStream.length(),
+            (long) collectiveBitmap.getWidth() * collectiveBitmap.getHeight(), System.nanoTime() - start);
+      }
     }
 
     return patterns;
   }
 
+  /**
+   * Returns the patterns prepared for drawing at reduced resolution. Each pattern is reduced at most
+   * once per phase of the cell grid, so halftone regions that refer to this dictionary don't need to
+   * reduce the patterns of their grid cells one by one.
+   * 
+   * @param factor - The reduction factor.
+   * @return The reduced patterns in the order of {@link #getDictionary()}.
+   */
+  public ArrayList<PhasedReduction> getReducedDictionary(final int factor) throws IOException,
+      InvalidHeaderValueException {
+    if (null == reducedPatterns || reducedPatternsFactor != factor) {
+      reducedPatterns = PhasedReduction.of(getDictionary(), factor);
+      reducedPatternsFactor = factor;
+    }
+    return reducedPatterns;
+  }
+
   private void extractPatterns(Bitmap collectiveBitmap) {
     // 3)
     int gray = 0;
@@ -197,6 +235,7 @@ public class PatternDictionary implements Dictionary {
   }
 
   public void init(SegmentHeader header, SubInputStream sis) throws InvalidHeaderValueException, IOException {
+    this.segmentHeader = header;
     this.subInputStream = sis;
     parseHeader();
   }
@@ -25,6 +25,7 @@ import com.levigo.jbig2.err.IntegerMaxValueException;
 import com.levigo.jbig2.err.InvalidHeaderValueException;
 import com.levigo.jbig2.io.SubInputStream;
 import com.levigo.jbig2.util.CombinationOperator;
+import com.levigo.jbig2.util.ResourceBudget;
 
 /**
  * This class represents the "Region segment information" field, 7.4.1 (page 50). <br>
@@ -65,6 +66,8 @@ public class RegionSegmentInformation implements SegmentData {
     this.xLocation = ((int) (subInputStream.readBits(32) & 0xffffffff));
     this.yLocation = ((int) (subInputStream.readBits(32) & 0xffffffff));
 
+    ResourceBudget.checkRegionSize(bitmapWidth & 0xffffffffL, bitmapHeight & 0xffffffffL);
+
     /* Bit 3-7 */
     subInputStream.readBits(5); // Dirty read... reserved bits are 0
 
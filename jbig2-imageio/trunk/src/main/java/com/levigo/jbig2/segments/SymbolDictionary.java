@@ -18,12 +18,21 @@
 package com.levigo.jbig2.segments;
 
 import java.awt.Rectangle;
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.imageio.stream.MemoryCacheImageInputStream;
 
 import com.levigo.jbig2.Bitmap;
 import com.levigo.jbig2.Dictionary;
-import com.levigo.jbig2.JBIG2ImageReader;
 import com.levigo.jbig2.Region;
 import com.levigo.jbig2.SegmentHeader;
 import com.levigo.jbig2.decoder.arithmetic.ArithmeticDecoder;
@@ -35,9 +44,16 @@ import com.levigo.jbig2.decoder.huffman.StandardTables;
 import com.levigo.jbig2.err.IntegerMaxValueException;
 import com.levigo.jbig2.err.InvalidHeaderValueException;
 import com.levigo.jbig2.image.Bitmaps;
+import com.levigo.jbig2.image.GlyphCache;
+import com.levigo.jbig2.image.PhasedReduction;
 import com.levigo.jbig2.io.SubInputStream;
+import com.levigo.jbig2.util.AbortSignal;
+import com.levigo.jbig2.util.DecoderExecutors;
+import com.levigo.jbig2.util.ResourceBudget;
 import com.levigo.jbig2.util.log.Logger;
 import com.levigo.jbig2.util.log.LoggerFactory;
+import com.levigo.jbig2.util.metrics.DecodeMetrics;
+import com.levigo.jbig2.util.metrics.DecodeMetricsFactory;
 
 /**
  * This class represents the data of segment type "Symbol dictionary". Parsing is described in
@@ -93,6 +109,11 @@ public class SymbolDictionary implements Dictionary {
 
   /** Return value of that segment */
   private ArrayList<Bitmap> exportSymbols;
+
+  /** Export symbols reduced by {@link #reducedSymbolsFactor}, created on demand */
+  private ArrayList<PhasedReduction> reducedSymbols;
+  private GlyphCache glyphCache;
+  private int reducedSymbolsFactor;
   private ArrayList<Bitmap> sbSymbols;
 
   private ArithmeticDecoder arithmeticDecoder;
@@ -235,6 +256,7 @@ public class SymbolDictionary implements Dictionary {
 
   private void readAmountOfNewSymbols() throws IOException {
     amountOfNewSymbolss = (int) subInputStream.readBits(32); // & 0xffffffff;
+    ResourceBudget.checkSymbols(amountOfNewSymbolss & 0xffffffffL);
   }
 
   private void setInSyms() throws IOException, InvalidHeaderValueException, IntegerMaxValueException {
@@ -320,8 +342,9 @@ public class SymbolDictionary implements Dictionary {
    * @return List of decoded symbol bitmaps as an <code>ArrayList</code>
    */
   public ArrayList<Bitmap> getDictionary() throws IOException, IntegerMaxValueException, InvalidHeaderValueException {
-    long timestamp = System.currentTimeMillis();
     if (null == exportSymbols) {
+      final DecodeMetrics metrics = DecodeMetricsFactory.getDecodeMetrics();
+      final long start = metrics.isEnabled() ? System.nanoTime() : 0;
 
       if (useRefinementAggregation)
         sbSymCodeLen = getSbSymCodeLen();
@@ -335,8 +358,13 @@ public class SymbolDictionary implements Dictionary {
 
       /* 6.5.5 2) */
       int[] newSymbolsWidths = null;
+      List<HeightClass> heightClasses = null;
       if (isHuffmanEncoded && !useRefinementAggregation) {
         newSymbolsWidths = new int[amountOfNewSymbolss];
+        if (DecoderExecutors.currentParallelism() > 1) {
+          // the collective bitmaps are decoded after all of them have been read, see decodeHeightClasses
+          heightClasses = new ArrayList<HeightClass>();
+        }
       }
 
       setSymbolsArray();
@@ -347,6 +375,7 @@ public class SymbolDictionary implements Dictionary {
 
       /* 6.5.5 4 a) */
       while (amountOfDecodedSymbols != amountOfNewSymbolss) {
+        AbortSignal.checkAborted();
 
         /* 6.5.5 4 b) */
         heightClassHeight += decodeHeightClassDeltaHeight();
@@ -398,15 +427,27 @@ public class SymbolDictionary implements Dictionary {
 
           subInputStream.skipBits();
 
-          final Bitmap heightClassCollectiveBitmap = decodeHeightClassCollectiveBitmap(bmSize, heightClassHeight,
-              totalWidth);
+          if (null != heightClasses) {
+            heightClasses.add(readHeightClassCollectiveBitmap(bmSize, heightClassHeight, totalWidth,
+                heightClassFirstSymbolIndex, amountOfDecodedSymbols));
+          } else {
+            final Bitmap heightClassCollectiveBitmap = decodeHeightClassCollectiveBitmap(bmSize, heightClassHeight,
+                totalWidth);
+            decodeHeightClassBitmap(heightClassCollectiveBitmap, heightClassFirstSymbolIndex, amountOfDecodedSymbols,
+                heightClassHeight, newSymbolsWidths);
+            for (int i = heightClassFirstSymbolIndex; i < amountOfDecodedSymbols; i++) {
+              sbSymbols.add(newSymbols[i]);
+            }
+          }
 
           subInputStream.skipBits();
-          decodeHeightClassBitmap(heightClassCollectiveBitmap, heightClassFirstSymbolIndex, heightClassHeight,
-              newSymbolsWidths);
         }
       }
 
+      if (null != heightClasses) {
+        decodeHeightClasses(heightClasses, newSymbolsWidths);
+      }
+
       /* 5) */
       /* 6.5.10 1) - 5) */
 
@@ -414,16 +455,57 @@ public class SymbolDictionary implements Dictionary {
 
       /* 6.5.10 6) - 8) */
       setExportedSymbols(exFlags);
-    }
 
-    if (JBIG2ImageReader.PERFORMANCE_TEST)
-      log.info("SYMBOL DECODING: " + (System.currentTimeMillis() - timestamp) + " ms");
+      if (metrics.isEnabled()) {
+        long pixels = 0;
+        for (Bitmap symbol : newSymbols) {
+          if (null != symbol) {
+            pixels += (long) symbol.getWidth() * symbol.getHeight();
+          }
+        }
+        // symbol dictionary segments are of type 0
+        metrics.segmentDecoded(0, null == segmentHeader ? -1 : segmentHeader.getSegmentNr(),
+            null == segmentHeader ? 0 : segmentHeader.getPageAssociation(), subInputStream.length(), pixels,
+            System.nanoTime() - start);
+      }
+    }
 
     // DictionaryViewer.viewSymbols(sdExSyms);
 
     return exportSymbols;
   }
 
+  /**
+   * Returns the export symbols prepared for drawing at arbitrary bit positions. Text regions that
+   * refer to this dictionary share the shifted symbols, see {@link GlyphCache}.
+   * 
+   * @return The glyphs of the export symbols in the order of {@link #getDictionary()}.
+   */
+  public GlyphCache getGlyphCache() throws IOException, IntegerMaxValueException,
+      InvalidHeaderValueException {
+    if (null == glyphCache) {
+      glyphCache = new GlyphCache(getDictionary(), GlyphCache.DEFAULT_MAX_MEMORY);
+    }
+    return glyphCache;
+  }
+
+  /**
+   * Returns the export symbols prepared for drawing at reduced resolution. Each symbol is reduced at
+   * most once per phase of the cell grid, so text regions that refer to this dictionary don't need
+   * to reduce their symbol instances one by one.
+   * 
+   * @param factor - The reduction factor.
+   * @return The reduced export symbols in the order of {@link #getDictionary()}.
+   */
+  public ArrayList<PhasedReduction> getReducedDictionary(final int factor) throws IOException,
+      IntegerMaxValueException, InvalidHeaderValueException {
+    if (null == reducedSymbols || reducedSymbolsFactor != factor) {
+      reducedSymbols = PhasedReduction.of(getDictionary(), factor);
+      reducedSymbolsFactor = factor;
+    }
+    return reducedSymbols;
+  }
+
   private void setCodingStatistics() throws IOException {
     if (cxIADT == null) {
       cxIADT = new CX(512, 1);
@@ -466,23 +548,155 @@ public class SymbolDictionary implements Dictionary {
   }
 
   private final void decodeHeightClassBitmap(final Bitmap heightClassCollectiveBitmap,
-      final int heightClassFirstSymbol, final int heightClassHeight, final int[] newSymbolsWidths)
-      throws IntegerMaxValueException, InvalidHeaderValueException, IOException {
+      final int heightClassFirstSymbol, final int heightClassLastSymbol, final int heightClassHeight,
+      final int[] newSymbolsWidths) {
 
-    for (int i = heightClassFirstSymbol; i < amountOfDecodedSymbols; i++) {
-      int startColumn = 0;
+    int startColumn = 0;
+    for (int i = heightClassFirstSymbol; i < heightClassLastSymbol; i++) {
+      final Rectangle roi = new Rectangle(startColumn, 0, newSymbolsWidths[i], heightClassHeight);
+      newSymbols[i] = Bitmaps.extract(roi, heightClassCollectiveBitmap);
+      startColumn += newSymbolsWidths[i];
+    }
+  }
 
-      for (int j = heightClassFirstSymbol; j <= i - 1; j++) {
-        startColumn += newSymbolsWidths[j];
+  /**
+   * Decodes the collective bitmaps of all height classes and slices them into symbols. The collective
+   * bitmaps don't depend on each other, so if there are several MMR-coded ones, they are decoded by
+   * up to {@link DecoderExecutors#currentParallelism()} threads: the calling thread and helper tasks
+   * of {@link DecoderExecutors#current()}. Helper tasks that haven't started when the calling thread
+   * runs out of height classes are skipped, so decoding completes even if the executor is busy.
+   * 
+   * @param heightClasses - The height classes in the order they appear in the data.
+   * @param newSymbolsWidths - The widths of the new symbols.
+   * @throws IOException if a collective bitmap couldn't be decoded.
+   */
+  private void decodeHeightClasses(final List<HeightClass> heightClasses, final int[] newSymbolsWidths)
+      throws IOException {
+    int mmrCoded = 0;
+    for (HeightClass heightClass : heightClasses) {
+      if (null == heightClass.collectiveBitmap) {
+        mmrCoded++;
       }
+    }
 
-      final Rectangle roi = new Rectangle(startColumn, 0, newSymbolsWidths[i], heightClassHeight);
-      final Bitmap symbolBitmap = Bitmaps.extract(roi, heightClassCollectiveBitmap);
-      newSymbols[i] = symbolBitmap;
-      sbSymbols.add(symbolBitmap);
+    final int parallelism = Math.min(DecoderExecutors.currentParallelism(), mmrCoded);
+    final AtomicInteger nextHeightClass = new AtomicInteger();
+
+    if (parallelism < 2) {
+      decodeHeightClasses(heightClasses, newSymbolsWidths, nextHeightClass);
+    } else {
+      final ExecutorService executor = DecoderExecutors.current();
+      final List<HeightClassDecoder> helpers = new ArrayList<HeightClassDecoder>(parallelism - 1);
+
+      for (int i = 1; i < parallelism; i++) {
+        final HeightClassDecoder helper = new HeightClassDecoder(heightClasses, newSymbolsWidths, nextHeightClass);
+        helper.result = executor.submit(helper);
+        helpers.add(helper);
+      }
+
+      boolean completed = false;
+      try {
+        decodeHeightClasses(heightClasses, newSymbolsWidths, nextHeightClass);
+        completed = true;
+      } finally {
+        if (!completed) {
+          // let the helpers stop after their current height class
+          nextHeightClass.set(heightClasses.size());
+        }
+        awaitHelpers(helpers, nextHeightClass, heightClasses.size(), completed);
+      }
+    }
+
+    for (HeightClass heightClass : heightClasses) {
+      for (int i = heightClass.firstSymbol; i < heightClass.lastSymbol; i++) {
+        sbSymbols.add(newSymbols[i]);
+      }
+    }
+  }
+
+  /**
+   * Decodes height classes until there are none left. Each height class is decoded by the thread
+   * that takes its index from the given counter.
+   */
+  private void decodeHeightClasses(final List<HeightClass> heightClasses, final int[] newSymbolsWidths,
+      final AtomicInteger nextHeightClass) throws IOException {
+    for (int i = nextHeightClass.getAndIncrement(); i < heightClasses.size(); i = nextHeightClass.getAndIncrement()) {
+      AbortSignal.checkAborted();
+      decodeHeightClass(heightClasses.get(i), newSymbolsWidths);
+    }
+  }
+
+  /**
+   * Waits for the helper tasks that have been started and skips the others. The first failure of a
+   * helper is rethrown if {@code rethrow} is set, the remaining helpers are stopped then.
+   */
+  private static void awaitHelpers(final List<HeightClassDecoder> helpers, final AtomicInteger nextHeightClass,
+      final int amountOfHeightClasses, final boolean rethrow) throws IOException {
+    Throwable failure = null;
+    boolean interrupted = false;
+
+    for (HeightClassDecoder helper : helpers) {
+      if (helper.started.compareAndSet(false, true)) {
+        // not started yet, it won't do anything
+        helper.result.cancel(false);
+        continue;
+      }
+
+      try {
+        helper.result.get();
+      } catch (InterruptedException e) {
+        interrupted = true;
+        nextHeightClass.set(amountOfHeightClasses);
+      } catch (ExecutionException e) {
+        if (null == failure) {
+          failure = e.getCause();
+          nextHeightClass.set(amountOfHeightClasses);
+        }
+      }
+    }
+
+    if (interrupted) {
+      Thread.currentThread().interrupt();
+      if (rethrow) {
+        throw new IOException("Interrupted while decoding symbol dictionary");
+      }
+    }
+
+    if (rethrow && null != failure) {
+      if (failure instanceof IOException) {
+        throw (IOException) failure;
+      } else if (failure instanceof RuntimeException) {
+        throw (RuntimeException) failure;
+      } else if (failure instanceof Error) {
+        throw (Error) failure;
+      }
+      throw new IOException(failure.getMessage());
     }
   }
 
+  private void decodeHeightClass(final HeightClass heightClass, final int[] newSymbolsWidths) throws IOException {
+    Bitmap collectiveBitmap = heightClass.collectiveBitmap;
+
+    if (null == collectiveBitmap) {
+      final MemoryCacheImageInputStream mmrStream = new MemoryCacheImageInputStream(new ByteArrayInputStream(
+          heightClass.mmrData));
+      try {
+        final SubInputStream mmrData = new SubInputStream(mmrStream, 0, heightClass.mmrData.length);
+        final GenericRegion collectiveRegion = new GenericRegion(mmrData);
+        collectiveRegion.setParameters(true, 0, heightClass.mmrData.length, heightClass.height,
+            heightClass.totalWidth);
+        collectiveBitmap = collectiveRegion.getRegionBitmap();
+      } finally {
+        mmrStream.close();
+      }
+      // the copy isn't needed anymore
+      heightClass.mmrData = null;
+    }
+
+    decodeHeightClassBitmap(collectiveBitmap, heightClass.firstSymbol, heightClass.lastSymbol, heightClass.height,
+        newSymbolsWidths);
+  }
+
   private final void decodeAggregate(final int symbolWidth, final int heightClassHeight) throws IOException,
       InvalidHeaderValueException, IntegerMaxValueException {
     // 6.5.8.2 1)
@@ -693,25 +907,50 @@ public class SymbolDictionary implements Dictionary {
     return 0;
   }
 
+  /**
+   * Decodes a height class collective bitmap (6.5.9) directly from the stream.
+   */
   private final Bitmap decodeHeightClassCollectiveBitmap(final long bmSize, final int heightClassHeight,
       final int totalWidth) throws IOException {
     if (bmSize == 0) {
       final Bitmap heightClassCollectiveBitmap = new Bitmap(totalWidth, heightClassHeight);
+      subInputStream.readFully(heightClassCollectiveBitmap.getByteArray());
+      return heightClassCollectiveBitmap;
+    }
 
-      for (int i = 0; i < heightClassCollectiveBitmap.getByteArray().length; i++) {
-        heightClassCollectiveBitmap.setByte(i, subInputStream.readByte());
-      }
+    if (genericRegion == null) {
+      genericRegion = new GenericRegion(subInputStream);
+    }
 
-      return heightClassCollectiveBitmap;
-    } else {
-      if (genericRegion == null) {
-        genericRegion = new GenericRegion(subInputStream);
-      }
+    final long offset = subInputStream.getStreamPosition();
+    genericRegion.setParameters(true, offset, bmSize, heightClassHeight, totalWidth);
+    final Bitmap heightClassCollectiveBitmap = genericRegion.getRegionBitmap();
+    subInputStream.seek(offset + bmSize);
+    return heightClassCollectiveBitmap;
+  }
 
-      genericRegion.setParameters(true, subInputStream.getStreamPosition(), bmSize, heightClassHeight, totalWidth);
+  /**
+   * Reads the data of a height class collective bitmap (6.5.9) without decoding it. Uncompressed
+   * bitmaps are read directly, MMR-coded bitmaps are copied so they can be decoded independently of
+   * this stream.
+   */
+  private final HeightClass readHeightClassCollectiveBitmap(final long bmSize, final int heightClassHeight,
+      final int totalWidth, final int firstSymbol, final int lastSymbol) throws IOException {
+    final HeightClass heightClass = new HeightClass(heightClassHeight, totalWidth, firstSymbol, lastSymbol);
 
-      return genericRegion.getRegionBitmap();
+    if (bmSize == 0) {
+      final Bitmap heightClassCollectiveBitmap = new Bitmap(totalWidth, heightClassHeight);
+      subInputStream.readFully(heightClassCollectiveBitmap.getByteArray());
+      heightClass.collectiveBitmap = heightClassCollectiveBitmap;
+    } else {
+      if (bmSize > Integer.MAX_VALUE) {
+        throw new IOException("Collective bitmap size too large: " + bmSize);
+      }
+      heightClass.mmrData = new byte[(int) bmSize];
+      subInputStream.readFully(heightClass.mmrData);
     }
+
+    return heightClass;
   }
 
   private void setExportedSymbols(int[] toExportFlags) {
@@ -843,4 +1082,65 @@ public class SymbolDictionary implements Dictionary {
     this.segmentHeader = header;
     parseHeader();
   }
+
+  /**
+   * A helper task that decodes height classes concurrently to the calling thread. The task does
+   * nothing if it is started after the calling thread has stopped waiting for it.
+   */
+  private final class HeightClassDecoder implements Callable<Object> {
+    private final List<HeightClass> heightClasses;
+    private final int[] newSymbolsWidths;
+    private final AtomicInteger nextHeightClass;
+    private final AbortSignal abortSignal = AbortSignal.current();
+    final AtomicBoolean started = new AtomicBoolean();
+    Future<Object> result;
+
+    HeightClassDecoder(final List<HeightClass> heightClasses, final int[] newSymbolsWidths,
+        final AtomicInteger nextHeightClass) {
+      this.heightClasses = heightClasses;
+      this.newSymbolsWidths = newSymbolsWidths;
+      this.nextHeightClass = nextHeightClass;
+    }
+
+    public Object call() throws IOException {
+      if (!started.compareAndSet(false, true)) {
+        return null;
+      }
+
+      if (null != abortSignal) {
+        abortSignal.attach();
+      }
+      try {
+        decodeHeightClasses(heightClasses, newSymbolsWidths, nextHeightClass);
+        return null;
+      } finally {
+        if (null != abortSignal) {
+          abortSignal.detach();
+        }
+      }
+    }
+  }
+
+  /**
+   * The layout and the data of a height class collective bitmap.
+   */
+  private static final class HeightClass {
+    final int height;
+    final int totalWidth;
+    final int firstSymbol;
+    final int lastSymbol;
+
+    /** The bitmap, if it is stored uncompressed. */
+    Bitmap collectiveBitmap;
+
+    /** The MMR-coded data, if the bitmap is compressed. */
+    byte[] mmrData;
+
+    HeightClass(int height, int totalWidth, int firstSymbol, int lastSymbol) {
+      this.height = height;
+      this.totalWidth = totalWidth;
+      this.firstSymbol = firstSymbol;
+      this.lastSymbol = lastSymbol;
+    }
+  }
 }
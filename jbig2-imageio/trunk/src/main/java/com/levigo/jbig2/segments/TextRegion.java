@@ -17,15 +17,19 @@
 
 package com.levigo.jbig2.segments;
 
+import java.awt.Rectangle;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
 
 import com.levigo.jbig2.Bitmap;
 import com.levigo.jbig2.JBIG2ImageReader;
 import com.levigo.jbig2.Region;
 import com.levigo.jbig2.SegmentHeader;
+import com.levigo.jbig2.SymbolInstanceListener;
 import com.levigo.jbig2.decoder.arithmetic.ArithmeticDecoder;
 import com.levigo.jbig2.decoder.arithmetic.ArithmeticIntegerDecoder;
 import com.levigo.jbig2.decoder.arithmetic.CX;
@@ -37,10 +41,17 @@ import com.levigo.jbig2.decoder.huffman.HuffmanTable.Code;
 import com.levigo.jbig2.err.IntegerMaxValueException;
 import com.levigo.jbig2.err.InvalidHeaderValueException;
 import com.levigo.jbig2.image.Bitmaps;
+import com.levigo.jbig2.image.GlyphCache;
+import com.levigo.jbig2.image.PhasedReduction;
+import com.levigo.jbig2.image.ReducedBitmap;
+import com.levigo.jbig2.image.SymbolBlitter;
 import com.levigo.jbig2.io.SubInputStream;
+import com.levigo.jbig2.util.AbortSignal;
 import com.levigo.jbig2.util.CombinationOperator;
+import com.levigo.jbig2.util.ResourceBudget;
 import com.levigo.jbig2.util.log.Logger;
 import com.levigo.jbig2.util.log.LoggerFactory;
+import com.levigo.jbig2.util.metrics.DecodeMetricsFactory;
 
 /**
  * This class represented the segment type "Text region", 7.4.3, page 56.
@@ -93,6 +104,31 @@ public class TextRegion implements Region {
   private Bitmap regionBitmap;
   private ArrayList<Bitmap> symbols = new ArrayList<Bitmap>();
 
+  /** The glyphs of the referred symbol dictionaries in the order of {@link #symbols} */
+  private ArrayList<GlyphCache.Glyph> glyphs;
+
+  /** The referred symbol dictionaries and the index of their first symbol in {@link #symbols} */
+  private ArrayList<SegmentHeader> symbolDictionaries;
+  private int[] symbolDictionaryOffsets;
+
+  /** The receiver of symbol instances, see {@link #decodeSymbolInstances(SymbolInstanceListener, int, int)} */
+  private SymbolInstanceListener symbolInstanceListener;
+  private int pageX;
+  private int pageY;
+
+  /** Symbol instances are drawn on a separate thread, see {@link #setPipelined(boolean)} */
+  private boolean pipelined;
+  private SymbolBlitter symbolBlitter;
+
+  /** Symbol instances outside of this area are not drawn, see {@link #setClipRegion(Rectangle)} */
+  private Rectangle clipRegion;
+
+  /** The target of symbol instances if the region is decoded at reduced resolution */
+  private ReducedBitmap reducedRegionBitmap;
+
+  /** The reduced symbols of the referred symbol dictionaries, mapped by their original symbol */
+  private Map<Bitmap, PhasedReduction> reducedSymbols;
+
   private ArithmeticDecoder arithmeticDecoder;
   private ArithmeticIntegerDecoder integerDecoder;
   private GenericRefinementRegion genericRefinementRegion;
@@ -242,6 +278,7 @@ public class TextRegion implements Region {
 
   private void readAmountOfSymbolInstances() throws IOException {
     amountOfSymbolInstances = subInputStream.readBits(32) & 0xffffffff;
+    ResourceBudget.checkSymbolInstances(amountOfSymbolInstances);
   }
 
   private void getSymbols() throws IOException, IntegerMaxValueException, InvalidHeaderValueException {
@@ -295,6 +332,17 @@ public class TextRegion implements Region {
     }
   }
 
+  /**
+   * Restricts drawing of symbol instances to the given area. Instances that lie completely outside
+   * of it are decoded (the data has to be read anyway) but not drawn into the region bitmap.
+   * 
+   * @param clipRegion - The area of interest in region coordinates or {@code null} to draw all
+   *          symbol instances.
+   */
+  public void setClipRegion(final Rectangle clipRegion) {
+    this.clipRegion = clipRegion;
+  }
+
   public Bitmap getRegionBitmap() throws IOException, IntegerMaxValueException, InvalidHeaderValueException {
 
     if (!isHuffmanEncoded) {
@@ -302,12 +350,105 @@ public class TextRegion implements Region {
     }
 
     createRegionBitmap();
-    decodeSymbolInstances();
+
+    if (pipelined) {
+      symbolBlitter = new SymbolBlitter(regionBitmap, combinationOperator);
+      try {
+        decodeSymbolInstances();
+        symbolBlitter.finish();
+      } finally {
+        symbolBlitter.cancel();
+        symbolBlitter = null;
+      }
+    } else {
+      decodeSymbolInstances();
+    }
 
     /* 4) */
     return regionBitmap;
   }
 
+  /**
+   * Sets whether symbol instances are drawn on a separate thread while the following instances are
+   * decoded, see {@link SymbolBlitter}. The resulting region bitmap is the same.
+   * 
+   * @param pipelined - {@code true} to draw on a separate thread.
+   */
+  public void setPipelined(final boolean pipelined) {
+    this.pipelined = pipelined;
+  }
+
+  /**
+   * Decodes the symbol instances and reports them to the given listener instead of drawing them into
+   * the region bitmap, which isn't created at all.
+   * 
+   * @param listener - The listener to notify.
+   * @param x - The x location of the region on the page.
+   * @param y - The y location of the region on the page.
+   */
+  public void decodeSymbolInstances(final SymbolInstanceListener listener, final int x, final int y)
+      throws IOException, IntegerMaxValueException, InvalidHeaderValueException {
+    if (!isHuffmanEncoded) {
+      setCodingStatistics();
+    }
+
+    symbolInstanceListener = listener;
+    pageX = x;
+    pageY = y;
+    try {
+      decodeSymbolInstances();
+    } finally {
+      symbolInstanceListener = null;
+    }
+  }
+
+  /**
+   * Decodes the region at reduced resolution. The symbols of the referred dictionaries are drawn
+   * with their reductions that are kept by the dictionaries, so the region's bitmap at full
+   * resolution is never created.
+   * Refined symbols are reduced when they are drawn.
+   * 
+   * @param factor - The reduction factor.
+   * @param phaseX - The horizontal phase of the cell grid, see {@link ReducedBitmap}.
+   * @param phaseY - The vertical phase of the cell grid, see {@link ReducedBitmap}.
+   * @return The region at reduced resolution.
+   */
+  public ReducedBitmap getReducedRegionBitmap(final int factor, final int phaseX, final int phaseY)
+      throws IOException, IntegerMaxValueException, InvalidHeaderValueException {
+    reducedSymbols = new IdentityHashMap<Bitmap, PhasedReduction>();
+    for (final SegmentHeader segment : segmentHeader.getRtSegments()) {
+      if (segment.getSegmentType() == 0) {
+        final SymbolDictionary sd = (SymbolDictionary) segment.getSegmentData();
+        final ArrayList<Bitmap> dictionary = sd.getDictionary();
+        final ArrayList<PhasedReduction> reducedDictionary = sd.getReducedDictionary(factor);
+        for (int i = 0; i < dictionary.size(); i++) {
+          reducedSymbols.put(dictionary.get(i), reducedDictionary.get(i));
+        }
+      }
+    }
+
+    if (!isHuffmanEncoded) {
+      setCodingStatistics();
+    }
+
+    /* 6.4.5 */
+    reducedRegionBitmap = new ReducedBitmap(regionInfo.getBitmapWidth(), regionInfo.getBitmapHeight(), factor,
+        phaseX, phaseY);
+
+    /* 1) */
+    if (defaultPixel != 0) {
+      reducedRegionBitmap.fill();
+    }
+
+    try {
+      decodeSymbolInstances();
+      return reducedRegionBitmap;
+    } finally {
+      reducedRegionBitmap = null;
+      reducedSymbols = null;
+    }
+  }
+
   private void setCodingStatistics() throws IOException {
     if (cxIADT == null)
       cxIADT = new CX(512, 1);
@@ -412,6 +553,8 @@ public class TextRegion implements Region {
 
       // do until OOB
       for (;;) {
+        AbortSignal.checkAborted();
+
         /* 3 c) i) - first symbol instance in the strip */
         if (first) {
           /* 6.4.7 */
@@ -446,11 +589,13 @@ public class TextRegion implements Region {
         final Bitmap ib = decodeIb(r, id);
 
         /* vi) */
-        blit(ib, t);
+        blit(ib, id, r, t);
 
         instanceCounter++;
       }
     }
+
+    DecodeMetricsFactory.getDecodeMetrics().symbolInstancesDecoded(amountOfSymbolInstances);
   }
 
   private final long decodeDT() throws IOException {
@@ -577,6 +722,9 @@ public class TextRegion implements Region {
       genericRefinementRegion.setParameters(cx, arithmeticDecoder, sbrTemplate, (int) (wo + rdw), (int) (ho + rdh),
           ibo, genericRegionReferenceDX, genericRegionReferenceDY, false, sbrATX, sbrATY);
 
+      // the refined symbol is drawn right away unless it is handed to a listener or another thread
+      genericRefinementRegion.setReuseRegionBitmaps(null == symbolInstanceListener && null == symbolBlitter);
+
       ib = genericRefinementRegion.getRegionBitmap();
 
       /* 7 */
@@ -768,7 +916,7 @@ public class TextRegion implements Region {
 
   }
 
-  private final void blit(Bitmap ib, long t) {
+  private final void blit(Bitmap ib, long id, long r, long t) {
     if (isTransposed == 0 && (referenceCorner == 2 || referenceCorner == 3)) {
       currentS += ib.getWidth() - 1;
     } else if (isTransposed == 1 && (referenceCorner == 0 || referenceCorner == 2)) {
@@ -799,7 +947,26 @@ public class TextRegion implements Region {
       }
     }
 
-    Bitmaps.blit(ib, regionBitmap, (int) s, (int) t, combinationOperator);
+    if (null != symbolInstanceListener) {
+      reportSymbolInstance(ib, (int) id, r != 0, (int) s, (int) t);
+    } else if (null != reducedRegionBitmap) {
+      final PhasedReduction reducedSymbol = reducedSymbols.get(ib);
+      if (null != reducedSymbol) {
+        reducedRegionBitmap.combine(reducedSymbol, (int) s, (int) t, combinationOperator);
+      } else {
+        // refined symbol
+        reducedRegionBitmap.combine(ib, (int) s, (int) t, combinationOperator);
+      }
+    } else if (isInsideClipRegion(ib, (int) s, (int) t)) {
+      final GlyphCache.Glyph glyph = r == 0 && null != glyphs ? glyphs.get((int) id) : null;
+      if (null != symbolBlitter) {
+        symbolBlitter.add(ib, glyph, (int) s, (int) t);
+      } else if (null != glyph) {
+        glyph.blit(regionBitmap, (int) s, (int) t, combinationOperator);
+      } else {
+        Bitmaps.blit(ib, regionBitmap, (int) s, (int) t, combinationOperator);
+      }
+    }
 
     /* x) */
     if (isTransposed == 0 && (referenceCorner == 0 || referenceCorner == 1)) {
@@ -812,15 +979,46 @@ public class TextRegion implements Region {
 
   }
 
+  private void reportSymbolInstance(final Bitmap ib, final int id, final boolean refined, final int s, final int t) {
+    int dictionary = 0;
+    while (dictionary + 1 < symbolDictionaryOffsets.length && symbolDictionaryOffsets[dictionary + 1] <= id) {
+      dictionary++;
+    }
+
+    symbolInstanceListener.symbolInstanceDecoded(segmentHeader.getSegmentNr(),
+        symbolDictionaries.get(dictionary).getSegmentNr(), id - symbolDictionaryOffsets[dictionary], pageX + s,
+        pageY + t, ib, refined);
+  }
+
+  private boolean isInsideClipRegion(final Bitmap ib, final int x, final int y) {
+    if (null == clipRegion) {
+      return true;
+    }
+
+    return x < clipRegion.x + clipRegion.width && x + ib.getWidth() > clipRegion.x
+        && y < clipRegion.y + clipRegion.height && y + ib.getHeight() > clipRegion.y;
+  }
+
   private void initSymbols() throws IOException, IntegerMaxValueException, InvalidHeaderValueException {
+    glyphs = new ArrayList<GlyphCache.Glyph>();
+    symbolDictionaries = new ArrayList<SegmentHeader>();
+    final ArrayList<Integer> offsets = new ArrayList<Integer>();
     for (final SegmentHeader segment : segmentHeader.getRtSegments()) {
       if (segment.getSegmentType() == 0) {
         final SymbolDictionary sd = (SymbolDictionary) segment.getSegmentData();
 
         sd.cxIAID = cxIAID;
+        symbolDictionaries.add(segment);
+        offsets.add(symbols.size());
         symbols.addAll(sd.getDictionary());
+        glyphs.addAll(sd.getGlyphCache().getGlyphs());
       }
     }
+
+    symbolDictionaryOffsets = new int[offsets.size()];
+    for (int i = 0; i < symbolDictionaryOffsets.length; i++) {
+      symbolDictionaryOffsets[i] = offsets.get(i);
+    }
     amountOfSymbols = symbols.size();
   }
 
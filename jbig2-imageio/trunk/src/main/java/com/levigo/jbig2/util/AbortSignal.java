@@ -0,0 +1,155 @@
+/**
+ * Copyright (C) 1995-2014 levigo holding gmbh.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.levigo.jbig2.util;
+
+import java.util.concurrent.ExecutorService;
+
+import com.levigo.jbig2.err.DecodingAbortedException;
+
+/**
+ * An {@code AbortSignal} allows to stop a running decoding process cooperatively. The signal is
+ * attached to the decoding thread, so decoders don't need a reference to the object that started
+ * the decoding. Decoders call {@link #checkAborted()} at reasonable checkpoints (per row, per symbol
+ * instance, per height class) which throws a {@link DecodingAbortedException} if the signal of the
+ * current thread has been triggered.
+ */
+public class AbortSignal {
+
+  private static final ThreadLocal<AbortSignal> CURRENT = new ThreadLocal<AbortSignal>();
+
+  private volatile boolean abortRequested;
+
+  /** The resource budget of the decoding process, {@code null} if resources are not limited */
+  private volatile ResourceBudget resourceBudget;
+
+  /** The maximum amount of threads of the decoding process for a single task */
+  private volatile int parallelism = 1;
+
+  /** The executor of helper tasks, {@code null} to use {@link DecoderExecutors#getDefaultExecutor()} */
+  private volatile ExecutorService executor;
+
+  /**
+   * Requests to abort the decoding process this signal is attached to. May be called from any
+   * thread.
+   */
+  public void abort() {
+    abortRequested = true;
+  }
+
+  /**
+   * @return {@code true} if {@link #abort()} has been called.
+   */
+  public boolean isAbortRequested() {
+    return abortRequested;
+  }
+
+  /**
+   * Sets the budget whose limits are enforced while this signal is attached to a thread.
+   * 
+   * @param resourceBudget - The budget or {@code null} if resources are not limited.
+   */
+  public void setResourceBudget(ResourceBudget resourceBudget) {
+    this.resourceBudget = resourceBudget;
+  }
+
+  /**
+   * @return The budget of the decoding process or {@code null} if resources are not limited.
+   */
+  public ResourceBudget getResourceBudget() {
+    return resourceBudget;
+  }
+
+  /**
+   * Sets the maximum amount of threads the decoding process may use for a single task, see
+   * {@link DecoderExecutors#currentParallelism()}.
+   * 
+   * @param parallelism - The amount of threads, {@code 1} to decode on the calling thread only.
+   */
+  public void setParallelism(int parallelism) {
+    this.parallelism = parallelism;
+  }
+
+  /**
+   * @return The maximum amount of threads the decoding process may use for a single task.
+   */
+  public int getParallelism() {
+    return parallelism;
+  }
+
+  /**
+   * Sets the executor that runs the helper tasks of the decoding process, see
+   * {@link DecoderExecutors#current()}.
+   * 
+   * @param executor - The executor or {@code null} to use the shared pool.
+   */
+  public void setExecutor(ExecutorService executor) {
+    this.executor = executor;
+  }
+
+  /**
+   * @return The executor of the decoding process or {@code null} if the shared pool is used.
+   */
+  public ExecutorService getExecutor() {
+    return executor;
+  }
+
+  /**
+   * Attaches this signal to the current thread.
+   */
+  public void attach() {
+    CURRENT.set(this);
+  }
+
+  /**
+   * Removes this signal from the current thread.
+   */
+  public void detach() {
+    if (CURRENT.get() == this) {
+      CURRENT.remove();
+    }
+  }
+
+  /**
+   * @return The signal attached to the current thread or {@code null} if there is none. Used to
+   *         attach the same signal to helper threads of a decoding process.
+   */
+  public static AbortSignal current() {
+    return CURRENT.get();
+  }
+
+  /**
+   * Checks whether the signal attached to the current thread has been triggered or the time budget
+   * of its {@link ResourceBudget} is exhausted.
+   * 
+   * @throws DecodingAbortedException if an abort has been requested.
+   * @throws com.levigo.jbig2.err.ResourceLimitExceededException if the time budget is exhausted.
+   */
+  public static void checkAborted() {
+    final AbortSignal signal = CURRENT.get();
+    if (null != signal) {
+      if (signal.abortRequested) {
+        throw new DecodingAbortedException("Decoding aborted");
+      }
+
+      final ResourceBudget budget = signal.resourceBudget;
+      if (null != budget) {
+        budget.checkTimeBudget();
+      }
+    }
+  }
+}
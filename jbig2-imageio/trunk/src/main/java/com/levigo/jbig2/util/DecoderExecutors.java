@@ -0,0 +1,88 @@
+/**
+ * Copyright (C) 1995-2014 levigo holding gmbh.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.levigo.jbig2.util;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Provides the {@link ExecutorService} that runs the helper tasks of a decoding process, i.e. the
+ * concurrent decoding of symbol dictionaries (see
+ * {@link com.levigo.jbig2.JBIG2ReadParam#setParallelism(int)}) and the drawing of pipelined text
+ * regions (see {@link com.levigo.jbig2.JBIG2ReadParam#setPipelinedTextRegions(boolean)}). The
+ * decoding thread never depends on a helper task that hasn't started: it does the work itself then,
+ * so a busy or bounded executor slows decoding down, but doesn't block it.
+ * <p>
+ * A read operation uses the executor of its read param, if one is given. Otherwise a shared pool of
+ * daemon threads is created on first use. Its idle threads terminate after a minute, and it can be
+ * shut down explicitly by {@link #shutdownDefaultExecutor()}, e.g. when an application server
+ * undeploys the library. A new pool is created if it is needed again afterwards.
+ */
+public class DecoderExecutors {
+
+  private static ExecutorService defaultExecutor;
+
+  /**
+   * @return The shared pool of daemon threads, created if there is none.
+   */
+  public static synchronized ExecutorService getDefaultExecutor() {
+    if (null == defaultExecutor) {
+      defaultExecutor = Executors.newCachedThreadPool(new ThreadFactory() {
+        public Thread newThread(Runnable r) {
+          final Thread thread = new Thread(r, "JBIG2 decoder");
+          thread.setDaemon(true);
+          return thread;
+        }
+      });
+    }
+    return defaultExecutor;
+  }
+
+  /**
+   * Shuts down the shared pool of daemon threads. Running tasks are completed. Does nothing if the
+   * pool hasn't been created.
+   */
+  public static synchronized void shutdownDefaultExecutor() {
+    if (null != defaultExecutor) {
+      defaultExecutor.shutdown();
+      defaultExecutor = null;
+    }
+  }
+
+  /**
+   * @return The executor of the decoding process the current thread belongs to or the shared pool
+   *         if the process doesn't specify one.
+   */
+  public static ExecutorService current() {
+    final AbortSignal signal = AbortSignal.current();
+    if (null != signal && null != signal.getExecutor()) {
+      return signal.getExecutor();
+    }
+    return getDefaultExecutor();
+  }
+
+  /**
+   * @return The maximum amount of threads that the decoding process the current thread belongs to
+   *         may use for a single task, {@code 1} if it is not specified.
+   */
+  public static int currentParallelism() {
+    final AbortSignal signal = AbortSignal.current();
+    return null != signal ? signal.getParallelism() : 1;
+  }
+}
@@ -0,0 +1,165 @@
+/**
+ * Copyright (C) 1995-2014 levigo holding gmbh.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.levigo.jbig2.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.levigo.jbig2.err.ResourceLimitExceededException;
+
+/**
+ * Tracks the resources consumed while a document is decoded and enforces the {@link ResourceLimits}
+ * of the current read operation. The budget is carried by the {@link AbortSignal} of the decoding
+ * thread, so decoders and helper threads reach it the same way as the signal. If no budget is
+ * attached to the current thread, all checks pass.
+ */
+public class ResourceBudget {
+
+  /** Bytes of all bitmaps allocated for the document so far */
+  private final AtomicLong decodedBytes = new AtomicLong();
+
+  /** The limits of the current read operation */
+  private volatile ResourceLimits limits = new ResourceLimits();
+
+  /** {@link System#nanoTime()} at which the time budget of the current read operation runs out */
+  private volatile long deadline;
+
+  /** Whether {@link #deadline} is set */
+  private volatile boolean hasDeadline;
+
+  /**
+   * Starts a read operation with the given limits. The time budget is counted from now on, the
+   * decoded bytes are counted across all read operations of the document.
+   * 
+   * @param limits - The limits of the read operation.
+   */
+  public void start(final ResourceLimits limits) {
+    if (limits == null) {
+      throw new IllegalArgumentException("limits must not be null");
+    }
+
+    this.limits = limits;
+    this.hasDeadline = limits.getTimeBudget() > 0;
+    this.deadline = System.nanoTime() + limits.getTimeBudget() * 1000000L;
+  }
+
+  /**
+   * @return The bytes of all bitmaps allocated for the document so far.
+   */
+  public long getDecodedBytes() {
+    return decodedBytes.get();
+  }
+
+  /**
+   * @return The budget attached to the current thread or {@code null} if there is none.
+   */
+  public static ResourceBudget current() {
+    final AbortSignal signal = AbortSignal.current();
+    return null != signal ? signal.getResourceBudget() : null;
+  }
+
+  /**
+   * Checks the size of a page before its bitmap is allocated.
+   * 
+   * @param width - The width of the page as unsigned value.
+   * @param height - The height of the page as unsigned value.
+   * @throws ResourceLimitExceededException if the page has more pixels than allowed.
+   */
+  public static void checkPageSize(final int width, final int height) {
+    final ResourceBudget budget = current();
+    if (null != budget) {
+      checkPixels("Page", width & 0xffffffffL, height & 0xffffffffL, budget.limits.getMaxPagePixels());
+    }
+  }
+
+  /**
+   * Checks the size of a region before its bitmap is allocated.
+   * 
+   * @param width - The width of the region.
+   * @param height - The height of the region.
+   * @throws ResourceLimitExceededException if the region has more pixels than allowed.
+   */
+  public static void checkRegionSize(final long width, final long height) {
+    final ResourceBudget budget = current();
+    if (null != budget) {
+      checkPixels("Region", width, height, budget.limits.getMaxRegionPixels());
+    }
+  }
+
+  /**
+   * @param amount - The amount of new symbols of a symbol dictionary.
+   * @throws ResourceLimitExceededException if the dictionary has more symbols than allowed.
+   */
+  public static void checkSymbols(final long amount) {
+    final ResourceBudget budget = current();
+    if (null != budget) {
+      checkAmount("symbols", amount, budget.limits.getMaxSymbols());
+    }
+  }
+
+  /**
+   * @param amount - The amount of symbol instances of a text region.
+   * @throws ResourceLimitExceededException if the region has more symbol instances than allowed.
+   */
+  public static void checkSymbolInstances(final long amount) {
+    final ResourceBudget budget = current();
+    if (null != budget) {
+      checkAmount("symbol instances", amount, budget.limits.getMaxSymbolInstances());
+    }
+  }
+
+  /**
+   * Accounts the given amount of bytes before a bitmap is allocated.
+   * 
+   * @param bytes - The size of the bitmap in bytes.
+   * @throws ResourceLimitExceededException if the document would allocate more bytes than allowed.
+   */
+  public static void allocate(final long bytes) {
+    final ResourceBudget budget = current();
+    if (null != budget) {
+      final long total = budget.decodedBytes.addAndGet(bytes);
+      final long max = budget.limits.getMaxDecodedBytes();
+      if (max > 0 && total > max) {
+        throw new ResourceLimitExceededException("Decoded bitmaps exceed " + max + " bytes");
+      }
+    }
+  }
+
+  /**
+   * @throws ResourceLimitExceededException if the time budget of the read operation is exhausted.
+   */
+  void checkTimeBudget() {
+    if (hasDeadline && System.nanoTime() - deadline > 0) {
+      throw new ResourceLimitExceededException("Decoding exceeds the time budget of " + limits.getTimeBudget()
+          + " ms");
+    }
+  }
+
+  private static void checkPixels(final String what, final long width, final long height, final long max) {
+    // Compared by division, the product of the declared sizes may overflow
+    if (max > 0 && width > 0 && height > max / width) {
+      throw new ResourceLimitExceededException(what + " of " + width + "x" + height + " pixels exceeds the limit of "
+          + max + " pixels");
+    }
+  }
+
+  private static void checkAmount(final String what, final long amount, final long max) {
+    if (max > 0 && amount > max) {
+      throw new ResourceLimitExceededException(amount + " " + what + " exceed the limit of " + max);
+    }
+  }
+}
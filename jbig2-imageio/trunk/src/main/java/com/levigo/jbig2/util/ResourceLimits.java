@@ -0,0 +1,154 @@
+/**
+ * Copyright (C) 1995-2014 levigo holding gmbh.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.levigo.jbig2.util;
+
+/**
+ * Limits the resources a single input may consume while it is decoded, to protect applications
+ * that decode untrusted data against decompression bombs. The sizes declared in page, region and
+ * dictionary headers are checked before anything is allocated for them, the amount of decoded
+ * bitmap data and the decoding time are checked while decoding. A violation stops decoding with a
+ * {@link com.levigo.jbig2.err.ResourceLimitExceededException}.
+ * <p>
+ * A value of {@code 0} means no limit, which is the default for all limits.
+ * 
+ * @see com.levigo.jbig2.JBIG2ReadParam#setResourceLimits(ResourceLimits)
+ * @see com.levigo.jbig2.JBIG2ImageReader#setResourceLimits(ResourceLimits)
+ */
+public class ResourceLimits {
+
+  /** Maximum amount of pixels of a page */
+  private long maxPagePixels;
+
+  /** Maximum amount of pixels of a region, a halftone grid or a collective pattern bitmap */
+  private long maxRegionPixels;
+
+  /** Maximum amount of bitmap bytes allocated while decoding a document */
+  private long maxDecodedBytes;
+
+  /** Maximum amount of new symbols of a symbol dictionary */
+  private long maxSymbols;
+
+  /** Maximum amount of symbol instances of a text region */
+  private long maxSymbolInstances;
+
+  /** Maximum duration of a single read operation in milliseconds */
+  private long timeBudget;
+
+  /**
+   * @param maxPagePixels - The maximum amount of pixels of a page or {@code 0} for no limit.
+   */
+  public void setMaxPagePixels(final long maxPagePixels) {
+    this.maxPagePixels = checkLimit("maximum page pixels", maxPagePixels);
+  }
+
+  /**
+   * @return The maximum amount of pixels of a page, {@code 0} if there is no limit.
+   */
+  public long getMaxPagePixels() {
+    return maxPagePixels;
+  }
+
+  /**
+   * @param maxRegionPixels - The maximum amount of pixels of a region or {@code 0} for no limit.
+   *          Halftone grids and the collective bitmaps of pattern dictionaries are limited as well.
+   */
+  public void setMaxRegionPixels(final long maxRegionPixels) {
+    this.maxRegionPixels = checkLimit("maximum region pixels", maxRegionPixels);
+  }
+
+  /**
+   * @return The maximum amount of pixels of a region, {@code 0} if there is no limit.
+   */
+  public long getMaxRegionPixels() {
+    return maxRegionPixels;
+  }
+
+  /**
+   * Sets the maximum amount of bytes of all bitmaps that are allocated while the pages of a
+   * document are decoded. This includes intermediate bitmaps like symbols and regions, so it should
+   * be a multiple of the size of the pages.
+   * 
+   * @param maxDecodedBytes - The maximum amount of bytes or {@code 0} for no limit.
+   */
+  public void setMaxDecodedBytes(final long maxDecodedBytes) {
+    this.maxDecodedBytes = checkLimit("maximum decoded bytes", maxDecodedBytes);
+  }
+
+  /**
+   * @return The maximum amount of bitmap bytes per document, {@code 0} if there is no limit.
+   */
+  public long getMaxDecodedBytes() {
+    return maxDecodedBytes;
+  }
+
+  /**
+   * @param maxSymbols - The maximum amount of new symbols of a symbol dictionary or {@code 0} for no
+   *          limit.
+   */
+  public void setMaxSymbols(final long maxSymbols) {
+    this.maxSymbols = checkLimit("maximum symbols", maxSymbols);
+  }
+
+  /**
+   * @return The maximum amount of new symbols of a symbol dictionary, {@code 0} if there is no
+   *         limit.
+   */
+  public long getMaxSymbols() {
+    return maxSymbols;
+  }
+
+  /**
+   * @param maxSymbolInstances - The maximum amount of symbol instances of a text region or {@code 0}
+   *          for no limit.
+   */
+  public void setMaxSymbolInstances(final long maxSymbolInstances) {
+    this.maxSymbolInstances = checkLimit("maximum symbol instances", maxSymbolInstances);
+  }
+
+  /**
+   * @return The maximum amount of symbol instances of a text region, {@code 0} if there is no limit.
+   */
+  public long getMaxSymbolInstances() {
+    return maxSymbolInstances;
+  }
+
+  /**
+   * Sets the time a single read operation may take. The budget is checked at the same points as
+   * abort requests, see {@link AbortSignal#checkAborted()}.
+   * 
+   * @param timeBudget - The time in milliseconds or {@code 0} for no limit.
+   */
+  public void setTimeBudget(final long timeBudget) {
+    this.timeBudget = checkLimit("time budget", timeBudget);
+  }
+
+  /**
+   * @return The time a single read operation may take in milliseconds, {@code 0} if there is no
+   *         limit.
+   */
+  public long getTimeBudget() {
+    return timeBudget;
+  }
+
+  private static long checkLimit(final String name, final long value) {
+    if (value < 0) {
+      throw new IllegalArgumentException("Illegal " + name + ": shall be 0 or greater; but was " + value);
+    }
+    return value;
+  }
+}
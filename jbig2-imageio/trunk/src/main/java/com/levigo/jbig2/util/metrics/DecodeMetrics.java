@@ -0,0 +1,113 @@
+/**
+ * Copyright (C) 1995-2014 levigo holding gmbh.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.levigo.jbig2.util.metrics;
+
+/**
+ * Receives measurements of the decoding process. Implementations must be thread-safe, because
+ * several documents may be decoded concurrently. Durations are given in nanoseconds.
+ * <p>
+ * Callers only measure durations if {@link #isEnabled()} returns {@code true}, so a disabled
+ * implementation doesn't cost more than the call of this method.
+ */
+public interface DecodeMetrics {
+
+  /**
+   * @return {@code true} if measurements should be reported.
+   */
+  boolean isEnabled();
+
+  /**
+   * The segment headers of a document have been read.
+   * 
+   * @param segments - The amount of segments.
+   * @param duration - The duration of reading the segment headers.
+   */
+  void documentMapped(int segments, long duration);
+
+  /**
+   * The data header of a segment has been parsed. The duration includes referred segments that are
+   * parsed on demand.
+   * 
+   * @param segmentType - The type of the segment, see 7.3.
+   * @param segmentNumber - The number of the segment.
+   * @param pageNumber - The page the segment is associated with, {@code 0} for none.
+   * @param dataLength - The length of the segment's data part in bytes.
+   * @param duration - The duration of parsing.
+   */
+  void segmentParsed(int segmentType, int segmentNumber, int pageNumber, long dataLength, long duration);
+
+  /**
+   * A segment has been decoded. The duration includes referred segments that are decoded on demand,
+   * e.g. the symbol dictionaries of a text region.
+   * 
+   * @param segmentType - The type of the segment, see 7.3.
+   * @param segmentNumber - The number of the segment or {@code -1} if it is unknown.
+   * @param pageNumber - The page the segment is associated with, {@code 0} for none.
+   * @param dataLength - The length of the segment's data part in bytes.
+   * @param pixels - The amount of pixels of the resulting bitmaps.
+   * @param duration - The duration of decoding.
+   */
+  void segmentDecoded(int segmentType, int segmentNumber, int pageNumber, long dataLength, long pixels,
+      long duration);
+
+  /**
+   * The symbol instances of a text region have been decoded.
+   * 
+   * @param amount - The amount of symbol instances.
+   */
+  void symbolInstancesDecoded(long amount);
+
+  /**
+   * The cache has been asked for a decoded page.
+   * 
+   * @param hit - {@code true} if the page was cached.
+   */
+  void cacheLookup(boolean hit);
+
+  /**
+   * A bitmap has been created.
+   * 
+   * @param bytes - The size of its data in bytes.
+   */
+  void bitmapAllocated(long bytes);
+
+  /**
+   * The regions of a page have been composed to the page bitmap.
+   * 
+   * @param pageNumber - The number of the page.
+   * @param pixels - The amount of pixels of the page.
+   * @param duration - The duration of decoding and combining the regions.
+   */
+  void pageComposed(int pageNumber, long pixels, long duration);
+
+  /**
+   * A raster has been created from a decoded bitmap.
+   * 
+   * @param pixels - The amount of pixels of the raster.
+   * @param duration - The duration of the conversion, including scaling.
+   */
+  void rasterCreated(long pixels, long duration);
+
+  /**
+   * A bitmap has been scaled to a raster.
+   * 
+   * @param pixels - The amount of pixels of the raster.
+   * @param duration - The duration of scaling.
+   */
+  void imageScaled(long pixels, long duration);
+}
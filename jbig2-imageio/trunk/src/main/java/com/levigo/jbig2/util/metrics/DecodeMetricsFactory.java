@@ -0,0 +1,94 @@
+/**
+ * Copyright (C) 1995-2014 levigo holding gmbh.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.levigo.jbig2.util.metrics;
+
+import java.util.Iterator;
+
+import com.levigo.jbig2.util.ServiceLookup;
+
+/**
+ * Retrieves the {@link DecodeMetrics} via registered {@link DecodeMetricsBridge} through
+ * <code>META-INF/services</code> lookup. If no bridge is registered, measurements are discarded by
+ * {@link NoOpDecodeMetrics}.
+ * <p>
+ * To publish the measurements via JMX, register {@link JMXDecodeMetricsBridge} in
+ * <code>META-INF/services/com.levigo.jbig2.util.metrics.DecodeMetricsBridge</code> or call
+ * {@link #setDecodeMetrics(DecodeMetrics)}. JDK Flight Recorder events are provided by the separate
+ * module {@code levigo-jbig2-imageio-jfr}, which registers its bridge when it is on the class path.
+ * <p>
+ * The lookup is done once, on first use. If it fails, e.g. because the service registry of the
+ * runtime rejects the bridge class, {@link NoOpDecodeMetrics} are used, so that measuring can never
+ * break decoding.
+ */
+public class DecodeMetricsFactory {
+
+  private static volatile DecodeMetrics decodeMetrics;
+
+  private static ClassLoader clsLoader;
+
+  public static synchronized DecodeMetrics getDecodeMetrics(ClassLoader clsLoader) {
+    if (null == decodeMetrics) {
+      decodeMetrics = lookupDecodeMetrics(clsLoader);
+    }
+    return decodeMetrics;
+  }
+
+  private static DecodeMetrics lookupDecodeMetrics(ClassLoader clsLoader) {
+    try {
+      final ServiceLookup<DecodeMetricsBridge> serviceLookup = new ServiceLookup<DecodeMetricsBridge>();
+      final Iterator<DecodeMetricsBridge> decodeMetricsBridgeServices = serviceLookup.getServices(
+          DecodeMetricsBridge.class, clsLoader);
+
+      if (decodeMetricsBridgeServices.hasNext()) {
+        final DecodeMetrics metrics = decodeMetricsBridgeServices.next().getDecodeMetrics();
+        if (null != metrics) {
+          return metrics;
+        }
+      }
+    } catch (RuntimeException e) {
+      // e.g. the service registry of Java 9 and later only accepts ImageIO service classes
+    } catch (Error e) {
+      if (e instanceof VirtualMachineError) {
+        throw e;
+      }
+      // a registered bridge can't be loaded or instantiated
+    }
+    return NoOpDecodeMetrics.INSTANCE;
+  }
+
+  public static DecodeMetrics getDecodeMetrics() {
+    final DecodeMetrics metrics = decodeMetrics;
+    if (null != metrics) {
+      return metrics;
+    }
+    return getDecodeMetrics(clsLoader != null ? clsLoader : DecodeMetricsBridge.class.getClassLoader());
+  }
+
+  /**
+   * Replaces the {@link DecodeMetrics} that have been found via <code>META-INF/services</code>.
+   * 
+   * @param decodeMetrics - The metrics to use or {@code null} to look them up again.
+   */
+  public static void setDecodeMetrics(DecodeMetrics decodeMetrics) {
+    DecodeMetricsFactory.decodeMetrics = decodeMetrics;
+  }
+
+  public static void setClassLoader(ClassLoader clsLoader) {
+    DecodeMetricsFactory.clsLoader = clsLoader;
+  }
+}
@@ -0,0 +1,271 @@
+/**
+ * Copyright (C) 1995-2014 levigo holding gmbh.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.levigo.jbig2.util.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Collects the measurements in counters and histograms that are published as a standard MBean, see
+ * {@link JMXDecodeMetricsBridge}.
+ */
+public class JMXDecodeMetrics implements DecodeMetrics, JMXDecodeMetricsMBean {
+
+  /** Segment types are stored in 6 bits, see 7.2.3 */
+  private static final int SEGMENT_TYPES = 64;
+
+  private static final int HISTOGRAM_BUCKETS = 24;
+
+  private final AtomicLong documentsMapped = new AtomicLong();
+  private final AtomicLong documentMappingNanos = new AtomicLong();
+
+  private final AtomicLongArray segmentParseNanos = new AtomicLongArray(SEGMENT_TYPES);
+  private final AtomicLongArray segmentCounts = new AtomicLongArray(SEGMENT_TYPES);
+  private final AtomicLongArray segmentDecodeNanos = new AtomicLongArray(SEGMENT_TYPES);
+  private final AtomicLongArray segmentDataBytes = new AtomicLongArray(SEGMENT_TYPES);
+  private final AtomicLongArray segmentPixels = new AtomicLongArray(SEGMENT_TYPES);
+  /** A histogram per segment type, bucket {@code b} of type {@code t} is at {@code t * HISTOGRAM_BUCKETS + b} */
+  private final AtomicLongArray segmentDecodeHistograms = new AtomicLongArray(SEGMENT_TYPES * HISTOGRAM_BUCKETS);
+
+  private final AtomicLong symbolInstances = new AtomicLong();
+
+  private final AtomicLong cacheHits = new AtomicLong();
+  private final AtomicLong cacheMisses = new AtomicLong();
+
+  private final AtomicLong bitmapsAllocated = new AtomicLong();
+  private final AtomicLong bitmapBytesAllocated = new AtomicLong();
+
+  private final AtomicLong pagesComposed = new AtomicLong();
+  private final AtomicLong pagePixels = new AtomicLong();
+  private final AtomicLong pageCompositionNanos = new AtomicLong();
+  private final AtomicLongArray pageCompositionHistogram = new AtomicLongArray(HISTOGRAM_BUCKETS);
+
+  private final AtomicLong rastersCreated = new AtomicLong();
+  private final AtomicLong rasterNanos = new AtomicLong();
+
+  private final AtomicLong imagesScaled = new AtomicLong();
+  private final AtomicLong scaledPixels = new AtomicLong();
+  private final AtomicLong scalingNanos = new AtomicLong();
+
+  public boolean isEnabled() {
+    return true;
+  }
+
+  public void documentMapped(int segments, long duration) {
+    documentsMapped.incrementAndGet();
+    documentMappingNanos.addAndGet(duration);
+  }
+
+  public void segmentParsed(int segmentType, int segmentNumber, int pageNumber, long dataLength, long duration) {
+    segmentParseNanos.addAndGet(segmentType & (SEGMENT_TYPES - 1), duration);
+  }
+
+  public void segmentDecoded(int segmentType, int segmentNumber, int pageNumber, long dataLength, long pixels,
+      long duration) {
+    final int index = segmentType & (SEGMENT_TYPES - 1);
+    segmentCounts.incrementAndGet(index);
+    segmentDecodeNanos.addAndGet(index, duration);
+    segmentDataBytes.addAndGet(index, dataLength);
+    segmentPixels.addAndGet(index, pixels);
+    segmentDecodeHistograms.incrementAndGet(index * HISTOGRAM_BUCKETS + getBucket(duration));
+  }
+
+  public void symbolInstancesDecoded(long amount) {
+    symbolInstances.addAndGet(amount);
+  }
+
+  public void cacheLookup(boolean hit) {
+    if (hit) {
+      cacheHits.incrementAndGet();
+    } else {
+      cacheMisses.incrementAndGet();
+    }
+  }
+
+  public void bitmapAllocated(long bytes) {
+    bitmapsAllocated.incrementAndGet();
+    bitmapBytesAllocated.addAndGet(bytes);
+  }
+
+  public void pageComposed(int pageNumber, long pixels, long duration) {
+    pagesComposed.incrementAndGet();
+    pagePixels.addAndGet(pixels);
+    pageCompositionNanos.addAndGet(duration);
+    pageCompositionHistogram.incrementAndGet(getBucket(duration));
+  }
+
+  public void rasterCreated(long pixels, long duration) {
+    rastersCreated.incrementAndGet();
+    rasterNanos.addAndGet(duration);
+  }
+
+  public void imageScaled(long pixels, long duration) {
+    imagesScaled.incrementAndGet();
+    scaledPixels.addAndGet(pixels);
+    scalingNanos.addAndGet(duration);
+  }
+
+  /**
+   * @return The histogram bucket of the given duration.
+   */
+  private static int getBucket(long duration) {
+    final long micros = duration / 1000;
+    final int bucket = 63 - Long.numberOfLeadingZeros(micros | 1);
+    return bucket < HISTOGRAM_BUCKETS ? bucket : HISTOGRAM_BUCKETS - 1;
+  }
+
+  private static long[] toArray(AtomicLongArray values) {
+    final long[] result = new long[values.length()];
+    for (int i = 0; i < result.length; i++) {
+      result[i] = values.get(i);
+    }
+    return result;
+  }
+
+  private static void clear(AtomicLongArray values) {
+    for (int i = 0; i < values.length(); i++) {
+      values.set(i, 0);
+    }
+  }
+
+  public long getDocumentsMapped() {
+    return documentsMapped.get();
+  }
+
+  public long getDocumentMappingNanos() {
+    return documentMappingNanos.get();
+  }
+
+  public long[] getSegmentParseNanos() {
+    return toArray(segmentParseNanos);
+  }
+
+  public long[] getSegmentCounts() {
+    return toArray(segmentCounts);
+  }
+
+  public long[] getSegmentDecodeNanos() {
+    return toArray(segmentDecodeNanos);
+  }
+
+  public long[] getSegmentDataBytes() {
+    return toArray(segmentDataBytes);
+  }
+
+  public long[] getSegmentPixels() {
+    return toArray(segmentPixels);
+  }
+
+  public long[][] getSegmentDecodeHistograms() {
+    final long[][] result = new long[SEGMENT_TYPES][];
+    for (int segmentType = 0; segmentType < SEGMENT_TYPES; segmentType++) {
+      result[segmentType] = getSegmentDecodeHistogram(segmentType);
+    }
+    return result;
+  }
+
+  public long[] getSegmentDecodeHistogram(int segmentType) {
+    final int offset = (segmentType & (SEGMENT_TYPES - 1)) * HISTOGRAM_BUCKETS;
+    final long[] result = new long[HISTOGRAM_BUCKETS];
+    for (int i = 0; i < HISTOGRAM_BUCKETS; i++) {
+      result[i] = segmentDecodeHistograms.get(offset + i);
+    }
+    return result;
+  }
+
+  public long getSymbolInstances() {
+    return symbolInstances.get();
+  }
+
+  public long getCacheHits() {
+    return cacheHits.get();
+  }
+
+  public long getCacheMisses() {
+    return cacheMisses.get();
+  }
+
+  public long getBitmapsAllocated() {
+    return bitmapsAllocated.get();
+  }
+
+  public long getBitmapBytesAllocated() {
+    return bitmapBytesAllocated.get();
+  }
+
+  public long getPagesComposed() {
+    return pagesComposed.get();
+  }
+
+  public long getPagePixels() {
+    return pagePixels.get();
+  }
+
+  public long getPageCompositionNanos() {
+    return pageCompositionNanos.get();
+  }
+
+  public long[] getPageCompositionHistogram() {
+    return toArray(pageCompositionHistogram);
+  }
+
+  public long getRastersCreated() {
+    return rastersCreated.get();
+  }
+
+  public long getRasterNanos() {
+    return rasterNanos.get();
+  }
+
+  public long getImagesScaled() {
+    return imagesScaled.get();
+  }
+
+  public long getScaledPixels() {
+    return scaledPixels.get();
+  }
+
+  public long getScalingNanos() {
+    return scalingNanos.get();
+  }
+
+  public void reset() {
+    documentsMapped.set(0);
+    documentMappingNanos.set(0);
+    clear(segmentParseNanos);
+    clear(segmentCounts);
+    clear(segmentDecodeNanos);
+    clear(segmentDataBytes);
+    clear(segmentPixels);
+    clear(segmentDecodeHistograms);
+    symbolInstances.set(0);
+    cacheHits.set(0);
+    cacheMisses.set(0);
+    bitmapsAllocated.set(0);
+    bitmapBytesAllocated.set(0);
+    pagesComposed.set(0);
+    pagePixels.set(0);
+    pageCompositionNanos.set(0);
+    clear(pageCompositionHistogram);
+    rastersCreated.set(0);
+    rasterNanos.set(0);
+    imagesScaled.set(0);
+    scaledPixels.set(0);
+    scalingNanos.set(0);
+  }
+}
@@ -0,0 +1,54 @@
+/**
+ * Copyright (C) 1995-2014 levigo holding gmbh.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.levigo.jbig2.util.metrics;
+
+import java.lang.management.ManagementFactory;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+import com.levigo.jbig2.util.log.Logger;
+import com.levigo.jbig2.util.log.LoggerFactory;
+
+/**
+ * Provides {@link JMXDecodeMetrics} that are registered at the platform MBean server with the name
+ * {@value #OBJECT_NAME}.
+ */
+public class JMXDecodeMetricsBridge implements DecodeMetricsBridge {
+
+  private static final Logger log = LoggerFactory.getLogger(JMXDecodeMetricsBridge.class);
+
+  public static final String OBJECT_NAME = "com.levigo.jbig2:type=DecodeMetrics";
+
+  private static JMXDecodeMetrics decodeMetrics;
+
+  public DecodeMetrics getDecodeMetrics() {
+    synchronized (JMXDecodeMetricsBridge.class) {
+      if (null == decodeMetrics) {
+        decodeMetrics = new JMXDecodeMetrics();
+        try {
+          ManagementFactory.getPlatformMBeanServer().registerMBean(decodeMetrics, new ObjectName(OBJECT_NAME));
+        } catch (JMException e) {
+          log.error("Can't register the decode metrics as " + OBJECT_NAME, e);
+        }
+      }
+      return decodeMetrics;
+    }
+  }
+
+}
@@ -0,0 +1,86 @@
+/**
+ * Copyright (C) 1995-2014 levigo holding gmbh.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.levigo.jbig2.util.metrics;
+
+/**
+ * Management interface of {@link JMXDecodeMetrics}. Arrays with per segment type values are indexed
+ * by the segment type, see 7.3. Durations are given in nanoseconds. Bucket {@code i} of a histogram
+ * counts durations from {@code 2^i} to {@code 2^(i+1)} microseconds, the first bucket includes
+ * shorter durations and the last one longer durations.
+ */
+public interface JMXDecodeMetricsMBean {
+
+  long getDocumentsMapped();
+
+  long getDocumentMappingNanos();
+
+  long[] getSegmentParseNanos();
+
+  long[] getSegmentCounts();
+
+  long[] getSegmentDecodeNanos();
+
+  long[] getSegmentDataBytes();
+
+  long[] getSegmentPixels();
+
+  /**
+   * @return The histograms of the decoding times, indexed by the segment type and then by the
+   *         bucket.
+   */
+  long[][] getSegmentDecodeHistograms();
+
+  /**
+   * @param segmentType - The segment type.
+   * @return The histogram of the decoding times of segments of the given type.
+   */
+  long[] getSegmentDecodeHistogram(int segmentType);
+
+  long getSymbolInstances();
+
+  long getCacheHits();
+
+  long getCacheMisses();
+
+  long getBitmapsAllocated();
+
+  long getBitmapBytesAllocated();
+
+  long getPagesComposed();
+
+  long getPagePixels();
+
+  long getPageCompositionNanos();
+
+  long[] getPageCompositionHistogram();
+
+  long getRastersCreated();
+
+  long getRasterNanos();
+
+  long getImagesScaled();
+
+  long getScaledPixels();
+
+  long getScalingNanos();
+
+  /**
+   * Resets all counters and histograms to 0.
+   */
+  void reset();
+}
@@ -0,0 +1,61 @@
+/**
+ * Copyright (C) 1995-2014 levigo holding gmbh.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.levigo.jbig2.util.metrics;
+
+/**
+ * Discards all measurements. It is used if no {@link DecodeMetricsBridge} is registered.
+ */
+public final class NoOpDecodeMetrics implements DecodeMetrics {
+
+  public static final NoOpDecodeMetrics INSTANCE = new NoOpDecodeMetrics();
+
+  private NoOpDecodeMetrics() {
+  }
+
+  public boolean isEnabled() {
+    return false;
+  }
+
+  public void documentMapped(int segments, long duration) {
+  }
+
+  public void segmentParsed(int segmentType, int segmentNumber, int pageNumber, long dataLength, long duration) {
+  }
+
+  public void segmentDecoded(int segmentType, int segmentNumber, int pageNumber, long dataLength, long pixels,
+      long duration) {
+  }
+
+  public void symbolInstancesDecoded(long amount) {
+  }
+
+  public void cacheLookup(boolean hit) {
+  }
+
+  public void bitmapAllocated(long bytes) {
+  }
+
+  public void pageComposed(int pageNumber, long pixels, long duration) {
+  }
+
+  public void rasterCreated(long pixels, long duration) {
+  }
+
+  public void imageScaled(long pixels, long duration) {
+  }
+}
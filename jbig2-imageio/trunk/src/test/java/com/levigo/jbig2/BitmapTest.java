@@ -22,6 +22,8 @@ import junit.framework.Assert;
 
 import org.junit.Test;
 
+import com.levigo.jbig2.err.ResourceLimitExceededException;
+
 public class BitmapTest {
 
   @Test
@@ -46,6 +48,44 @@ public class BitmapTest {
     assertEquals(value, bitmap.getByte(31));
   }
 
+  @Test(expected = ResourceLimitExceededException.class)
+  public void tooLargeBitmapTest() {
+    new Bitmap(200000, 200000);
+  }
+
+  @Test(expected = ResourceLimitExceededException.class)
+  public void wrappedWidthBitmapTest() {
+    // width + 7 wraps around if computed as int
+    new Bitmap(0x80000000, 10);
+  }
+
+  @Test(expected = ResourceLimitExceededException.class)
+  public void maximumDimensionsBitmapTest() {
+    new Bitmap(0x7fffffff, 0x7fffffff);
+  }
+
+  @Test(expected = ResourceLimitExceededException.class)
+  public void negativeHeightBitmapTest() {
+    new Bitmap(100, -5);
+  }
+
+  @Test(expected = ResourceLimitExceededException.class)
+  public void negativeDimensionsBitmapTest() {
+    new Bitmap(-1, -1);
+  }
+
+  @Test(expected = ResourceLimitExceededException.class)
+  public void arraySizeEdgeBitmapTest() {
+    // 65536 bytes per row times 32768 rows are 2^31 bytes, one more than an array can hold
+    new Bitmap(65536 * 8, 32768);
+  }
+
+  @Test
+  public void emptyBitmapTest() {
+    final Bitmap bitmap = new Bitmap(0, 0);
+    assertEquals(0, bitmap.getByteArray().length);
+  }
+
   @Test(expected = IndexOutOfBoundsException.class)
   public void getByteThrowsExceptionTest() {
     Bitmap bitmap = new Bitmap(16, 16);
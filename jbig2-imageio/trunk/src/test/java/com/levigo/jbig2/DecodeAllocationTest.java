@@ -0,0 +1,261 @@
+/**
+ * Copyright (C) 1995-2014 levigo holding gmbh.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.levigo.jbig2;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.ref.Reference;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.lang.reflect.Array;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.IdentityHashMap;
+import java.util.LinkedList;
+import java.util.Map;
+
+import javax.imageio.stream.ImageInputStream;
+
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.junit.runners.Parameterized.Parameters;
+
+import com.levigo.jbig2.err.JBIG2Exception;
+import com.levigo.jbig2.io.DefaultInputStreamFactory;
+import com.levigo.jbig2.util.cache.CacheFactory;
+
+/**
+ * Guards the memory footprint of the decoding paths. For representative samples it asserts
+ * <ul>
+ * <li>a budget of bytes allocated by the decoding thread per page pixel, measured with
+ * {@link com.sun.management.ThreadMXBean#getThreadAllocatedBytes(long)},</li>
+ * <li>that no segment data is kept after all pages have been decoded and</li>
+ * <li>a budget of heap retained by a reader after decoding.</li>
+ * </ul>
+ * The budgets leave some headroom above the current values, but a change that doubles the
+ * allocations or keeps the decoded segments alive exceeds them.
+ */
+@RunWith(Parameterized.class)
+public class DecodeAllocationTest {
+
+  /**
+   * Budget of the heap retained by a reader after all pages have been decoded and the page cache
+   * has been cleared. This is much less than a page bitmap of any of the samples.
+   */
+  private static final long RETAINED_HEAP_BUDGET = 64 * 1024;
+
+  private final String filepath;
+
+  /** Budget of bytes allocated per page pixel */
+  private final double allocationBudget;
+
+  @Parameters
+  public static Collection<Object[]> data() {
+    return Arrays.asList(new Object[][]{
+        // generic region, template 0
+        {
+            "/images/042_1.jb2", 2.0
+        },
+        // generic region, MMR
+        {
+            "/images/042_3.jb2", 2.0
+        },
+        // generic region in stripes
+        {
+            "/images/042_9.jb2", 2.5
+        },
+        // symbol dictionary and text region
+        {
+            "/images/042_10.jb2", 2.5
+        },
+        // pattern dictionary and halftone region
+        {
+            "/images/amb_1.jb2", 2.75
+        },
+        // global symbol dictionary shared by several pages
+        {
+            "/images/20123110001.jb2", 2.0
+        }
+    });
+  }
+
+  public DecodeAllocationTest(final String filepath, final double allocationBudget) {
+    this.filepath = filepath;
+    this.allocationBudget = allocationBudget;
+  }
+
+  @Test
+  public void allocatedBytesPerPixel() throws IOException {
+    final ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+    Assume.assumeTrue(threadMXBean instanceof com.sun.management.ThreadMXBean);
+
+    final com.sun.management.ThreadMXBean allocationMXBean = (com.sun.management.ThreadMXBean) threadMXBean;
+    Assume.assumeTrue(allocationMXBean.isThreadAllocatedMemorySupported());
+    allocationMXBean.setThreadAllocatedMemoryEnabled(true);
+
+    // load classes and initialize static tables before measuring
+    decodeAllPages(createReader());
+
+    final long threadId = Thread.currentThread().getId();
+    final JBIG2ImageReader reader = createReader();
+
+    final long before = allocationMXBean.getThreadAllocatedBytes(threadId);
+    final long pixels = decodeAllPages(reader);
+    final long allocated = allocationMXBean.getThreadAllocatedBytes(threadId) - before;
+
+    final double bytesPerPixel = (double) allocated / pixels;
+    Assert.assertTrue(filepath + ": " + bytesPerPixel + " bytes allocated per pixel, budget is " + allocationBudget,
+        bytesPerPixel <= allocationBudget);
+  }
+
+  @Test
+  public void segmentDataReleased() throws IOException, JBIG2Exception {
+    final JBIG2DocumentFacade doc = new JBIG2DocumentFacade(createInputStream());
+
+    for (int pageNumber = 1; pageNumber <= doc.getAmountOfPages(); pageNumber++) {
+      doc.getPageBitmap(pageNumber);
+    }
+
+    for (int pageNumber = 1; pageNumber <= doc.getAmountOfPages(); pageNumber++) {
+      for (final SegmentHeader s : doc.getPage(pageNumber).getSegments()) {
+        assertReleased(s);
+
+        if (null != s.getRtSegments()) {
+          for (final SegmentHeader rtSegment : s.getRtSegments()) {
+            assertReleased(rtSegment);
+          }
+        }
+      }
+    }
+  }
+
+  @Test
+  public void retainedHeap() throws IOException {
+    final JBIG2ImageReader reader = createReader();
+    decodeAllPages(reader);
+    CacheFactory.getCache().clear();
+
+    final long retained = retainedSize(reader);
+    Assert.assertTrue(filepath + ": " + retained + " bytes retained, budget is " + RETAINED_HEAP_BUDGET,
+        retained <= RETAINED_HEAP_BUDGET);
+  }
+
+  private void assertReleased(final SegmentHeader s) {
+    if (null != s && s.getRetainFlag() == 0) {
+      Assert.assertFalse("Segment " + s.getSegmentNr() + " of " + filepath + " is still pinned", s.isPinned());
+      Assert.assertFalse("Data of segment " + s.getSegmentNr() + " of " + filepath + " is still referenced",
+          s.hasSegmentData());
+    }
+  }
+
+  private long decodeAllPages(final JBIG2ImageReader reader) throws IOException {
+    CacheFactory.getCache().clear();
+
+    long pixels = 0;
+    final int numImages = reader.getNumImages(true);
+    for (int imageIndex = 0; imageIndex < numImages; imageIndex++) {
+      reader.read(imageIndex, reader.getDefaultReadParam());
+      pixels += (long) reader.getWidth(imageIndex) * reader.getHeight(imageIndex);
+    }
+    return pixels;
+  }
+
+  /**
+   * Estimates the heap retained by the given object by walking all objects that are strongly
+   * reachable from it. Classes, class loaders and threads are not followed, nor are the referents
+   * of {@link Reference}s, because softly and weakly referenced objects are reclaimed when memory
+   * gets low. Each object is counted with a header of 16 bytes and 8 bytes per field or array
+   * element, so the result is deterministic and independent of the JVM.
+   */
+  private static long retainedSize(final Object root) {
+    final Map<Object, Object> visited = new IdentityHashMap<Object, Object>();
+    final LinkedList<Object> pending = new LinkedList<Object>();
+    pending.add(root);
+
+    long size = 0;
+    while (!pending.isEmpty()) {
+      final Object o = pending.removeFirst();
+      if (null == o || visited.containsKey(o) || o instanceof Class || o instanceof ClassLoader
+          || o instanceof Thread) {
+        continue;
+      }
+      visited.put(o, o);
+
+      final Class<?> c = o.getClass();
+      if (c.isArray()) {
+        final int length = Array.getLength(o);
+        if (c.getComponentType().isPrimitive()) {
+          size += 16 + length * primitiveSize(c.getComponentType());
+        } else {
+          size += 16 + length * 8L;
+          for (int i = 0; i < length; i++) {
+            pending.add(Array.get(o, i));
+          }
+        }
+        continue;
+      }
+
+      size += 16;
+      for (Class<?> k = c; null != k; k = k.getSuperclass()) {
+        for (final Field f : k.getDeclaredFields()) {
+          if (Modifier.isStatic(f.getModifiers())) {
+            continue;
+          }
+
+          size += 8;
+          if (!f.getType().isPrimitive() && !(k == Reference.class && "referent".equals(f.getName()))) {
+            f.setAccessible(true);
+            try {
+              pending.add(f.get(o));
+            } catch (IllegalAccessException e) {
+              throw new IllegalStateException(e);
+            }
+          }
+        }
+      }
+    }
+    return size;
+  }
+
+  private static int primitiveSize(final Class<?> type) {
+    if (type == byte.class || type == boolean.class) {
+      return 1;
+    } else if (type == short.class || type == char.class) {
+      return 2;
+    } else if (type == long.class || type == double.class) {
+      return 8;
+    }
+    return 4;
+  }
+
+  private JBIG2ImageReader createReader() throws IOException {
+    final JBIG2ImageReader reader = new JBIG2ImageReader(new JBIG2ImageReaderSpi());
+    reader.setInput(createInputStream());
+    return reader;
+  }
+
+  private ImageInputStream createInputStream() throws IOException {
+    final InputStream is = getClass().getResourceAsStream(filepath);
+    return new DefaultInputStreamFactory().getInputStream(is);
+  }
+}
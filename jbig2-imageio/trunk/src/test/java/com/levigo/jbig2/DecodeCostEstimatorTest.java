@@ -0,0 +1,85 @@
+/**
+ * Copyright (C) 1995-2014 levigo holding gmbh.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.levigo.jbig2;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import javax.imageio.stream.ImageInputStream;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.levigo.jbig2.io.DefaultInputStreamFactory;
+
+public class DecodeCostEstimatorTest {
+
+  @Test
+  public void estimateGenericRegionPage() throws IOException {
+    final DecodeCostEstimate arithmetic = estimate("/images/042_1.jb2", 0);
+    final DecodeCostEstimate mmr = estimate("/images/042_3.jb2", 0);
+
+    Assert.assertEquals(1, arithmetic.getPageNumber());
+    Assert.assertEquals(1728L * 2339, arithmetic.getPixels());
+    Assert.assertEquals(arithmetic.getPixels(), mmr.getPixels());
+
+    // MMR decoding is considerably faster than arithmetic decoding
+    Assert.assertTrue(arithmetic.getEstimatedNanos() > mmr.getEstimatedNanos());
+
+    // page bitmap, region bitmap and raster
+    final long pageBitmapBytes = 216L * 2339;
+    Assert.assertTrue(arithmetic.getEstimatedPeakBytes() >= pageBitmapBytes + arithmetic.getPixels());
+  }
+
+  @Test
+  public void estimateIncludesReferredDictionaries() throws IOException {
+    final DecodeCostEstimate textRegion = estimate("/images/042_10.jb2", 0);
+    final DecodeCostEstimate smallPage = estimate("/images/sampledata_page3.jb2", 0);
+
+    Assert.assertTrue(textRegion.getEstimatedNanos() > 10 * smallPage.getEstimatedNanos());
+    Assert.assertTrue(textRegion.getEstimatedPeakBytes() > textRegion.getPixels());
+  }
+
+  @Test
+  public void estimateDoesNotDecode() throws IOException {
+    final JBIG2DocumentFacade doc = new JBIG2DocumentFacade(createInputStream("/images/20123110001.jb2"));
+
+    for (int pageNumber = 1; pageNumber <= doc.getAmountOfPages(); pageNumber++) {
+      final JBIG2Page page = doc.getPage(pageNumber);
+      final DecodeCostEstimate estimate = new DecodeCostEstimator(page, pageNumber).estimate();
+      Assert.assertEquals(pageNumber, estimate.getPageNumber());
+      Assert.assertTrue(estimate.getEstimatedNanos() > 0);
+
+      for (final SegmentHeader s : page.getSegments()) {
+        Assert.assertFalse(s.getSegmentType() != 48 && s.hasSegmentData());
+      }
+    }
+    Assert.assertFalse(doc.getGlobalSegments().getSegment(0).hasSegmentData());
+  }
+
+  private DecodeCostEstimate estimate(final String filepath, final int imageIndex) throws IOException {
+    final JBIG2ImageReader reader = new JBIG2ImageReader(new JBIG2ImageReaderSpi());
+    reader.setInput(createInputStream(filepath));
+    return reader.estimateDecodeCost(imageIndex);
+  }
+
+  private ImageInputStream createInputStream(final String filepath) throws IOException {
+    final InputStream is = getClass().getResourceAsStream(filepath);
+    return new DefaultInputStreamFactory().getInputStream(is);
+  }
+}
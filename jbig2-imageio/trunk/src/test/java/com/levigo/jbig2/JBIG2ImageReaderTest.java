@@ -17,22 +17,49 @@
 
 package com.levigo.jbig2;
 
+import java.awt.Dimension;
+import java.awt.Rectangle;
 import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.awt.image.IndexColorModel;
 import java.awt.image.Raster;
+import java.awt.image.RenderedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.imageio.ImageReadParam;
 import javax.imageio.ImageReader;
+import javax.imageio.event.IIOReadProgressListener;
+import javax.imageio.event.IIOReadUpdateListener;
 import javax.imageio.stream.ImageInputStream;
 
 import junit.framework.Assert;
 
 import org.junit.Test;
 
+import com.levigo.jbig2.decoder.DecoderCheckpoints;
 import com.levigo.jbig2.err.IntegerMaxValueException;
 import com.levigo.jbig2.err.InvalidHeaderValueException;
+import com.levigo.jbig2.image.Bitmaps;
+import com.levigo.jbig2.image.TiledBitmap;
+import com.levigo.jbig2.image.TiledBitmapImage;
 import com.levigo.jbig2.io.DefaultInputStreamFactory;
+import com.levigo.jbig2.util.CombinationOperator;
+import com.levigo.jbig2.util.DecoderExecutors;
+import com.levigo.jbig2.util.ResourceLimits;
 
 public class JBIG2ImageReaderTest {
 
@@ -131,6 +158,727 @@ public class JBIG2ImageReaderTest {
     Assert.assertEquals(17, numImages);
   }
 
+  @Test
+  public void testReadWithUpdateListener() throws IOException {
+    assertImageUpdates("/images/042_1.jb2");
+  }
+
+  @Test
+  public void testReadStripedWithUpdateListener() throws IOException {
+    assertImageUpdates("/images/042_9.jb2");
+  }
+
+  private void assertImageUpdates(String filepath) throws IOException {
+    final BufferedImage expected = createReader(filepath).read(0, null);
+
+    final JBIG2ImageReader imageReader = createReader(filepath);
+    final int[] updatedRows = new int[1];
+    final int[] updates = new int[1];
+    imageReader.addIIOReadUpdateListener(new IIOReadUpdateListener() {
+      public void imageUpdate(ImageReader source, BufferedImage theImage, int minX, int minY, int width, int height,
+          int periodX, int periodY, int[] bands) {
+        Assert.assertEquals(0, minX);
+        Assert.assertEquals(theImage.getWidth(), width);
+        Assert.assertEquals(updatedRows[0], minY);
+        updatedRows[0] += height;
+        updates[0]++;
+      }
+
+      public void passStarted(ImageReader source, BufferedImage theImage, int pass, int minPass, int maxPass,
+          int minX, int minY, int periodX, int periodY, int[] bands) {
+      }
+
+      public void passComplete(ImageReader source, BufferedImage theImage) {
+      }
+
+      public void thumbnailPassStarted(ImageReader source, BufferedImage theThumbnail, int pass, int minPass,
+          int maxPass, int minX, int minY, int periodX, int periodY, int[] bands) {
+      }
+
+      public void thumbnailUpdate(ImageReader source, BufferedImage theThumbnail, int minX, int minY, int width,
+          int height, int periodX, int periodY, int[] bands) {
+      }
+
+      public void thumbnailPassComplete(ImageReader source, BufferedImage theThumbnail) {
+      }
+    });
+
+    final BufferedImage actual = imageReader.read(0, null);
+
+    Assert.assertTrue(updates[0] > 1);
+    Assert.assertEquals(expected.getHeight(), updatedRows[0]);
+    Assert.assertEquals(expected.getWidth(), actual.getWidth());
+    Assert.assertEquals(expected.getHeight(), actual.getHeight());
+    for (int y = 0; y < expected.getHeight(); y++) {
+      for (int x = 0; x < expected.getWidth(); x++) {
+        Assert.assertEquals(expected.getRGB(x, y), actual.getRGB(x, y));
+      }
+    }
+  }
+
+  @Test
+  public void testAbort() throws Exception {
+    final String filepath = "/images/20123110003.jb2";
+    final JBIG2ImageReader imageReader = createReader(filepath);
+
+    final boolean[] aborted = new boolean[1];
+    final CountDownLatch started = new CountDownLatch(1);
+    final CountDownLatch abortRequested = new CountDownLatch(1);
+    imageReader.addIIOReadProgressListener(new IIOReadProgressListener() {
+      public void readAborted(ImageReader source) {
+        aborted[0] = true;
+      }
+
+      public void sequenceStarted(ImageReader source, int minIndex) {
+      }
+
+      public void sequenceComplete(ImageReader source) {
+      }
+
+      public void imageStarted(ImageReader source, int imageIndex) {
+        // hold the decoding thread until the read has been aborted, so it can't complete before
+        started.countDown();
+        try {
+          abortRequested.await(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+      }
+
+      public void imageProgress(ImageReader source, float percentageDone) {
+      }
+
+      public void imageComplete(ImageReader source) {
+      }
+
+      public void thumbnailStarted(ImageReader source, int imageIndex, int thumbnailIndex) {
+      }
+
+      public void thumbnailProgress(ImageReader source, float percentageDone) {
+      }
+
+      public void thumbnailComplete(ImageReader source) {
+      }
+    });
+
+    final BufferedImage[] result = new BufferedImage[1];
+    final Thread decoder = new Thread() {
+      @Override
+      public void run() {
+        try {
+          result[0] = imageReader.read(0, null);
+        } catch (IOException e) {
+          throw new RuntimeException(e);
+        }
+      }
+    };
+
+    decoder.start();
+    Assert.assertTrue(started.await(10, TimeUnit.SECONDS));
+
+    imageReader.abort();
+    abortRequested.countDown();
+    decoder.join(10000);
+
+    Assert.assertFalse("decoding hasn't stopped", decoder.isAlive());
+    Assert.assertTrue(aborted[0]);
+    Assert.assertNull(result[0]);
+
+    // the reader must still be usable and deliver the complete page
+    final BufferedImage expected = createReader(filepath).read(0, null);
+    final BufferedImage actual = imageReader.read(0, null);
+    Assert.assertNotNull(actual);
+    for (int y = 0; y < expected.getHeight(); y++) {
+      for (int x = 0; x < expected.getWidth(); x++) {
+        Assert.assertEquals(expected.getRGB(x, y), actual.getRGB(x, y));
+      }
+    }
+  }
+
+  @Test
+  public void testReadSourceRegion() throws IOException {
+    final String[] filepaths = {
+        "/images/042_1.jb2", "/images/042_9.jb2", "/images/042_10.jb2", "/images/042_21.jb2", "/images/amb_1.jb2",
+        "/images/20123110001.jb2"
+    };
+    final Rectangle[] regions = {
+        new Rectangle(0, 0, 100, 80), new Rectangle(230, 410, 301, 257), new Rectangle(700, 1000, 3000, 3000)
+    };
+
+    for (String filepath : filepaths) {
+      final BufferedImage page = createReader(filepath).read(0, null);
+
+      for (Rectangle region : regions) {
+        final JBIG2ReadParam param = new JBIG2ReadParam();
+        param.setSourceRegion(region);
+        final BufferedImage actual = createReader(filepath).read(0, param);
+
+        final Rectangle expected = region.intersection(new Rectangle(0, 0, page.getWidth(), page.getHeight()));
+        Assert.assertEquals(expected.width, actual.getWidth());
+        Assert.assertEquals(expected.height, actual.getHeight());
+        for (int y = 0; y < expected.height; y++) {
+          for (int x = 0; x < expected.width; x++) {
+            Assert.assertEquals(filepath + " " + region, page.getRGB(expected.x + x, expected.y + y),
+                actual.getRGB(x, y));
+          }
+        }
+      }
+    }
+  }
+
+  @Test
+  public void testReadSourceRegionWithCheckpoints() throws IOException {
+    final String[] filepaths = {
+        "/images/042_1.jb2", "/images/042_2.jb2", "/images/042_3.jb2", "/images/042_4.jb2"
+    };
+    final Rectangle region = new Rectangle(200, 1500, 400, 300);
+
+    for (String filepath : filepaths) {
+      final JBIG2ReadParam recordParam = new JBIG2ReadParam();
+      recordParam.setCheckpointInterval(128);
+      final JBIG2ImageReader recordingReader = createReader(filepath);
+      final BufferedImage page = recordingReader.read(0, recordParam);
+
+      final Map<Integer, DecoderCheckpoints> checkpoints = recordingReader.getCheckpoints(0);
+      Assert.assertEquals(filepath, 1, checkpoints.size());
+
+      // persist and restore the checkpoints like a caller would do
+      final Map<Integer, DecoderCheckpoints> restored = new HashMap<Integer, DecoderCheckpoints>();
+      for (Map.Entry<Integer, DecoderCheckpoints> entry : checkpoints.entrySet()) {
+        Assert.assertEquals(filepath, page.getHeight() / 128, entry.getValue().size());
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        entry.getValue().writeTo(out);
+        restored.put(entry.getKey(), DecoderCheckpoints.readFrom(new ByteArrayInputStream(out.toByteArray())));
+      }
+
+      final JBIG2ImageReader resumingReader = createReader(filepath);
+      resumingReader.setCheckpoints(0, restored);
+      final JBIG2ReadParam param = new JBIG2ReadParam();
+      param.setSourceRegion(region);
+      final BufferedImage actual = resumingReader.read(0, param);
+
+      for (int y = 0; y < region.height; y++) {
+        for (int x = 0; x < region.width; x++) {
+          Assert.assertEquals(filepath, page.getRGB(region.x + x, region.y + y), actual.getRGB(x, y));
+        }
+      }
+    }
+  }
+
+  @Test
+  public void testReadSourceRegionWithForeignCheckpoints() throws IOException {
+    // the same page size and segment numbers, but different data
+    final String[][] pairs = {
+        {
+            "/images/042_1.jb2", "/images/042_2.jb2"
+        }, {
+            "/images/042_2.jb2", "/images/042_3.jb2"
+        }, {
+            "/images/042_3.jb2", "/images/042_4.jb2"
+        }, {
+            "/images/042_4.jb2", "/images/042_1.jb2"
+        }
+    };
+    final Rectangle region = new Rectangle(200, 1500, 400, 300);
+
+    for (String[] pair : pairs) {
+      final JBIG2ReadParam recordParam = new JBIG2ReadParam();
+      recordParam.setCheckpointInterval(128);
+      final JBIG2ImageReader recordingReader = createReader(pair[0]);
+      recordingReader.read(0, recordParam);
+
+      final Map<Integer, DecoderCheckpoints> restored = new HashMap<Integer, DecoderCheckpoints>();
+      for (Map.Entry<Integer, DecoderCheckpoints> entry : recordingReader.getCheckpoints(0).entrySet()) {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        entry.getValue().writeTo(out);
+        restored.put(entry.getKey(), DecoderCheckpoints.readFrom(new ByteArrayInputStream(out.toByteArray())));
+      }
+
+      // the checkpoints don't belong to the data, so the region is decoded from the first line
+      final BufferedImage page = createReader(pair[1]).read(0, null);
+      final JBIG2ImageReader resumingReader = createReader(pair[1]);
+      resumingReader.setCheckpoints(0, restored);
+      final JBIG2ReadParam param = new JBIG2ReadParam();
+      param.setSourceRegion(region);
+      final BufferedImage actual = resumingReader.read(0, param);
+
+      for (int y = 0; y < region.height; y++) {
+        for (int x = 0; x < region.width; x++) {
+          Assert.assertEquals(pair[1], page.getRGB(region.x + x, region.y + y), actual.getRGB(x, y));
+        }
+      }
+    }
+  }
+
+  @Test
+  public void testReadReduced() throws IOException {
+    final String[] filepaths = {
+        "/images/042_1.jb2", "/images/042_9.jb2", "/images/042_10.jb2", "/images/042_21.jb2", "/images/amb_1.jb2",
+        "/images/20123110001.jb2"
+    };
+
+    for (String filepath : filepaths) {
+      final BufferedImage page = createReader(filepath).read(0, null);
+
+      for (int factor = 2; factor <= 8; factor <<= 1) {
+        final JBIG2ReadParam param = new JBIG2ReadParam();
+        param.setReductionFactor(factor);
+        final BufferedImage actual = createReader(filepath).read(0, param);
+
+        Assert.assertEquals((page.getWidth() + factor - 1) / factor, actual.getWidth());
+        Assert.assertEquals((page.getHeight() + factor - 1) / factor, actual.getHeight());
+
+        // compare with the gray values of the reduced full resolution page
+        long deviation = 0;
+        for (int y = 0; y < actual.getHeight(); y++) {
+          for (int x = 0; x < actual.getWidth(); x++) {
+            int black = 0;
+            int area = 0;
+            for (int py = y * factor; py < Math.min(page.getHeight(), (y + 1) * factor); py++) {
+              for (int px = x * factor; px < Math.min(page.getWidth(), (x + 1) * factor); px++) {
+                black += (page.getRGB(px, py) & 0xff) == 0 ? 1 : 0;
+                area++;
+              }
+            }
+            final int expected = 255 - (black * 255 + area / 2) / area;
+            deviation += Math.abs(expected - (actual.getRGB(x, y) & 0xff));
+          }
+        }
+
+        // only overlapping black pixels of different symbol instances may cause deviations
+        final double meanDeviation = (double) deviation / (actual.getWidth() * actual.getHeight());
+        Assert.assertTrue(filepath + " factor " + factor + ": " + meanDeviation, meanDeviation < 0.1);
+      }
+    }
+
+    // the render size refers to the whole page, also if only a source region is read
+    final JBIG2ReadParam param = new JBIG2ReadParam();
+    param.setSourceRegion(new Rectangle(400, 800, 800, 1000));
+    param.setSourceRenderSize(new Dimension(864, 1170));
+    final BufferedImage expected = createReader("/images/042_1.jb2").read(0, param);
+    Assert.assertEquals(400, expected.getWidth());
+    Assert.assertEquals(500, expected.getHeight());
+
+    param.setReductionFactor(4);
+    final BufferedImage reduced = createReader("/images/042_1.jb2").read(0, param);
+    Assert.assertEquals(expected.getWidth(), reduced.getWidth());
+    Assert.assertEquals(expected.getHeight(), reduced.getHeight());
+  }
+
+  @Test
+  public void testReadSymbolInstances() throws IOException {
+    final String[] filepaths = {
+        "/images/042_10.jb2", "/images/042_11.jb2", "/images/042_12.jb2", "/images/042_15.jb2", "/images/042_16.jb2",
+        "/images/042_17.jb2", "/images/042_18.jb2", "/images/042_19.jb2", "/images/042_20.jb2",
+        "/images/20123110001.jb2", "/images/002.jb2"
+    };
+
+    for (final String filepath : filepaths) {
+      final JBIG2ImageReader imageReader = createReader(filepath);
+      final Map<Integer, List<Bitmap>> dictionaries = new HashMap<Integer, List<Bitmap>>();
+
+      for (int imageIndex = 0; imageIndex < imageReader.getNumImages(true); imageIndex++) {
+        final Raster expected = createReader(filepath).readRaster(imageIndex, null);
+        final Bitmap actual = new Bitmap(expected.getWidth(), expected.getHeight());
+
+        // all symbol instances of these pages are combined with OR
+        Assert.assertTrue(imageReader.readSymbolInstances(imageIndex, new SymbolInstanceListener() {
+          public void symbolDictionaryDecoded(int segmentNumber, List<Bitmap> symbols) {
+            Assert.assertNull(filepath, dictionaries.put(segmentNumber, symbols));
+          }
+
+          public void symbolInstanceDecoded(int regionSegmentNumber, int dictionarySegmentNumber, int symbolIndex,
+              int x, int y, Bitmap symbol, boolean refined) {
+            final List<Bitmap> symbols = dictionaries.get(dictionarySegmentNumber);
+            Assert.assertNotNull(filepath, symbols);
+            if (!refined) {
+              Assert.assertSame(filepath, symbols.get(symbolIndex), symbol);
+            }
+            Bitmaps.blit(symbol, actual, x, y, CombinationOperator.OR);
+          }
+        }));
+
+        // black pixels are 0 in the raster, but 1 in the bitmap
+        for (int y = 0; y < expected.getHeight(); y++) {
+          for (int x = 0; x < expected.getWidth(); x++) {
+            Assert.assertEquals(filepath + " page " + imageIndex + " at " + x + "," + y, expected.getSample(x, y, 0),
+                1 - actual.getPixel(x, y));
+          }
+        }
+      }
+    }
+  }
+
+  @Test
+  public void testReadPipelinedTextRegions() throws IOException {
+    final String[] filepaths = {
+        "/images/042_10.jb2", "/images/042_11.jb2", "/images/042_16.jb2", "/images/042_20.jb2",
+        "/images/20123110001.jb2", "/images/002.jb2", "/images/sampledata.jb2"
+    };
+
+    final JBIG2ReadParam param = new JBIG2ReadParam();
+    param.setPipelinedTextRegions(true);
+
+    final AtomicInteger drawingTasks = new AtomicInteger();
+    final ExecutorService executor = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+        new LinkedBlockingQueue<Runnable>()) {
+      @Override
+      protected void beforeExecute(Thread t, Runnable r) {
+        drawingTasks.incrementAndGet();
+      }
+    };
+    final JBIG2ReadParam executorParam = new JBIG2ReadParam();
+    executorParam.setPipelinedTextRegions(true);
+    executorParam.setExecutor(executor);
+
+    try {
+      for (String filepath : filepaths) {
+        final JBIG2ImageReader imageReader = createReader(filepath);
+        final JBIG2ImageReader pipelinedReader = createReader(filepath);
+        final JBIG2ImageReader executorReader = createReader(filepath);
+
+        for (int imageIndex = 0; imageIndex < imageReader.getNumImages(true); imageIndex++) {
+          final Raster raster = imageReader.readRaster(imageIndex, null);
+          final byte[] expected = ((DataBufferByte) raster.getDataBuffer()).getData();
+          final Raster actual = pipelinedReader.readRaster(imageIndex, param);
+          final Raster actualOnExecutor = executorReader.readRaster(imageIndex, executorParam);
+
+          Assert.assertTrue(filepath + " page " + imageIndex,
+              Arrays.equals(expected, ((DataBufferByte) actual.getDataBuffer()).getData()));
+          Assert.assertTrue(filepath + " page " + imageIndex,
+              Arrays.equals(expected, ((DataBufferByte) actualOnExecutor.getDataBuffer()).getData()));
+        }
+      }
+    } finally {
+      executor.shutdown();
+    }
+    Assert.assertTrue(drawingTasks.get() > 0);
+  }
+
+  @Test
+  public void testReadParallelSymbolDictionaries() throws IOException {
+    // symbol dictionaries with MMR-coded height classes
+    final String filepath = "/images/042_11.jb2";
+
+    final AtomicInteger helperTasks = new AtomicInteger();
+    final ExecutorService executor = new ThreadPoolExecutor(3, 3, 0, TimeUnit.MILLISECONDS,
+        new LinkedBlockingQueue<Runnable>()) {
+      @Override
+      protected void beforeExecute(Thread t, Runnable r) {
+        helperTasks.incrementAndGet();
+      }
+    };
+
+    final JBIG2ReadParam param = new JBIG2ReadParam();
+    param.setParallelism(4);
+    param.setExecutor(executor);
+
+    final Raster expected = createReader(filepath).readRaster(0, null);
+    try {
+      final Raster actual = createReader(filepath).readRaster(0, param);
+      Assert.assertTrue(Arrays.equals(((DataBufferByte) expected.getDataBuffer()).getData(),
+          ((DataBufferByte) actual.getDataBuffer()).getData()));
+    } finally {
+      executor.shutdown();
+    }
+    Assert.assertTrue(helperTasks.get() > 0);
+
+    // the shared pool is created again after it has been shut down
+    param.setExecutor(null);
+    DecoderExecutors.shutdownDefaultExecutor();
+    final Raster actual = createReader(filepath).readRaster(0, param);
+    Assert.assertTrue(Arrays.equals(((DataBufferByte) expected.getDataBuffer()).getData(),
+        ((DataBufferByte) actual.getDataBuffer()).getData()));
+    DecoderExecutors.shutdownDefaultExecutor();
+  }
+
+  @Test
+  public void testReadHalftoneGrayScale() throws IOException {
+    // pages with a single halftone region of 4x4 patterns
+    final String[] filepaths = {
+        "/images/amb_1.jb2", "/images/amb_2.jb2"
+    };
+
+    final JBIG2ReadParam param = new JBIG2ReadParam();
+    param.setHalftoneGrayScale(true);
+
+    for (String filepath : filepaths) {
+      final BufferedImage page = createReader(filepath).read(0, null);
+      final BufferedImage actual = createReader(filepath).read(0, param);
+
+      Assert.assertEquals(page.getWidth() / 4, actual.getWidth());
+      Assert.assertEquals(page.getHeight() / 4, actual.getHeight());
+
+      // each pixel shows the gray level of a cell of the rendered page
+      for (int y = 0; y < actual.getHeight(); y++) {
+        for (int x = 0; x < actual.getWidth(); x++) {
+          int black = 0;
+          for (int py = y * 4; py < y * 4 + 4; py++) {
+            for (int px = x * 4; px < x * 4 + 4; px++) {
+              black += (page.getRGB(px, py) & 0xff) == 0 ? 1 : 0;
+            }
+          }
+          Assert.assertEquals(filepath + " at " + x + "," + y, 255 - (black * 255 + 8) / 16,
+              actual.getRGB(x, y) & 0xff);
+        }
+      }
+
+      // the source region selects cells, the render size of the whole page interpolates them
+      param.setSourceRegion(new Rectangle(40, 80, 400, 200));
+      param.setSourceRenderSize(new Dimension(page.getWidth() / 2, page.getHeight() / 2));
+      final BufferedImage scaled = createReader(filepath).read(0, param);
+      Assert.assertEquals(200, scaled.getWidth());
+      Assert.assertEquals(100, scaled.getHeight());
+
+      // like the bi-level image of the same source region and render size
+      param.setHalftoneGrayScale(false);
+      final BufferedImage bilevel = createReader(filepath).read(0, param);
+      Assert.assertEquals(bilevel.getWidth(), scaled.getWidth());
+      Assert.assertEquals(bilevel.getHeight(), scaled.getHeight());
+      param.setHalftoneGrayScale(true);
+      param.setSourceRegion(null);
+      param.setSourceRenderSize(null);
+    }
+
+    // other pages are read as usual
+    final BufferedImage page = createReader("/images/042_1.jb2").read(0, param);
+    Assert.assertEquals(1728, page.getWidth());
+    Assert.assertEquals(2, ((IndexColorModel) page.getColorModel()).getMapSize());
+  }
+
+  @Test
+  public void testReadAsRenderedImage() throws IOException {
+    final String[] filepaths = {
+        "/images/042_1.jb2", "/images/042_9.jb2", "/images/042_10.jb2", "/images/042_21.jb2", "/images/amb_1.jb2",
+        "/images/20123110001.jb2"
+    };
+
+    for (String filepath : filepaths) {
+      final BufferedImage expected = createReader(filepath).read(0, null);
+      final RenderedImage actual = createReader(filepath).readAsRenderedImage(0, null);
+
+      Assert.assertTrue(filepath, actual instanceof TiledBitmapImage);
+      Assert.assertEquals(expected.getWidth(), actual.getWidth());
+      Assert.assertEquals(expected.getHeight(), actual.getHeight());
+
+      final BufferedImage copy = new BufferedImage(actual.getColorModel(), actual.copyData(null), false, null);
+      for (int y = 0; y < expected.getHeight(); y++) {
+        for (int x = 0; x < expected.getWidth(); x++) {
+          Assert.assertEquals(filepath, expected.getRGB(x, y), copy.getRGB(x, y));
+        }
+      }
+    }
+
+    // a text page needs only a part of its tiles
+    final TiledBitmap tiledPage = ((TiledBitmapImage) createReader("/images/042_10.jb2").readAsRenderedImage(0,
+        null)).getBitmap();
+    Assert.assertTrue(tiledPage.getAllocatedTiles() < tiledPage.getTilesAcross() * tiledPage.getTilesDown());
+
+    // subsampled images are read as usual
+    final JBIG2ReadParam param = new JBIG2ReadParam(2, 2, 0, 0, null, null);
+    Assert.assertTrue(createReader("/images/042_1.jb2").readAsRenderedImage(0, param) instanceof BufferedImage);
+  }
+
+  @Test
+  public void testReadStripes() throws IOException {
+    final String[] filepaths = {
+        "/images/042_9.jb2", "/images/042_1.jb2", "/images/042_10.jb2"
+    };
+
+    for (final String filepath : filepaths) {
+      assertStripes(filepath, createReader(filepath).read(0, null), createReader(filepath));
+    }
+
+    // the striped page of unknown height is reported stripe by stripe
+    final int[] amountOfStripes = new int[1];
+    createReader("/images/042_9.jb2").readStripes(0, new StripeListener() {
+      public void stripeDecoded(Bitmap stripe, int firstLine) {
+        amountOfStripes[0]++;
+      }
+    });
+    Assert.assertTrue(amountOfStripes[0] > 1);
+  }
+
+  @Test
+  public void testReadStripesWithOversizedRegions() throws IOException {
+    final byte[] page = createStripedPage();
+    final BufferedImage expected = createReader(page).read(0, null);
+    Assert.assertEquals(1500, expected.getHeight());
+
+    // the regions reach below their stripes, the rows of the first one are combined with the second
+    Assert.assertEquals(2, assertStripes("oversized regions", expected, createReader(page)));
+  }
+
+  /**
+   * Reads the first page stripe by stripe and compares the stripes with the given image of the page.
+   * 
+   * @return The amount of stripes.
+   */
+  private int assertStripes(final String message, final BufferedImage expected, final JBIG2ImageReader reader)
+      throws IOException {
+    final int[] nextLine = new int[1];
+    final int[] amountOfStripes = new int[1];
+
+    Assert.assertTrue(reader.readStripes(0, new StripeListener() {
+      public void stripeDecoded(Bitmap stripe, int firstLine) {
+        Assert.assertEquals(message, nextLine[0], firstLine);
+        Assert.assertEquals(message, expected.getWidth(), stripe.getWidth());
+
+        for (int y = 0; y < stripe.getHeight(); y++) {
+          for (int x = 0; x < stripe.getWidth(); x++) {
+            final int expectedRGB = stripe.getPixel(x, y) == 1 ? 0xff000000 : 0xffffffff;
+            Assert.assertEquals(message, expectedRGB, expected.getRGB(x, firstLine + y));
+          }
+        }
+
+        nextLine[0] = firstLine + stripe.getHeight();
+        amountOfStripes[0]++;
+      }
+    }));
+
+    Assert.assertEquals(message, expected.getHeight(), nextLine[0]);
+    return amountOfStripes[0];
+  }
+
+  /**
+   * Creates a sequentially organized stream of a striped page of unknown height, 1728 pixels wide,
+   * with stripes of 1000 and 500 lines. Each stripe contains the generic region of 042_1.jb2, which
+   * is 2339 lines high, and another one follows the last end of stripe segment.
+   */
+  private byte[] createStripedPage() throws IOException {
+    final byte[] bytes = readResource("/images/042_1.jb2");
+    final int pageInformation = 172;
+    final int region = 191;
+
+    final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    final DataOutputStream data = new DataOutputStream(out);
+
+    writeSegmentHeader(data, 0, 48, 19);
+    data.writeInt(1728);
+    data.writeInt(0xffffffff);
+    data.write(bytes, pageInformation + 8, 9);
+    data.writeShort(0x8000 | 1000);
+
+    int segmentNumber = 1;
+    for (final int endOfStripe : new int[]{
+        999, 1499, -1
+    }) {
+      writeSegmentHeader(data, segmentNumber++, 38, bytes.length - region);
+      data.write(bytes, region, bytes.length - region);
+
+      if (endOfStripe >= 0) {
+        writeSegmentHeader(data, segmentNumber++, 50, 4);
+        data.writeInt(endOfStripe);
+      }
+    }
+
+    writeSegmentHeader(data, segmentNumber, 49, 0);
+    data.close();
+
+    return out.toByteArray();
+  }
+
+  @Test
+  public void testReadLargePageRegion() throws IOException {
+    final BufferedImage expected = createReader("/images/042_1.jb2").read(0, null);
+
+    final ImageInputStream imageInputStream = new DefaultInputStreamFactory().getInputStream(new ByteArrayInputStream(
+        createLargePage(50000, 30000)));
+    final JBIG2ImageReader reader = new JBIG2ImageReader(new JBIG2ImageReaderSpi());
+    reader.setInput(imageInputStream);
+
+    final JBIG2ReadParam param = reader.getDefaultReadParam();
+    param.setSourceRegion(new Rectangle(49900, 29900, 2000, 2600));
+
+    // the bitmap of the whole page would need 300 MB
+    final ResourceLimits limits = new ResourceLimits();
+    limits.setMaxDecodedBytes(16 * 1024 * 1024);
+    param.setResourceLimits(limits);
+
+    final BufferedImage image = reader.read(0, param);
+    Assert.assertEquals(2000, image.getWidth());
+    Assert.assertEquals(2600, image.getHeight());
+
+    for (int y = 0; y < image.getHeight(); y++) {
+      for (int x = 0; x < image.getWidth(); x++) {
+        final boolean insideRegion = x >= 100 && x < 100 + expected.getWidth() && y >= 100
+            && y < 100 + expected.getHeight();
+        final int expectedRGB = insideRegion ? expected.getRGB(x - 100, y - 100) : 0xffffffff;
+        Assert.assertEquals(expectedRGB, image.getRGB(x, y));
+      }
+    }
+
+    final Raster raster = reader.readRaster(0, param);
+    Assert.assertEquals(2000, raster.getWidth());
+    Assert.assertEquals(2600, raster.getHeight());
+  }
+
+  /**
+   * Creates a sequentially organized stream of a page of 60000x40000 pixels that contains the
+   * generic region of 042_1.jb2 at the given position.
+   */
+  private byte[] createLargePage(final int x, final int y) throws IOException {
+    // the file is organized randomly, the data parts of the page information (19 bytes) and of the
+    // region follow the segment headers
+    final byte[] bytes = readResource("/images/042_1.jb2");
+    final int pageInformation = 172;
+    final int region = 191;
+
+    final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    final DataOutputStream data = new DataOutputStream(out);
+
+    writeSegmentHeader(data, 0, 48, 19);
+    data.writeInt(60000);
+    data.writeInt(40000);
+    data.write(bytes, pageInformation + 8, 11);
+
+    writeSegmentHeader(data, 1, 38, bytes.length - region);
+    data.write(bytes, region, 8);
+    data.writeInt(x);
+    data.writeInt(y);
+    data.write(bytes, region + 16, bytes.length - region - 16);
+
+    writeSegmentHeader(data, 2, 49, 0);
+    data.close();
+
+    return out.toByteArray();
+  }
+
+  private byte[] readResource(final String filepath) throws IOException {
+    final InputStream inputStream = getClass().getResourceAsStream(filepath);
+    final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    final byte[] buffer = new byte[4096];
+    for (int read = inputStream.read(buffer); read > 0; read = inputStream.read(buffer)) {
+      out.write(buffer, 0, read);
+    }
+    inputStream.close();
+    return out.toByteArray();
+  }
+
+  private static void writeSegmentHeader(final DataOutputStream data, final int segmentNumber,
+      final int segmentType, final int dataLength) throws IOException {
+    data.writeInt(segmentNumber);
+    data.writeByte(segmentType);
+    data.writeByte(0); // no referred-to segments
+    data.writeByte(1); // page association
+    data.writeInt(dataLength);
+  }
+
+  private JBIG2ImageReader createReader(String filepath) throws IOException {
+    InputStream inputStream = getClass().getResourceAsStream(filepath);
+    DefaultInputStreamFactory disf = new DefaultInputStreamFactory();
+    ImageInputStream imageInputStream = disf.getInputStream(inputStream);
+    JBIG2ImageReader imageReader = new JBIG2ImageReader(new JBIG2ImageReaderSpi());
+    imageReader.setInput(imageInputStream);
+    return imageReader;
+  }
+
+  private JBIG2ImageReader createReader(final byte[] bytes) throws IOException {
+    final JBIG2ImageReader imageReader = new JBIG2ImageReader(new JBIG2ImageReaderSpi());
+    imageReader.setInput(new DefaultInputStreamFactory().getInputStream(new ByteArrayInputStream(bytes)));
+    return imageReader;
+  }
+
   @Test
   public void testCanReadRaster() throws IOException {
     JBIG2ImageReader imageReader = new JBIG2ImageReader(new JBIG2ImageReaderSpi());
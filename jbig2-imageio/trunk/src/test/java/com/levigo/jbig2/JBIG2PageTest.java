@@ -19,11 +19,20 @@ package com.levigo.jbig2;
 
 import java.awt.Rectangle;
 import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.ArrayList;
+import java.util.List;
 
 import javax.imageio.stream.ImageInputStream;
 
+import org.junit.Assert;
 import org.junit.Ignore;
 import org.junit.Test;
 
@@ -34,6 +43,109 @@ import com.levigo.jbig2.io.DefaultInputStreamFactory;
 
 public class JBIG2PageTest {
 
+  @Test
+  public void testSharedDictionaryLifetime() throws IOException, JBIG2Exception {
+    final int pages = 5;
+    final JBIG2DocumentFacade doc = new JBIG2DocumentFacade(createSharedDictionaryDocument(pages));
+    final SegmentHeader dictionary = doc.getGlobalSegments().getSegment(0);
+    final Bitmap expected = new JBIG2DocumentFacade(
+        new DefaultInputStreamFactory().getInputStream(getClass().getResourceAsStream("/images/20123110001.jb2")))
+        .getPageBitmap(1);
+
+    for (int i = 1; i <= pages; i++) {
+      Assert.assertTrue(dictionary.isPinned());
+      final Bitmap pageBitmap = doc.getPageBitmap(i);
+      Assert.assertArrayEquals(expected.getByteArray(), pageBitmap.getByteArray());
+    }
+
+    // released after the last referring page has been decoded
+    Assert.assertFalse(dictionary.isPinned());
+    Assert.assertFalse(dictionary.hasSegmentData());
+
+    // can still be decoded on demand
+    Assert.assertArrayEquals(expected.getByteArray(), doc.getPageBitmap(2).getByteArray());
+  }
+
+  /**
+   * Creates a sequential document with a global symbol dictionary that is shared by all of its
+   * pages. Each page is a copy of the first page of {@code 20123110001.jb2}.
+   */
+  private ImageInputStream createSharedDictionaryDocument(final int pages) throws IOException {
+    final ImageInputStream source = new DefaultInputStreamFactory().getInputStream(getClass().getResourceAsStream(
+        "/images/20123110001.jb2"));
+    final JBIG2DocumentFacade doc = new JBIG2DocumentFacade(source);
+    final SegmentHeader dictionary = doc.getGlobalSegments().getSegment(0);
+
+    final List<SegmentHeader> pageSegments = new ArrayList<SegmentHeader>();
+    for (int i = 1; i <= 10; i++) {
+      final SegmentHeader s = doc.getPage(1).getSegment(i);
+      if (null != s && s.getPageAssociation() == 1) {
+        pageSegments.add(s);
+      }
+    }
+
+    final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    final DataOutputStream out = new DataOutputStream(bytes);
+
+    // D.4 file header: sequential organisation, unknown amount of pages
+    out.write(new byte[]{
+        (byte) 0x97, 0x4A, 0x42, 0x32, 0x0D, 0x0A, 0x1A, 0x0A, 0x03
+    });
+
+    writeSegment(out, 0, 0, new int[0], 0, readSegmentData(source, dictionary));
+
+    int segmentNr = 1;
+    for (int page = 1; page <= pages; page++) {
+      for (SegmentHeader s : pageSegments) {
+        final int[] rtSegments = null != s.getRtSegments() ? new int[]{
+          0
+        } : new int[0];
+        writeSegment(out, segmentNr++, s.getSegmentType(), rtSegments, page, readSegmentData(source, s));
+      }
+    }
+
+    // end of file
+    writeSegment(out, segmentNr, 51, new int[0], 0, new byte[0]);
+    out.close();
+
+    return new DefaultInputStreamFactory().getInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+  }
+
+  private byte[] readSegmentData(final ImageInputStream source, final SegmentHeader s) throws IOException {
+    final byte[] data = new byte[(int) s.getSegmentDataLength()];
+    source.seek(s.getSegmentDataStartOffset());
+    source.readFully(data);
+    return data;
+  }
+
+  /**
+   * Writes a segment with a header according to 7.2.
+   */
+  private void writeSegment(final DataOutputStream out, final int segmentNr, final int segmentType,
+      final int[] rtSegments, final int page, final byte[] data) throws IOException {
+    final boolean longPageAssociation = page > 255;
+
+    out.writeInt(segmentNr);
+    out.writeByte((longPageAssociation ? 0x40 : 0) | segmentType);
+    out.writeByte(rtSegments.length << 5);
+    for (int rtSegment : rtSegments) {
+      if (segmentNr <= 256) {
+        out.writeByte(rtSegment);
+      } else if (segmentNr <= 65536) {
+        out.writeShort(rtSegment);
+      } else {
+        out.writeInt(rtSegment);
+      }
+    }
+    if (longPageAssociation) {
+      out.writeInt(page);
+    } else {
+      out.writeByte(page);
+    }
+    out.writeInt(data.length);
+    out.write(data);
+  }
+
   // TESTS WITH TESTOUTPUT
   // Ignore in build process
 
@@ -84,6 +196,37 @@ public class JBIG2PageTest {
     System.out.println("Average: " + avg / runs);
   }
 
+  @Ignore
+  @Test
+  public void composeSharedDictionaryDocumentWithMemoryReport() throws IOException, JBIG2Exception {
+    final int pages = 300;
+    final ImageInputStream iis = createSharedDictionaryDocument(pages);
+
+    for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+      pool.resetPeakUsage();
+    }
+
+    final long time = System.currentTimeMillis();
+    final JBIG2Document doc = new JBIG2Document(iis);
+    for (int i = 1; i <= pages; i++) {
+      final JBIG2Page page = doc.getPage(i);
+      page.getBitmap();
+      page.clearPageData();
+    }
+    final long duration = System.currentTimeMillis() - time;
+
+    long peakHeap = 0;
+    for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+      if (pool.getType() == MemoryType.HEAP) {
+        peakHeap += pool.getPeakUsage().getUsed();
+      }
+    }
+
+    System.out.println("Pages: " + pages);
+    System.out.println("Duration: " + duration + " ms, " + duration / pages + " ms per page");
+    System.out.println("Peak heap: " + (peakHeap >> 20) + " MB");
+  }
+
   @Ignore
   @Test
   public void composeTestWithDurationCalcAggregate() throws IOException, JBIG2Exception {
@@ -0,0 +1,169 @@
+/**
+ * Copyright (C) 1995-2014 levigo holding gmbh.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.levigo.jbig2;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.InputStream;
+
+import javax.imageio.stream.ImageInputStream;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.levigo.jbig2.err.ResourceLimitExceededException;
+import com.levigo.jbig2.io.DefaultInputStreamFactory;
+import com.levigo.jbig2.util.AbortSignal;
+import com.levigo.jbig2.util.ResourceBudget;
+import com.levigo.jbig2.util.ResourceLimits;
+import com.levigo.jbig2.util.cache.CacheFactory;
+
+public class ResourceLimitsTest {
+
+  @Before
+  public void clearCache() {
+    // cached pages are returned without decoding
+    CacheFactory.getCache().clear();
+  }
+
+  @Test(expected = ResourceLimitExceededException.class)
+  public void pageExceedsPixelLimit() throws IOException {
+    final ResourceLimits limits = new ResourceLimits();
+    limits.setMaxPagePixels(1000000);
+    read("/images/042_1.jb2", limits);
+  }
+
+  @Test(expected = ResourceLimitExceededException.class)
+  public void regionExceedsPixelLimit() throws IOException {
+    final ResourceLimits limits = new ResourceLimits();
+    limits.setMaxPagePixels(1728 * 2339);
+    limits.setMaxRegionPixels(1000000);
+    read("/images/042_1.jb2", limits);
+  }
+
+  @Test(expected = ResourceLimitExceededException.class)
+  public void dictionaryExceedsSymbolLimit() throws IOException {
+    final ResourceLimits limits = new ResourceLimits();
+    limits.setMaxSymbols(10);
+    read("/images/042_10.jb2", limits);
+  }
+
+  @Test(expected = ResourceLimitExceededException.class)
+  public void textRegionExceedsSymbolInstanceLimit() throws IOException {
+    final ResourceLimits limits = new ResourceLimits();
+    limits.setMaxSymbolInstances(10);
+    read("/images/042_10.jb2", limits);
+  }
+
+  @Test(expected = ResourceLimitExceededException.class)
+  public void documentExceedsDecodedBytes() throws IOException {
+    final ResourceLimits limits = new ResourceLimits();
+    limits.setMaxDecodedBytes(3 * 216 * 2339);
+
+    final JBIG2ImageReader reader = createReader("/images/042_1.jb2");
+    final JBIG2ReadParam param = reader.getDefaultReadParam();
+    param.setResourceLimits(limits);
+
+    // A single read fits, but the decoded bytes are counted across all reads of the document
+    for (int i = 0; i < 10; i++) {
+      Assert.assertNotNull(reader.read(0, param));
+      CacheFactory.getCache().clear();
+    }
+  }
+
+  @Test
+  public void readWithinLimits() throws IOException {
+    final ResourceLimits limits = new ResourceLimits();
+    limits.setMaxPagePixels(1728 * 2339);
+    limits.setMaxRegionPixels(1728 * 2339);
+    limits.setMaxDecodedBytes(10 * 1024 * 1024);
+    limits.setMaxSymbols(10000);
+    limits.setMaxSymbolInstances(10000);
+    limits.setTimeBudget(60000);
+
+    final BufferedImage limited = read("/images/042_1.jb2", limits);
+    CacheFactory.getCache().clear();
+    final BufferedImage unlimited = read("/images/042_1.jb2", null);
+
+    Assert.assertArrayEquals((byte[]) unlimited.getRaster().getDataElements(0, 0, 1728, 2339, null), (byte[]) limited
+        .getRaster().getDataElements(0, 0, 1728, 2339, null));
+  }
+
+  @Test
+  public void readerLimitsApplyWithoutParamLimits() throws IOException {
+    final ResourceLimits strict = new ResourceLimits();
+    strict.setMaxPagePixels(1000);
+
+    final JBIG2ImageReader reader = createReader("/images/042_1.jb2");
+    reader.setResourceLimits(strict);
+
+    try {
+      reader.read(0, reader.getDefaultReadParam());
+      Assert.fail("page should exceed the limits of the reader");
+    } catch (ResourceLimitExceededException e) {
+      // expected
+    }
+
+    // The limits of the read param take precedence and the reader remains usable
+    final JBIG2ReadParam param = reader.getDefaultReadParam();
+    param.setResourceLimits(new ResourceLimits());
+    Assert.assertNotNull(reader.read(0, param));
+  }
+
+  @Test(expected = ResourceLimitExceededException.class)
+  public void timeBudgetExhausted() throws InterruptedException {
+    final ResourceLimits limits = new ResourceLimits();
+    limits.setTimeBudget(1);
+
+    final ResourceBudget budget = new ResourceBudget();
+    budget.start(limits);
+    Thread.sleep(10);
+
+    final AbortSignal signal = new AbortSignal();
+    signal.setResourceBudget(budget);
+    signal.attach();
+    try {
+      AbortSignal.checkAborted();
+    } finally {
+      signal.detach();
+    }
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void negativeLimit() {
+    new ResourceLimits().setMaxRegionPixels(-1);
+  }
+
+  private BufferedImage read(final String filepath, final ResourceLimits limits) throws IOException {
+    final JBIG2ImageReader reader = createReader(filepath);
+    final JBIG2ReadParam param = reader.getDefaultReadParam();
+    param.setResourceLimits(limits);
+    return reader.read(0, param);
+  }
+
+  private JBIG2ImageReader createReader(final String filepath) throws IOException {
+    final InputStream is = getClass().getResourceAsStream(filepath);
+    final DefaultInputStreamFactory disf = new DefaultInputStreamFactory();
+    final ImageInputStream iis = disf.getInputStream(is);
+
+    final JBIG2ImageReader reader = new JBIG2ImageReader(new JBIG2ImageReaderSpi());
+    reader.setInput(iis);
+    return reader;
+  }
+}
@@ -0,0 +1,124 @@
+/**
+ * Copyright (C) 1995-2014 levigo holding gmbh.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.levigo.jbig2.image;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Ignore;
+import org.junit.Test;
+
+import com.levigo.jbig2.Bitmap;
+import com.levigo.jbig2.util.CombinationOperator;
+
+public class GlyphCacheTest {
+
+  @Test
+  public void testBlit() {
+    final Random random = new Random(4711);
+    final List<Bitmap> symbols = new ArrayList<Bitmap>();
+    for (int i = 0; i < 20; i++) {
+      final Bitmap symbol = new Bitmap(1 + random.nextInt(40), 1 + random.nextInt(20));
+      for (int y = 0; y < symbol.getHeight(); y++) {
+        for (int x = 0; x < symbol.getWidth(); x++) {
+          symbol.setPixel(x, y, (byte) random.nextInt(2));
+        }
+      }
+      symbols.add(symbol);
+    }
+
+    final GlyphCache glyphCache = new GlyphCache(symbols, GlyphCache.DEFAULT_MAX_MEMORY);
+
+    for (CombinationOperator op : CombinationOperator.values()) {
+      final Bitmap expected = new Bitmap(101, 50);
+      final Bitmap actual = new Bitmap(101, 50);
+      for (int i = 0; i < 500; i++) {
+        final int index = random.nextInt(symbols.size());
+        final int x = random.nextInt(110) - 5;
+        final int y = random.nextInt(60) - 5;
+
+        Bitmaps.blit(symbols.get(index), expected, x, y, op);
+        glyphCache.getGlyphs().get(index).blit(actual, x, y, op);
+      }
+      assertArrayEquals(op.toString(), expected.getByteArray(), actual.getByteArray());
+    }
+
+    assertTrue(glyphCache.getMemorySize() > 0);
+  }
+
+  @Test
+  public void testMemoryLimit() {
+    final Bitmap symbol = new Bitmap(16, 10);
+    final List<Bitmap> symbols = new ArrayList<Bitmap>();
+    symbols.add(symbol);
+
+    final GlyphCache glyphCache = new GlyphCache(symbols, 30);
+    final Bitmap dst = new Bitmap(64, 10);
+    for (int x = 0; x < 8; x++) {
+      glyphCache.getGlyphs().get(0).blit(dst, x, 0, CombinationOperator.OR);
+    }
+
+    // a shifted copy of the symbol needs 3 bytes per row, so only one of them fits
+    assertEquals(30, glyphCache.getMemorySize());
+  }
+
+  @Ignore
+  @Test
+  public void blitWithDurationCalc() {
+    final Random random = new Random(1);
+    final List<Bitmap> symbols = new ArrayList<Bitmap>();
+    for (int i = 0; i < 100; i++) {
+      final Bitmap symbol = new Bitmap(8 + random.nextInt(30), 10 + random.nextInt(25));
+      random.nextBytes(symbol.getByteArray());
+      symbols.add(symbol);
+    }
+
+    final GlyphCache glyphCache = new GlyphCache(symbols, GlyphCache.DEFAULT_MAX_MEMORY);
+    final Bitmap page = new Bitmap(2480, 3508);
+    final int instances = 200000;
+    final int[] ids = new int[instances];
+    final int[] xs = new int[instances];
+    final int[] ys = new int[instances];
+    for (int i = 0; i < instances; i++) {
+      ids[i] = random.nextInt(symbols.size());
+      xs[i] = random.nextInt(2400);
+      ys[i] = random.nextInt(3400);
+    }
+
+    for (int run = 0; run < 10; run++) {
+      long time = System.currentTimeMillis();
+      for (int i = 0; i < instances; i++) {
+        Bitmaps.blit(symbols.get(ids[i]), page, xs[i], ys[i], CombinationOperator.OR);
+      }
+      final long bitmaps = System.currentTimeMillis() - time;
+
+      time = System.currentTimeMillis();
+      for (int i = 0; i < instances; i++) {
+        glyphCache.getGlyphs().get(ids[i]).blit(page, xs[i], ys[i], CombinationOperator.OR);
+      }
+      final long glyphs = System.currentTimeMillis() - time;
+
+      System.out.println("Bitmaps.blit: " + bitmaps + " ms, GlyphCache: " + glyphs + " ms");
+    }
+  }
+}
@@ -0,0 +1,102 @@
+/**
+ * Copyright (C) 1995-2014 levigo holding gmbh.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.levigo.jbig2.image;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import javax.imageio.stream.ImageInputStream;
+
+import org.junit.Test;
+
+import com.levigo.jbig2.Bitmap;
+import com.levigo.jbig2.JBIG2DocumentFacade;
+import com.levigo.jbig2.err.JBIG2Exception;
+import com.levigo.jbig2.io.DefaultInputStreamFactory;
+import com.levigo.jbig2.util.CombinationOperator;
+
+public class ReducedBitmapTest {
+
+  @Test
+  public void testReduce() throws IOException, JBIG2Exception {
+    final InputStream inputStream = getClass().getResourceAsStream("/images/042_1.jb2");
+    final DefaultInputStreamFactory disf = new DefaultInputStreamFactory();
+    final ImageInputStream iis = disf.getInputStream(inputStream);
+
+    final JBIG2DocumentFacade doc = new JBIG2DocumentFacade(iis);
+    final Bitmap src = Bitmaps.extract(new java.awt.Rectangle(101, 203, 333, 222), doc.getPageBitmap(1));
+
+    for (int factor = 1; factor <= 8; factor <<= 1) {
+      for (int phase = 0; phase < factor; phase++) {
+        final ReducedBitmap reduced = ReducedBitmap.reduce(src, factor, phase, factor - 1 - phase);
+        assertEquals((src.getWidth() + phase + factor - 1) / factor, reduced.getWidth());
+        assertEquals((src.getHeight() + factor - 1 - phase + factor - 1) / factor, reduced.getHeight());
+
+        final int[] expected = new int[reduced.getWidth() * reduced.getHeight()];
+        for (int y = 0; y < src.getHeight(); y++) {
+          for (int x = 0; x < src.getWidth(); x++) {
+            expected[((y + factor - 1 - phase) / factor) * reduced.getWidth() + (x + phase) / factor] += src
+                .getPixel(x, y);
+          }
+        }
+
+        for (int y = 0; y < reduced.getHeight(); y++) {
+          for (int x = 0; x < reduced.getWidth(); x++) {
+            assertEquals(expected[y * reduced.getWidth() + x], reduced.getCoverage(x, y));
+          }
+        }
+      }
+    }
+  }
+
+  @Test
+  public void testCombine() {
+    final Bitmap src = new Bitmap(6, 3);
+    for (int x = 0; x < 6; x++) {
+      src.setPixel(x, 1, (byte) 1);
+    }
+
+    final ReducedBitmap dst = new ReducedBitmap(10, 10, 4);
+    dst.combine(src, 3, 2, CombinationOperator.OR);
+
+    // pixels (3..8, 3) are black
+    assertEquals(1, dst.getCoverage(0, 0));
+    assertEquals(4, dst.getCoverage(1, 0));
+    assertEquals(1, dst.getCoverage(2, 0));
+    assertEquals(0, dst.getCoverage(0, 1));
+
+    dst.fill();
+    assertEquals(16, dst.getCoverage(0, 0));
+    assertEquals(8, dst.getCoverage(2, 0));
+    assertEquals(4, dst.getCoverage(2, 2));
+    assertEquals(0, dst.getGray(2, 2));
+
+    // a white bitmap replaces the covered pixels only
+    dst.combine(new Bitmap(4, 4), 4, 4, CombinationOperator.REPLACE);
+    assertEquals(0, dst.getCoverage(1, 1));
+    assertEquals(16, dst.getCoverage(0, 1));
+    assertEquals(255, dst.getGray(1, 1));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testIllegalFactor() {
+    new ReducedBitmap(10, 10, 3);
+  }
+}
@@ -0,0 +1,178 @@
+/**
+ * Copyright (C) 1995-2014 levigo holding gmbh.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.levigo.jbig2.image;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+import org.junit.Test;
+
+import com.levigo.jbig2.Bitmap;
+import com.levigo.jbig2.err.DecodingAbortedException;
+import com.levigo.jbig2.util.CombinationOperator;
+
+public class SymbolBlitterTest {
+
+  @Test
+  public void testBlit() {
+    blit(null);
+  }
+
+  @Test
+  public void testBlitOnBusyExecutor() throws InterruptedException {
+    final ExecutorService executor = Executors.newSingleThreadExecutor();
+    final CountDownLatch release = new CountDownLatch(1);
+    executor.submit(new Runnable() {
+      public void run() {
+        try {
+          release.await();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+      }
+    });
+
+    try {
+      // the drawing tasks never start, the instances are drawn by the calling thread
+      blit(executor);
+    } finally {
+      release.countDown();
+      executor.shutdown();
+    }
+  }
+
+  @Test
+  public void testBlitOnShutDownExecutor() {
+    final ExecutorService executor = Executors.newSingleThreadExecutor();
+    executor.shutdown();
+
+    blit(executor);
+  }
+
+  @Test(timeout = 10000)
+  public void testDrawingTaskFails() throws InterruptedException {
+    final Error error = new Error("drawing failed");
+    final Bitmap symbol = new Bitmap(8, 8) {
+      @Override
+      public int getRowStride() {
+        throw error;
+      }
+    };
+
+    final DrawingThreadFactory threadFactory = new DrawingThreadFactory();
+    final ExecutorService executor = Executors.newSingleThreadExecutor(threadFactory);
+    try {
+      final SymbolBlitter symbolBlitter = new SymbolBlitter(new Bitmap(100, 100), CombinationOperator.OR, executor);
+      threadFactory.awaitWaiting();
+
+      try {
+        // the drawing task dies on the first batch, so the batches are never handed back
+        for (int i = 0; i < 100000; i++) {
+          symbolBlitter.add(symbol, null, 0, 0);
+        }
+        symbolBlitter.finish();
+        fail("Error expected");
+      } catch (Error e) {
+        assertSame(error, e);
+      }
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  @Test(timeout = 10000)
+  public void testDrawingTaskInterrupted() throws InterruptedException {
+    final DrawingThreadFactory threadFactory = new DrawingThreadFactory();
+    final ExecutorService executor = Executors.newSingleThreadExecutor(threadFactory);
+    final SymbolBlitter symbolBlitter = new SymbolBlitter(new Bitmap(100, 100), CombinationOperator.OR, executor);
+    threadFactory.awaitWaiting();
+    executor.shutdownNow();
+
+    try {
+      final Bitmap symbol = new Bitmap(8, 8);
+      for (int i = 0; i < 100000; i++) {
+        symbolBlitter.add(symbol, null, 0, 0);
+      }
+      symbolBlitter.finish();
+      fail("DecodingAbortedException expected");
+    } catch (DecodingAbortedException e) {
+      // expected
+    }
+  }
+
+  /**
+   * Creates the thread of a single thread executor and waits until it waits for the first batch.
+   */
+  private static class DrawingThreadFactory implements ThreadFactory {
+    private volatile Thread thread;
+
+    public Thread newThread(final Runnable r) {
+      thread = new Thread(r);
+      return thread;
+    }
+
+    void awaitWaiting() throws InterruptedException {
+      while (null == thread || thread.getState() != Thread.State.WAITING) {
+        Thread.sleep(1);
+      }
+    }
+  }
+
+  private void blit(final ExecutorService executor) {
+    final Random random = new Random(815);
+    final List<Bitmap> symbols = new ArrayList<Bitmap>();
+    for (int i = 0; i < 20; i++) {
+      final Bitmap symbol = new Bitmap(1 + random.nextInt(40), 1 + random.nextInt(20));
+      random.nextBytes(symbol.getByteArray());
+      symbols.add(symbol);
+    }
+
+    final GlyphCache glyphCache = new GlyphCache(symbols, GlyphCache.DEFAULT_MAX_MEMORY);
+
+    for (CombinationOperator op : CombinationOperator.values()) {
+      final Bitmap expected = new Bitmap(200, 100);
+      final Bitmap actual = new Bitmap(200, 100);
+      final SymbolBlitter symbolBlitter = null == executor
+          ? new SymbolBlitter(actual, op)
+          : new SymbolBlitter(actual, op, executor);
+
+      // enough instances to fill several batches, the result depends on their order
+      for (int i = 0; i < 5000; i++) {
+        final int index = random.nextInt(symbols.size());
+        final int x = random.nextInt(210) - 5;
+        final int y = random.nextInt(110) - 5;
+        final GlyphCache.Glyph glyph = random.nextBoolean() ? glyphCache.getGlyphs().get(index) : null;
+
+        Bitmaps.blit(symbols.get(index), expected, x, y, op);
+        symbolBlitter.add(symbols.get(index), glyph, x, y);
+      }
+      symbolBlitter.finish();
+
+      assertArrayEquals(op.toString(), expected.getByteArray(), actual.getByteArray());
+    }
+  }
+}
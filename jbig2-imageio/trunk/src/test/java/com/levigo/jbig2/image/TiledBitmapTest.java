@@ -0,0 +1,174 @@
+/**
+ * Copyright (C) 1995-2014 levigo holding gmbh.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.levigo.jbig2.image;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.Rectangle;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+import com.levigo.jbig2.Bitmap;
+import com.levigo.jbig2.err.ResourceLimitExceededException;
+import com.levigo.jbig2.util.CombinationOperator;
+
+public class TiledBitmapTest {
+
+  @Test
+  public void testBlit() {
+    final Random random = new Random(4711);
+
+    for (CombinationOperator op : CombinationOperator.values()) {
+      for (int defaultPixelValue = 0; defaultPixelValue <= 1; defaultPixelValue++) {
+        final Bitmap expected = new Bitmap(100, 70);
+        final TiledBitmap actual = new TiledBitmap(100, 70, 16, defaultPixelValue);
+        fill(expected, defaultPixelValue);
+
+        for (int i = 0; i < 20; i++) {
+          final Bitmap src = new Bitmap(1 + random.nextInt(60), 1 + random.nextInt(40));
+          for (int y = 0; y < src.getHeight(); y++) {
+            for (int x = 0; x < src.getWidth(); x++) {
+              src.setPixel(x, y, (byte) (random.nextInt(4) == 0 ? 1 : 0));
+            }
+          }
+
+          final int x = random.nextInt(130) - 30;
+          final int y = random.nextInt(100) - 30;
+          blitPixels(src, expected, x, y, op);
+          actual.blit(src, x, y, op);
+        }
+
+        assertPixels(expected, actual, op.toString());
+      }
+    }
+  }
+
+  @Test
+  public void testUniformTiles() {
+    final TiledBitmap page = new TiledBitmap(100, 70, 16, 0);
+
+    // a blank region leaves the page untouched
+    page.blit(new Bitmap(100, 70), 0, 0, CombinationOperator.OR);
+    assertEquals(0, page.getAllocatedTiles());
+
+    // a black region that covers tiles completely turns them into black tiles
+    final Bitmap black = new Bitmap(40, 20);
+    fill(black, 1);
+    page.blit(black, 8, 16, CombinationOperator.OR);
+    assertTrue(page.isUniform(1, 1));
+    assertEquals(1, page.getPixel(16, 16));
+    assertEquals(4, page.getAllocatedTiles());
+
+    // uniform tiles of the same value share their bitmap
+    assertSame(page.getTile(0, 0), page.getTile(5, 4));
+    assertSame(page.getTile(1, 1), page.getTile(2, 1));
+
+    // tiles at the edge are covered by the part inside of the page
+    final Bitmap corner = new Bitmap(20, 20);
+    fill(corner, 1);
+    page.blit(corner, 96, 64, CombinationOperator.REPLACE);
+    assertTrue(page.isUniform(6, 4));
+    assertEquals(1, page.getPixel(99, 69));
+
+    page.blit(black, 0, 0, CombinationOperator.AND);
+    assertTrue(page.isUniform(0, 0));
+    assertFalse(page.isUniform(0, 1));
+  }
+
+  @Test
+  public void testOf() {
+    final Bitmap src = new Bitmap(300, 200);
+    src.setPixel(17, 3, (byte) 1);
+    src.setPixel(299, 199, (byte) 1);
+
+    final TiledBitmap tiled = TiledBitmap.of(src, 64);
+    assertEquals(2, tiled.getAllocatedTiles());
+    assertPixels(src, tiled, "of");
+    assertPixels(Bitmaps.extract(new Rectangle(13, 2, 287, 198), src), tiled.extract(new Rectangle(13, 2, 287, 198)),
+        "extract");
+  }
+
+  @Test
+  public void testLargePage() {
+    // a page of more than 2^31 pixels, the last tile ends beyond Integer.MAX_VALUE
+    final TiledBitmap tiled = new TiledBitmap(Integer.MAX_VALUE, 8, 4096, 0);
+
+    final Bitmap src = new Bitmap(300, 8);
+    src.setPixel(0, 0, (byte) 1);
+    src.setPixel(199, 7, (byte) 1);
+    src.setPixel(250, 3, (byte) 1);
+    tiled.blit(src, Integer.MAX_VALUE - 200, 0, CombinationOperator.OR);
+
+    final Bitmap expected = new Bitmap(300, 8);
+    expected.setPixel(100, 0, (byte) 1);
+    expected.setPixel(299, 7, (byte) 1);
+
+    assertEquals(1, tiled.getAllocatedTiles());
+    assertPixels(expected, tiled.extract(new Rectangle(Integer.MAX_VALUE - 300, 0, 300, 8)), "extract");
+  }
+
+  @Test(expected = ResourceLimitExceededException.class)
+  public void testTooManyTiles() {
+    new TiledBitmap(Integer.MAX_VALUE, Integer.MAX_VALUE, 8, 0);
+  }
+
+  private static void fill(final Bitmap bitmap, final int value) {
+    Arrays.fill(bitmap.getByteArray(), value == 0 ? 0 : (byte) 0xff);
+  }
+
+  private static void blitPixels(final Bitmap src, final Bitmap dst, final int x, final int y,
+      final CombinationOperator op) {
+    for (int srcY = 0; srcY < src.getHeight(); srcY++) {
+      for (int srcX = 0; srcX < src.getWidth(); srcX++) {
+        final int dstX = x + srcX;
+        final int dstY = y + srcY;
+        if (dstX >= 0 && dstX < dst.getWidth() && dstY >= 0 && dstY < dst.getHeight()) {
+          final byte value = Bitmaps.combineBytes(dst.getPixel(dstX, dstY), src.getPixel(srcX, srcY), op);
+
+          // Bitmap.setPixel() can't clear a pixel
+          final int byteIndex = dst.getByteIndex(dstX, dstY);
+          final int bit = 0x80 >> dst.getBitOffset(dstX);
+          final int oldByte = dst.getByte(byteIndex);
+          dst.setByte(byteIndex, (byte) ((value & 1) != 0 ? oldByte | bit : oldByte & ~bit));
+        }
+      }
+    }
+  }
+
+  private static void assertPixels(final Bitmap expected, final TiledBitmap actual, final String message) {
+    for (int y = 0; y < expected.getHeight(); y++) {
+      for (int x = 0; x < expected.getWidth(); x++) {
+        assertEquals(message + " " + x + "," + y, expected.getPixel(x, y), actual.getPixel(x, y));
+      }
+    }
+    assertPixels(expected, actual.toBitmap(), message);
+  }
+
+  private static void assertPixels(final Bitmap expected, final Bitmap actual, final String message) {
+    for (int y = 0; y < expected.getHeight(); y++) {
+      for (int x = 0; x < expected.getWidth(); x++) {
+        assertEquals(message + " " + x + "," + y, expected.getPixel(x, y), actual.getPixel(x, y));
+      }
+    }
+  }
+}
@@ -0,0 +1,231 @@
+/**
+ * Copyright (C) 1995-2014 levigo holding gmbh.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.levigo.jbig2.segments;
+
+import java.io.ByteArrayInputStream;
+import java.util.Arrays;
+import java.util.Random;
+
+import javax.imageio.stream.MemoryCacheImageInputStream;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+import com.levigo.jbig2.Bitmap;
+import com.levigo.jbig2.decoder.arithmetic.ArithmeticDecoder;
+import com.levigo.jbig2.decoder.arithmetic.CX;
+import com.levigo.jbig2.io.SubInputStream;
+
+public class GenericRefinementRegionTest {
+
+  private static final short[] NOMINAL_AT = {
+      -1, -1
+  };
+
+  @Test
+  public void reuseRegionBitmapsTest() throws Throwable {
+    final byte[] data = new byte[4096];
+    new Random(1).nextBytes(data);
+
+    final Bitmap reference = new Bitmap(21, 17);
+    final Random random = new Random(2);
+    for (int y = 0; y < reference.getHeight(); y++) {
+      for (int x = 0; x < reference.getWidth(); x++) {
+        reference.setPixel(x, y, (byte) random.nextInt(2));
+      }
+    }
+
+    for (short template = 0; template < 2; template++) {
+      final Bitmap[] expected = decode(data, reference, template, false);
+      final Bitmap[] actual = decode(data, reference, template, true);
+
+      for (int i = 0; i < expected.length; i++) {
+        Assert.assertTrue(Arrays.equals(expected[i].getByteArray(), actual[i].getByteArray()));
+      }
+    }
+  }
+
+  /**
+   * Compares the word windows with the per-pixel decoding. The per-pixel decoding doesn't follow the
+   * standard for reference offsets of more than 2 pixels to the right or 5 pixels to the left, so
+   * larger offsets are only covered by {@link #wordWindowsReferenceTest()}.
+   */
+  @Test
+  public void wordWindowsTest() throws Throwable {
+    final Random random = new Random(4711);
+
+    for (short template = 0; template < 2; template++) {
+      for (int i = 0; i < 500; i++) {
+        final byte[] data = createData(random);
+        final Bitmap reference = createReference(random);
+        final int width = Math.max(1, reference.getWidth() + random.nextInt(11) - 5);
+        final int height = Math.max(1, reference.getHeight() + random.nextInt(5) - 2);
+        final int referenceDX = random.nextInt(8) - 5;
+        final int referenceDY = random.nextInt(9) - 4;
+
+        final Bitmap expected = decodeRefinement(data, reference, template, width, height, referenceDX, referenceDY,
+            false);
+        final Bitmap actual = decodeRefinement(data, reference, template, width, height, referenceDX, referenceDY,
+            true);
+
+        Assert.assertTrue(describe(template, width, height, referenceDX, referenceDY, reference),
+            Arrays.equals(expected.getByteArray(), actual.getByteArray()));
+      }
+    }
+  }
+
+  /**
+   * Compares the word windows with a decoding that takes each pixel of the context of figures 12
+   * and 13 of the standard on its own.
+   */
+  @Test
+  public void wordWindowsReferenceTest() throws Throwable {
+    final Random random = new Random(815);
+
+    for (short template = 0; template < 2; template++) {
+      for (int i = 0; i < 500; i++) {
+        final byte[] data = createData(random);
+        final Bitmap reference = createReference(random);
+        final int width = Math.max(1, reference.getWidth() + random.nextInt(11) - 5);
+        final int height = Math.max(1, reference.getHeight() + random.nextInt(5) - 2);
+        final int referenceDX = random.nextInt(21) - 10;
+        final int referenceDY = random.nextInt(9) - 4;
+
+        final Bitmap expected = decodeReference(data, reference, template, width, height, referenceDX, referenceDY);
+        final Bitmap actual = decodeRefinement(data, reference, template, width, height, referenceDX, referenceDY,
+            true);
+
+        Assert.assertTrue(describe(template, width, height, referenceDX, referenceDY, reference),
+            Arrays.equals(expected.getByteArray(), actual.getByteArray()));
+      }
+    }
+  }
+
+  private static byte[] createData(final Random random) {
+    final byte[] data = new byte[2048];
+    random.nextBytes(data);
+    return data;
+  }
+
+  /**
+   * @return A random reference bitmap, mostly of widths that are no multiple of 8.
+   */
+  private static Bitmap createReference(final Random random) {
+    final Bitmap reference = new Bitmap(1 + random.nextInt(40), 1 + random.nextInt(20));
+    for (int y = 0; y < reference.getHeight(); y++) {
+      for (int x = 0; x < reference.getWidth(); x++) {
+        reference.setPixel(x, y, (byte) random.nextInt(2));
+      }
+    }
+    return reference;
+  }
+
+  private static String describe(final short template, final int width, final int height, final int referenceDX,
+      final int referenceDY, final Bitmap reference) {
+    return "template " + template + ", " + width + "x" + height + " at " + referenceDX + "," + referenceDY + " of "
+        + reference.getWidth() + "x" + reference.getHeight();
+  }
+
+  /**
+   * Decodes a refinement with the nominal AT pixels pixel by pixel, with the contexts of figures 12
+   * and 13 of the standard.
+   */
+  private Bitmap decodeReference(final byte[] data, final Bitmap reference, final short template, final int width,
+      final int height, final int referenceDX, final int referenceDY) throws Throwable {
+    final SubInputStream sis = new SubInputStream(new MemoryCacheImageInputStream(new ByteArrayInputStream(data)), 0,
+        data.length);
+    final ArithmeticDecoder arithmeticDecoder = new ArithmeticDecoder(sis);
+    final CX cx = new CX(8192, 1);
+
+    final Bitmap region = new Bitmap(width, height);
+    for (int y = 0; y < height; y++) {
+      for (int x = 0; x < width; x++) {
+        final int rx = x - referenceDX;
+        final int ry = y - referenceDY;
+        int context;
+        if (template == 0) {
+          context = pixel(reference, rx - 1, ry - 1) << 12 | pixel(reference, rx, ry - 1) << 11
+              | pixel(reference, rx + 1, ry - 1) << 10 | pixel(reference, rx - 1, ry) << 9
+              | pixel(reference, rx, ry) << 8 | pixel(reference, rx + 1, ry) << 7
+              | pixel(reference, rx - 1, ry + 1) << 6 | pixel(reference, rx, ry + 1) << 5
+              | pixel(reference, rx + 1, ry + 1) << 4;
+        } else {
+          context = pixel(reference, rx, ry - 1) << 9 | pixel(reference, rx - 1, ry) << 8
+              | pixel(reference, rx, ry) << 7 | pixel(reference, rx + 1, ry) << 6 | pixel(reference, rx, ry + 1) << 5
+              | pixel(reference, rx + 1, ry + 1) << 4;
+        }
+        context |= pixel(region, x - 1, y - 1) << 3 | pixel(region, x, y - 1) << 2 | pixel(region, x + 1, y - 1) << 1
+            | pixel(region, x - 1, y);
+        cx.setIndex(context);
+        region.setPixel(x, y, (byte) arithmeticDecoder.decode(cx));
+      }
+    }
+    return region;
+  }
+
+  private static int pixel(final Bitmap bitmap, final int x, final int y) {
+    if (x < 0 || x >= bitmap.getWidth() || y < 0 || y >= bitmap.getHeight()) {
+      return 0;
+    }
+    return bitmap.getPixel(x, y);
+  }
+
+  private Bitmap decodeRefinement(final byte[] data, final Bitmap reference, final short template, final int width,
+      final int height, final int referenceDX, final int referenceDY, final boolean useWordWindows) throws Throwable {
+    final SubInputStream sis = new SubInputStream(new MemoryCacheImageInputStream(new ByteArrayInputStream(data)), 0,
+        data.length);
+    final GenericRefinementRegion grr = new GenericRefinementRegion(sis);
+    grr.setUseWordWindows(useWordWindows);
+    grr.setParameters(new CX(8192, 1), new ArithmeticDecoder(sis), template, width, height, reference, referenceDX,
+        referenceDY, false, NOMINAL_AT, NOMINAL_AT);
+    return grr.getRegionBitmap();
+  }
+
+  /**
+   * Decodes refinements of alternating sizes and returns a copy of each region bitmap.
+   */
+  private Bitmap[] decode(final byte[] data, final Bitmap reference, final short template,
+      final boolean reuseRegionBitmaps) throws Throwable {
+    final SubInputStream sis = new SubInputStream(new MemoryCacheImageInputStream(new ByteArrayInputStream(data)), 0,
+        data.length);
+    final GenericRefinementRegion grr = new GenericRefinementRegion(sis);
+    grr.setReuseRegionBitmaps(reuseRegionBitmaps);
+
+    final ArithmeticDecoder arithmeticDecoder = new ArithmeticDecoder(sis);
+    final CX cx = new CX(8192, 1);
+
+    final Bitmap[] regionBitmaps = new Bitmap[8];
+    final Bitmap[] result = new Bitmap[regionBitmaps.length];
+    for (int i = 0; i < result.length; i++) {
+      grr.setParameters(cx, arithmeticDecoder, template, 21 + (i & 1), 17, reference, i & 1, -(i & 2) >> 1, false,
+          NOMINAL_AT, NOMINAL_AT);
+      regionBitmaps[i] = grr.getRegionBitmap();
+
+      if (i >= 2) {
+        // every second region has the same size
+        Assert.assertEquals(reuseRegionBitmaps, regionBitmaps[i] == regionBitmaps[i - 2]);
+      }
+
+      result[i] = new Bitmap(regionBitmaps[i].getWidth(), regionBitmaps[i].getHeight());
+      System.arraycopy(regionBitmaps[i].getByteArray(), 0, result[i].getByteArray(), 0,
+          regionBitmaps[i].getByteArray().length);
+    }
+    return result;
+  }
+}
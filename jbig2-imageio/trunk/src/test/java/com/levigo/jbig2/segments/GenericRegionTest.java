@@ -19,6 +19,7 @@ package com.levigo.jbig2.segments;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.Arrays;
 
 import javax.imageio.stream.ImageInputStream;
 
@@ -27,6 +28,7 @@ import junit.framework.Assert;
 import org.junit.Ignore;
 import org.junit.Test;
 
+import com.levigo.jbig2.Bitmap;
 import com.levigo.jbig2.TestImage;
 import com.levigo.jbig2.err.InvalidHeaderValueException;
 import com.levigo.jbig2.image.Bitmaps;
@@ -70,6 +72,32 @@ public class GenericRegionTest {
     Assert.assertEquals(-2, gbAtY[3]);
   }
 
+  @Test
+  public void skipBitmapTest() throws IOException, InvalidHeaderValueException {
+    InputStream is = getClass().getResourceAsStream("/images/sampledata.jb2");
+    DefaultInputStreamFactory disf = new DefaultInputStreamFactory();
+    ImageInputStream iis = disf.getInputStream(is);
+    // Twelfth Segment (number 11), the data part starts after 26 header bytes
+    SubInputStream sis = new SubInputStream(iis, 523, 35);
+    GenericRegion gr = new GenericRegion();
+    gr.init(null, sis);
+    Bitmap expected = gr.getRegionBitmap();
+
+    // nothing skipped
+    sis.seek(26);
+    GenericRegion skipping = new GenericRegion(sis);
+    skipping.setParameters(false, 26, 9, 44, 54, (byte) 0, true, new Bitmap(54, 44), gr.getGbAtX(), gr.getGbAtY());
+    Assert.assertTrue(Arrays.equals(expected.getByteArray(), skipping.getRegionBitmap().getByteArray()));
+
+    // everything skipped
+    Bitmap skip = new Bitmap(54, 44);
+    Arrays.fill(skip.getByteArray(), (byte) 0xff);
+    sis.seek(26);
+    skipping = new GenericRegion(sis);
+    skipping.setParameters(false, 26, 9, 44, 54, (byte) 0, false, skip, gr.getGbAtX(), gr.getGbAtY());
+    Assert.assertTrue(Arrays.equals(new byte[skip.getByteArray().length], skipping.getRegionBitmap().getByteArray()));
+  }
+
   // TESTS WITH TESTOUTPUT
   // Ignore in build process
 
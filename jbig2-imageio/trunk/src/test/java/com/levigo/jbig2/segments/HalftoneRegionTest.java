@@ -17,16 +17,24 @@
 
 package com.levigo.jbig2.segments;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Random;
 
 import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.MemoryCacheImageInputStream;
 
 import junit.framework.Assert;
 
 import org.junit.Test;
 
+import com.levigo.jbig2.Bitmap;
 import com.levigo.jbig2.err.InvalidHeaderValueException;
+import com.levigo.jbig2.image.Bitmaps;
 import com.levigo.jbig2.io.DefaultInputStreamFactory;
 import com.levigo.jbig2.io.SubInputStream;
 import com.levigo.jbig2.util.CombinationOperator;
@@ -58,4 +66,198 @@ public class HalftoneRegionTest {
 
   }
 
+  @Test
+  public void computeHSkipTest() throws IOException, InvalidHeaderValueException {
+    // 20x12 region, 5x4 grid with cells of 8x8 pixels starting at (-6, -2)
+    HalftoneRegion hr = createHalftoneRegion(20, 12, 5, 4, -6 << 8, -2 << 8, 8 << 8, 0);
+    Assert.assertTrue(hr.isHSkipEnabled());
+
+    assertHSkip(new String[]{
+        "10001", "10001", "11111", "11111"
+    }, hr.computeHSkip(6, 4));
+  }
+
+  @Test
+  public void computeHSkipRotatedTest() throws IOException, InvalidHeaderValueException {
+    // 6x6 region, 3x3 grid, cell (n, m) is at (2m + 4n, 4m - 2n)
+    HalftoneRegion hr = createHalftoneRegion(6, 6, 3, 3, 0, 0, 4 << 8, 2 << 8);
+
+    assertHSkip(new String[]{
+        "011", "011", "111"
+    }, hr.computeHSkip(2, 2));
+  }
+
+  @Test
+  public void renderRegionBitmapTest() throws IOException, InvalidHeaderValueException {
+    final Random random = new Random(4711);
+    final CombinationOperator[] fastOperators = {
+        CombinationOperator.OR, CombinationOperator.XOR
+    };
+    final CombinationOperator[] otherOperators = {
+        CombinationOperator.AND, CombinationOperator.XNOR, CombinationOperator.REPLACE
+    };
+
+    // widths of less than a byte, byte-aligned widths and widths that span several bytes
+    for (int patternWidth = 1; patternWidth <= 17; patternWidth++) {
+      for (int i = 0; i < 40; i++) {
+        final int patternHeight = 1 + random.nextInt(6);
+        final ArrayList<Bitmap> patterns = new ArrayList<Bitmap>();
+        for (int p = 1 + random.nextInt(8); p > 0; p--) {
+          patterns.add(createPattern(random, patternWidth, patternHeight));
+        }
+
+        // the following cases are drawn cell by cell
+        if (random.nextInt(10) == 0) {
+          patterns.add(createPattern(random, patternWidth, patternHeight + 1));
+        }
+        final CombinationOperator op = random.nextInt(8) == 0 ? otherOperators[random.nextInt(3)]
+            : fastOperators[random.nextInt(2)];
+        final int regionX = random.nextInt(8) == 0 ? random.nextInt(patternWidth << 8) : (patternWidth << 8)
+            + random.nextInt(3 << 8);
+        final int regionY = random.nextInt(8) == 0 ? 1 + random.nextInt(2 << 8) : 0;
+
+        // cells are clipped at all edges of the region
+        final int width = 1 + random.nextInt(100);
+        final int height = 1 + random.nextInt(30);
+        final int gridWidth = 1 + random.nextInt(12);
+        final int gridHeight = 1 + random.nextInt(8);
+        final int gridX = random.nextInt((width + 8) << 8) - ((patternWidth + 4) << 8);
+        final int gridY = random.nextInt((height + 4) << 8) - ((patternHeight + 2) << 8);
+        final int defaultPixel = random.nextInt(2);
+
+        final int[] grayScaleValues = new int[gridWidth * gridHeight];
+        for (int v = 0; v < grayScaleValues.length; v++) {
+          grayScaleValues[v] = random.nextInt(patterns.size());
+        }
+
+        // the operator codes are in the order of the enum constants
+        final int flags = defaultPixel << 7 | op.ordinal() << 4;
+        final HalftoneRegion hr = createHalftoneRegion(width, height, flags, gridWidth, gridHeight, gridX, gridY,
+            regionX, regionY);
+        Assert.assertEquals(op, hr.getCombinationOperator());
+
+        final Bitmap expected = new Bitmap(width, height);
+        for (int y = 0; y < height; y++) {
+          for (int x = 0; x < width; x++) {
+            expected.setPixel(x, y, (byte) defaultPixel);
+          }
+        }
+        for (int m = 0; m < gridHeight; m++) {
+          for (int n = 0; n < gridWidth; n++) {
+            Bitmaps.blit(patterns.get(grayScaleValues[m * gridWidth + n]), expected,
+                (gridX + m * regionY + n * regionX) >> 8, (gridY + m * regionX - n * regionY) >> 8, op);
+          }
+        }
+
+        final Bitmap actual = hr.renderRegionBitmap(patterns, grayScaleValues);
+        assertPixels("pattern width " + patternWidth + ", case " + i, expected, actual);
+      }
+    }
+  }
+
+  @Test
+  public void computeGrayScaleValuesTest() throws IOException, InvalidHeaderValueException {
+    final Random random = new Random(1234);
+    final int[] planeCounts = {
+        0, 1, 2, 7, 8, 9, 15, 16
+    };
+
+    for (int bitsPerValue : planeCounts) {
+      for (int i = 0; i < 30; i++) {
+        // widths that are not a multiple of 8, too
+        final int gridWidth = 1 + random.nextInt(40);
+        final int gridHeight = 1 + random.nextInt(5);
+        final HalftoneRegion hr = createHalftoneRegion(1, 1, gridWidth, gridHeight, 0, 0, 1 << 8, 0);
+
+        // random bytes, so the padding bits of the planes are set, too
+        final Bitmap[] planes = new Bitmap[bitsPerValue];
+        for (int j = 0; j < bitsPerValue; j++) {
+          planes[j] = new Bitmap(gridWidth, gridHeight);
+          random.nextBytes(planes[j].getByteArray());
+        }
+
+        final int[] actual = hr.computeGrayScaleValues(planes, bitsPerValue);
+
+        Assert.assertEquals(gridWidth * gridHeight, actual.length);
+        for (int m = 0; m < gridHeight; m++) {
+          for (int n = 0; n < gridWidth; n++) {
+            // C.5 3) b), each plane is the XOR of itself and the Gray-decoded plane above
+            int expected = 0;
+            int bit = 0;
+            for (int j = bitsPerValue - 1; j >= 0; j--) {
+              bit ^= planes[j].getPixel(n, m);
+              expected |= bit << j;
+            }
+            Assert.assertEquals(bitsPerValue + " planes, case " + i + ", cell " + n + ", " + m, expected,
+                actual[m * gridWidth + n]);
+          }
+        }
+      }
+    }
+  }
+
+  private Bitmap createPattern(Random random, int width, int height) {
+    Bitmap pattern = new Bitmap(width, height);
+    for (int y = 0; y < height; y++) {
+      for (int x = 0; x < width; x++) {
+        pattern.setPixel(x, y, (byte) random.nextInt(2));
+      }
+    }
+    return pattern;
+  }
+
+  private void assertPixels(String message, Bitmap expected, Bitmap actual) {
+    Assert.assertEquals(message, expected.getWidth(), actual.getWidth());
+    Assert.assertEquals(message, expected.getHeight(), actual.getHeight());
+    for (int y = 0; y < expected.getHeight(); y++) {
+      for (int x = 0; x < expected.getWidth(); x++) {
+        Assert.assertEquals(message + ", pixel " + x + ", " + y, expected.getPixel(x, y), actual.getPixel(x, y));
+      }
+    }
+  }
+
+  private HalftoneRegion createHalftoneRegion(int width, int height, int gridWidth, int gridHeight, int gridX,
+      int gridY, int regionX, int regionY) throws IOException, InvalidHeaderValueException {
+    // HENABLESKIP
+    return createHalftoneRegion(width, height, 0x08, gridWidth, gridHeight, gridX, gridY, regionX, regionY);
+  }
+
+  private HalftoneRegion createHalftoneRegion(int width, int height, int flags, int gridWidth, int gridHeight,
+      int gridX, int gridY, int regionX, int regionY) throws IOException, InvalidHeaderValueException {
+    ByteArrayOutputStream bos = new ByteArrayOutputStream();
+    DataOutputStream dos = new DataOutputStream(bos);
+    // region segment information field, 7.4.1
+    dos.writeInt(width);
+    dos.writeInt(height);
+    dos.writeInt(0);
+    dos.writeInt(0);
+    dos.writeByte(0);
+    // halftone region segment flags, 7.4.5.1.1
+    dos.writeByte(flags);
+    dos.writeInt(gridWidth);
+    dos.writeInt(gridHeight);
+    dos.writeInt(gridX);
+    dos.writeInt(gridY);
+    dos.writeShort(regionX);
+    dos.writeShort(regionY);
+    dos.close();
+
+    byte[] data = bos.toByteArray();
+    ImageInputStream iis = new MemoryCacheImageInputStream(new ByteArrayInputStream(data));
+    SubInputStream sis = new SubInputStream(iis, 0, data.length);
+    HalftoneRegion hr = new HalftoneRegion(sis);
+    hr.init(null, sis);
+    return hr;
+  }
+
+  private void assertHSkip(String[] expected, Bitmap hSkip) {
+    Assert.assertEquals(expected.length, hSkip.getHeight());
+    for (int m = 0; m < expected.length; m++) {
+      Assert.assertEquals(expected[m].length(), hSkip.getWidth());
+      for (int n = 0; n < expected[m].length(); n++) {
+        Assert.assertEquals("cell " + n + ", " + m, expected[m].charAt(n) - '0', hSkip.getPixel(n, m));
+      }
+    }
+  }
+
 }
@@ -0,0 +1,195 @@
+/**
+ * Copyright (C) 1995-2014 levigo holding gmbh.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.levigo.jbig2.util;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.Dimension;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.net.URL;
+import java.net.URLClassLoader;
+
+import javax.imageio.ImageReadParam;
+import javax.imageio.stream.ImageInputStream;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.junit.After;
+import org.junit.Ignore;
+import org.junit.Test;
+
+import com.levigo.jbig2.Bitmap;
+import com.levigo.jbig2.JBIG2ImageReader;
+import com.levigo.jbig2.JBIG2ImageReaderSpi;
+import com.levigo.jbig2.io.DefaultInputStreamFactory;
+import com.levigo.jbig2.util.cache.CacheFactory;
+import com.levigo.jbig2.util.metrics.DecodeMetrics;
+import com.levigo.jbig2.util.metrics.DecodeMetricsBridge;
+import com.levigo.jbig2.util.metrics.DecodeMetricsFactory;
+import com.levigo.jbig2.util.metrics.JMXDecodeMetrics;
+import com.levigo.jbig2.util.metrics.JMXDecodeMetricsBridge;
+import com.levigo.jbig2.util.metrics.NoOpDecodeMetrics;
+
+public class DecodeMetricsFactoryTest {
+
+  @After
+  public void tearDown() {
+    DecodeMetricsFactory.setDecodeMetrics(null);
+    DecodeMetricsFactory.setClassLoader(null);
+  }
+
+  @Test
+  public void testDefaultIsNoOp() {
+    DecodeMetricsFactory.setClassLoader(DecodeMetricsBridge.class.getClassLoader());
+    final DecodeMetrics decodeMetrics = DecodeMetricsFactory.getDecodeMetrics();
+    assertNotNull(decodeMetrics);
+    assertSame(NoOpDecodeMetrics.INSTANCE, decodeMetrics);
+    assertFalse(decodeMetrics.isEnabled());
+  }
+
+  @Test
+  public void testBrokenBridgeIsNoOp() throws IOException {
+    // a class loader that registers a bridge class that doesn't exist
+    final File dir = File.createTempFile("jbig2", "services");
+    dir.delete();
+    final File services = new File(dir, "META-INF/services/" + DecodeMetricsBridge.class.getName());
+    services.getParentFile().mkdirs();
+    final OutputStream os = new FileOutputStream(services);
+    try {
+      os.write("com.levigo.jbig2.util.metrics.MissingDecodeMetricsBridge\n".getBytes("UTF-8"));
+    } finally {
+      os.close();
+    }
+
+    try {
+      DecodeMetricsFactory.setClassLoader(new URLClassLoader(new URL[]{
+        dir.toURI().toURL()
+      }, DecodeMetricsBridge.class.getClassLoader()));
+      assertSame(NoOpDecodeMetrics.INSTANCE, DecodeMetricsFactory.getDecodeMetrics());
+
+      // allocating a bitmap doesn't fail either
+      assertEquals(2, new Bitmap(16, 1).getByteArray().length);
+    } finally {
+      services.delete();
+      services.getParentFile().delete();
+      services.getParentFile().getParentFile().delete();
+      dir.delete();
+    }
+  }
+
+  @Test
+  public void testJMXDecodeMetrics() throws Exception {
+    final DecodeMetrics decodeMetrics = new JMXDecodeMetricsBridge().getDecodeMetrics();
+    DecodeMetricsFactory.setDecodeMetrics(decodeMetrics);
+    ((JMXDecodeMetrics) decodeMetrics).reset();
+    CacheFactory.getCache().clear();
+
+    final JBIG2ImageReader reader = createReader("/images/042_10.jb2");
+    final ImageReadParam param = reader.getDefaultReadParam();
+    reader.read(0, param);
+    param.setSourceRenderSize(new Dimension(100, 100));
+    reader.read(0, param);
+
+    final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+    final ObjectName name = new ObjectName(JMXDecodeMetricsBridge.OBJECT_NAME);
+
+    // a symbol dictionary and an immediate lossless text region
+    final long[] segmentCounts = (long[]) server.getAttribute(name, "SegmentCounts");
+    assertEquals(1, segmentCounts[0]);
+    assertEquals(1, segmentCounts[7]);
+    assertTrue(((long[]) server.getAttribute(name, "SegmentDecodeNanos"))[7] > 0);
+    assertTrue(((long[]) server.getAttribute(name, "SegmentDataBytes"))[7] > 0);
+
+    // one decoding time per segment type
+    final long[][] histograms = (long[][]) server.getAttribute(name, "SegmentDecodeHistograms");
+    for (int segmentType = 0; segmentType < histograms.length; segmentType++) {
+      long decoded = 0;
+      for (long count : histograms[segmentType]) {
+        decoded += count;
+      }
+      assertEquals(segmentCounts[segmentType], decoded);
+    }
+    final long[] textRegionHistogram = (long[]) server.invoke(name, "getSegmentDecodeHistogram", new Object[]{
+      7
+    }, new String[]{
+      int.class.getName()
+    });
+    assertArrayEquals(histograms[7], textRegionHistogram);
+
+    assertEquals(4328L, server.getAttribute(name, "SymbolInstances"));
+    assertEquals(1L, server.getAttribute(name, "PagesComposed"));
+    assertTrue((Long) server.getAttribute(name, "BitmapBytesAllocated") > 0);
+    assertEquals(2L, (Long) server.getAttribute(name, "CacheHits") + (Long) server.getAttribute(name, "CacheMisses"));
+    assertEquals(1L, server.getAttribute(name, "ImagesScaled"));
+    assertEquals(10000L, server.getAttribute(name, "ScaledPixels"));
+
+    server.invoke(name, "reset", null, null);
+    assertEquals(0L, server.getAttribute(name, "SymbolInstances"));
+  }
+
+  // BENCHMARK
+  // Ignore in build process
+
+  @Ignore
+  @Test
+  public void decodeWithAndWithoutMetrics() throws IOException {
+    final int runs = 40;
+    final String path = "/images/042_10.jb2";
+
+    System.out.println("File: " + path);
+
+    for (int i = 0; i < 5; i++) {
+      DecodeMetricsFactory.setDecodeMetrics(NoOpDecodeMetrics.INSTANCE);
+      final long disabled = decode(path, runs);
+      DecodeMetricsFactory.setDecodeMetrics(new JMXDecodeMetrics());
+      final long enabled = decode(path, runs);
+
+      System.out.println("Disabled: " + disabled + " ms, enabled: " + enabled + " ms");
+    }
+  }
+
+  private long decode(final String path, final int runs) throws IOException {
+    final long time = System.currentTimeMillis();
+    for (int i = 0; i < runs; i++) {
+      final JBIG2ImageReader reader = createReader(path);
+      reader.read(0, reader.getDefaultReadParam());
+      CacheFactory.getCache().clear();
+    }
+    return System.currentTimeMillis() - time;
+  }
+
+  private JBIG2ImageReader createReader(final String path) throws IOException {
+    final InputStream is = getClass().getResourceAsStream(path);
+    final DefaultInputStreamFactory disf = new DefaultInputStreamFactory();
+    final ImageInputStream iis = disf.getInputStream(is);
+
+    final JBIG2ImageReader reader = new JBIG2ImageReader(new JBIG2ImageReaderSpi());
+    reader.setInput(iis);
+    return reader;
+  }
+}